@@ -1273,7 +1273,7 @@ def COMETS_LME(weightsByState, offset=useJavaDefault, constrainLessThan=None):
 	return builder.build()
 
 
-def COMETS(objective, constraints=[], objectiveWindowSize=useJavaDefault, objectiveWindowMax=useJavaDefault, maxSimultaneousMutations=useJavaDefault, minNumConfTrees=useJavaDefault, logFile=None):
+def COMETS(objective, constraints=[], objectiveWindowSize=useJavaDefault, objectiveWindowMax=useJavaDefault, maxSimultaneousMutations=useJavaDefault, minNumConfTrees=useJavaDefault, maxNumConfTreeNodes=useJavaDefault, logFile=None):
 	'''
 	:java:classdoc:`.gmec.Comets`
 
@@ -1286,6 +1286,7 @@ def COMETS(objective, constraints=[], objectiveWindowSize=useJavaDefault, object
 	:builder_option objectiveWindowMax .gmec.Comets$Builder#objectiveWindowMax:
 	:builder_option maxSimultaneousMutations .gmec.Comets$Builder#maxSimultaneousMutations:
 	:builder_option minNumConfTrees .gmec.Comets$Builder#minNumConfsTrees:
+	:builder_option maxNumConfTreeNodes .gmec.Comets$Builder#maxNumConfTreeNodes:
 
 	:param str logFile: :java:fielddoc:`.gmec.Comets$Builder#logFile`
 
@@ -1305,6 +1306,8 @@ def COMETS(objective, constraints=[], objectiveWindowSize=useJavaDefault, object
 		builder.setMaxSimultaneousMutations(maxSimultaneousMutations)
 	if minNumConfTrees is not useJavaDefault:
 		builder.setMinNumConfTrees(jvm.boxInt(minNumConfTrees))
+	if maxNumConfTreeNodes is not useJavaDefault:
+		builder.setMaxNumConfTreeNodes(jvm.boxLong(maxNumConfTreeNodes))
 
 	if logFile is not None:
 		builder.setLogFile(jvm.toFile(logFile))
@@ -1472,7 +1475,7 @@ def SOFEA_StateConfig(luteEcalc, pmat):
 	'''
 	return jvm.getInnerClass(c.sofea.Sofea, 'StateConfig')(luteEcalc, pmat)
 
-def SOFEA(confSpace, configFunc, parallelism=useJavaDefault, fringeDBPath=useJavaDefault, fringeDBSizeMiB=useJavaDefault, seqDBPath=useJavaDefault):
+def SOFEA(confSpace, configFunc, parallelism=useJavaDefault, fringeDBPath=useJavaDefault, fringeDBSizeMiB=useJavaDefault, fringeDBShards=useJavaDefault, seqDBPath=useJavaDefault):
 	'''
 	TODO
 	:param confSpace:
@@ -1480,6 +1483,7 @@ def SOFEA(confSpace, configFunc, parallelism=useJavaDefault, fringeDBPath=useJav
 	:param parallelism:
 	:param fringeDBPath:
 	:param fringeDBSizeMiB:
+	:param fringeDBShards:
 	:param seqDBPath:
 	:return:
 	'''
@@ -1495,6 +1499,8 @@ def SOFEA(confSpace, configFunc, parallelism=useJavaDefault, fringeDBPath=useJav
 		builder.setFringeDBFile(jvm.toFile(fringeDBPath))
 	if fringeDBSizeMiB is not useJavaDefault:
 		builder.setFringeDBMiB(fringeDBSizeMiB)
+	if fringeDBShards is not useJavaDefault:
+		builder.setFringeDBShards(fringeDBShards)
 	if seqDBPath is not useJavaDefault:
 		builder.setSeqDBFile(jvm.toFile(seqDBPath))
 
@@ -85,6 +85,7 @@ public class ConfAStarTree implements ConfSearch {
 		private ConfAStarFactory factory = new LinkedConfAStarFactory();
 		private AStarPruner pruner = null;
 		private Long maxNumNodes = null;
+		private double cullFraction = 0.01;
 
 		public Builder(EnergyMatrix emat, SimpleConfSpace confSpace) {
 			this(emat, new RCs(confSpace));
@@ -219,6 +220,20 @@ public class ConfAStarTree implements ConfSearch {
 		public Builder setMaxNumNodes(int val) {
 			return setMaxNumNodes(Long.valueOf(val));
 		}
+
+		/**
+		 * When bounded memory runs out of nodes, forget this fraction of the node limit at once,
+		 * rather than forgetting one node each time a node is spawned.
+		 * Forgetting in batches means fewer trips to the worst end of the queue when running near the node limit.
+		 * At least one node is always forgotten. Only used with {@link #setMaxNumNodes}.
+		 */
+		public Builder setCullFraction(double val) {
+			if (val < 0.0 || val >= 1.0) {
+				throw new IllegalArgumentException("cull fraction must be in [0,1), not " + val);
+			}
+			cullFraction = val;
+			return this;
+		}
 		
 		public ConfAStarTree build() {
 			ConfAStarTree tree = new ConfAStarTree(
@@ -229,7 +244,8 @@ public class ConfAStarTree implements ConfSearch {
 				rcs,
 				factory,
 				pruner,
-				maxNumNodes
+				maxNumNodes,
+				cullFraction
 			);
 			if (showProgress) {
 				tree.initProgress();
@@ -302,6 +318,26 @@ public class ConfAStarTree implements ConfSearch {
 		return new MPLPBuilder();
 	}
 		
+	/** instrumentation for bounded-memory (ie SMA*) search */
+	public static class BoundedStats {
+
+		/** number of times the node limit was reached */
+		public long numCulls = 0;
+
+		/** number of nodes forgotten to stay under the node limit */
+		public long numForgotten = 0;
+
+		/** number of forgotten nodes that had to be spawned again */
+		public long numRegenerated = 0;
+
+		@Override
+		public String toString() {
+			return String.format("culls: %d   forgotten: %d   regenerated: %d",
+				numCulls, numForgotten, numRegenerated
+			);
+		}
+	}
+
 	private static class ScoreContext {
 		public ConfIndex index;
 		public AStarScorer gscorer;
@@ -323,7 +359,7 @@ public class ConfAStarTree implements ConfSearch {
 	private TaskExecutor tasks;
 	private ObjectPool<ScoreContext> contexts;
 	
-	private ConfAStarTree(AStarOrder order, AStarScorer gscorer, AStarScorer hscorer, MathTools.Optimizer optimizer, RCs rcs, ConfAStarFactory factory, AStarPruner pruner, Long maxNumNodes) {
+	private ConfAStarTree(AStarOrder order, AStarScorer gscorer, AStarScorer hscorer, MathTools.Optimizer optimizer, RCs rcs, ConfAStarFactory factory, AStarPruner pruner, Long maxNumNodes, double cullFraction) {
 		this.order = order;
 		this.gscorer = gscorer;
 		this.hscorer = hscorer;
@@ -333,7 +369,7 @@ public class ConfAStarTree implements ConfSearch {
 		this.pruner = pruner;
 
 		if (maxNumNodes != null) {
-			this.impl = new SimplifiedBoundedImpl(maxNumNodes);
+			this.impl = new SimplifiedBoundedImpl(maxNumNodes, cullFraction);
 		} else {
 			this.impl = new UnboundedImpl();
 		}
@@ -385,6 +421,25 @@ public class ConfAStarTree implements ConfSearch {
 	public ScoredConf nextConf() {
 		return impl.nextConf();
 	}
+
+	/**
+	 * Returns the number of nodes currently held by the search,
+	 * which is a rough proxy for the memory used by this tree.
+	 */
+	public long getNumNodes() {
+		return impl.getNumNodes();
+	}
+
+	/**
+	 * Returns instrumentation for bounded-memory search,
+	 * or null if this tree uses unbounded memory.
+	 */
+	public BoundedStats getBoundedStats() {
+		if (impl instanceof SimplifiedBoundedImpl) {
+			return ((SimplifiedBoundedImpl)impl).stats;
+		}
+		return null;
+	}
 	
 	@Override
 	public List<ScoredConf> nextConfs(double thresholdEnergy) {
@@ -459,6 +514,7 @@ public class ConfAStarTree implements ConfSearch {
 	private interface AStarImpl {
 
 		ScoredConf nextConf();
+		long getNumNodes();
 	}
 
 	/**
@@ -474,6 +530,11 @@ public class ConfAStarTree implements ConfSearch {
 			this.queue = factory.makeQueue(rcs);
 		}
 
+		@Override
+		public long getNumNodes() {
+			return queue.size();
+		}
+
 		@Override
 		public ScoredConf nextConf() {
 
@@ -595,12 +656,14 @@ public class ConfAStarTree implements ConfSearch {
 	private class SimplifiedBoundedImpl implements AStarImpl {
 
 		private final long maxNumNodes;
+		private final long numNodesToCull;
 		private final ConfSMAStarQueue q;
+		private final BoundedStats stats = new BoundedStats();
 
 		private ConfSMAStarNode rootNode = null;
 		private long numNodes = 0;
 
-		SimplifiedBoundedImpl(long maxNumNodes) {
+		SimplifiedBoundedImpl(long maxNumNodes, double cullFraction) {
 
 			// check preconditions
 			if (maxNumNodes <= rcs.getNumPos()) {
@@ -614,6 +677,7 @@ public class ConfAStarTree implements ConfSearch {
 			}
 
 			this.maxNumNodes = maxNumNodes;
+			this.numNodesToCull = Math.max(1, (long)Math.floor(maxNumNodes*cullFraction));
 
 			// start the queue with the root node
 			q = new ConfSMAStarQueue();
@@ -624,6 +688,11 @@ public class ConfAStarTree implements ConfSearch {
 		// TODO: progress reporting?
 		// TODO: parallelism?
 
+		@Override
+		public long getNumNodes() {
+			return numNodes;
+		}
+
 		@Override
 		public ScoredConf nextConf() {
 
@@ -683,6 +752,9 @@ public class ConfAStarTree implements ConfSearch {
 				// choose the next RC
 				int index = node.getNextChildIndex(rcs.getNum(pos));
 				int rc = rcs.get(pos)[index];
+				if (node.getChildState(index) == ConfSMAStarNode.State.Forgotten) {
+					stats.numRegenerated++;
+				}
 
 				// score the child
 				ConfSMAStarNode child = node.spawnChild(pos, rc, index);
@@ -702,22 +774,34 @@ public class ConfAStarTree implements ConfSearch {
 					q.removeOrAssert(node);
 				}
 
-				// if we're over the limit, forget some nodes
+				// if we're over the limit, forget a batch of nodes
 				if (numNodes > maxNumNodes) {
+					stats.numCulls++;
 
-					// forget the worst node in the queue
-					ConfSMAStarNode highest = q.removeHighestShallowestLeaf();
+					long targetNumNodes = Math.max(numPos + 1, maxNumNodes - numNodesToCull);
+					while (numNodes > targetNumNodes) {
 
-					// tell the parent to forget this node if needed
-					if (highest.parent != null) {
+						// forget the worst node in the queue
+						ConfSMAStarNode highest = q.removeHighestShallowestLeaf();
+						if (highest == null) {
+							break;
+						}
 
+						// but never forget the root
+						if (highest.parent == null) {
+							q.add(highest);
+							break;
+						}
+
+						// tell the parent to forget this node
 						highest.parent.forgetChild(highest);
 
 						// add the parent back to the queue too if not already there
 						q.add(highest.parent);
-					}
 
-					numNodes--;
+						numNodes--;
+						stats.numForgotten++;
+					}
 				}
 
 				// add the child to the queue
@@ -2,6 +2,7 @@ package edu.duke.cs.osprey.astar.conf;
 
 
 import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.tools.Stopwatch;
 
 import java.lang.ref.SoftReference;
 import java.math.BigInteger;
@@ -16,20 +17,53 @@ import java.util.function.Supplier;
  * collected. The remaining instances are held by soft references and
  * will be garbage collected when running low on heap space.
  *
+ * Optionally, the protected instances can also be limited by the total
+ * number of A* nodes they hold, so a few very large trees can't pin
+ * the whole heap.
+ *
  * Collected trees will be re-instantiated and enumerated to their
  * last known position when accessed again.
  */
 public class ConfSearchCache {
 
+	public static class Stats {
+
+		/** number of accesses where the tree was still in memory */
+		public long numHits = 0;
+
+		/** number of times a collected tree had to be re-instantiated */
+		public long numRegenerations = 0;
+
+		/** number of times a tree lost its protection from garbage collection */
+		public long numEvictions = 0;
+
+		/** number of conformations re-enumerated to restore collected trees */
+		public long numConfsReplayed = 0;
+
+		/** time spent restoring collected trees */
+		public final Stopwatch regenerationStopwatch = new Stopwatch();
+
+		@Override
+		public String toString() {
+			return String.format("hits: %d   evictions: %d   regenerations: %d   confs replayed: %d   regeneration time: %s",
+				numHits, numEvictions, numRegenerations, numConfsReplayed, regenerationStopwatch.getTime(2)
+			);
+		}
+	}
+
 	public class Entry implements ConfSearch {
 
 		private final Supplier<ConfSearch> factory;
 
 		private long numConfs = 0;
 		private boolean isExhausted = false;
+		private boolean wasMade = false;
 		private ConfSearch strongRef = null;
 		private SoftReference<ConfSearch> softRef = null;
 
+		/** the number of nodes this entry contributes to the protected total */
+		private long numNodes = 0;
+
 		private Entry(Supplier<ConfSearch> factory) {
 			this.factory = factory;
 			getOrMakeTree();
@@ -42,12 +76,19 @@ public class ConfSearchCache {
 			if (softRef != null) {
 				ConfSearch tree = softRef.get();
 				if (tree != null) {
+					stats.numHits++;
 					markUsed(tree);
 					return tree;
 				}
 			}
 
 			// don't have a tree, make a new one
+			boolean isRegeneration = wasMade;
+			wasMade = true;
+			if (isRegeneration) {
+				stats.numRegenerations++;
+				stats.regenerationStopwatch.resume();
+			}
 			ConfSearch tree = factory.get();
 
 			// and put it back to where it was
@@ -55,6 +96,11 @@ public class ConfSearchCache {
 				tree.nextConf();
 			}
 
+			if (isRegeneration) {
+				stats.regenerationStopwatch.stop();
+				stats.numConfsReplayed += numConfs;
+			}
+
 			// recently-used entries are always protected from garbage collection
 			softRef = new SoftReference<>(tree);
 			markUsed(tree);
@@ -68,23 +114,43 @@ public class ConfSearchCache {
 			strongRef = tree;
 
 			// if capacity restrictions are turned on, manage recency and GC protections
-			if (minCapacity != null) {
+			if (isTracking()) {
 
 				recentEntries.remove(this);
 				recentEntries.add(this);
 
+				// update the memory accounting for this tree
+				protectedNumNodes -= numNodes;
+				numNodes = countNodes(tree);
+				protectedNumNodes += numNodes;
+
 				// if we're over capacity, expose the least recently used trees to garbage collection
-				if (recentEntries.size() > minCapacity) {
-					Iterator<Entry> iter = recentEntries.iterator();
+				// (but always keep protecting the tree we're using right now)
+				Iterator<Entry> iter = recentEntries.iterator();
+				while (isOverCapacity() && recentEntries.size() > 1) {
 
 					// get rid of the strong reference, so we only have the soft reference
-					iter.next().strongRef = null;
+					iter.next().unprotect();
 					iter.remove();
+					stats.numEvictions++;
 				}
 			}
 		}
 
+		private void unprotect() {
+			strongRef = null;
+			protectedNumNodes -= numNodes;
+			numNodes = 0;
+		}
+
+		/**
+		 * Drops this entry from the cache entirely.
+		 * Call this when the tree won't be needed again, so it doesn't count against the capacity.
+		 */
 		public void clearRefs() {
+			if (isTracking() && recentEntries.remove(this)) {
+				unprotect();
+			}
 			softRef = null;
 			strongRef = null;
 		}
@@ -107,7 +173,8 @@ public class ConfSearchCache {
 			}
 
 			// get the next conf
-			ScoredConf conf = getOrMakeTree().nextConf();
+			ConfSearch tree = getOrMakeTree();
+			ScoredConf conf = tree.nextConf();
 
 			// and keep track of which conf we're on
 			if (conf == null) {
@@ -118,6 +185,9 @@ public class ConfSearchCache {
 
 			} else {
 				numConfs++;
+
+				// the tree probably grew, so update the memory accounting
+				markUsed(tree);
 			}
 
 			return conf;
@@ -126,14 +196,54 @@ public class ConfSearchCache {
 
 
 	public final Integer minCapacity;
+	public final Long maxNumNodes;
+	public final Stats stats = new Stats();
 
 	private final LinkedHashSet<Entry> recentEntries = new LinkedHashSet<>();
+	private long protectedNumNodes = 0;
 
 	public ConfSearchCache(Integer minCapacity) {
+		this(minCapacity, null);
+	}
+
+	/**
+	 * @param minCapacity the number of recently-used trees to protect from garbage collection,
+	 *                    or null to protect all trees
+	 * @param maxNumNodes the maximum total number of A* nodes held by protected trees,
+	 *                    or null for no limit. The most recently-used tree is always protected.
+	 */
+	public ConfSearchCache(Integer minCapacity, Long maxNumNodes) {
 		this.minCapacity = minCapacity;
+		this.maxNumNodes = maxNumNodes;
 	}
 
 	public Entry make(Supplier<ConfSearch> factory) {
 		return new Entry(factory);
 	}
+
+	/** the number of trees currently protected from garbage collection */
+	public int getNumProtected() {
+		return recentEntries.size();
+	}
+
+	/** the total number of A* nodes held by trees that are protected from garbage collection */
+	public long getProtectedNumNodes() {
+		return protectedNumNodes;
+	}
+
+	private boolean isTracking() {
+		return minCapacity != null || maxNumNodes != null;
+	}
+
+	private boolean isOverCapacity() {
+		return (minCapacity != null && recentEntries.size() > minCapacity)
+			|| (maxNumNodes != null && protectedNumNodes > maxNumNodes);
+	}
+
+	private static long countNodes(ConfSearch tree) {
+		if (tree instanceof ConfAStarTree) {
+			return ((ConfAStarTree)tree).getNumNodes();
+		}
+		return 0;
+	}
 }
@@ -22,15 +22,32 @@ public class ConfSMAStarNode implements ConfAStarNode {
 		Finished,
 
 		/** not spawned now, might need to spawn again */
-		Forgotten
+		Forgotten;
+
+		// OPTIMIZATION: children track states with bytes instead of enum references
+		private static final State[] values = values();
+
+		final byte code = (byte)ordinal();
+
+		static State get(byte code) {
+			return values[code];
+		}
 	}
 
+	private static final byte Unspawned = State.Unspawned.code;
+	private static final byte Spawned = State.Spawned.code;
+	private static final byte Finished = State.Finished.code;
+	private static final byte Forgotten = State.Forgotten.code;
+
 	/* SMA* memory usage:
 
 		memory usage per node (according to VisualVM) is 160 bytes + 24 bytes per child
 		so 1 GiB of memory could fit ~5.8 M nodes with 1 child each,
 			or ~420 K nodes with 100 children each
 
+		child states are stored as bytes, and forgotten scores are only allocated
+		once a child is actually forgotten, so most nodes only need ~5 bytes per child
+
 		the SMA* queue uses roughly 250 bytes per node also
 		only a portion of the nodes are in the queue at any one time though
 	*/
@@ -46,8 +63,8 @@ public class ConfSMAStarNode implements ConfAStarNode {
 	private double fscore = Double.NaN;
 
 	private ConfSMAStarNode[] spawnedChildren = null;
-	private State[] childStates = null;
-	private double[] forgottenScores = null;
+	private byte[] childStates = null;
+	private double[] forgottenScores = null; // lazily allocated, null means all NaN
 
 
 	/** make the root node */
@@ -67,10 +84,30 @@ public class ConfSMAStarNode implements ConfAStarNode {
 	private void allocateChildren(int numChildren) {
 		spawnedChildren = new ConfSMAStarNode[numChildren];
 		Arrays.fill(spawnedChildren, null);
-		childStates = new State[numChildren];
-		Arrays.fill(childStates, State.Unspawned);
-		forgottenScores = new double[numChildren];
-		Arrays.fill(forgottenScores, Double.NaN);
+		childStates = new byte[numChildren];
+		Arrays.fill(childStates, Unspawned);
+	}
+
+	private void setForgottenScore(int index, double score) {
+		if (forgottenScores == null) {
+			if (Double.isNaN(score)) {
+				return;
+			}
+			forgottenScores = new double[childStates.length];
+			Arrays.fill(forgottenScores, Double.NaN);
+		}
+		forgottenScores[index] = score;
+	}
+
+	private double getForgottenScore(int index) {
+		if (forgottenScores == null) {
+			return Double.NaN;
+		}
+		return forgottenScores[index];
+	}
+
+	public State getChildState(int index) {
+		return State.get(childStates[index]);
 	}
 
 	@Override
@@ -147,7 +184,7 @@ public class ConfSMAStarNode implements ConfAStarNode {
 
 		// pick children we haven't spawned yet first
 		for (int i=0; i<childStates.length; i++) {
-			if (childStates[i] == State.Unspawned) {
+			if (childStates[i] == Unspawned) {
 				return i;
 			}
 		}
@@ -156,7 +193,7 @@ public class ConfSMAStarNode implements ConfAStarNode {
 		int bestIndex = -1;
 		double bestForgottenScore = Double.POSITIVE_INFINITY;
 		for (int i=0; i<childStates.length; i++) {
-			if (childStates[i] == State.Forgotten) {
+			if (childStates[i] == Forgotten) {
 				if (forgottenScores[i] < bestForgottenScore) {
 					bestForgottenScore = forgottenScores[i];
 					bestIndex = i;
@@ -180,16 +217,16 @@ public class ConfSMAStarNode implements ConfAStarNode {
 
 		ConfSMAStarNode child = new ConfSMAStarNode(this, index, depth + 1, pos, rc);
 		spawnedChildren[index] = child;
-		childStates[index] = State.Spawned;
-		forgottenScores[index] = Double.NaN;
+		childStates[index] = Spawned;
+		setForgottenScore(index, Double.NaN);
 
 		return child;
 	}
 
 	public void forgetChild(ConfSMAStarNode child) {
 		assert (spawnedChildren[child.index] == child);
-		childStates[child.index] = ConfSMAStarNode.State.Forgotten;
-		forgottenScores[child.index] = child.fscore;
+		childStates[child.index] = Forgotten;
+		setForgottenScore(child.index, child.fscore);
 		spawnedChildren[child.index] = null;
 	}
 
@@ -202,8 +239,10 @@ public class ConfSMAStarNode implements ConfAStarNode {
 
 		// flag this child as finished and update the fscores
 		child.fscore = Double.POSITIVE_INFINITY;
-		childStates[child.index] = State.Finished;
-		forgottenScores[child.index] = Double.POSITIVE_INFINITY;
+		// NOTE: finished children have infinite scores, so they never lower the backed-up score
+		// and we don't need to spend a forgotten score on them
+		childStates[child.index] = Finished;
+		setForgottenScore(child.index, Double.NaN);
 		backup(q);
 
 		// remove the child from the tree
@@ -219,8 +258,8 @@ public class ConfSMAStarNode implements ConfAStarNode {
 
 			// remove it from the tree too, if needed
 			if (node.parent != null) {
-				node.parent.childStates[node.index] = State.Finished;
-				node.parent.forgottenScores[node.index] = Double.POSITIVE_INFINITY;
+				node.parent.childStates[node.index] = Finished;
+				node.parent.setForgottenScore(node.index, Double.NaN);
 				node.parent.spawnedChildren[node.index] = null;
 			}
 			numNodesRemoved++;
@@ -246,9 +285,11 @@ public class ConfSMAStarNode implements ConfAStarNode {
 					newScore = Math.min(newScore, child.fscore);
 				}
 			}
-			for (double score : node.forgottenScores) {
-				if (!Double.isNaN(score)) {
-					newScore = Math.min(newScore, score);
+			if (node.forgottenScores != null) {
+				for (double score : node.forgottenScores) {
+					if (!Double.isNaN(score)) {
+						newScore = Math.min(newScore, score);
+					}
 				}
 			}
 
@@ -300,15 +341,15 @@ public class ConfSMAStarNode implements ConfAStarNode {
 				.min()
 				.orElse(Double.NaN),
 			childStates == null ? "(none)" : IntStream.range(0, childStates.length)
-				.mapToObj(i -> String.format("%d:%s:%.4f:%.4f", i, childStates[i], forgottenScores[i], spawnedChildren[i] == null ? Double.NaN : spawnedChildren[i].fscore))
+				.mapToObj(i -> String.format("%d:%s:%.4f:%.4f", i, getChildState(i), getForgottenScore(i), spawnedChildren[i] == null ? Double.NaN : spawnedChildren[i].fscore))
 				.collect(Collectors.toList())
 		);
 	}
 
 	/** ie, were all the children spawned at least once, so we've seen their fscores? */
 	private boolean haveAllChildScores() {
-		for (State state : childStates) {
-			if (state == State.Unspawned) {
+		for (byte state : childStates) {
+			if (state == Unspawned) {
 				return false;
 			}
 		}
@@ -317,8 +358,8 @@ public class ConfSMAStarNode implements ConfAStarNode {
 
 	/** ie, is it possible to spawn any children in the future? */
 	public boolean canSpawnChildren() {
-		for (State state : childStates) {
-			if (state == State.Unspawned || state == State.Forgotten) {
+		for (byte state : childStates) {
+			if (state == Unspawned || state == Forgotten) {
 				return true;
 			}
 		}
@@ -326,8 +367,8 @@ public class ConfSMAStarNode implements ConfAStarNode {
 	}
 
 	private boolean allChildrenFinished() {
-		for (State state : childStates) {
-			if (state != State.Finished) {
+		for (byte state : childStates) {
+			if (state != Finished) {
 				return false;
 			}
 		}
@@ -338,8 +379,8 @@ public class ConfSMAStarNode implements ConfAStarNode {
 		if (childStates == null) {
 			return false;
 		}
-		for (State state : childStates) {
-			if (state == State.Spawned) {
+		for (byte state : childStates) {
+			if (state == Spawned) {
 				return true;
 			}
 		}
@@ -44,6 +44,7 @@ import edu.duke.cs.osprey.dof.DOFBlock;
 import edu.duke.cs.osprey.dof.DegreeOfFreedom;
 import edu.duke.cs.osprey.dof.deeper.GenChi1Calc;
 import edu.duke.cs.osprey.dof.deeper.SidechainIdealizer;
+import edu.duke.cs.osprey.ematrix.epic.CompiledSeriesMap;
 import edu.duke.cs.osprey.ematrix.epic.SeriesFitter;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
@@ -79,6 +80,15 @@ public class BBFreeBlock implements Serializable, DOFBlock {
     DoubleMatrix1D freeDOFCenter;
     
     double[][] fullDOFPolys;//Polynomials represented in double[] format (see SeriesFitter)
+    transient CompiledSeriesMap compiledPolys = null;//fullDOFPolys compiled for fast evaluation
+    transient double[] polyScratch = null;
+    
+    transient double[] curFullDOFVals = null;//full DOF values last applied to the residues, if known
+    transient double[][] curResCoords = null;//coords arrays of the residues when we last applied curFullDOFVals
+    //Mutations replace a residue's template and coords array, and the new sidechain isn't idealized,
+    //so if any residue has a different coords array than this, we need a full update.
+    //Nothing else moves backbone atoms of residues in the block, and sidechain DOFs
+    //don't affect the idealization, so the coords arrays are all we need to check.
     
     
     PepPlaneLinModel[] pepPlanes;//linear models of BB atoms in peptide planes
@@ -410,6 +420,7 @@ public class BBFreeBlock implements Serializable, DOFBlock {
         copiedBlock.fullDOFCenter = fullDOFCenter;
         copiedBlock.freeDOFCenter = freeDOFCenter;
         copiedBlock.fullDOFPolys = fullDOFPolys;
+        copiedBlock.compiledPolys = compiledPolys;
         copiedBlock.pepPlanes = pepPlanes;
         copiedBlock.freeDOFMatrix = freeDOFMatrix;
         copiedBlock.jacDerivs = jacDerivs;
@@ -628,15 +639,70 @@ public class BBFreeBlock implements Serializable, DOFBlock {
     
     
     public void setDOFs(DoubleMatrix1D x){
+        setDOFs(x.toArray());
+    }
+    
+    
+    private CompiledSeriesMap getCompiledPolys(){
+        //compile the full DOF polynomials into a single map the first time we need them
+        //(the map is read-only, so copies of this block can share it)
+        if(compiledPolys==null)
+            compiledPolys = new CompiledSeriesMap(fullDOFPolys, freeDOFVoxel[0].length, true, polyOrder);
+        return compiledPolys;
+    }
+    
+    
+    public void calcFullDOFJacobian(double[] x, double[][] jac){
+        //Jacobian of the full DOFs with respect to the free DOFs at x (relative to center, as in setDOFs)
+        //jac[fullDOF][freeDOF]
+        CompiledSeriesMap polys = getCompiledPolys();
+        polys.jacobian(x, jac, getPolyScratch(polys));
+    }
+    
+    
+    private double[] getPolyScratch(CompiledSeriesMap polys){
+        if(polyScratch==null)
+            polyScratch = new double[polys.getScratchSize()];
+        return polyScratch;
+    }
+    
+    
+    public void setDOFs(double[] x){
         //x: free DOFs (relative to center, so can eval polys directly)
         
         int numRes = residues.size();
         
-        int numDOFsFull = fullDOFPolys.length;
-        double fullDOFVals[] = new double[fullDOFPolys.length];
+        CompiledSeriesMap polys = getCompiledPolys();
+        double fullDOFVals[] = new double[polys.numOutputs];
+        polys.evaluate(x, fullDOFVals, getPolyScratch(polys));
+        
+        //figure out which N's and CA's actually move, so we only update the peptide planes
+        //and sidechains that depend on them (everything moves the first time, or if residues were changed)
+        if(curFullDOFVals!=null && residuesChangedOutsideBlock())
+            curFullDOFVals = null;
+        
+        boolean resMoved[] = new boolean[numRes];
+        for(int resNum=1; resNum<numRes; resNum++){
+            int numResDOFs = (resNum<numRes-1) ? 6 : 3;//just the N moves for the last residue
+            for(int i=0; i<numResDOFs; i++){
+                int fullDOF = 6*(resNum-1)+i;
+                if(curFullDOFVals==null || fullDOFVals[fullDOF]!=curFullDOFVals[fullDOF]){
+                    resMoved[resNum] = true;
+                    break;
+                }
+            }
+        }
+        
+        boolean pepPlaneMoved[] = new boolean[numRes-1];
+        for(int pepPlaneNum=0; pepPlaneNum<numRes-1; pepPlaneNum++)
+            pepPlaneMoved[pepPlaneNum] = resMoved[pepPlaneNum] || resMoved[pepPlaneNum+1];
         
-        for(int fullDOF=0; fullDOF<numDOFsFull; fullDOF++)
-            fullDOFVals[fullDOF] = SeriesFitter.evalSeries(fullDOFPolys[fullDOF], x, x.size(), true, polyOrder);
+        //a residue's sidechain depends on its N and CA, and the C and H from its peptide planes
+        boolean resNeedsUpdate[] = new boolean[numRes];
+        for(int resNum=0; resNum<numRes; resNum++){
+            resNeedsUpdate[resNum] = (resNum>0 && pepPlaneMoved[resNum-1])
+                    || (resNum<numRes-1 && pepPlaneMoved[resNum]);
+        }
                     
         //record current information needed for placement of sidechain
         double genChi1[] = new double[numRes];
@@ -647,6 +713,9 @@ public class BBFreeBlock implements Serializable, DOFBlock {
         //start with the CA's and N's
         for(int resNum=0; resNum<numRes; resNum++){
             
+            if(!resNeedsUpdate[resNum])
+                continue;
+            
             Residue curRes = residues.get(resNum);
             
             //the sidechain will be translated based on CA motion
@@ -659,7 +728,7 @@ public class BBFreeBlock implements Serializable, DOFBlock {
             genChi1[resNum] = GenChi1Calc.getGenChi1(curRes);
             
             //OK now place the backbone...
-            if(resNum>0){//N or CA moves
+            if(resMoved[resNum]){//N or CA moves
                 int CAIndex = curRes.getAtomIndexByName("CA");
                 int NIndex = curRes.getAtomIndexByName("N");
 
@@ -674,6 +743,10 @@ public class BBFreeBlock implements Serializable, DOFBlock {
         
         //OK now that the CA's and N's are in place, we can finish each peptide plane
         for(int pepPlaneNum=0; pepPlaneNum<numRes-1; pepPlaneNum++){
+            
+            if(!pepPlaneMoved[pepPlaneNum])
+                continue;
+            
             //set each atom based on CA and N (linear relationship)
             Residue res1 = residues.get(pepPlaneNum);//residue at start of peptide plane...
             Residue res2 = residues.get(pepPlaneNum+1);//...and at end
@@ -691,6 +764,10 @@ public class BBFreeBlock implements Serializable, DOFBlock {
         
         //OK and now that the backbone atoms are in place, we can handle the sidechains and HA's
         for(int resNum=0; resNum<numRes; resNum++){
+            
+            if(!resNeedsUpdate[resNum])
+                continue;
+            
             //first translate into place...
             RigidBodyMotion motion = new RigidBodyMotion(new double[3], RotationMatrix.identity(), SCTranslations[resNum]);
             SidechainIdealizer.moveSidechain(residues.get(resNum), motion);
@@ -700,7 +777,22 @@ public class BBFreeBlock implements Serializable, DOFBlock {
             GenChi1Calc.setGenChi1(residues.get(resNum), genChi1[resNum]);
         }
         
-        curFreeDOFVals = x.toArray();
+        curFreeDOFVals = x.clone();
+        curFullDOFVals = fullDOFVals;
+        
+        curResCoords = new double[numRes][];
+        for(int resNum=0; resNum<numRes; resNum++)
+            curResCoords[resNum] = residues.get(resNum).coords;
+    }
+    
+    
+    private boolean residuesChangedOutsideBlock(){
+        //has any residue been mutated (or otherwise given new coords) since we last set the DOFs?
+        for(int resNum=0; resNum<residues.size(); resNum++){
+            if(residues.get(resNum).coords != curResCoords[resNum])
+                return true;
+        }
+        return false;
     }
     
     
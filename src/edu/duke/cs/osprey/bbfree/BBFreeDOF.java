@@ -32,7 +32,6 @@
 
 package edu.duke.cs.osprey.bbfree;
 
-import cern.colt.matrix.DoubleFactory1D;
 import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.dof.DOFBlock;
 import edu.duke.cs.osprey.dof.DegreeOfFreedom;
@@ -59,7 +58,7 @@ public class BBFreeDOF extends DegreeOfFreedom {
     public void apply(double paramVal) {
         double[] newDOFVals = block.curFreeDOFVals.clone();
         newDOFVals[indexInBlock] = paramVal;
-        block.setDOFs(DoubleFactory1D.dense.make(newDOFVals));
+        block.setDOFs(newDOFVals);
     }
     
     
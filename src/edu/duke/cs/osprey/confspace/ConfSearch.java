@@ -38,6 +38,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.externalMemory.MappedFIFO;
 import edu.duke.cs.osprey.externalMemory.Queue;
 import edu.duke.cs.osprey.externalMemory.ScoredConfFIFOSerializer;
 import org.apache.commons.collections4.queue.CircularFifoQueue;
@@ -397,9 +398,10 @@ public interface ConfSearch {
 	 * Lets exactly two consumers read confs from the stream, where one consumer
 	 * always reads before the other.
 	 *
-	 * Supports external memory for the conformation buffer
+	 * Supports external memory for the conformation buffer,
+	 * so close the splitter when done with it, in case the second reader didn't read all the confs
 	 */
-	public static class Splitter {
+	public static class Splitter implements AutoCloseable {
 
 		public static class OutOfOrderException extends RuntimeException {
 			public OutOfOrderException() {
@@ -411,7 +413,7 @@ public interface ConfSearch {
 		public final ConfSearch first;
 		public final ConfSearch second;
 
-		private Queue.FIFO<ScoredConf> buf;
+		private final Queue.FIFO<ScoredConf> buf;
 
 		public Splitter(ConfSearch confs) {
 			this(confs, false, null);
@@ -422,7 +424,9 @@ public interface ConfSearch {
 			this.confs = confs;
 
 			if (useExternalMemory) {
-				buf = Queue.ExternalFIFOFactory.of(new ScoredConfFIFOSerializer(rcs));
+				// spill to a memory-mapped file if the second reader falls too far behind
+				ScoredConfFIFOSerializer serializer = new ScoredConfFIFOSerializer(rcs);
+				buf = new MappedFIFO<>(serializer, serializer.numEntryBytes);
 			} else {
 				buf = Queue.FIFOFactory.of();
 			}
@@ -464,8 +468,13 @@ public interface ConfSearch {
 					// read from the buffer
 					ScoredConf conf = buf.poll();
 
-					if (conf == null && !exhausted.get()) {
-						throw new OutOfOrderException();
+					if (conf == null) {
+						if (!exhausted.get()) {
+							throw new OutOfOrderException();
+						}
+
+						// both readers are done, cleanup any spilled confs
+						Splitter.this.close();
 					}
 
 					return conf;
@@ -477,5 +486,13 @@ public interface ConfSearch {
 				}
 			};
 		}
+
+		/** cleans up any spilled confs, even if the second reader didn't read them */
+		@Override
+		public void close() {
+			if (buf instanceof MappedFIFO) {
+				((MappedFIFO<ScoredConf>)buf).close();
+			}
+		}
 	}
 }
@@ -35,14 +35,22 @@ package edu.duke.cs.osprey.confspace;
 
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 
 /**
  * Provies efficient mapping between tuples and tuple indices.
  * Allows modification, but only appending tuples to the list.
+ *
+ * Singles and pairs are also indexed in dense primitive tables, and higher-order tuples
+ * are indexed by their two lowest positions, so the conformation lookups don't need
+ * to allocate or box anything.
  */
 public class TuplesIndex implements Iterable<RCTuple> {
 
+	/** the primitive index for tuples that aren't in the index */
+	public static final int Missing = -1;
+
 	public static class NoSuchTupleException extends RuntimeException {
 
 		public NoSuchTupleException(RCTuple tuple, int[] conf) {
@@ -55,6 +63,17 @@ public class TuplesIndex implements Iterable<RCTuple> {
 	private final List<RCTuple> tuples;
 	private final TupleMatrixGeneric<Integer> index;
 
+	// dense primitive indices for singles and pairs
+	private final int[] numRCsByPos;
+	private final int[] singleOffsets;
+	private final int[] singleIndices;
+	private final int[] pairOffsets;
+	private final int[] pairIndices;
+
+	// higher-order tuples, by pair of the two lowest positions
+	// each entry is [tuple index, pos3, rc3, pos4, rc4, ...]
+	private int[][][] higherOrderIndices = null;
+
 	public TuplesIndex(SimpleConfSpace confSpace, RCTuple[] tuples) {
 		this(confSpace);
 		for (RCTuple tuple : tuples) {
@@ -69,6 +88,93 @@ public class TuplesIndex implements Iterable<RCTuple> {
 		tuples = new ArrayList<>();
 		index = new TupleMatrixGeneric<>(confSpace);
 		index.fill((Integer)null);
+
+		// allocate the dense indices
+		int numPos = confSpace.positions.size();
+		numRCsByPos = confSpace.getNumResConfsByPos();
+		singleOffsets = new int[numPos];
+		int numSingles = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			singleOffsets[pos1] = numSingles;
+			numSingles += numRCsByPos[pos1];
+		}
+		singleIndices = new int[numSingles];
+		Arrays.fill(singleIndices, Missing);
+
+		pairOffsets = new int[numPos*(numPos - 1)/2];
+		int numPairs = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				pairOffsets[pairPosIndex(pos1, pos2)] = numPairs;
+				numPairs += numRCsByPos[pos1]*numRCsByPos[pos2];
+			}
+		}
+		pairIndices = new int[numPairs];
+		Arrays.fill(pairIndices, Missing);
+	}
+
+	private static int pairPosIndex(int pos1, int pos2) {
+		// assumes pos1 > pos2
+		return pos1*(pos1 - 1)/2 + pos2;
+	}
+
+	private int singleIndex(int pos1, int rc1) {
+		return singleOffsets[pos1] + rc1;
+	}
+
+	private int pairIndex(int pos1, int rc1, int pos2, int rc2) {
+		if (pos1 < pos2) {
+			return pairOffsets[pairPosIndex(pos2, pos1)] + rc2*numRCsByPos[pos1] + rc1;
+		}
+		return pairOffsets[pairPosIndex(pos1, pos2)] + rc1*numRCsByPos[pos2] + rc2;
+	}
+
+	private void indexPrimitive(RCTuple tuple, int t) {
+		switch (tuple.size()) {
+
+			case 1:
+				singleIndices[singleIndex(tuple.pos.get(0), tuple.RCs.get(0))] = t;
+			break;
+
+			case 2:
+				pairIndices[pairIndex(tuple.pos.get(0), tuple.RCs.get(0), tuple.pos.get(1), tuple.RCs.get(1))] = t;
+			break;
+
+			default: {
+
+				if (higherOrderIndices == null) {
+					higherOrderIndices = new int[pairIndices.length][][];
+				}
+
+				// make the entry: [t, pos3, rc3, pos4, rc4, ...]
+				int[] entry = new int[1 + (tuple.size() - 2)*2];
+				entry[0] = t;
+				for (int i=2; i<tuple.size(); i++) {
+					entry[1 + (i - 2)*2] = tuple.pos.get(i);
+					entry[2 + (i - 2)*2] = tuple.RCs.get(i);
+				}
+
+				// append it to the list for the lowest pair
+				int i = pairIndex(tuple.pos.get(0), tuple.RCs.get(0), tuple.pos.get(1), tuple.RCs.get(1));
+				int[][] entries = higherOrderIndices[i];
+				if (entries == null) {
+					entries = new int[][] { entry };
+				} else {
+					entries = Arrays.copyOf(entries, entries.length + 1);
+					entries[entries.length - 1] = entry;
+				}
+				higherOrderIndices[i] = entries;
+			}
+		}
+	}
+
+	private static boolean isEntryIn(int[] entry, int[] conf) {
+		for (int i=1; i<entry.length; i+=2) {
+			if (conf[entry[i]] != entry[i + 1]) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public int appendTuple(RCTuple tuple) {
@@ -80,6 +186,7 @@ public class TuplesIndex implements Iterable<RCTuple> {
 		int i = tuples.size();
 		tuples.add(tuple);
 		index.setTuple(tuple, i);
+		indexPrimitive(tuple, i);
 		return i;
 	}
 
@@ -111,6 +218,48 @@ public class TuplesIndex implements Iterable<RCTuple> {
 		return tuples.size();
 	}
 
+	/** returns the index of the tuple, or Missing if the tuple isn't indexed */
+	public int findIndex(int pos1, int rc1) {
+		return singleIndices[singleIndex(pos1, rc1)];
+	}
+
+	/** returns the index of the tuple, or Missing if the tuple isn't indexed */
+	public int findIndex(int pos1, int rc1, int pos2, int rc2) {
+		return pairIndices[pairIndex(pos1, rc1, pos2, rc2)];
+	}
+
+	/** returns the index of the tuple, or Missing if the tuple isn't indexed */
+	public int findIndex(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		if (higherOrderIndices == null) {
+			return Missing;
+		}
+
+		// sort the positions, without allocating anything
+		if (pos1 > pos2) {
+			int p = pos1; pos1 = pos2; pos2 = p;
+			int r = rc1; rc1 = rc2; rc2 = r;
+		}
+		if (pos2 > pos3) {
+			int p = pos2; pos2 = pos3; pos3 = p;
+			int r = rc2; rc2 = rc3; rc3 = r;
+		}
+		if (pos1 > pos2) {
+			int p = pos1; pos1 = pos2; pos2 = p;
+			int r = rc1; rc1 = rc2; rc2 = r;
+		}
+
+		int[][] entries = higherOrderIndices[pairIndex(pos1, rc1, pos2, rc2)];
+		if (entries != null) {
+			for (int[] entry : entries) {
+				if (entry.length == 3 && entry[1] == pos3 && entry[2] == rc3) {
+					return entry[0];
+				}
+			}
+		}
+		return Missing;
+	}
+
 	public Integer getIndex(int pos1, int rc1) {
 		return index.getOneBody(pos1, rc1);
 	}
@@ -120,8 +269,8 @@ public class TuplesIndex implements Iterable<RCTuple> {
 	}
 
 	public Integer getIndex(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		// TODO: is there a more efficient way to do this?
-		return getIndex(new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3).sorted());
+		int t = findIndex(pos1, rc1, pos2, rc2, pos3, rc3);
+		return t == Missing ? null : t;
 	}
 
 	public Integer getIndex(RCTuple tuple) {
@@ -129,16 +278,15 @@ public class TuplesIndex implements Iterable<RCTuple> {
 	}
 
 	public boolean contains(int pos1, int rc1) {
-		return getIndex(pos1, rc1) != null;
+		return findIndex(pos1, rc1) != Missing;
 	}
 
 	public boolean contains(int pos1, int rc1, int pos2, int rc2) {
-		return getIndex(pos1, rc1, pos2, rc2) != null;
+		return findIndex(pos1, rc1, pos2, rc2) != Missing;
 	}
 
 	public boolean contains(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		// TODO: is there a more efficient way to do this?
-		return getIndex(new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3).sorted()) != null;
+		return findIndex(pos1, rc1, pos2, rc2, pos3, rc3) != Missing;
 	}
 
 	public boolean contains(RCTuple tuple) {
@@ -171,11 +319,16 @@ public class TuplesIndex implements Iterable<RCTuple> {
 	}
 
 	public void forEachIn(int[] conf, boolean throwIfMissingSingle, boolean throwIfMissingPair, Consumer<Integer> callback) {
+		forEachIndexIn(conf, throwIfMissingSingle, throwIfMissingPair, (t) -> callback.accept(t));
+	}
+
+	/** like forEachIn(), but without boxing the tuple indices */
+	public void forEachIndexIn(int[] conf, boolean throwIfMissingSingle, boolean throwIfMissingPair, IntConsumer callback) {
 
 		// look for pairs first
 		// complain loudly if the conf has pair tuples that aren't in our list
 		// pair tuples are supposed to be completely covered
-		int numPos = confSpace.positions.size();
+		int numPos = numRCsByPos.length;
 		for (int pos1=0; pos1<numPos; pos1++) {
 
 			int rc1 = conf[pos1];
@@ -183,8 +336,8 @@ public class TuplesIndex implements Iterable<RCTuple> {
 				continue;
 			}
 
-			Integer t = index.getOneBody(pos1, rc1);
-			if (t != null) {
+			int t = findIndex(pos1, rc1);
+			if (t != Missing) {
 				callback.accept(t);
 			} else if (throwIfMissingSingle) {
 				throw new TuplesIndex.NoSuchTupleException(new RCTuple(pos1, rc1), conf);
@@ -197,8 +350,8 @@ public class TuplesIndex implements Iterable<RCTuple> {
 					continue;
 				}
 
-				t = index.getPairwise(pos1, rc1, pos2, rc2);
-				if (t != null) {
+				t = findIndex(pos1, rc1, pos2, rc2);
+				if (t != Missing) {
 					callback.accept(t);
 				} else if (throwIfMissingPair) {
 					throw new TuplesIndex.NoSuchTupleException(new RCTuple(pos1, rc1, pos2, rc2), conf);
@@ -207,6 +360,101 @@ public class TuplesIndex implements Iterable<RCTuple> {
 		}
 
 		// look for higher order tuples next
-		index.forEachHigherOrderTupleIn(conf, (tuple, index) -> callback.accept(index));
+		if (higherOrderIndices != null) {
+			for (int pos1=1; pos1<numPos; pos1++) {
+
+				int rc1 = conf[pos1];
+				if (rc1 == Conf.Unassigned) {
+					continue;
+				}
+
+				for (int pos2=0; pos2<pos1; pos2++) {
+
+					int rc2 = conf[pos2];
+					if (rc2 == Conf.Unassigned) {
+						continue;
+					}
+
+					int[][] entries = higherOrderIndices[pairIndex(pos1, rc1, pos2, rc2)];
+					if (entries != null) {
+						for (int[] entry : entries) {
+							if (isEntryIn(entry, conf)) {
+								callback.accept(entry[0]);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sums the values of all the tuples in the conformation, where the values are indexed by tuple index.
+	 * Works like forEachIndexIn(), but without the callback overhead.
+	 */
+	public double sum(int[] conf, double[] values, boolean throwIfMissingSingle, boolean throwIfMissingPair) {
+
+		double sum = 0.0;
+
+		int numPos = numRCsByPos.length;
+		for (int pos1=0; pos1<numPos; pos1++) {
+
+			int rc1 = conf[pos1];
+			if (rc1 == Conf.Unassigned) {
+				continue;
+			}
+
+			int t = findIndex(pos1, rc1);
+			if (t != Missing) {
+				sum += values[t];
+			} else if (throwIfMissingSingle) {
+				throw new TuplesIndex.NoSuchTupleException(new RCTuple(pos1, rc1), conf);
+			}
+
+			for (int pos2=0; pos2<pos1; pos2++) {
+
+				int rc2 = conf[pos2];
+				if (rc2 == Conf.Unassigned) {
+					continue;
+				}
+
+				t = findIndex(pos1, rc1, pos2, rc2);
+				if (t != Missing) {
+					sum += values[t];
+				} else if (throwIfMissingPair) {
+					throw new TuplesIndex.NoSuchTupleException(new RCTuple(pos1, rc1, pos2, rc2), conf);
+				}
+			}
+		}
+
+		// then higher order tuples, in the same order as forEachIndexIn()
+		if (higherOrderIndices != null) {
+			for (int pos1=1; pos1<numPos; pos1++) {
+
+				int rc1 = conf[pos1];
+				if (rc1 == Conf.Unassigned) {
+					continue;
+				}
+
+				for (int pos2=0; pos2<pos1; pos2++) {
+
+					int rc2 = conf[pos2];
+					if (rc2 == Conf.Unassigned) {
+						continue;
+					}
+
+					int[][] entries = higherOrderIndices[pairIndex(pos1, rc1, pos2, rc2)];
+					if (entries != null) {
+						for (int[] entry : entries) {
+							if (isEntryIn(entry, conf)) {
+								sum += values[entry[0]];
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return sum;
 	}
 }
@@ -32,10 +32,12 @@
 
 package edu.duke.cs.osprey.dof;
 
+import java.util.List;
+
+import edu.duke.cs.osprey.restypes.ResidueTemplate;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.tools.Protractor;
-import edu.duke.cs.osprey.tools.RigidBodyMotion;
 
 /**
  *
@@ -54,6 +56,21 @@ public class FreeDihedral extends DegreeOfFreedom {
     
     // temp space
     double[][] dihedralCoords;
+    double[] measuredSinCos = new double[2];
+    
+    // cached rotation kernel for the current residue template
+    private transient Residue kernelRes = null;
+    private transient ResidueTemplate kernelTemplate = null;
+    private transient double[] kernelCoords = null;
+    private transient int[] kernelDefiningAtoms = null;
+    private transient int[] kernelRotatedAtoms = null;
+    
+    // optional incremental rotations
+    private int incrementalResetInterval = 0;
+    private transient boolean hasLastSinCos = false;
+    private transient double lastSin;
+    private transient double lastCos;
+    private transient int numIncrementalApplies = 0;
 
     public FreeDihedral(Residue res, int dihedralNum) {
     	
@@ -109,34 +126,141 @@ public class FreeDihedral extends DegreeOfFreedom {
         return Protractor.measureDihedral(dihedralCoords);
     }
     
+    /**
+     * If > 0, apply() rotates relative to the last applied angle instead of re-measuring the dihedral,
+     * and only re-measures it exactly once every this many applies, to bound numerical drift.
+     * This is only safe if nothing else changes this dihedral between applies, so it's off by default.
+     */
+    public void setIncrementalResetInterval(int val) {
+        incrementalResetInterval = val;
+        hasLastSinCos = false;
+    }
+    
+    public int getIncrementalResetInterval() {
+        return incrementalResetInterval;
+    }
+    
+    private void updateKernel() {
+        
+        // the kernel only depends on the residue template, so rebuild only when it changes
+        // (e.g., after a mutation, or when we're moved to another molecule)
+        if (kernelRes == res && kernelTemplate == res.template && kernelCoords == res.coords) {
+            return;
+        }
+        
+        checkValid();
+        
+        int[] dihAtomIndices = res.template.getDihedralDefiningAtoms(dihedralNum);
+        kernelDefiningAtoms = dihAtomIndices.clone();
+        
+        List<Integer> rotatedAtoms = res.template.getDihedralRotatedAtoms(dihedralNum);
+        kernelRotatedAtoms = new int[rotatedAtoms.size()];
+        for (int i=0; i<rotatedAtoms.size(); i++) {
+            kernelRotatedAtoms[i] = rotatedAtoms.get(i);
+        }
+        
+        kernelRes = res;
+        kernelTemplate = res.template;
+        kernelCoords = res.coords;
+        hasLastSinCos = false;
+    }
+    
     @Override
     public void apply(double angleDegrees) {
         
+        updateKernel();
+        
+        boolean isIncremental = incrementalResetInterval > 0 && hasLastSinCos && numIncrementalApplies < incrementalResetInterval;
+        
+        // nothing to do if we're already there
+        if (isIncremental && angleDegrees == curVal) {
+            return;
+        }
+        
         // compute the target dihedral
         double angleRadians = Math.toRadians(angleDegrees);
         double sin = Math.sin(angleRadians);
         double cos = Math.cos(angleRadians);
         
-        // measure the current dihedral
+        // get the current dihedral
         // NOTE: measuring a dihedral requires evaluating an inverse cosine, which is slow
         // let's work with sines and cosines of dihedrals directly
-        updateDihedralCoords();
-        double measuredSinCos[] = Protractor.measureDihedralSinCos(dihedralCoords);
+        double currentSin;
+        double currentCos;
+        if (isIncremental) {
+            currentSin = lastSin;
+            currentCos = lastCos;
+            numIncrementalApplies++;
+        } else {
+            int[] a = kernelDefiningAtoms;
+            Protractor.measureDihedralSinCos(res.coords, a[0], a[1], a[2], a[3], measuredSinCos);
+            currentSin = measuredSinCos[0];
+            currentCos = measuredSinCos[1];
+            numIncrementalApplies = 0;
+        }
         
-        // calc the dihedral rotation as a rigid body transformation relative to the current pose
-        double dsin = sin*measuredSinCos[1] - cos*measuredSinCos[0];
-        double dcos = cos*measuredSinCos[1] + sin*measuredSinCos[0];
-        RigidBodyMotion dihRotation = new DihedralRotation(dihedralCoords[1], dihedralCoords[2], dsin, dcos);
+        // calc the dihedral rotation relative to the current pose
+        double dsin = sin*currentCos - cos*currentSin;
+        double dcos = cos*currentCos + sin*currentSin;
+        rotate(dsin, dcos);
         
-        // rotate all the atoms that are moved by the dihedrals (i.e., everything beyond the third atom)
-        for(int index : res.template.getDihedralRotatedAtoms(dihedralNum)) {
-            dihRotation.transform(res.coords, index);
-        }
+        lastSin = sin;
+        lastCos = cos;
+        hasLastSinCos = true;
         
         // store the orignal (unnormalized) value
         curVal = angleDegrees;
     }
     
+    private void rotate(double sin, double cos) {
+        
+        // rotate about the bond from the second to the third atom, centered at the third atom
+        // (same math as DihedralRotation, but without allocating anything)
+        double[] coords = res.coords;
+        int i2 = kernelDefiningAtoms[1]*3;
+        int i3 = kernelDefiningAtoms[2]*3;
+        double cx = coords[i3];
+        double cy = coords[i3 + 1];
+        double cz = coords[i3 + 2];
+        double fx = cx - coords[i2];
+        double fy = cy - coords[i2 + 1];
+        double fz = cz - coords[i2 + 2];
+        
+        double len = Math.sqrt(fx*fx + fy*fy + fz*fz);
+        double ux = fx/len;
+        double uy = fy/len;
+        double uz = fz/len;
+        
+        double omcos = 1 - cos;
+        double uxyomcos = ux*uy*omcos;
+        double uxzomcos = ux*uz*omcos;
+        double uyzomcos = uy*uz*omcos;
+        double uxsin = ux*sin;
+        double uysin = uy*sin;
+        double uzsin = uz*sin;
+        
+        double m00 = cos + ux*ux*omcos;
+        double m01 = uxyomcos - uzsin;
+        double m02 = uxzomcos + uysin;
+        double m10 = uxyomcos + uzsin;
+        double m11 = cos + uy*uy*omcos;
+        double m12 = uyzomcos - uxsin;
+        double m20 = uxzomcos - uysin;
+        double m21 = uyzomcos + uxsin;
+        double m22 = cos + uz*uz*omcos;
+        
+        // rotate all the atoms that are moved by the dihedrals (i.e., everything beyond the third atom)
+        for (int index : kernelRotatedAtoms) {
+            int i = index*3;
+            double x = coords[i] - cx;
+            double y = coords[i + 1] - cy;
+            double z = coords[i + 2] - cz;
+            coords[i] = m00*x + m01*y + m02*z + cx;
+            coords[i + 1] = m10*x + m11*y + m12*z + cy;
+            coords[i + 2] = m20*x + m21*y + m22*z + cz;
+        }
+    }
+    
     @Override
     public Residue getResidue() {
         return res;
@@ -148,7 +272,9 @@ public class FreeDihedral extends DegreeOfFreedom {
     
     @Override
     public DegreeOfFreedom copy() {
-        return new FreeDihedral(res, dihedralNum);
+        FreeDihedral copy = new FreeDihedral(res, dihedralNum);
+        copy.incrementalResetInterval = incrementalResetInterval;
+        return copy;
     }
     
     @Override
@@ -156,6 +282,7 @@ public class FreeDihedral extends DegreeOfFreedom {
         
         // match our residue to the one in the other molecule
         res = val.getResByPDBResNumber(res.getPDBResNumber());
+        hasLastSinCos = false;
     }
     
     @Override
@@ -49,6 +49,11 @@ import java.util.ArrayList;
 public class Backrub extends Perturbation {
     
     final static double thetaSmallScale = 0.7f; //the scaling factor for the rotation angles for the small rotations
+    
+    //atoms whose starting coords determine the motion
+    private static final String[][] motionAtomNames = { {"CA","O"}, {"CA","O"}, {"CA"} };
+    
+    transient MotionCache<RigidBodyMotion[]> motionCache = null;
 
     
     public Backrub(ArrayList<Residue> resDirectlyAffected) {
@@ -62,7 +67,16 @@ public class Backrub extends Perturbation {
         //Use an arbitrary param (primary backrub angle in degrees)
         //Don't store rotation matrices or translations
 
-        RigidBodyMotion[] rotations = calcTransRot(paramVal);
+        double[] key = MotionCache.makeKey(resDirectlyAffected, motionAtomNames, paramVal, true);
+        if(motionCache==null)
+            motionCache = new MotionCache<>(MotionCache.DefaultCapacity);
+        
+        RigidBodyMotion[] rotations = motionCache.get(key);
+        if(rotations==null){
+            rotations = calcTransRot(paramVal);
+            motionCache.put(key, rotations);
+        }
+        
         applyBackrubLikeMotion(rotations);
         return true;//we can always do a backrub
     }
@@ -35,12 +35,10 @@ package edu.duke.cs.osprey.dof.deeper.perts;
 import edu.duke.cs.osprey.structure.ConfProblem;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
-import edu.duke.cs.osprey.tools.ObjectIO;
 import edu.duke.cs.osprey.tools.RigidBodyMotion;
 import edu.duke.cs.osprey.tools.RotationMatrix;
 import edu.duke.cs.osprey.tools.VectorAlgebra;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  *
@@ -52,8 +50,13 @@ import java.util.HashMap;
  */
 public class LoopClosureAdjustment extends Perturbation {
     
-    HashMap<String,RigidBodyMotion[][]> solnCache = new HashMap<>();
+    transient MotionCache<RigidBodyMotion[][]> solnCache = null;
     //cache loop closure solutions for different starting-coord values
+    //(bounded, since predecessor perturbations can give us lots of different starting coords)
+    
+    private static final String[][] closureAtomNames = {
+        {"N","CA","C"}, {"N","CA","C"}, {"N","CA","C"}
+    };
     
     ArrayList<ConfProblem> problems = new ArrayList<>();
     //if the LCA is currently in an invalid state (solution num >= number of solutions),
@@ -98,14 +101,19 @@ public class LoopClosureAdjustment extends Perturbation {
         //We'll cache these to avoid full tripeptide calculation every time...
         //likely in many cases, the same set of motions will be available
         
-        String startCoordHash = hashStartingCoords();//String made from coords of all BB atoms used to calc TC
+        double[] startCoords = MotionCache.makeKey(resDirectlyAffected, closureAtomNames, 0, false);
+        //coords of all BB atoms used to calc TC
+        
+        if(solnCache==null)
+            solnCache = new MotionCache<>(MotionCache.DefaultCapacity);
         
-        if(!solnCache.containsKey(startCoordHash)){
-            RigidBodyMotion[][] solns = calcSolns();
-            solnCache.put(startCoordHash, solns);
+        RigidBodyMotion[][] solns = solnCache.get(startCoords);
+        if(solns==null){
+            solns = calcSolns();
+            solnCache.put(startCoords, solns);
         }
         
-        return solnCache.get(startCoordHash);
+        return solns;
     }
     
     
@@ -204,23 +212,6 @@ public class LoopClosureAdjustment extends Perturbation {
     
     
     
-    private String hashStartingCoords(){
-        //Compute a string from the backbone starting coordinates
-        //that we need to compute loops closure solutions
-        
-        String ans = "";
-        for(int resNum=0; resNum<3; resNum++){
-            for(String atomName : new String[] {"N","CA","C"}){
-                double coords[] = resDirectlyAffected.get(resNum).getCoordsByAtomName(atomName);
-                for(int dim=0; dim<3; dim++)
-                    ans += "|" + String.valueOf(coords[dim]);
-            }
-        }
-        
-        return ans;
-    }
-    
-    
     @Override
     public Perturbation copyForNewMolecule(Molecule mol, PerturbationBlock block){
         LoopClosureAdjustment lca = new LoopClosureAdjustment(Residue.equivalentInMolec(resDirectlyAffected, mol));
@@ -231,7 +222,9 @@ public class LoopClosureAdjustment extends Perturbation {
         for(ConfProblem cp : problems)
             lca.problems.add( new ConfProblem(lca,cp.getBrokenResidue().equivalentInMolec(mol)) );
 
-        solnCache = (HashMap<String,RigidBodyMotion[][]>) ObjectIO.deepCopy(solnCache);
+        //cached solutions are never modified, so the copy can share them
+        if(solnCache!=null)
+            lca.solnCache = solnCache.copy();
         
         return lca;
     }
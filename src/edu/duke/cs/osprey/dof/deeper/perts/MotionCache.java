@@ -0,0 +1,155 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.dof.deeper.perts;
+
+import edu.duke.cs.osprey.structure.Residue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * A small LRU cache of perturbation motions (e.g., loop closure solutions),
+ * keyed by the exact starting backbone coordinates they were computed from
+ * (plus the perturbation parameter, if the motion depends on it)
+ * 
+ * Minimizers tend to revisit the same points (e.g., a line search returning to its best point,
+ * or a predecessor perturbation that didn't change), so this saves redoing the closure calculations.
+ * The keys are exact rather than rounded, so cached motions are exactly the ones we'd recompute.
+ * Cached motions are never modified, so copies of the cache can share them.
+ */
+public class MotionCache<T> {
+    
+    public static final int DefaultCapacity = 64;
+    
+    private static class Key {
+        
+        final double[] vals;
+        final int hashCode;
+        
+        Key(double[] vals){
+            this.vals = vals;
+            this.hashCode = Arrays.hashCode(vals);
+        }
+        
+        @Override
+        public int hashCode(){
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object other){
+            return other instanceof Key && Arrays.equals(vals, ((Key)other).vals);
+        }
+    }
+    
+    private final int capacity;
+    private final LinkedHashMap<Key,T> cache;
+    private long numHits = 0;
+    private long numMisses = 0;
+    
+    
+    public MotionCache(int capacity){
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Key,T>(16, 0.75f, true){
+            
+            private static final long serialVersionUID = 2925469012512745130L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key,T> eldest){
+                return size() > MotionCache.this.capacity;
+            }
+        };
+    }
+    
+    
+    public MotionCache<T> copy(){
+        MotionCache<T> copy = new MotionCache<>(capacity);
+        copy.cache.putAll(cache);
+        return copy;
+    }
+    
+    
+    public static double[] makeKey(ArrayList<Residue> residues, String[][] atomNames, double paramVal, boolean includeParam){
+        //Concatenate the coordinates of the specified atoms of each residue
+        //(atomNames[resNum] are the atoms needed for residues.get(resNum)),
+        //and the parameter value if the motion depends on it
+        
+        int size = includeParam ? 1 : 0;
+        for(String[] resAtomNames : atomNames)
+            size += 3*resAtomNames.length;
+        
+        double[] key = new double[size];
+        int count = 0;
+        for(int resNum=0; resNum<atomNames.length; resNum++){
+            Residue res = residues.get(resNum);
+            for(String atomName : atomNames[resNum]){
+                int atomIndex = res.getAtomIndexByName(atomName);
+                System.arraycopy(res.coords, 3*atomIndex, key, count, 3);
+                count += 3;
+            }
+        }
+        
+        if(includeParam)
+            key[count] = paramVal;
+        
+        return key;
+    }
+    
+    
+    public T get(double[] key){
+        T val = cache.get(new Key(key));
+        if(val==null)
+            numMisses++;
+        else
+            numHits++;
+        return val;
+    }
+    
+    public void put(double[] key, T val){
+        cache.put(new Key(key), val);
+    }
+    
+    public int size(){
+        return cache.size();
+    }
+    
+    public long getNumHits(){
+        return numHits;
+    }
+    
+    public long getNumMisses(){
+        return numMisses;
+    }
+}
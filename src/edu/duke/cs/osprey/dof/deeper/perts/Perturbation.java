@@ -38,6 +38,7 @@ import edu.duke.cs.osprey.dof.DegreeOfFreedom;
 import edu.duke.cs.osprey.dof.deeper.GenChi1Calc;
 import edu.duke.cs.osprey.dof.deeper.ResBBState;
 import edu.duke.cs.osprey.dof.deeper.SidechainIdealizer;
+import edu.duke.cs.osprey.restypes.HardCodedResidueInfo;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
 import edu.duke.cs.osprey.tools.RigidBodyMotion;
@@ -92,8 +93,10 @@ public abstract class Perturbation extends DegreeOfFreedom {
         //and any successors were applied
         //The backbone is reverted exactly, and the sidechain follows as a rigid body
         ArrayList<Double> dependentGenChi1 = new ArrayList<>();
+        ArrayList<double[]> dependentCoords = new ArrayList<>();
         for(Residue res : dependentResidues){
             dependentGenChi1.add( GenChi1Calc.getGenChi1(res) );//record gen chi1 so we can restore it later
+            dependentCoords.add( res.coords.clone() );//and the full coords, in case the backbone doesn't end up moving
             ResBBState prePertState = block.prePertBBStates.get(indexInBlock).get(res);
             prePertState.putInState(res);//revert BB atoms
         }
@@ -115,15 +118,46 @@ public abstract class Perturbation extends DegreeOfFreedom {
         //other aspects of sidechain geometry (chi2, etc.) will be correct because the sidechain
         //is treated as a rigid body (except for Pro, which has no other sidechain DOFs)
         
+        //Residues whose backbone ended up exactly where it started (e.g., successors that don't depend
+        //on this perturbation's motion) just get their old coords back, which skips the idealization,
+        //but only if the old coords are exactly what we got from idealizing them last time.
+        //Otherwise (e.g., after a mutation) the old sidechain may not be idealized, so we idealize as usual
+        
         for(int resNum=0; resNum<dependentResidues.size(); resNum++){
             Residue res = dependentResidues.get(resNum);
+            double[] oldCoords = dependentCoords.get(resNum);
+            if(isBBUnchanged(res, oldCoords) && block.isIdealized(res, oldCoords)){
+                System.arraycopy(oldCoords, 0, res.coords, 0, oldCoords.length);
+                continue;
+            }
+            
             SidechainIdealizer.idealizeSidechain(EnvironmentVars.resTemplates, res);
             GenChi1Calc.setGenChi1(res, dependentGenChi1.get(resNum));
+            block.recordIdealized(res);
         }
     }
     
     
     
+    private static boolean isBBUnchanged(Residue res, double[] oldCoords){
+        //check if the backbone atoms of res are exactly where they were in oldCoords
+        if(oldCoords.length != res.coords.length)
+            return false;
+        
+        for(String atomName : HardCodedResidueInfo.possibleBBAtoms){
+            int atomIndex = res.getAtomIndexByName(atomName);
+            if(atomIndex==-1)
+                continue;
+            for(int dim=0; dim<3; dim++){
+                if(res.coords[3*atomIndex+dim] != oldCoords[3*atomIndex+dim])
+                    return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    
     public abstract boolean doPerturbationMotion(double paramVal);
     //actually handle the perturbation motion, moving the backbone atoms to the desired position
     //If the perturbation was geometrically impossible, return false
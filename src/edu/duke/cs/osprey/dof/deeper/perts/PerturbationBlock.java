@@ -42,6 +42,8 @@ import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.Residue;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.TreeSet;
@@ -84,6 +86,10 @@ public class PerturbationBlock implements Serializable, DOFBlock {
     
     ArrayList<Residue> allResidues;//all residues in the block
     
+    transient HashMap<Residue,double[]> idealizedCoords = null;
+    //coords of each residue right after we last idealized its sidechain
+    //if a residue still has exactly these coords, idealizing it again would give the same coords
+    
     
     
     
@@ -121,11 +127,30 @@ public class PerturbationBlock implements Serializable, DOFBlock {
             double chi1 = GenChi1Calc.getGenChi1(res);
             SidechainIdealizer.idealizeSidechain(EnvironmentVars.resTemplates, res);
             GenChi1Calc.setGenChi1(res, chi1);
+            recordIdealized(res);
         }
     }
     
     
     
+    void recordIdealized(Residue res){
+        //res's sidechain was just idealized, so remember its coords
+        if(idealizedCoords==null)
+            idealizedCoords = new HashMap<>();
+        idealizedCoords.put(res, res.coords.clone());
+    }
+    
+    boolean isIdealized(Residue res, double[] coords){
+        //are these exactly the coords res had right after we last idealized it?
+        //(anything else, e.g. a mutation or a sidechain moved outside the block,
+        //means the sidechain may not be idealized anymore)
+        if(idealizedCoords==null)
+            return false;
+        return Arrays.equals(idealizedCoords.get(res), coords);
+    }
+    
+    
+    
     void updateSuccessorPrePertStates(int indexInBlock){
         //we've just applied the perturbation with the specified index in block
         //so the current molecular geometry defines the starting BB states for
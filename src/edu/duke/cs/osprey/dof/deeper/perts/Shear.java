@@ -47,6 +47,11 @@ import java.util.ArrayList;
  * @author mhall44
  */
 public class Shear extends Perturbation {
+    
+    //atoms whose starting coords determine the motion
+    private static final String[][] motionAtomNames = { {"CA"}, {"CA","C","O"}, {"CA"}, {"CA"} };
+    
+    transient MotionCache<RigidBodyMotion[]> motionCache = null;
 
     public Shear(ArrayList<Residue> resDirectlyAffected) {
         super(resDirectlyAffected);
@@ -56,7 +61,15 @@ public class Shear extends Perturbation {
     @Override
     public boolean doPerturbationMotion(double paramVal) {
         
-        RigidBodyMotion[] pepMotions = calcMotions(paramVal);
+        double[] key = MotionCache.makeKey(resDirectlyAffected, motionAtomNames, paramVal, true);
+        if(motionCache==null)
+            motionCache = new MotionCache<>(MotionCache.DefaultCapacity);
+        
+        RigidBodyMotion[] pepMotions = motionCache.get(key);
+        if(pepMotions==null){
+            pepMotions = calcMotions(paramVal);
+            motionCache.put(key, pepMotions);
+        }
         
         movePeptidePlane(pepMotions[0], 0, true);
         movePeptidePlane(pepMotions[1], 1, true);
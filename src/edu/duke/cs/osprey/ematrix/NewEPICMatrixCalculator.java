@@ -51,7 +51,23 @@ import edu.duke.cs.osprey.minimization.MoleculeModifierAndScorer;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
 import edu.duke.cs.osprey.minimization.ObjectiveFunction;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.tools.ObjectIO;
+import edu.duke.cs.osprey.tools.Progress;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  *
@@ -71,6 +87,11 @@ public class NewEPICMatrixCalculator {
     
     static boolean SAPEKeepStandalone = false;
     
+    //checkpointing of finished fits
+    private File checkpointFile = null;
+    private long checkpointIntervalMs = 60*1000;
+    private long lastCheckpointMs = 0;
+    
     
     public NewEPICMatrixCalculator(SimpleConfSpace confSpace, ConfEnergyCalculator confECalc, 
             PruningMatrix pruneMat, EPICSettings epicSettings){
@@ -87,41 +108,234 @@ public class NewEPICMatrixCalculator {
    //Calculate a pairwise EPIC matrix based on a pairwise energy function
    //since these are not bounds no need to do any fancy partitioning, just do
    //intra+shell and pairwise terms
+   //The tuple fits are independent, so they're run in parallel using confECalc's task executor
+   //(each fit makes its own molecule from the conf space, so nothing is shared between threads)
    public void calcPEM(){
        
        System.out.println();
        System.out.println("BEGINNING EPIC MATRIX PRECOMPUTATION");
        System.out.println();
        
-       initMatrix();
-       
+       //list the tuples to fit, in the usual order
+       ArrayList<RCTuple> tuples = new ArrayList<>();
        for(int pos=0; pos<searchSpace.getNumPos(); pos++){
             
-            System.out.println("Starting intra+shell energy calculations for residue "+pos);
-            
-            for(int rc=0; rc<searchSpace.getNumResConfs(pos); rc++){
-                EPoly singlePoly = makeEPoly(new RCTuple(pos,rc));
-                epicMat.setOneBody(pos, rc, singlePoly);
-            }
+            for(int rc=0; rc<searchSpace.getNumResConfs(pos); rc++)
+                tuples.add(new RCTuple(pos,rc));
 
             for(int pos2=0; pos2<pos; pos2++){
-                System.out.println("Starting pairwise energy calculations for residues "+pos+", "+pos2);
-
                 for(int rc=0; rc<searchSpace.getNumResConfs(pos); rc++){
-                    for(int rc2=0; rc2<searchSpace.getNumResConfs(pos2); rc2++){
-                        
-                        EPoly pairPoly = makeEPoly(new RCTuple(pos, rc, pos2, rc2));
-                        epicMat.setPairwise(pos, rc, pos2, rc2, pairPoly);
-                    }
+                    for(int rc2=0; rc2<searchSpace.getNumResConfs(pos2); rc2++)
+                        tuples.add(new RCTuple(pos, rc, pos2, rc2));
                 }
             }
         }
        
+       //pick up where we left off, if we can
+       byte[] fingerprint = makeFingerprint(tuples);
+       Checkpoint checkpoint = readCheckpoint(tuples.size(), fingerprint);
+       if(checkpoint==null){
+           initMatrix();
+           checkpoint = new Checkpoint(epicMat, tuples.size(), fingerprint);
+       }
+       else {
+           epicMat = checkpoint.epicMat;
+           System.out.println("Resuming EPIC matrix from checkpoint with "+checkpoint.numDone+"/"+tuples.size()+" tuples fit");
+       }
+       final Checkpoint fcheckpoint = checkpoint;
+       Progress progress = new Progress(tuples.size() - checkpoint.numDone);
+       
+       for(int i=0; i<tuples.size(); i++){
+           
+           if(checkpoint.done[i])
+               continue;
+           
+           final int tupleIndex = i;
+           RCTuple tuple = tuples.get(i);
+           confECalc.tasks.submit(
+                   () -> makeEPoly(tuple),
+                   (EPoly poly) -> {
+                       
+                       //listeners are all called on one thread, so no need to synchronize on the matrix
+                       if(tuple.size()==1)
+                           epicMat.setOneBody(tuple.pos.get(0), tuple.RCs.get(0), poly);
+                       else
+                           epicMat.setPairwise(tuple.pos.get(0), tuple.RCs.get(0), tuple.pos.get(1), tuple.RCs.get(1), poly);
+                       
+                       fcheckpoint.done[tupleIndex] = true;
+                       fcheckpoint.numDone++;
+                       progress.incrementProgress();
+                       
+                       writeCheckpointIfNeeded(fcheckpoint);
+                   }
+           );
+       }
+       
+       confECalc.tasks.waitForFinish();
+       
+       //the matrix is complete, so we don't need the checkpoint anymore
+       if(checkpointFile!=null)
+           checkpointFile.delete();
+       
        System.out.println("EPIC MATRIX CALCULATION DONE");
    }
     
     
     
+    /**
+     * Periodically save finished tuple fits to this file while calculating the matrix,
+     * so an interrupted calculation can resume without refitting them.
+     * The file is deleted once the matrix is complete.
+     */
+    public void setCheckpointFile(File val){
+        checkpointFile = val;
+    }
+    
+    public void setCheckpointIntervalMs(long val){
+        checkpointIntervalMs = val;
+    }
+    
+    
+    private static class Checkpoint implements Serializable {
+        
+        private static final long serialVersionUID = 5227341608423307734L;
+        
+        NewEPICMatrix epicMat;
+        boolean[] done;//which tuples (in calcPEM order) have been fit
+        int numDone = 0;
+        byte[] fingerprint;//of the inputs to the fits, see makeFingerprint
+        
+        Checkpoint(NewEPICMatrix epicMat, int numTuples, byte[] fingerprint){
+            this.epicMat = epicMat;
+            this.done = new boolean[numTuples];
+            this.fingerprint = fingerprint;
+        }
+    }
+    
+    
+    private byte[] makeFingerprint(ArrayList<RCTuple> tuples){
+        //hash everything that affects the fits, other than the energy function itself:
+        //the EPIC settings, the pruning, the tuples, and the RCs' voxels
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+            
+            ObjectOutputStream settingsOut = new ObjectOutputStream(out);
+            settingsOut.writeObject(epicSettings);
+            settingsOut.flush();
+            
+            out.writeDouble(pruneMat.getPruningInterval());
+            
+            out.writeInt(tuples.size());
+            for(RCTuple tuple : tuples){
+                out.writeInt(tuple.size());
+                for(int i=0; i<tuple.size(); i++){
+                    out.writeInt(tuple.pos.get(i));
+                    out.writeInt(tuple.RCs.get(i));
+                }
+                out.writeBoolean(pruneMat.isPruned(tuple));
+            }
+            
+            for(int pos=0; pos<searchSpace.getNumPos(); pos++){
+                for(ResidueConf rc : searchSpace.positions.get(pos).resConfs){
+                    out.writeUTF(String.valueOf(rc.template.name));
+                    out.writeInt(rc.rotamerIndex==null ? -1 : rc.rotamerIndex);
+                    out.writeUTF(rc.type.name());
+                    
+                    //the DOF bounds, in a consistent order
+                    Map<String,double[]> dofBounds = rc.dofBounds==null ? new TreeMap<>() : new TreeMap<>(rc.dofBounds);
+                    out.writeInt(dofBounds.size());
+                    for(Map.Entry<String,double[]> entry : dofBounds.entrySet()){
+                        out.writeUTF(entry.getKey());
+                        for(double bound : entry.getValue())
+                            out.writeDouble(bound);
+                    }
+                }
+            }
+            
+            out.flush();
+            return digest.digest();
+        }
+        catch(IOException | NoSuchAlgorithmException ex){
+            throw new RuntimeException("can't fingerprint EPIC matrix inputs", ex);
+        }
+    }
+    
+    
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b){
+            //discard
+        }
+        @Override
+        public void write(byte[] b, int off, int len){
+            //discard
+        }
+    }
+    
+    
+    private Checkpoint readCheckpoint(int numTuples, byte[] fingerprint){
+        
+        if(checkpointFile==null)
+            return null;
+        
+        try{
+            Checkpoint checkpoint = ObjectIO.read(checkpointFile, Checkpoint.class);
+            if(checkpoint==null)
+                return null;
+            
+            //make sure the checkpoint is for this conf space
+            if(checkpoint.done.length!=numTuples || checkpoint.epicMat.getNumPos()!=searchSpace.getNumPos()){
+                System.out.println("EPIC checkpoint "+checkpointFile+" doesn't match this conf space, starting over");
+                return null;
+            }
+            for(int pos=0; pos<searchSpace.getNumPos(); pos++){
+                if(checkpoint.epicMat.getNumConfAtPos(pos)!=searchSpace.getNumResConfs(pos)){
+                    System.out.println("EPIC checkpoint "+checkpointFile+" doesn't match this conf space, starting over");
+                    return null;
+                }
+            }
+            
+            //and for the same settings, pruning, and voxels
+            if(!Arrays.equals(checkpoint.fingerprint, fingerprint)){
+                System.out.println("EPIC checkpoint "+checkpointFile+" was made with different EPIC settings, pruning, or voxels, starting over");
+                return null;
+            }
+            
+            return checkpoint;
+        }
+        catch(ObjectIO.BadFileException ex){
+            System.out.println("Can't read EPIC checkpoint "+checkpointFile+", starting over: "+ex.getMessage());
+            return null;
+        }
+    }
+    
+    
+    private void writeCheckpointIfNeeded(Checkpoint checkpoint){
+        
+        if(checkpointFile==null)
+            return;
+        
+        long now = System.currentTimeMillis();
+        if(now - lastCheckpointMs < checkpointIntervalMs)
+            return;
+        
+        //write to a temp file and then rename it over the old checkpoint,
+        //so a crash while writing can't corrupt the last good checkpoint
+        File tempFile = new File(checkpointFile.getAbsoluteFile().getParentFile(), checkpointFile.getName()+".tmp");
+        try{
+            ObjectIO.write(checkpoint, tempFile);
+            Files.move(tempFile.toPath(), checkpointFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(ObjectIO.CantWriteException | IOException ex){
+            //not fatal, we just won't be able to resume from here
+            System.err.println("Can't write EPIC checkpoint: "+ex.getMessage());
+            tempFile.delete();
+        }
+        lastCheckpointMs = now;
+    }
+    
     
     private void initMatrix(){
         //initialize the matrix we're calculating
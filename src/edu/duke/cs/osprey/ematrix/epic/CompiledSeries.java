@@ -0,0 +1,329 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A series from {@link SeriesFitter} compiled into flat monomial tables,
+ * so it can be evaluated without colt vectors or nested loops.
+ *
+ * Monomials are listed in the same order {@link SeriesFitter#evalSeries} uses for the
+ * coefficients (including the PC-only blocks of {@link EPolyPC}). Each monomial
+ * stores its parent (the same monomial without its last factor), so all the monomial values
+ * can be built in one pass with one multiplication each, and the gradient and Hessian
+ * are read off the same tables.
+ * 
+ * Evaluation is allocation-free: callers pass in a scratch array of at least {@link #getScratchSize()}
+ * values. Instances are immutable, so they can be shared between threads as long as
+ * each thread uses its own scratch array.
+ */
+public class CompiledSeries {
+    
+    public final int numDOFs;
+    public final int numMonomials;
+    
+    private final double[] center;
+    private final double[] axisCoeffs;//row-major transformation from relative coords to the series basis, or null if none
+    
+    private final double[] sourceCoeffs;//the coefficients this series was compiled from
+    private final double[] coeffs;//coefficient for each monomial
+    final int[] parents;//index of the monomial without the last factor, or -1 for linear terms
+    final int[] lastFactors;//DOF index of the last factor of each monomial
+    final int[] factorStarts;//monomial m has factors factors[factorStarts[m]] ... factors[factorStarts[m+1]-1]
+    final int[] factors;
+    
+    private static final ThreadLocal<double[]> threadScratch = ThreadLocal.withInitial(() -> new double[0]);
+    
+    
+    /**
+     * @param coeffs series coefficients, as fit by {@link SeriesFitter} (without a constant term),
+     *               or null to just compile the monomials (see {@link CompiledSeriesMap})
+     * @param center the center of the relative coordinates
+     * @param axisCoeffs the rows are the series axes as linear combinations of the relative coordinates,
+     *                   or null to expand the series in the relative coordinates directly
+     * @param order the order of the series in all DOFs
+     * @param PCOrder the order of the series in the PC DOFs (has no effect if <= order)
+     * @param isPC which DOFs (in the series basis) are PCs, or null if PCOrder <= order
+     */
+    public CompiledSeries(double[] coeffs, double[] center, double[][] axisCoeffs, int order, int PCOrder, boolean[] isPC) {
+        
+        this.numDOFs = center.length;
+        this.center = center.clone();
+        this.sourceCoeffs = coeffs;
+        
+        if(axisCoeffs == null)
+            this.axisCoeffs = null;
+        else {
+            this.axisCoeffs = new double[numDOFs*numDOFs];
+            for(int i=0; i<numDOFs; i++)
+                System.arraycopy(axisCoeffs[i], 0, this.axisCoeffs, i*numDOFs, numDOFs);
+        }
+        
+        if(order<1||order>6||PCOrder>6){
+            throw new RuntimeException("ERROR: CompiledSeries does not support order "+order+" and/or PCOrder "+PCOrder);
+        }
+        
+        //enumerate the monomials in SeriesFitter order
+        List<int[]> monomials = new ArrayList<>();
+        int maxOrder = Math.max(order, PCOrder);
+        for(int k=1; k<=maxOrder; k++){
+            boolean PCOnly = k > order;
+            enumerate(monomials, new int[k], 0, numDOFs-1, PCOnly ? isPC : null);
+        }
+        
+        numMonomials = monomials.size();
+        if(coeffs == null)
+            coeffs = new double[numMonomials];
+        else if(coeffs.length != numMonomials){
+            throw new RuntimeException("ERROR: expected "+numMonomials+" series coefficients, but got "+coeffs.length);
+        }
+        
+        this.coeffs = coeffs.clone();
+        parents = new int[numMonomials];
+        lastFactors = new int[numMonomials];
+        factorStarts = new int[numMonomials+1];
+        
+        Map<List<Integer>,Integer> indices = new HashMap<>();
+        int numFactors = 0;
+        for(int m=0; m<numMonomials; m++){
+            int[] monomial = monomials.get(m);
+            indices.put(toKey(monomial, monomial.length), m);
+            factorStarts[m] = numFactors;
+            numFactors += monomial.length;
+        }
+        factorStarts[numMonomials] = numFactors;
+        
+        factors = new int[numFactors];
+        for(int m=0; m<numMonomials; m++){
+            int[] monomial = monomials.get(m);
+            System.arraycopy(monomial, 0, factors, factorStarts[m], monomial.length);
+            lastFactors[m] = monomial[monomial.length-1];
+            
+            if(monomial.length == 1)
+                parents[m] = -1;
+            else {
+                //parents always come earlier in the list, since all lower-order blocks come first
+                //and a PC-only monomial only has PC-only parents
+                Integer parent = indices.get(toKey(monomial, monomial.length-1));
+                if(parent == null)
+                    throw new RuntimeException("ERROR: series has no parent term for monomial "+Arrays.toString(monomial));
+                parents[m] = parent;
+            }
+        }
+    }
+    
+    
+    private static void enumerate(List<int[]> monomials, int[] monomial, int depth, int maxDOF, boolean[] isPC){
+        //factors are non-increasing, with the outermost loop over the first factor, as in SeriesFitter
+        for(int dof=0; dof<=maxDOF; dof++){
+            if(isPC != null && !isPC[dof])
+                continue;
+            monomial[depth] = dof;
+            if(depth == monomial.length-1)
+                monomials.add(monomial.clone());
+            else
+                enumerate(monomials, monomial, depth+1, dof, isPC);
+        }
+    }
+    
+    
+    private static List<Integer> toKey(int[] monomial, int length){
+        List<Integer> key = new ArrayList<>(length);
+        for(int i=0; i<length; i++)
+            key.add(monomial[i]);
+        return key;
+    }
+    
+    
+    /** true if this series was compiled from exactly this coefficient array */
+    public boolean isCompiledFrom(double[] coeffs){
+        return sourceCoeffs == coeffs;
+    }
+    
+    
+    public int getScratchSize(){
+        return 2*numDOFs + numMonomials;
+    }
+    
+    
+    /** where {@link #evaluate} leaves the monomial values in the scratch array */
+    int getMonomialsOffset(){
+        return 2*numDOFs;
+    }
+    
+    
+    /** a scratch array for the current thread, for callers that don't keep their own */
+    public double[] getThreadScratch(){
+        double[] scratch = threadScratch.get();
+        if(scratch.length < getScratchSize()){
+            scratch = new double[getScratchSize()];
+            threadScratch.set(scratch);
+        }
+        return scratch;
+    }
+    
+    
+    /**
+     * Evaluates the series at x (in absolute coordinates).
+     * Leaves the series coordinates and monomial values in the scratch array,
+     * where {@link #gradient} and {@link #hessian} can reuse them.
+     */
+    public double evaluate(double[] x, double[] scratch){
+        
+        //scratch layout: [series coords | relative coords | monomial values]
+        final int yOffset = 0;
+        final int prodOffset = 2*numDOFs;
+        
+        if(axisCoeffs == null){
+            for(int i=0; i<numDOFs; i++)
+                scratch[yOffset+i] = x[i] - center[i];
+        }
+        else {
+            final int zOffset = numDOFs;
+            for(int i=0; i<numDOFs; i++)
+                scratch[zOffset+i] = x[i] - center[i];
+            for(int i=0; i<numDOFs; i++){
+                double y = 0;
+                int row = i*numDOFs;
+                for(int j=0; j<numDOFs; j++)
+                    y += axisCoeffs[row+j]*scratch[zOffset+j];
+                scratch[yOffset+i] = y;
+            }
+        }
+        
+        double ans = 0;
+        for(int m=0; m<numMonomials; m++){
+            int parent = parents[m];
+            double prod = scratch[yOffset+lastFactors[m]];
+            if(parent >= 0)
+                prod *= scratch[prodOffset+parent];
+            scratch[prodOffset+m] = prod;
+            ans += coeffs[m]*prod;
+        }
+        
+        return ans;
+    }
+    
+    
+    /** Evaluates the gradient of the series at x (in absolute coordinates) into grad */
+    public void gradient(double[] x, double[] grad, double[] scratch){
+        
+        evaluate(x, scratch);
+        
+        final int yOffset = 0;
+        final int gyOffset = numDOFs;//relative coords aren't needed anymore
+        final int prodOffset = 2*numDOFs;
+        
+        Arrays.fill(scratch, gyOffset, gyOffset+numDOFs, 0);
+        
+        for(int m=0; m<numMonomials; m++){
+            if(coeffs[m] == 0)
+                continue;
+            
+            //walk the factors backwards, so the prefix products are just the ancestors' values
+            double suffix = coeffs[m];
+            int ancestor = parents[m];
+            for(int f=factorStarts[m+1]-1; f>=factorStarts[m]; f--){
+                double prefix = ancestor >= 0 ? scratch[prodOffset+ancestor] : 1;
+                scratch[gyOffset+factors[f]] += prefix*suffix;
+                suffix *= scratch[yOffset+factors[f]];
+                if(ancestor >= 0)
+                    ancestor = parents[ancestor];
+            }
+        }
+        
+        //transform back to the DOF basis
+        if(axisCoeffs == null)
+            System.arraycopy(scratch, gyOffset, grad, 0, numDOFs);
+        else {
+            Arrays.fill(grad, 0, numDOFs, 0);
+            for(int i=0; i<numDOFs; i++){
+                double gy = scratch[gyOffset+i];
+                int row = i*numDOFs;
+                for(int j=0; j<numDOFs; j++)
+                    grad[j] += axisCoeffs[row+j]*gy;
+            }
+        }
+    }
+    
+    
+    /** Evaluates the Hessian of the series at x (in absolute coordinates) into hess */
+    public void hessian(double[] x, double[][] hess, double[] scratch){
+        
+        evaluate(x, scratch);
+        
+        double[][] hy = axisCoeffs == null ? hess : new double[numDOFs][numDOFs];
+        for(double[] row : hy)
+            Arrays.fill(row, 0);
+        
+        for(int m=0; m<numMonomials; m++){
+            if(coeffs[m] == 0)
+                continue;
+            
+            int start = factorStarts[m];
+            int end = factorStarts[m+1];
+            
+            //each pair of factors contributes the product of the other factors
+            for(int f1=start; f1<end; f1++){
+                for(int f2=f1+1; f2<end; f2++){
+                    double prod = coeffs[m];
+                    for(int f=start; f<end; f++){
+                        if(f != f1 && f != f2)
+                            prod *= scratch[factors[f]];
+                    }
+                    hy[factors[f1]][factors[f2]] += prod;
+                    hy[factors[f2]][factors[f1]] += prod;
+                }
+            }
+        }
+        
+        //transform back to the DOF basis: hess = A^T hy A
+        if(axisCoeffs != null){
+            for(int i=0; i<numDOFs; i++){
+                for(int j=0; j<numDOFs; j++){
+                    double sum = 0;
+                    for(int a=0; a<numDOFs; a++){
+                        for(int b=0; b<numDOFs; b++)
+                            sum += axisCoeffs[a*numDOFs+i]*hy[a][b]*axisCoeffs[b*numDOFs+j];
+                    }
+                    hess[i][j] = sum;
+                }
+            }
+        }
+    }
+}
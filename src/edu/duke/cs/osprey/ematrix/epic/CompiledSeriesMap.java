@@ -0,0 +1,146 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+/**
+ * Several series from {@link SeriesFitter} over the same variables, with the same order,
+ * compiled to share one set of monomials. This is a polynomial map from R^numDOFs to R^numOutputs
+ * (e.g., from CATS free DOFs to backbone coordinates), so each evaluation computes the monomials once
+ * and then just takes one dot product per output. The Jacobian of the map comes from the same tables.
+ * 
+ * Like {@link CompiledSeries}, evaluation is allocation-free given a scratch array of at least
+ * {@link #getScratchSize()} values, and instances can be shared between threads.
+ */
+public class CompiledSeriesMap {
+    
+    public final int numDOFs;
+    public final int numOutputs;
+    
+    private final CompiledSeries monomials;//just the monomial tables, without coefficients
+    private final double[] constants;
+    private final double[] coeffs;//row-major, one row of monomial coefficients per output
+    
+    
+    /**
+     * @param series coefficients for each output, as fit by {@link SeriesFitter}
+     * @param numDOFs number of variables; the series are evaluated at the coordinates given (i.e., centered at 0)
+     * @param includeConst whether each series starts with a constant term
+     * @param order order of the series
+     */
+    public CompiledSeriesMap(double[][] series, int numDOFs, boolean includeConst, int order) {
+        
+        this.numDOFs = numDOFs;
+        this.numOutputs = series.length;
+        
+        monomials = new CompiledSeries(null, new double[numDOFs], null, order, order, null);
+        int numMonomials = monomials.numMonomials;
+        int offset = includeConst ? 1 : 0;
+        
+        constants = new double[numOutputs];
+        coeffs = new double[numOutputs*numMonomials];
+        for(int out=0; out<numOutputs; out++){
+            
+            if(series[out].length != numMonomials + offset){
+                throw new RuntimeException("ERROR: expected "+(numMonomials+offset)+" series coefficients, but got "+series[out].length);
+            }
+            
+            if(includeConst)
+                constants[out] = series[out][0];
+            System.arraycopy(series[out], offset, coeffs, out*numMonomials, numMonomials);
+        }
+    }
+    
+    
+    public int getScratchSize(){
+        return monomials.getScratchSize();
+    }
+    
+    
+    /** Evaluates all the series at x, writing the values into out */
+    public void evaluate(double[] x, double[] out, double[] scratch){
+        
+        monomials.evaluate(x, scratch);
+        
+        int numMonomials = monomials.numMonomials;
+        int prodOffset = monomials.getMonomialsOffset();
+        
+        for(int o=0; o<numOutputs; o++){
+            double val = constants[o];
+            int row = o*numMonomials;
+            for(int m=0; m<numMonomials; m++)
+                val += coeffs[row+m]*scratch[prodOffset+m];
+            out[o] = val;
+        }
+    }
+    
+    
+    /** Evaluates the Jacobian of the map at x: jac[output][dof] */
+    public void jacobian(double[] x, double[][] jac, double[] scratch){
+        
+        monomials.evaluate(x, scratch);
+        
+        int numMonomials = monomials.numMonomials;
+        int prodOffset = monomials.getMonomialsOffset();
+        int[] parents = monomials.parents;
+        int[] factorStarts = monomials.factorStarts;
+        int[] factors = monomials.factors;
+        
+        for(int o=0; o<numOutputs; o++){
+            for(int d=0; d<numDOFs; d++)
+                jac[o][d] = 0;
+        }
+        
+        for(int m=0; m<numMonomials; m++){
+            
+            //walk the factors backwards, so the prefix products are just the ancestors' values
+            //(as in CompiledSeries.gradient)
+            double suffix = 1;
+            int ancestor = parents[m];
+            for(int f=factorStarts[m+1]-1; f>=factorStarts[m]; f--){
+                double prefix = ancestor >= 0 ? scratch[prodOffset+ancestor] : 1;
+                double deriv = prefix*suffix;
+                int dof = factors[f];
+                
+                for(int o=0; o<numOutputs; o++){
+                    double coeff = coeffs[o*numMonomials+m];
+                    if(coeff != 0)
+                        jac[o][dof] += coeff*deriv;
+                }
+                
+                suffix *= scratch[factors[f]];
+                if(ancestor >= 0)
+                    ancestor = parents[ancestor];
+            }
+        }
+    }
+}
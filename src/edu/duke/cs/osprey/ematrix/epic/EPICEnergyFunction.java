@@ -32,7 +32,6 @@
 
 package edu.duke.cs.osprey.ematrix.epic;
 
-import cern.colt.matrix.DoubleFactory1D;
 import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.dof.DegreeOfFreedom;
 import edu.duke.cs.osprey.energy.EnergyFunction;
@@ -63,6 +62,10 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
     
     ArrayList<ArrayList<Integer>> termDOFs;//for each term, which degrees of freedom (in curDOFVals) it operates on
 
+    //buffers for evaluating the terms' compiled series without allocating
+    transient double[] termDOFVals = null;
+    transient double[] scratch = null;
+
     
     public EPICEnergyFunction(ArrayList<EPoly> terms, boolean includeMinE) {
         //create an energy function from some terms, will assign curDOFVals, termDOFs, and (if needed) sharedMolec
@@ -110,6 +113,8 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
             termDOFs.add(singleTermDOFs);
         }
         
+        allocateBuffers();
+        
         
         
         //all terms with SAPE need to know about the shared molecule, if we are using one
@@ -124,6 +129,28 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
     }
     
     
+    private void allocateBuffers(){
+        int maxDOFs = 0;
+        int maxScratch = 0;
+        for(EPoly term : terms){
+            maxDOFs = Math.max(maxDOFs, term.numDOFs);
+            maxScratch = Math.max(maxScratch, term.getScratchSize());
+        }
+        termDOFVals = new double[maxDOFs];
+        scratch = new double[maxScratch];
+    }
+    
+    
+    private double evaluateTerm(int termNum){
+        EPoly term = terms.get(termNum);
+        ArrayList<Integer> DOFsForTerm = termDOFs.get(termNum);
+        for(int DOFCount=0; DOFCount<term.numDOFs; DOFCount++)
+            termDOFVals[DOFCount] = curDOFVals.get(DOFsForTerm.get(DOFCount));
+        
+        return term.evaluate(termDOFVals, includeMinE, useSharedMolec, scratch);
+    }
+    
+    
     public void unassignSharedMolec(){
         //delete the sharedMolecEnergyFunction for each of the SAPE terms used by this EPICEnergyFunction
         //If a new molecule is made for every minimization and this isn't done,
@@ -145,14 +172,11 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
         }
         
         double E = 0;
+        if(termDOFVals==null)//e.g., after deserialization
+            allocateBuffers();
+        
         for(int termNum=0; termNum<terms.size(); termNum++){
-            EPoly term = terms.get(termNum);
-            
-            DoubleMatrix1D DOFValsForTerm = DoubleFactory1D.dense.make(term.numDOFs);
-            for(int DOFCount=0; DOFCount<term.numDOFs; DOFCount++)
-                DOFValsForTerm.set( DOFCount, curDOFVals.get(termDOFs.get(termNum).get(DOFCount)) );
-            
-            double termVal = term.evaluate(DOFValsForTerm, includeMinE, useSharedMolec);
+            double termVal = evaluateTerm(termNum);
             E += termVal;
         }
         
@@ -171,14 +195,11 @@ public class EPICEnergyFunction implements EnergyFunction.NeedsInit, EnergyFunct
                     + "before assigning it to a vector of DOF values");
         }
         
+        if(termDOFVals==null)//e.g., after deserialization
+            allocateBuffers();
+        
         for(int termNum=0; termNum<terms.size(); termNum++){
-            EPoly term = terms.get(termNum);
-            
-            DoubleMatrix1D DOFValsForTerm = DoubleFactory1D.dense.make(term.numDOFs);
-            for(int DOFCount=0; DOFCount<term.numDOFs; DOFCount++)
-                DOFValsForTerm.set( DOFCount, curDOFVals.get(termDOFs.get(termNum).get(DOFCount)) );
-            
-            double termVal = term.evaluate(DOFValsForTerm, includeMinE, useSharedMolec);
+            double termVal = evaluateTerm(termNum);
             ans.add(termVal);
         }
         
@@ -45,6 +45,7 @@ package edu.duke.cs.osprey.ematrix.epic;
 ///////////////////////////////////////////////////////////////////////////////////////////////
 
 import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleFactory2D;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 import cern.jet.math.Functions;
@@ -86,6 +87,10 @@ public class EPoly implements Serializable {
     double baseSAPE = 0;//value of SAPE terms at center (SAPE will be evaluated relative to this)
 
     
+    //flattened form of the series, for fast evaluation (compiled when first needed)
+    transient CompiledSeries compiled = null;
+
+    
 
     public EPoly(int numDOFs, ArrayList<DegreeOfFreedom> DOFs, DoubleMatrix1D DOFmax, DoubleMatrix1D DOFmin, 
             DoubleMatrix1D center, double minE, double[] coeffs, int order ) {
@@ -141,6 +146,59 @@ public class EPoly implements Serializable {
     }
     
     
+    public double evaluate(double[] x, boolean includeMinE, boolean useSharedMolec) {
+        //primitive-array version of evaluate, for callers that keep DOF values in arrays
+        //(e.g., ArrayObjectiveFunction implementations)
+        CompiledSeries series = getCompiled();
+        return evaluate(x, includeMinE, useSharedMolec, series.getThreadScratch());
+    }
+    
+    
+    public double evaluate(double[] x, boolean includeMinE, boolean useSharedMolec, double[] scratch) {
+        //evaluate using the compiled series, with caller-supplied scratch space
+        //(see getScratchSize()), so no allocation is needed
+        
+        CompiledSeries series = getCompiled();
+        if(scratch.length < series.getScratchSize())
+            scratch = series.getThreadScratch();
+        
+        double serVal = series.evaluate(x, scratch);
+        
+        if(includeMinE)
+            serVal += minE;
+                 
+        if(sapeTerm!=null){//Need to include the SAPE term
+            
+            if(useSharedMolec)//shared molecule assumed to be in the right conformation already
+                return serVal + sapeTerm.getEnergySharedMolec() - baseSAPE;
+            else //Use the molecule stored in the SAPE object
+                return serVal + sapeTerm.getEnergyStandalone(DoubleFactory1D.dense.make(x)) - baseSAPE;
+        }
+        else 
+            return serVal;
+    }
+    
+    
+    public int getScratchSize() {
+        return getCompiled().getScratchSize();
+    }
+    
+    
+    CompiledSeries getCompiled() {
+        //recompile if the coefficients have been replaced (e.g., by fitting) since we last compiled
+        CompiledSeries series = compiled;
+        if(series==null || !series.isCompiledFrom(coeffs)){
+            series = compile();
+            compiled = series;
+        }
+        return series;
+    }
+    
+    
+    CompiledSeries compile() {
+        return new CompiledSeries(coeffs, center.toArray(), null, order, order, null);
+    }
+    
     
     double evalSeries(DoubleMatrix1D z){
         //evaluate the actual series
@@ -198,34 +256,26 @@ public class EPoly implements Serializable {
     
     public DoubleMatrix1D gradient(DoubleMatrix1D x/*, boolean useSharedMolec*/) {
         //evaluate this EPoly gradient as a function of internal coordinates x
-         
-        DoubleMatrix1D z = toRelCoords(x);
-        
-        if(this instanceof EPolyPC)
-            throw new RuntimeException("ERROR: gradient for EPolyPC not currently supported");
         
-        DoubleMatrix1D grad = seriesGradient(z);
-                 
         if(sapeTerm!=null)
             throw new RuntimeException("ERROR: SVE gradient not currently supported");
-        else 
-            return grad;
+        
+        double[] grad = new double[numDOFs];
+        CompiledSeries series = getCompiled();
+        series.gradient(x.toArray(), grad, series.getThreadScratch());
+        return DoubleFactory1D.dense.make(grad);
     }
     
     
     public DoubleMatrix2D hessian(DoubleMatrix1D x) {
-         
-        DoubleMatrix1D z = toRelCoords(x);
-        
-        if(this instanceof EPolyPC)
-            throw new RuntimeException("ERROR: Hessian for EPolyPC not currently supported");
         
-        DoubleMatrix2D hess = seriesHessian(z);
-                 
         if(sapeTerm!=null)
             throw new RuntimeException("ERROR: SVE Hessian not currently supported");
-        else 
-            return hess;
+        
+        double[][] hess = new double[numDOFs][numDOFs];
+        CompiledSeries series = getCompiled();
+        series.hessian(x.toArray(), hess, series.getThreadScratch());
+        return DoubleFactory2D.dense.make(hess);
     }
     
     
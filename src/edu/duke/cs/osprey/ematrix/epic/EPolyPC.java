@@ -124,6 +124,13 @@ public class EPolyPC extends EPoly {
     }
     
     
+    @Override
+    CompiledSeries compile(){
+        //the compiled series applies the PC basis change itself
+        return new CompiledSeries(coeffs, center.toArray(), axisCoeffs.toArray(), fullOrder, PCOrder, isPC);
+    }
+    
+    
     //conversion from relative coordinates in usual DOF basis to eigenbasis of template Hessian
     DoubleMatrix1D toPCBasis(DoubleMatrix1D z){
         return axisCoeffs.zMult(z, DoubleFactory1D.dense.make(numDOFs));
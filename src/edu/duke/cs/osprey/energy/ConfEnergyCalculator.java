@@ -33,7 +33,10 @@
 package edu.duke.cs.osprey.energy;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
@@ -41,9 +44,12 @@ import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.confspace.ConfSearch.EnergiedConf;
 import edu.duke.cs.osprey.confspace.ConfSearch.ScoredConf;
 import edu.duke.cs.osprey.ematrix.SimpleReferenceEnergies;
+import edu.duke.cs.osprey.minimization.Minimizer;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.parallelism.TaskExecutor.TaskListener;
+import edu.duke.cs.osprey.restypes.ResidueTemplate;
+import edu.duke.cs.osprey.tools.MathTools;
 import edu.duke.cs.osprey.tools.Progress;
 import edu.duke.cs.osprey.tools.TimeTools;
 
@@ -55,6 +61,32 @@ import edu.duke.cs.osprey.tools.TimeTools;
  * such as reference energies, residue entropies, and energy partitions. 
  */
 public class ConfEnergyCalculator {
+
+	/**
+	 * A conformation whose minimization might have been stopped early by a {@link Minimizer.Cutoff}.
+	 */
+	public static class MinimizedConf extends EnergiedConf {
+
+		/** true if minimization stopped early, so the energy is only an upper bound on the minimized energy */
+		public final boolean isPartial;
+
+		public MinimizedConf(ScoredConf conf, double energy, boolean isPartial) {
+			super(conf, energy);
+			this.isPartial = isPartial;
+		}
+
+		/**
+		 * Returns rigorous bounds on the minimized energy of this conformation,
+		 * assuming the score is a lower bound on the minimized energy (e.g., from a minimized energy matrix).
+		 */
+		public MathTools.DoubleBounds getEnergyBounds() {
+			if (isPartial) {
+				return new MathTools.DoubleBounds(getScore(), getEnergy());
+			} else {
+				return new MathTools.DoubleBounds(getEnergy(), getEnergy());
+			}
+		}
+	}
 	
 	public static class Builder {
 		
@@ -208,6 +240,20 @@ public class ConfEnergyCalculator {
 		return ecalc.calcEnergy(bpmol, inters);
 	}
 
+	/**
+	 * Version of {@link #calcEnergy(RCTuple,ResidueInteractions)} that lets the caller stop minimization early.
+	 *
+	 * @param frag The assignments of the conformation space
+	 * @param inters The residue interactions
+	 * @param cutoff Decides when to stop minimizing, or null to minimize all the way
+	 * @return The energy of the resulting molecule fragment and its pose
+	 */
+	public EnergyCalculator.EnergiedParametricMolecule calcEnergy(RCTuple frag, ResidueInteractions inters, Minimizer.Cutoff cutoff) {
+		numCalculations.incrementAndGet();
+		ParametricMolecule bpmol = confSpace.makeMolecule(frag);
+		return ecalc.calcEnergy(bpmol, inters, cutoff);
+	}
+
 	/**
 	 * Asynchronous version of {@link #calcEnergy(RCTuple,ResidueInteractions)}.
 	 * 
@@ -395,6 +441,48 @@ public class ConfEnergyCalculator {
 	}
 
 
+	/**
+	 * Calculate energy of a scored conformation, but let the caller stop minimization early
+	 * when a precise energy isn't needed. Energies for confs that stopped early are upper bounds
+	 * on the minimized energy, see {@link MinimizedConf#getEnergyBounds()}.
+	 *
+	 * Only fully-minimized energies are written to the ConfDB table.
+	 *
+	 * @param conf The conformation to analyze
+	 * @param table the confDB table, or null
+	 * @param cutoff Decides when to stop minimizing, or null to minimize all the way
+	 * @return The conformation with attached energy
+	 */
+	public MinimizedConf calcEnergy(ScoredConf conf, ConfDB.ConfTable table, Minimizer.Cutoff cutoff) {
+
+		// no cutoff? minimize all the way
+		if (cutoff == null) {
+			return new MinimizedConf(conf, calcEnergy(conf, table).getEnergy(), false);
+		}
+
+		// check the confDB for the energy
+		if (table != null) {
+			EnergiedConf econf = table.getEnergied(conf);
+			if (econf != null) {
+				numConfDBReads.incrementAndGet();
+				return new MinimizedConf(conf, econf.getEnergy(), false);
+			}
+		}
+
+		// cache miss, compute the energy
+		RCTuple frag = new RCTuple(conf.getAssignments());
+		EnergyCalculator.EnergiedParametricMolecule epmol = calcEnergy(frag, makeFragInters(frag), cutoff);
+		MinimizedConf mconf = new MinimizedConf(conf, epmol.energy, epmol.isPartial);
+
+		// update the ConfDB, but only with the real minimized energies
+		if (table != null && !mconf.isPartial) {
+			table.setBounds(mconf, TimeTools.getTimestampNs());
+			table.flush();
+		}
+
+		return mconf;
+	}
+
 	private EnergiedConf calcEnergy(ScoredConf conf, ConfDB.ConfTable table, Supplier<EnergiedConf> supplier) {
 
 		// no confDB? just compute the energy
@@ -476,6 +564,153 @@ public class ConfEnergyCalculator {
 		return econfs;
 	}
 
+	/**
+	 * Calculate energies for a batch of conformations, e.g., conformations from the same sequence.
+	 * Residue interactions are generated from the energy partition.
+	 *
+	 * Conformations with the same residue types are minimized together in lockstep when the energy
+	 * calculator supports it, see {@link EnergyCalculator#calcEnergies(List,List)}.
+	 *
+	 * @param confs The conformations to analyze
+	 * @return The conformations with attached energies, in the same order
+	 */
+	public List<EnergiedConf> calcEnergies(List<ScoredConf> confs) {
+
+		numCalculations.addAndGet(confs.size());
+
+		List<EnergiedConf> econfs = new ArrayList<>(confs.size());
+		for (int i=0; i<confs.size(); i++) {
+			econfs.add(null);
+		}
+
+		for (List<Integer> indices : groupByTemplates(confs)) {
+
+			List<ParametricMolecule> pmols = new ArrayList<>(indices.size());
+			List<ResidueInteractions> inters = new ArrayList<>(indices.size());
+			for (int i : indices) {
+				RCTuple frag = new RCTuple(confs.get(i).getAssignments());
+				pmols.add(confSpace.makeMolecule(frag));
+				inters.add(makeFragInters(frag));
+			}
+
+			List<EnergyCalculator.EnergiedParametricMolecule> epmols = ecalc.calcEnergies(pmols, inters);
+
+			for (int j=0; j<indices.size(); j++) {
+				int i = indices.get(j);
+				econfs.set(i, new EnergiedConf(confs.get(i), epmols.get(j).energy));
+			}
+		}
+
+		return econfs;
+	}
+
+	/**
+	 * Calculate energies for a batch of conformations, like {@link #calcEnergies(List)},
+	 * using the specified ConfDB table as a cache.
+	 *
+	 * @param confs The conformations to analyze
+	 * @param table the confDB table
+	 * @return The conformations with attached energies, in the same order
+	 */
+	public List<EnergiedConf> calcEnergies(List<ScoredConf> confs, ConfDB.ConfTable table) {
+
+		// no confDB? just compute the energies
+		if (table == null) {
+			return calcEnergies(confs);
+		}
+
+		// check the confDB for the energies
+		List<EnergiedConf> econfs = new ArrayList<>(confs.size());
+		List<Integer> missIndices = new ArrayList<>();
+		List<ScoredConf> misses = new ArrayList<>();
+		for (int i=0; i<confs.size(); i++) {
+			EnergiedConf econf = table.getEnergied(confs.get(i));
+			if (econf != null) {
+				numConfDBReads.incrementAndGet();
+			} else {
+				missIndices.add(i);
+				misses.add(confs.get(i));
+			}
+			econfs.add(econf);
+		}
+
+		if (misses.isEmpty()) {
+			return econfs;
+		}
+
+		// cache misses, compute the energies
+		List<EnergiedConf> missEconfs = calcEnergies(misses);
+
+		// update the ConfDB
+		long timestampNs = TimeTools.getTimestampNs();
+		for (int j=0; j<missIndices.size(); j++) {
+			EnergiedConf econf = missEconfs.get(j);
+			table.setBounds(econf, timestampNs);
+			econfs.set(missIndices.get(j), econf);
+		}
+		table.flush();
+
+		return econfs;
+	}
+
+	/**
+	 * Calculate energies for many conformations, like {@link #calcAllEnergies(List)}, but group
+	 * conformations with the same residue types into batches so they can be minimized together.
+	 * See {@link #calcEnergies(List)}.
+	 *
+	 * @param confs The conformations to analyze
+	 * @param batchSize The maximum number of conformations in each batch
+	 * @return The conformations with attached energies, in the same order
+	 */
+	public List<EnergiedConf> calcAllEnergiesBatched(List<ScoredConf> confs, int batchSize) {
+
+		// allocate space to hold the minimized values
+		List<EnergiedConf> econfs = new ArrayList<>(confs.size());
+		for (int i=0; i<confs.size(); i++) {
+			econfs.add(null);
+		}
+
+		// minimize them all, a batch at a time
+		for (List<Integer> indices : groupByTemplates(confs)) {
+			for (int start=0; start<indices.size(); start+=batchSize) {
+
+				List<Integer> batchIndices = indices.subList(start, Math.min(start + batchSize, indices.size()));
+				List<ScoredConf> batchConfs = new ArrayList<>(batchIndices.size());
+				for (int i : batchIndices) {
+					batchConfs.add(confs.get(i));
+				}
+
+				tasks.submit(() -> calcEnergies(batchConfs), (batchEconfs) -> {
+
+					// save the minimized energies
+					for (int i=0; i<batchIndices.size(); i++) {
+						econfs.set(batchIndices.get(i), batchEconfs.get(i));
+					}
+				});
+			}
+		}
+		tasks.waitForFinish();
+
+		return econfs;
+	}
+
+	/**
+	 * group the confs by residue types, but remember the original order
+	 */
+	private Collection<List<Integer>> groupByTemplates(List<ScoredConf> confs) {
+		Map<List<ResidueTemplate>,List<Integer>> indicesByTemplates = new LinkedHashMap<>();
+		for (int i=0; i<confs.size(); i++) {
+			int[] assignments = confs.get(i).getAssignments();
+			List<ResidueTemplate> templates = new ArrayList<>(assignments.length);
+			for (SimpleConfSpace.Position pos : confSpace.positions) {
+				int rc = assignments[pos.index];
+				templates.add(rc == Conf.Unassigned ? null : pos.resConfs.get(rc).template);
+			}
+			indicesByTemplates.computeIfAbsent(templates, key -> new ArrayList<>()).add(i);
+		}
+		return indicesByTemplates.values();
+	}
+
 	//Making objective functions for EPIC fitting
 	public MoleculeObjectiveFunction makeIntraShellObjFcn(int pos, int rc) {
 		ParametricMolecule bpmol = confSpace.makeMolecule(new RCTuple(pos,rc));
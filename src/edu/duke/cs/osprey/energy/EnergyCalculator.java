@@ -32,6 +32,7 @@
 
 package edu.duke.cs.osprey.energy;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
@@ -54,6 +55,7 @@ import edu.duke.cs.osprey.gpu.cuda.GpuStreamPool;
 import edu.duke.cs.osprey.gpu.cuda.kernels.ResidueCudaCCDMinimizer;
 import edu.duke.cs.osprey.gpu.cuda.kernels.ResidueForcefieldEnergyCuda;
 import edu.duke.cs.osprey.gpu.opencl.GpuQueuePool;
+import edu.duke.cs.osprey.minimization.BatchCCDMinimizer;
 import edu.duke.cs.osprey.minimization.CCDMinimizer;
 import edu.duke.cs.osprey.minimization.CudaCCDMinimizer;
 import edu.duke.cs.osprey.minimization.Minimizer;
@@ -524,15 +526,23 @@ public class EnergyCalculator implements AutoCleanable {
 		public final DoubleMatrix1D params;
 		public final double energy;
 
+		/** true if minimization stopped early, so the energy is only an upper bound on the minimized energy */
+		public final boolean isPartial;
+
 		public EnergiedParametricMolecule(ParametricMolecule pmol, ResidueInteractions inters, double energy) {
 			this(pmol, inters, null, energy);
 		}
 
 		public EnergiedParametricMolecule(ParametricMolecule pmol, ResidueInteractions inters, DoubleMatrix1D params, double energy) {
+			this(pmol, inters, params, energy, false);
+		}
+
+		public EnergiedParametricMolecule(ParametricMolecule pmol, ResidueInteractions inters, DoubleMatrix1D params, double energy, boolean isPartial) {
 			this.pmol = pmol;
 			this.inters = inters;
 			this.params = params;
 			this.energy = energy;
+			this.isPartial = isPartial;
 		}
 	}
 	
@@ -596,6 +606,20 @@ public class EnergyCalculator implements AutoCleanable {
 	 * @return The calculated energy and the associated molecule pose
 	 */
 	public EnergiedParametricMolecule calcEnergy(ParametricMolecule pmol, ResidueInteractions inters) {
+		return calcEnergy(pmol, inters, null);
+	}
+
+	/**
+	 * Version of {@link #calcEnergy(ParametricMolecule,ResidueInteractions)} that lets the caller
+	 * stop minimization early. If minimization stops early, the returned energy is an upper bound
+	 * on the minimized energy, and the result is flagged as partial.
+	 *
+	 * @param pmol The molecule
+	 * @param inters Residue interactions for the energy function
+	 * @param cutoff Decides when to stop minimizing, or null to minimize all the way
+	 * @return The calculated energy and the associated molecule pose
+	 */
+	public EnergiedParametricMolecule calcEnergy(ParametricMolecule pmol, ResidueInteractions inters, Minimizer.Cutoff cutoff) {
 		
 		// short circuit: no inters, no energy!
 		if (inters.size() <= 0) {
@@ -630,14 +654,14 @@ public class EnergyCalculator implements AutoCleanable {
 			MoleculeObjectiveFunction mof = new MoleculeObjectiveFunction(pmol, efunc);
 			try (Minimizer minimizer = context.minimizers.make(mof)) {
 
-				Minimizer.Result result = minimizer.minimizeFrom(x);
+				Minimizer.Result result = minimizer.minimizeFrom(x, cutoff);
 
 				// did we fall into an infinite energy well?
 				if (isInfiniteWell(result.energy)) {
 
 					// try to resolve the clash and try the minimization again
 					Minimizer.Result vdwResult = minimizeWithVdw(pmol, inters, x);
-					result = minimizer.minimizeFrom(vdwResult.dofValues);
+					result = minimizer.minimizeFrom(vdwResult.dofValues, cutoff);
 
 					// are we still in the well?
 					if (isInfiniteWell(result.energy)) {
@@ -649,11 +673,84 @@ public class EnergyCalculator implements AutoCleanable {
 					// we got out of the well, yay!
 				}
 
-				return new EnergiedParametricMolecule(pmol, inters, result.dofValues, result.energy);
+				return new EnergiedParametricMolecule(pmol, inters, result.dofValues, result.energy, result.isPartial);
 			}
 		}
 	}
 
+	/**
+	 * Calculate the energies of a batch of molecules, e.g., conformations from the same sequence.
+	 *
+	 * If all the molecules have the same residue types and degrees of freedom, and this calculator
+	 * uses the {@link Type#Cpu} forcefield, the molecules are minimized together in lockstep
+	 * by a {@link BatchCCDMinimizer}, which gives the same energies as minimizing each molecule separately,
+	 * but shares forcefield parameters across the batch. Otherwise, each molecule is minimized separately
+	 * by {@link #calcEnergy(ParametricMolecule,ResidueInteractions)}.
+	 *
+	 * @param pmols The molecules
+	 * @param inters Residue interactions for the energy function of each molecule
+	 * @return The calculated energies and the associated molecule poses, in the same order as the molecules
+	 */
+	public List<EnergiedParametricMolecule> calcEnergies(List<ParametricMolecule> pmols, List<ResidueInteractions> inters) {
+
+		if (pmols.size() != inters.size()) {
+			throw new IllegalArgumentException("need one residue interactions for each molecule");
+		}
+
+		// can we minimize in a batch?
+		// (the vdW clash resolution options need per-molecule control flow, so don't batch those)
+		boolean canBatch = type == Type.Cpu
+			&& isMinimizing
+			&& infiniteWellEnergy == null
+			&& alwaysResolveClashesEnergy == null
+			&& pmols.size() > 1
+			&& pmols.stream().allMatch(pmol -> pmol.dofBounds.size() > 0)
+			&& inters.stream().allMatch(i -> i.size() > 0);
+		if (canBatch) {
+
+			List<MoleculeObjectiveFunction> fs = new ArrayList<>(pmols.size());
+			try {
+
+				for (int i=0; i<pmols.size(); i++) {
+					ParametricMolecule pmol = pmols.get(i);
+					fs.add(new MoleculeObjectiveFunction(pmol, context.efuncs.make(inters.get(i), pmol.mol)));
+				}
+
+				if (BatchCCDMinimizer.isCompatible(fs)) {
+
+					// start at the centers of the voxels
+					List<DoubleMatrix1D> xs = new ArrayList<>(pmols.size());
+					for (ParametricMolecule pmol : pmols) {
+						DoubleMatrix1D x = DoubleFactory1D.dense.make(pmol.dofs.size());
+						pmol.dofBounds.getCenter(x);
+						xs.add(x);
+					}
+
+					List<Minimizer.Result> results = new BatchCCDMinimizer(fs).minimizeFrom(xs);
+
+					List<EnergiedParametricMolecule> epmols = new ArrayList<>(pmols.size());
+					for (int i=0; i<pmols.size(); i++) {
+						Minimizer.Result result = results.get(i);
+						epmols.add(new EnergiedParametricMolecule(pmols.get(i), inters.get(i), result.dofValues, result.energy));
+					}
+					return epmols;
+				}
+
+			} finally {
+				for (MoleculeObjectiveFunction f : fs) {
+					f.efunc.close();
+				}
+			}
+		}
+
+		// nope, minimize each molecule separately
+		List<EnergiedParametricMolecule> epmols = new ArrayList<>(pmols.size());
+		for (int i=0; i<pmols.size(); i++) {
+			epmols.add(calcEnergy(pmols.get(i), inters.get(i)));
+		}
+		return epmols;
+	}
+
 	private Minimizer.Result minimizeWithVdw(ParametricMolecule pmol, ResidueInteractions inters, DoubleMatrix1D x) {
 		try (EnergyFunction efunc = cpuContext.efuncs.make(inters, pmol.mol)) {
 			ResidueForcefieldEnergy.Vdw vdwEfunc = new ResidueForcefieldEnergy.Vdw((ResidueForcefieldEnergy)efunc);
@@ -0,0 +1,346 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.energy.forcefield;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams.SolvationForcefield;
+import edu.duke.cs.osprey.energy.forcefield.ResPairCache.ResPair;
+import edu.duke.cs.osprey.structure.Residue;
+
+/**
+ * Evaluates a batch of {@link ResidueForcefieldEnergy} functions in lockstep.
+ *
+ * All the energy functions in the batch must have the same residue types at the same residue indices,
+ * so they share atom pairs and forcefield parameters from the {@link ResPairCache}.
+ * Only the atom coordinates and the residue pair offsets (e.g., reference energies) can differ.
+ *
+ * Coordinates are copied into a structure-of-arrays buffer where the conformation index varies fastest,
+ * so the innermost loop runs over conformations with unit stride, and the flags and forcefield parameters
+ * for each atom pair are read only once for the whole batch instead of once per conformation.
+ */
+public class ResidueForcefieldEnergyBatch {
+
+	public final ResidueForcefieldEnergy[] efuncs;
+	public final int numConfs;
+	public final int numPairs;
+
+	private final ResPair[] resPairs; // from the first efunc, the other efuncs have the same infos
+	// layout: [pair][conf]
+	// NOTE: keep offsets and solvation energies separate, so they're added in the same order as ResidueForcefieldEnergy
+	private final double[] pairOffsets;
+	private final double[] pairSolvEnergies;
+	private final boolean[] isBroken;
+
+	// layout per residue: [atom*3 + dim][conf]
+	private final double[][] coords;
+
+	private final double coulombFactor;
+	private final double scaledCoulombFactor;
+
+	// scratch space for the atom pair loops
+	private final double[] resPairEnergies;
+
+	/**
+	 * Returns true if the energy functions can be evaluated together in a batch.
+	 */
+	public static boolean isCompatible(List<ResidueForcefieldEnergy> efuncs) {
+
+		if (efuncs.isEmpty()) {
+			return false;
+		}
+
+		ResidueForcefieldEnergy first = efuncs.get(0);
+		for (ResidueForcefieldEnergy efunc : efuncs) {
+
+			if (efunc.resPairCache != first.resPairCache || efunc.resPairs.length != first.resPairs.length) {
+				return false;
+			}
+
+			for (int i=0; i<first.resPairs.length; i++) {
+				ResPair pair = efunc.resPairs[i];
+				ResPair firstPair = first.resPairs[i];
+				if (pair.info != firstPair.info
+					|| pair.resIndex1 != firstPair.resIndex1
+					|| pair.resIndex2 != firstPair.resIndex2
+					|| pair.weight != firstPair.weight) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	public ResidueForcefieldEnergyBatch(List<ResidueForcefieldEnergy> efuncs) {
+
+		if (!isCompatible(efuncs)) {
+			throw new IllegalArgumentException("energy functions must have the same residue types to be evaluated in a batch");
+		}
+
+		this.efuncs = efuncs.toArray(new ResidueForcefieldEnergy[efuncs.size()]);
+		this.numConfs = this.efuncs.length;
+
+		ResidueForcefieldEnergy first = this.efuncs[0];
+		this.resPairs = first.resPairs;
+		this.numPairs = resPairs.length;
+
+		// gather the per-conf constants
+		pairOffsets = new double[numPairs*numConfs];
+		pairSolvEnergies = new double[numPairs*numConfs];
+		isBroken = new boolean[numConfs];
+		for (int c=0; c<numConfs; c++) {
+			ResidueForcefieldEnergy efunc = this.efuncs[c];
+			isBroken[c] = efunc.isBroken;
+			for (int i=0; i<numPairs; i++) {
+				ResPair pair = efunc.resPairs[i];
+				pairOffsets[i*numConfs + c] = pair.offset;
+				pairSolvEnergies[i*numConfs + c] = pair.solvEnergy;
+			}
+		}
+
+		// allocate the coords buffers, but only for residues we actually use
+		coords = new double[first.residues.size()][];
+		for (ResPair pair : resPairs) {
+			for (int resIndex : new int[] { pair.resIndex1, pair.resIndex2 }) {
+				if (coords[resIndex] == null) {
+					coords[resIndex] = new double[first.residues.get(resIndex).coords.length*numConfs];
+				}
+			}
+		}
+
+		coulombFactor = ForcefieldParams.coulombConstant/first.resPairCache.ffparams.dielectric;
+		scaledCoulombFactor = coulombFactor*first.resPairCache.ffparams.forcefld.coulombScaling;
+
+		resPairEnergies = new double[numConfs];
+
+		// read the initial coords
+		for (int c=0; c<numConfs; c++) {
+			updateCoords(c);
+		}
+	}
+
+	/**
+	 * Copy the coordinates of all the residues for one conformation into the batch.
+	 */
+	public void updateCoords(int conf) {
+		for (int resIndex=0; resIndex<coords.length; resIndex++) {
+			updateCoords(conf, resIndex);
+		}
+	}
+
+	/**
+	 * Copy the coordinates of one residue for one conformation into the batch.
+	 * Call this after a degree of freedom moves the residue.
+	 */
+	public void updateCoords(int conf, int resIndex) {
+
+		double[] dst = coords[resIndex];
+		if (dst == null) {
+			return;
+		}
+
+		double[] src = efuncs[conf].residues.get(resIndex).coords;
+		for (int i=0; i<src.length; i++) {
+			dst[i*numConfs + conf] = src[i];
+		}
+	}
+
+	/**
+	 * Returns the index of the residue in the batch, or -1 if the residue isn't in the first conformation.
+	 */
+	public int findResIndex(Residue res) {
+		return efuncs[0].residues.indexOf(res);
+	}
+
+	/**
+	 * Returns the indices of all the residue pairs.
+	 */
+	public int[] makePairIndices() {
+		int[] indices = new int[numPairs];
+		for (int i=0; i<numPairs; i++) {
+			indices[i] = i;
+		}
+		return indices;
+	}
+
+	/**
+	 * Returns the indices of the residue pairs that include the residue.
+	 */
+	public int[] makePairIndicesSubset(int resIndex) {
+		return Arrays.stream(makePairIndices())
+			.filter(i -> resPairs[i].resIndex1 == resIndex || resPairs[i].resIndex2 == resIndex)
+			.toArray();
+	}
+
+	/**
+	 * Compute the energies of all the conformations, using only the given residue pairs.
+	 *
+	 * Results are bitwise identical to {@link ResidueForcefieldEnergy#getEnergy()} on each conformation,
+	 * since residue pairs, atom pairs, offsets, and solvation energies are all summed in the same order.
+	 *
+	 * @param pairIndices the residue pairs, see {@link #makePairIndices()} and {@link #makePairIndicesSubset(int)}
+	 * @param energies receives the energy for each conformation
+	 */
+	public void getEnergies(int[] pairIndices, double[] energies) {
+
+		// NOTE: like ResidueForcefieldEnergy.getEnergy(), this function gets hammered a lot!
+		// don't make changes here unless you're carefully profiling too
+
+		int n = numConfs;
+
+		// copy stuff to the stack/registers, to improve CPU cache performance
+		ForcefieldParams ffparams = efuncs[0].resPairCache.ffparams;
+		boolean useHEs = ffparams.hElect;
+		boolean useHvdW = ffparams.hVDW;
+		double coulombFactor = this.coulombFactor;
+		double scaledCoulombFactor = this.scaledCoulombFactor;
+		boolean distDepDielect = ffparams.distDepDielect;
+		boolean useEEF1 = ffparams.solvationForcefield == SolvationForcefield.EEF1;
+		double[] resPairEnergies = this.resPairEnergies;
+
+		Arrays.fill(energies, 0, n, 0.0);
+
+		for (int pairIndex : pairIndices) {
+			ResPair pair = resPairs[pairIndex];
+
+			double[] coords1 = coords[pair.resIndex1];
+			double[] coords2 = coords[pair.resIndex2];
+			int numAtomPairs = pair.info.numAtomPairs;
+			long[] flags = pair.info.flags;
+			double[] precomputed = pair.info.precomputed;
+
+			Arrays.fill(resPairEnergies, 0.0);
+
+			// for each atom pair...
+			int pos = 0;
+			for (int j=0; j<numAtomPairs; j++) {
+
+				// read the flags, once for the whole batch
+				long atomPairFlags = flags[j];
+				int atomOffset2 = (int)(atomPairFlags & 0xffff);
+				atomPairFlags >>= 16;
+				int atomOffset1 = (int)(atomPairFlags & 0xffff);
+				atomPairFlags >>= 46;
+				boolean isHeavyPair = (atomPairFlags & 0x1) == 0x1;
+				atomPairFlags >>= 1;
+				boolean is14Bonded = (atomPairFlags & 0x1) == 0x1;
+
+				// read the forcefield params, also once for the whole batch
+				boolean doElect = isHeavyPair || useHEs;
+				double chargeFactor = precomputed[pos]*(is14Bonded ? scaledCoulombFactor : coulombFactor);
+				boolean doVdw = isHeavyPair || useHvdW;
+				double Aij = precomputed[pos + 1];
+				double Bij = precomputed[pos + 2];
+				pos += 3;
+				boolean doSolv = useEEF1 && isHeavyPair;
+				int solvPos = pos;
+				if (useEEF1) {
+					pos += 6;
+				}
+
+				double radius1 = 0, lambda1 = 0, alpha1 = 0, radius2 = 0, lambda2 = 0, alpha2 = 0;
+				if (doSolv) {
+					radius1 = precomputed[solvPos];
+					lambda1 = precomputed[solvPos + 1];
+					alpha1 = precomputed[solvPos + 2];
+					radius2 = precomputed[solvPos + 3];
+					lambda2 = precomputed[solvPos + 4];
+					alpha2 = precomputed[solvPos + 5];
+				}
+
+				int x1 = atomOffset1*n;
+				int y1 = x1 + n;
+				int z1 = y1 + n;
+				int x2 = atomOffset2*n;
+				int y2 = x2 + n;
+				int z2 = y2 + n;
+
+				// then loop over the conformations
+				for (int c=0; c<n; c++) {
+
+					double d = coords1[x1 + c] - coords2[x2 + c];
+					double r2 = d*d;
+					d = coords1[y1 + c] - coords2[y2 + c];
+					r2 += d*d;
+					d = coords1[z1 + c] - coords2[z2 + c];
+					r2 += d*d;
+					double r = Math.sqrt(r2);
+
+					double resPairEnergy = resPairEnergies[c];
+
+					// electrostatics
+					if (doElect) {
+						if (distDepDielect) {
+							resPairEnergy += chargeFactor/r2;
+						} else {
+							resPairEnergy += chargeFactor/r;
+						}
+					}
+
+					// van der Waals
+					if (doVdw) {
+						double r6 = r2*r2*r2;
+						double r12 = r6*r6;
+						resPairEnergy += Aij/r12 - Bij/r6;
+					}
+
+					// solvation
+					if (doSolv && r2 < ForcefieldParams.solvCutoff2) {
+						double Xij = (r - radius1)/lambda1;
+						double Xji = (r - radius2)/lambda2;
+						resPairEnergy -= (alpha1*Math.exp(-Xij*Xij) + alpha2*Math.exp(-Xji*Xji))/r2;
+					}
+
+					resPairEnergies[c] = resPairEnergy;
+				}
+			}
+
+			// apply weights and offsets
+			double weight = pair.weight;
+			int constOffset = pairIndex*n;
+			for (int c=0; c<n; c++) {
+				energies[c] += (resPairEnergies[c] + pairOffsets[constOffset + c] + pairSolvEnergies[constOffset + c])*weight;
+			}
+		}
+
+		// broken conformations always have infinite energy
+		for (int c=0; c<n; c++) {
+			if (isBroken[c]) {
+				energies[c] = Double.POSITIVE_INFINITY;
+			}
+		}
+	}
+}
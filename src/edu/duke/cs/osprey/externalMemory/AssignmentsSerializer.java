@@ -156,6 +156,7 @@ public abstract class AssignmentsSerializer {
 	public final RCs rcs;
 	public final Encoding encoding;
 	public final EntrySize entrySize;
+	public final int numEntryBytes;
 
 	protected AssignmentsSerializer(RCs rcs, int numBytes) {
 		this.rcs = rcs;
@@ -168,7 +169,8 @@ public abstract class AssignmentsSerializer {
 			}
 		}
 		encoding = Encoding.pickBest(maxVal);
-		entrySize = EntrySize.findBigEnoughSizeFor(rcs.getNumPos()*encoding.numBytes + numBytes);
+		numEntryBytes = rcs.getNumPos()*encoding.numBytes + numBytes;
+		entrySize = EntrySize.findBigEnoughSizeFor(numEntryBytes);
 	}
 	
 	public EntrySize getEntrySize() {
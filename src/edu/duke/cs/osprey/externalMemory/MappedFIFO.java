@@ -0,0 +1,236 @@
+package edu.duke.cs.osprey.externalMemory;
+
+import edu.duke.cs.tpie.serialization.SerializingFIFOQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+
+
+/**
+ * A FIFO queue that keeps values in memory until a memory budget is reached,
+ * and then spills values to a memory-mapped temporary file.
+ *
+ * The file is divided into fixed-size segments. Once all the values in a segment
+ * have been read, the segment is recycled for new values, so the file only ever
+ * needs to be as large as the biggest backlog of spilled values.
+ *
+ * Unlike {@link Queue.ExternalFIFOFactory}, this queue is written entirely in Java
+ * and doesn't need the native TPIE library.
+ */
+public class MappedFIFO<T> implements Queue.FIFO<T>, AutoCloseable {
+
+	public static final long DefaultMemoryBytes = 64L*1024*1024; // 64 MiB
+	public static final int DefaultSegmentBytes = 4*1024*1024; // 4 MiB
+
+	private static class Segment {
+
+		final MappedByteBuffer buf;
+
+		int numWritten = 0;
+		int numRead = 0;
+
+		Segment(MappedByteBuffer buf) {
+			this.buf = buf;
+		}
+	}
+
+	public final SerializingFIFOQueue.Serializer<T> serializer;
+	public final int entryBytes;
+	public final long maxMemoryEntries;
+	public final int segmentBytes;
+	public final int entriesPerSegment;
+	public final File dir;
+
+	private final ArrayDeque<T> memory = new ArrayDeque<>();
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+	private final ArrayDeque<Segment> freeSegments = new ArrayDeque<>();
+
+	private File file = null;
+	private RandomAccessFile raf = null;
+	private FileChannel channel = null;
+	private int numSegments = 0;
+	private long numSpilled = 0;
+	private T spilledHead = null;
+
+	public MappedFIFO(SerializingFIFOQueue.Serializer<T> serializer, int entryBytes) {
+		this(serializer, entryBytes, DefaultMemoryBytes, DefaultSegmentBytes, ExternalMemory.getTempDir());
+	}
+
+	/**
+	 * @param serializer writes and reads values to and from the file
+	 * @param entryBytes the maximum number of bytes the serializer writes for one value
+	 * @param memoryBytes the budget for values held in memory, estimated by their serialized size
+	 * @param segmentBytes the size of each segment in the file
+	 * @param dir the directory for the temporary file
+	 */
+	public MappedFIFO(SerializingFIFOQueue.Serializer<T> serializer, int entryBytes, long memoryBytes, int segmentBytes, File dir) {
+
+		if (entryBytes <= 0) {
+			throw new IllegalArgumentException("entries must have at least one byte, not " + entryBytes);
+		}
+		if (segmentBytes < entryBytes) {
+			throw new IllegalArgumentException(String.format("segments (%d bytes) must hold at least one entry (%d bytes)",
+				segmentBytes, entryBytes
+			));
+		}
+
+		this.serializer = serializer;
+		this.entryBytes = entryBytes;
+		this.maxMemoryEntries = memoryBytes/entryBytes;
+		this.segmentBytes = segmentBytes;
+		this.entriesPerSegment = segmentBytes/entryBytes;
+		this.dir = dir;
+	}
+
+	@Override
+	public void push(T val) {
+
+		// keep values in memory if we can, but don't jump ahead of the spilled values
+		if (numSpilled == 0 && memory.size() < maxMemoryEntries) {
+			memory.add(val);
+			return;
+		}
+
+		// otherwise, spill to the file
+		Segment segment = segments.peekLast();
+		if (segment == null || segment.numWritten == entriesPerSegment) {
+			segment = allocateSegment();
+			segments.add(segment);
+		}
+
+		int start = segment.numWritten*entryBytes;
+		segment.buf.position(start);
+		serializer.serialize(val, segment.buf);
+		if (segment.buf.position() - start > entryBytes) {
+			throw new IllegalStateException(String.format("serializer wrote %d bytes, but entries only have %d bytes",
+				segment.buf.position() - start, entryBytes
+			));
+		}
+		segment.numWritten++;
+		numSpilled++;
+	}
+
+	@Override
+	public T peek() {
+
+		if (!memory.isEmpty()) {
+			return memory.peek();
+		}
+
+		if (numSpilled == 0) {
+			return null;
+		}
+
+		// read the next spilled value, but only once
+		if (spilledHead == null) {
+			Segment segment = segments.peekFirst();
+			segment.buf.position(segment.numRead*entryBytes);
+			spilledHead = serializer.deserialize(segment.buf);
+		}
+		return spilledHead;
+	}
+
+	@Override
+	public void pop() {
+
+		if (!memory.isEmpty()) {
+			memory.remove();
+			return;
+		}
+
+		if (numSpilled == 0) {
+			throw new NoSuchElementException();
+		}
+
+		Segment segment = segments.peekFirst();
+		segment.numRead++;
+		numSpilled--;
+		spilledHead = null;
+
+		// recycle the segment once we've read everything in it
+		if (segment.numRead == entriesPerSegment || numSpilled == 0) {
+			segments.removeFirst();
+			segment.numRead = 0;
+			segment.numWritten = 0;
+			freeSegments.add(segment);
+		}
+	}
+
+	@Override
+	public long size() {
+		return memory.size() + numSpilled;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** the number of values currently spilled to the file */
+	public long getNumSpilled() {
+		return numSpilled;
+	}
+
+	/** the number of segments in the file */
+	public int getNumSegments() {
+		return numSegments;
+	}
+
+	private Segment allocateSegment() {
+
+		// reuse an old segment if possible
+		Segment segment = freeSegments.poll();
+		if (segment != null) {
+			return segment;
+		}
+
+		try {
+
+			// make the file if needed
+			if (channel == null) {
+				file = File.createTempFile("osprey-fifo-", ".bin", dir);
+				file.deleteOnExit();
+				raf = new RandomAccessFile(file, "rw");
+				channel = raf.getChannel();
+			}
+
+			// mapping past the end of the file grows the file
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, (long)numSegments*segmentBytes, segmentBytes);
+			numSegments++;
+			return new Segment(buf);
+
+		} catch (IOException ex) {
+			throw new RuntimeException("can't allocate FIFO segment in " + dir, ex);
+		}
+	}
+
+	@Override
+	public void close() {
+
+		memory.clear();
+		segments.clear();
+		freeSegments.clear();
+		numSpilled = 0;
+		spilledHead = null;
+
+		if (channel != null) {
+			try {
+				channel.close();
+				raf.close();
+			} catch (IOException ex) {
+				throw new RuntimeException("can't close FIFO file " + file, ex);
+			} finally {
+				file.delete();
+				channel = null;
+				raf = null;
+				file = null;
+				numSegments = 0;
+			}
+		}
+	}
+}
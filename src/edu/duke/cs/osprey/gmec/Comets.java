@@ -11,6 +11,7 @@ import edu.duke.cs.osprey.astar.seq.scoring.NOPSeqAStarScorer;
 import edu.duke.cs.osprey.astar.seq.scoring.SeqAStarScorer;
 import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.tools.HashCalculator;
 import edu.duke.cs.osprey.tools.MathTools;
 
@@ -360,7 +361,7 @@ public class Comets {
 		final State state;
 		final Sequence sequence; // filtered to the state
 
-		ConfSearch confTree = null;
+		ConfSearchCache.Entry confTree = null;
 		ConfSearch.ScoredConf minScoreConf = null;
 		ConfSearch.EnergiedConf minEnergyConf = null;
 		ConfSearch.EnergiedConf gmec = null;
@@ -377,7 +378,12 @@ public class Comets {
 			confTree = confTrees.make(() -> state.confTreeFactory.apply(rcs));
 		}
 
-		void refineBounds(ConfDB.ConfTable confTable) {
+		/**
+		 * Submits the next batch of conformation minimizations, but doesn't wait for them to finish,
+		 * so refinement of other states can overlap with this one on the task executor.
+		 * Call {@link #finishRefinement()} after the executor is done.
+		 */
+		void startRefinement(ConfDB.ConfTable confTable) {
 
 			// already complete? no need to do more work
 			if (gmec != null) {
@@ -412,15 +418,26 @@ public class Comets {
 				// refine the upper bound
 				state.confEcalc.calcEnergyAsync(conf, confTable, econf -> {
 
-					// NOTE: don't need to lock here, since the main thread is waiting
+					// NOTE: don't need to lock here, since the main thread is waiting,
+					// and listeners for this state only ever touch this state
 
 					if (minEnergyConf == null || econf.getEnergy() < minEnergyConf.getEnergy()) {
 						minEnergyConf = econf;
 					}
 				});
 			}
+		}
+
+		/**
+		 * Updates the GMEC bounds using the energies computed by {@link #startRefinement(ConfDB.ConfTable)}.
+		 * The task executor must be finished before calling this.
+		 */
+		void finishRefinement() {
 
-			state.confEcalc.tasks.waitForFinish();
+			// nothing submitted? nothing to do
+			if (confs.isEmpty()) {
+				return;
+			}
 
 			// do we know the GMEC yet?
 			ConfSearch.ScoredConf maxScoreConf = confs.get(confs.size() - 1);
@@ -428,6 +445,8 @@ public class Comets {
 				gmec = minEnergyConf;
 
 				// release the resources used by the conf tree (could be a lot of memory)
+				// and make sure it doesn't count against the cache capacity anymore
+				confTree.clearRefs();
 				confTree = null;
 			}
 
@@ -497,8 +516,17 @@ public class Comets {
 		public double refineBounds(ConfDBs confDBs) {
 
 			// refine the GMEC bounds for each state
+			// submit work for all the states first, so their minimizations can overlap on the task executors
+			Set<TaskExecutor> tasks = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (State state : states) {
+				statesConfs.get(state).startRefinement(confDBs.tables.get(state));
+				tasks.add(state.confEcalc.tasks);
+			}
+			for (TaskExecutor t : tasks) {
+				t.waitForFinish();
+			}
 			for (State state : states) {
-				statesConfs.get(state).refineBounds(confDBs.tables.get(state));
+				statesConfs.get(state).finishRefinement();
 			}
 
 			// if any constraints are violated, score the node +inf,
@@ -580,6 +608,19 @@ public class Comets {
 		 */
 		private Integer minNumConfTrees = null;
 
+		/**
+		 * The maximum total number of A* nodes to keep in conformation trees
+		 * that are protected from garbage collection.
+		 *
+		 * Defaults to null, which means no limit.
+		 *
+		 * When the limit is exceeded, the least recently-used trees are exposed to
+		 * the garbage collector (the most recently-used tree is always kept),
+		 * and are re-instantiated if needed again, just like with {@link #minNumConfTrees}.
+		 * Use this to keep COMETS within memory on large sequence spaces.
+		 */
+		private Long maxNumConfTreeNodes = null;
+
 		private boolean printToConsole = true;
 
 		/** File to which to log sequences as they are found */
@@ -614,6 +655,11 @@ public class Comets {
 			return this;
 		}
 
+		public Builder setMaxNumConfTreeNodes(Long val) {
+			maxNumConfTreeNodes = val;
+			return this;
+		}
+
 		public Builder setPrintToConsole(boolean val) {
 			printToConsole = val;
 			return this;
@@ -625,7 +671,7 @@ public class Comets {
 		}
 
 		public Comets build() {
-			return new Comets(objective, constraints, objectiveWindowSize, objectiveWindowMax, maxSimultaneousMutations, minNumConfTrees, printToConsole, logFile);
+			return new Comets(objective, constraints, objectiveWindowSize, objectiveWindowMax, maxSimultaneousMutations, minNumConfTrees, maxNumConfTreeNodes, printToConsole, logFile);
 		}
 	}
 
@@ -636,6 +682,7 @@ public class Comets {
 	public final double objectiveWindowMax;
 	public final int maxSimultaneousMutations;
 	public final Integer minNumConfTrees;
+	public final Long maxNumConfTreeNodes;
 	public final boolean printToConsole;
 	public final File logFile;
 
@@ -645,7 +692,7 @@ public class Comets {
 	private final Map<StateConfs.Key,StateConfs> stateConfsCache = new HashMap<>();
 	private final ConfSearchCache confTrees;
 
-	private Comets(LME objective, List<LME> constraints, double objectiveWindowSize, double objectiveWindowMax, int maxSimultaneousMutations, Integer minNumConfTrees, boolean printToConsole, File logFile) {
+	private Comets(LME objective, List<LME> constraints, double objectiveWindowSize, double objectiveWindowMax, int maxSimultaneousMutations, Integer minNumConfTrees, Long maxNumConfTreeNodes, boolean printToConsole, File logFile) {
 
 		this.objective = objective;
 		this.constraints = constraints;
@@ -653,6 +700,7 @@ public class Comets {
 		this.objectiveWindowMax = objectiveWindowMax;
 		this.maxSimultaneousMutations = maxSimultaneousMutations;
 		this.minNumConfTrees = minNumConfTrees;
+		this.maxNumConfTreeNodes = maxNumConfTreeNodes;
 		this.printToConsole = printToConsole;
 		this.logFile = logFile;
 
@@ -678,7 +726,7 @@ public class Comets {
 				.collect(Collectors.toList())
 		);
 
-		confTrees = new ConfSearchCache(minNumConfTrees);
+		confTrees = new ConfSearchCache(minNumConfTrees, maxNumConfTreeNodes);
 
 		log("sequence space has %s sequences\n%s", formatBig(new RTs(seqSpace).getNumSequences()), seqSpace);
 	}
@@ -787,6 +835,7 @@ public class Comets {
 		} else {
 			log("COMETS found the best %d within the window that satisfy all the constraints", infos.size());
 		}
+		log("conformation tree cache: %s", confTrees.stats);
 
 		return infos;
 	}
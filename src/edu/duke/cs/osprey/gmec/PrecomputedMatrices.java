@@ -59,6 +59,7 @@ import edu.duke.cs.osprey.tupexp.NewConfETupleExpander;
 import edu.duke.cs.osprey.tupexp.TupExpChooser;
 import edu.duke.cs.osprey.tupexp.TupleExpander;
 import edu.duke.cs.osprey.voxq.VoxelGCalculator;
+import java.io.File;
 
 /**
  *
@@ -269,6 +270,7 @@ public class PrecomputedMatrices {
         }
         else if(type == MatrixType.EPICMAT){
             NewEPICMatrixCalculator emCalc = new NewEPICMatrixCalculator(confSpace, confECalc, pruneMat, epicSettings);
+            emCalc.setCheckpointFile(new File(name + "." + type.name() + ".checkpoint"));
             emCalc.calcPEM();
             return emCalc.getEPICMatrix();
             //EnergyMatrixCalculator emCalc = new EnergyMatrixCalculator(confSpace,shellResidues,pruneMat,epicSettings);
@@ -559,9 +559,7 @@ public class BBKStar {
 		complex.check();
 
 		// clear any previous state
-		proteinPfuncs.clear();
-		ligandPfuncs.clear();
-		complexPfuncs.clear();
+		closePfuncs();
 
 		List<KStar.ScoredSequence> scoredSequences = new ArrayList<>();
 
@@ -655,11 +653,25 @@ public class BBKStar {
 					throw new Error("BBK* ended, but the tree isn't empty and we didn't return enough sequences. This is a bug.");
 				}
 			}
+
+		} finally {
+
+			// cleanup the pfuncs we didn't finish
+			closePfuncs();
 		}
 
 		return scoredSequences;
 	}
 
+	private void closePfuncs() {
+		for (Map<Sequence,PartitionFunction> pfuncs : Arrays.asList(proteinPfuncs, ligandPfuncs, complexPfuncs)) {
+			for (PartitionFunction pfunc : pfuncs.values()) {
+				pfunc.close();
+			}
+			pfuncs.clear();
+		}
+	}
+
 	private void reportSequence(SingleSequenceNode ssnode, List<KStar.ScoredSequence> scoredSequences) {
 
 		KStarScore kstarScore = ssnode.makeKStarScore();
@@ -36,6 +36,7 @@ import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
+import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
 
 import java.io.File;
@@ -103,6 +104,12 @@ public class KStar {
 			 */
 			private boolean useExternalMemory = false;
 
+			/**
+			 * Minimize up to this many conformations with the same residue types together in lockstep,
+			 * see {@link GradientDescentPfunc#setEnergyBatchSize(int)}. 1 minimizes each conformation separately.
+			 */
+			private int energyBatchSize = 1;
+
 			public Builder setEpsilon(double val) {
 				epsilon = val;
 				return this;
@@ -152,8 +159,13 @@ public class KStar {
 				return this;
 			}
 
+			public Builder setEnergyBatchSize(int val) {
+				energyBatchSize = val;
+				return this;
+			}
+
 			public Settings build() {
-				return new Settings(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, showPfuncProgress, useExternalMemory);
+				return new Settings(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, showPfuncProgress, useExternalMemory, energyBatchSize);
 			}
 		}
 
@@ -163,15 +175,21 @@ public class KStar {
 		public final KStarScoreWriter.Writers scoreWriters;
 		public final boolean showPfuncProgress;
 		public final boolean useExternalMemory;
+		public final int energyBatchSize;
 
 
 		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations, KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, boolean useExternalMemory) {
+			this(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, dumpPfuncConfs, useExternalMemory, 1);
+		}
+
+		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations, KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, boolean useExternalMemory, int energyBatchSize) {
 			this.epsilon = epsilon;
 			this.stabilityThreshold = stabilityThreshold;
 			this.maxSimultaneousMutations = maxSimultaneousMutations;
 			this.scoreWriters = scoreWriters;
 			this.showPfuncProgress = dumpPfuncConfs;
 			this.useExternalMemory = useExternalMemory;
+			this.energyBatchSize = energyBatchSize;
 		}
 	}
 
@@ -265,6 +283,9 @@ public class KStar {
 			if (settings.useExternalMemory) {
 				PartitionFunction.WithExternalMemory.setOrThrow(pfunc, true, rcs);
 			}
+			if (pfunc instanceof GradientDescentPfunc) {
+				((GradientDescentPfunc)pfunc).setEnergyBatchSize(settings.energyBatchSize);
+			}
 			ConfSearch astar = confSearchFactory.make(rcs);
 			pfunc.init(astar, rcs.getNumConformations(), settings.epsilon);
 			pfunc.setStabilityThreshold(stabilityThreshold);
@@ -275,6 +296,7 @@ public class KStar {
 			// save the result
 			result = pfunc.makeResult();
 			pfuncResults.put(sequence, result);
+			pfunc.close();
 
 			/* HACKHACK: we're done using the A* tree, pfunc, etc
 				and normally the garbage collector will clean them up,
@@ -38,6 +38,7 @@ import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.externalMemory.ExternalMemory;
+import edu.duke.cs.osprey.minimization.Minimizer;
 import edu.duke.cs.osprey.tools.*;
 
 import java.math.BigDecimal;
@@ -83,6 +84,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 		long numEnergiedConfs = 0;
 		BigDecimal lowerScoreWeightSum = BigDecimal.ZERO;
 		BigDecimal energyWeightSum = BigDecimal.ZERO;
+		BigDecimal partialWeightGapSum = BigDecimal.ZERO; // score weights minus energy weights of partially-minimized confs
 		BigDecimal minLowerScoreWeight = MathTools.BigPositiveInfinity;
 		BigDecimal cumulativeZReduction = BigDecimal.ZERO;
 		ArrayList<Integer> minList = new ArrayList<Integer>();
@@ -148,6 +150,9 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 				.sub(lowerScoreWeightSum)
 				.add(energyWeightSum)
 
+				// except partially-minimized energies, which only bound the lower side
+				.add(partialWeightGapSum)
+
 				.get();
 		}
 		public BigDecimal getUpperBoundNoE() {
@@ -200,6 +205,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 	private ConfListener confListener = null;
 	private boolean isReportingProgress = false;
 	private Stopwatch stopwatch = new Stopwatch().start();
+	private ConfSearch.Splitter confsSplitter = null;
 	private ConfSearch scoreConfs = null;
 	private ConfSearch energyConfs = null;
 	private BoltzmannCalculator bcalc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
@@ -214,6 +220,8 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 	private long numScoreConfsEnumerated = 0;
 
 	private ConfDB.ConfTable confTable = null;
+	private Double minimizationTolerance = null;
+	private int energyBatchSize = 1;
 
 	private boolean useExternalMemory = false;
 	private RCs rcs = null;
@@ -271,6 +279,30 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 		this.rcs = rcs;
 	}
 
+	/**
+	 * Stop minimizing conformations once their energies are within this many kcal/mol
+	 * of their scores, instead of always minimizing to convergence. Partially-minimized
+	 * energies only tighten the lower bound on Z, so both bounds stay rigorous.
+	 * Null (the default) always minimizes to convergence.
+	 */
+	public void setMinimizationTolerance(Double val) {
+		minimizationTolerance = val;
+	}
+
+	/**
+	 * Minimize up to this many conformations at once in each energy step, so conformations
+	 * with the same residue types can be minimized together in lockstep.
+	 * See {@link ConfEnergyCalculator#calcEnergies(List)}.
+	 * Batches are only used when minimizing to convergence, see {@link #setMinimizationTolerance}.
+	 * 1 (the default) minimizes each conformation separately.
+	 */
+	public void setEnergyBatchSize(int val) {
+		if (val < 1) {
+			throw new IllegalArgumentException("energy batch size must be at least 1");
+		}
+		energyBatchSize = val;
+	}
+
 	public void traceTo(PfuncSurface val) {
 		surf = val;
 	}
@@ -281,7 +313,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 		init(numConfsBeforePruning, targetEpsilon);
 
 		// split the confs between the upper and lower bounds
-		ConfSearch.Splitter confsSplitter = new ConfSearch.Splitter(confSearch, useExternalMemory, rcs);
+		confsSplitter = new ConfSearch.Splitter(confSearch, useExternalMemory, rcs);
 		scoreConfs = confsSplitter.first;
 		energyConfs = confsSplitter.second;
 	}
@@ -301,6 +333,9 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 			throw new IllegalArgumentException("target epsilon must be greater than zero");
 		}
 
+		// cleanup the confs from any previous computation
+		close();
+
 		this.targetEpsilon = targetEpsilon;
 
 		// init state
@@ -381,6 +416,62 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 
 				case Energy: {
 
+					// minimize a batch of confs together if we can
+					if (energyBatchSize > 1 && minimizationTolerance == null) {
+
+						// get the next energy confs, if any
+						List<ConfSearch.ScoredConf> confs = new ArrayList<>();
+						int maxBatchSize = Math.min(energyBatchSize, maxNumConfs - numConfsEnergied);
+						while (confs.size() < maxBatchSize) {
+							ConfSearch.ScoredConf conf = energyConfs.nextConf();
+							if (conf != null) {
+								numEnergyConfsEnumerated++;
+							}
+							if (conf == null || conf.getScore() == Double.POSITIVE_INFINITY) {
+								hasEnergyConfs = false;
+								keepStepping = false;
+								break;
+							}
+							confs.add(conf);
+						}
+						if (confs.isEmpty()) {
+							break;
+						}
+
+						numConfsEnergied += confs.size();
+
+						class EnergyBatchResult {
+							List<ConfSearch.EnergiedConf> econfs;
+							List<BigDecimal> scoreWeights = new ArrayList<>();
+							List<BigDecimal> energyWeights = new ArrayList<>();
+							Stopwatch stopwatch = new Stopwatch();
+						}
+
+						ecalc.tasks.submit(
+							() -> {
+								// compute the energies and weights (and time it)
+								EnergyBatchResult result = new EnergyBatchResult();
+								result.stopwatch.start();
+								result.econfs = ecalc.calcEnergies(confs, confTable);
+								for (ConfSearch.EnergiedConf econf : result.econfs) {
+									result.scoreWeights.add(bcalc.calc(econf.getScore()));
+									result.energyWeights.add(bcalc.calc(econf.getEnergy()));
+								}
+								result.stopwatch.stop();
+								return result;
+							},
+							(result) -> {
+								// spread the time over the batch, so the energy steps stay comparable to the score steps
+								double seconds = result.stopwatch.getTimeS()/result.econfs.size();
+								for (int i=0; i<result.econfs.size(); i++) {
+									onEnergy(result.econfs.get(i), false, result.scoreWeights.get(i), result.energyWeights.get(i), seconds);
+								}
+							}
+						);
+
+						break;
+					}
+
 					// get the next energy conf, if any
 					ConfSearch.ScoredConf conf = energyConfs.nextConf();
 					if (conf != null) {
@@ -395,7 +486,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 					numConfsEnergied++;
 
 					class EnergyResult {
-						ConfSearch.EnergiedConf econf;
+						ConfEnergyCalculator.MinimizedConf econf;
 						BigDecimal scoreWeight;
 						BigDecimal energyWeight;
 						Stopwatch stopwatch = new Stopwatch();
@@ -406,14 +497,17 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 							// compute one energy and weights (and time it)
 							EnergyResult result = new EnergyResult();
 							result.stopwatch.start();
-							result.econf = ecalc.calcEnergy(conf, confTable);
+							Minimizer.Cutoff cutoff = minimizationTolerance == null
+								? null
+								: Minimizer.Cutoff.within(conf.getScore(), minimizationTolerance);
+							result.econf = ecalc.calcEnergy(conf, confTable, cutoff);
 							result.scoreWeight = bcalc.calc(result.econf.getScore());
 							result.energyWeight = bcalc.calc(result.econf.getEnergy());
 							result.stopwatch.stop();
 							return result;
 						},
 						(result) -> {
-							onEnergy(result.econf, result.scoreWeight, result.energyWeight, result.stopwatch.getTimeS());
+							onEnergy(result.econf, result.econf.isPartial, result.scoreWeight, result.energyWeight, result.stopwatch.getTimeS());
 						}
 					);
 
@@ -518,15 +612,32 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 		if (!state.isStable(stabilityThreshold)) {
 			status = Status.Unstable;
 		}
+
+		// we're done, cleanup the confs we'll never read
+		if (!status.canContinue()) {
+			close();
+		}
 	}
 
-	private void onEnergy(ConfSearch.EnergiedConf econf, BigDecimal scoreWeight, BigDecimal energyWeight, double seconds) {
+	@Override
+	public void close() {
+		if (confsSplitter != null) {
+			confsSplitter.close();
+			confsSplitter = null;
+		}
+	}
+
+	private void onEnergy(ConfSearch.EnergiedConf econf, boolean isPartial, BigDecimal scoreWeight, BigDecimal energyWeight, double seconds) {
 
 		synchronized (this) { // don't race the main thread
 
 			// update the state
 			state.energyWeightSum = state.energyWeightSum.add(energyWeight);
 			state.lowerScoreWeightSum = state.lowerScoreWeightSum.add(scoreWeight);
+			if (isPartial) {
+				// the minimized energy could still be as low as the score, so keep the score weight in the upper bound
+				state.partialWeightGapSum = state.partialWeightGapSum.add(scoreWeight.subtract(energyWeight));
+			}
 			state.numEnergiedConfs++;
 			state.energyOps = 1.0/seconds;
 			if (MathTools.isLessThan(scoreWeight, state.minLowerScoreWeight)) {
@@ -538,7 +649,9 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfTable, Pa
 			state.dEnergy = calcSlope(delta, state.prevDelta, state.dScore);
 			state.prevDelta = delta;
 
-			state.cumulativeZReduction = state.cumulativeZReduction.add(scoreWeight.subtract(energyWeight));
+			if (!isPartial) {
+				state.cumulativeZReduction = state.cumulativeZReduction.add(scoreWeight.subtract(energyWeight));
+			}
 			int minimizationSize = econf.getAssignments().length;
 			if(state.minList.size() < minimizationSize) {
 				state.minList.addAll(new ArrayList<Integer>(Collections.nCopies(minimizationSize - state.minList.size(), 0)));
@@ -49,7 +49,7 @@ import edu.duke.cs.osprey.lute.LUTEPfunc;
 import edu.duke.cs.osprey.tools.BigMath;
 import edu.duke.cs.osprey.tools.MathTools;
 
-public interface PartitionFunction {
+public interface PartitionFunction extends AutoCloseable {
 	
 	public static enum Status {
 		
@@ -260,6 +260,15 @@ public interface PartitionFunction {
 		compute(Integer.MAX_VALUE);
 	}
 
+	/**
+	 * Releases any resources held by the calculator, e.g. external memory,
+	 * once the partition function won't be computed any further.
+	 */
+	@Override
+	default void close() {
+		// nothing to release by default
+	}
+
 	public default Result makeResult() {
 		return new Result(getStatus(), getValues(), getNumConfsEvaluated());
 	}
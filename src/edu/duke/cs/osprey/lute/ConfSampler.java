@@ -39,7 +39,6 @@ import edu.duke.cs.osprey.confspace.TuplesIndex;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 
 import java.util.*;
-import java.util.function.Function;
 
 
 public abstract class ConfSampler {
@@ -49,41 +48,61 @@ public abstract class ConfSampler {
 		public final TuplesIndex tuples;
 
 		private final Set<int[]> confs = new Conf.Set();
-		private final List<Set<int[]>> confsByTuple = new ArrayList<>();
-		private final List<Integer> numConfsByTuple = new ArrayList<>();
+
+		// NOTE: each conf belongs to lots of tuples, so keeping a set of confs for every tuple gets really big
+		// just count the confs for each tuple instead, we can always recover the sets from the confs
+		private int[] numConfsByTuple = new int[16];
+		private int numTuples = 0;
 
 		public Samples(TuplesIndex tuples) {
 			this.tuples = tuples;
 		}
 
 		public RCTuple getLeastSampledTuple(Set<RCTuple> except) {
+			List<RCTuple> tuples = getLeastSampledTuples(except, 1);
+			if (tuples.isEmpty()) {
+				return null;
+			}
+			return tuples.get(0);
+		}
+
+		/**
+		 * returns up to maxNumTuples of the least-sampled tuples, in index order,
+		 * all of which have the same number of samples
+		 */
+		public List<RCTuple> getLeastSampledTuples(Set<RCTuple> except, int maxNumTuples) {
 
 			// NOTE: using a priority queue to attempt to speed up this query will actually be really slow
 			// since we need to update many tuples every time we add a conf
 			// and PriorityQueue.remove() is actually linear time =(
 
 			// a simple linear search will have to be fast enough for now
-			int bestt = -1;
 			int bestSize = -1;
 			for (int t=0; t<tuples.size(); t++) {
 
-				int size = numConfsByTuple.get(t);
-				if (bestt == -1 || size < bestSize) {
+				int size = numConfsByTuple[t];
+				if (bestSize == -1 || size < bestSize) {
 
 					// skip excepted tuples
 					if (except.contains(tuples.get(t))) {
 						continue;
 					}
 
-					bestt = t;
 					bestSize = size;
 				}
 			}
 
-			if (bestt == -1) {
-				return null;
+			// collect the tuples with the fewest samples
+			List<RCTuple> leastSampled = new ArrayList<>();
+			for (int t=0; t<tuples.size() && leastSampled.size() < maxNumTuples; t++) {
+				if (numConfsByTuple[t] == bestSize) {
+					RCTuple tuple = tuples.get(t);
+					if (!except.contains(tuple)) {
+						leastSampled.add(tuple);
+					}
+				}
 			}
-			return tuples.get(bestt);
+			return leastSampled;
 		}
 
 		public int size() {
@@ -92,8 +111,8 @@ public abstract class ConfSampler {
 
 		public int countTuplesWithLessThan(int numConfs) {
 			int count = 0;
-			for (int tupleConfs : numConfsByTuple) {
-				if (tupleConfs < numConfs) {
+			for (int t=0; t<numTuples; t++) {
+				if (numConfsByTuple[t] < numConfs) {
 					count++;
 				}
 			}
@@ -102,8 +121,8 @@ public abstract class ConfSampler {
 
 		public int countTuplesWithAtLeast(int numConfs) {
 			int count = 0;
-			for (int tupleConfs : numConfsByTuple) {
-				if (tupleConfs >= numConfs) {
+			for (int t=0; t<numTuples; t++) {
+				if (numConfsByTuple[t] >= numConfs) {
 					count++;
 				}
 			}
@@ -111,25 +130,61 @@ public abstract class ConfSampler {
 		}
 
 		// don't let callers edit these sets
-		// since we need to keep confsByTuple and confs synchronized
+		// since we need to keep numConfsByTuple and confs synchronized
 
 		public Set<int[]> getAllConfs() {
 			return Collections.unmodifiableSet(confs);
 		}
 
+		/**
+		 * returns a live view of the sampled confs that contain the tuple
+		 *
+		 * size() and contains() are fast, but iteration has to scan all the sampled confs
+		 */
 		public Set<int[]> getConfs(RCTuple tuple) {
-			return Collections.unmodifiableSet(confsByTuple.get(tuples.getIndex(tuple)));
+
+			int t = tuples.getIndex(tuple);
+
+			return new AbstractSet<int[]>() {
+
+				@Override
+				public int size() {
+					return numConfsByTuple[t];
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					int[] conf = (int[])o;
+					return Conf.containsTuple(conf, tuple) && confs.contains(conf);
+				}
+
+				@Override
+				public Iterator<int[]> iterator() {
+					return confs.stream()
+						.filter((conf) -> Conf.containsTuple(conf, tuple))
+						.iterator();
+				}
+			};
 		}
 
-		public void addConf(int[] conf) {
+		/**
+		 * adds the conf to the samples
+		 *
+		 * @return true if the conf wasn't already sampled
+		 */
+		public boolean addConf(int[] conf) {
+
+			if (confs.contains(conf)) {
+				return false;
+			}
+
 			boolean throwIfMissingSingle = conf.length == 1;
 			boolean throwIfMissingPair = conf.length > 1;
-			tuples.forEachIn(conf, throwIfMissingSingle, throwIfMissingPair, (index) -> {
-				Set<int[]> confsForTuple = confsByTuple.get(index);
-				confsForTuple.add(conf);
-				numConfsByTuple.set(index, confsForTuple.size());
+			tuples.forEachIndexIn(conf, throwIfMissingSingle, throwIfMissingPair, (index) -> {
+				numConfsByTuple[index]++;
 			});
 			confs.add(conf);
+			return true;
 		}
 
 		public void addTuple(RCTuple tuple) {
@@ -140,31 +195,21 @@ public abstract class ConfSampler {
 			} else if (tupleIndex != tuples.size() - 1) {
 				throw new IllegalArgumentException("must be most recently added tuple to the index");
 			}
-			if (tupleIndex < confsByTuple.size()) {
+			if (tupleIndex < numTuples) {
 				throw new IllegalArgumentException("can't add the same tuple more than once: " + tuple);
 			}
 
-			Function<int[],Boolean> matches = (conf) -> {
-				for (int i=0; i<tuple.size(); i++) {
-					int pos = tuple.pos.get(i);
-					int rc = tuple.RCs.get(i);
-					if (conf[pos] != rc) {
-						return false;
-					}
-				}
-				return true;
-			};
-
-			Set<int[]> tuplesConfs = new Conf.Set();
-			confsByTuple.add(tuplesConfs);
-
+			int numConfs = 0;
 			for (int[] conf : confs) {
-				if (matches.apply(conf)) {
-					tuplesConfs.add(conf);
+				if (Conf.containsTuple(conf, tuple)) {
+					numConfs++;
 				}
 			}
 
-			numConfsByTuple.add(tuplesConfs.size());
+			if (numTuples == numConfsByTuple.length) {
+				numConfsByTuple = Arrays.copyOf(numConfsByTuple, numConfsByTuple.length*2);
+			}
+			numConfsByTuple[numTuples++] = numConfs;
 		}
 	}
 
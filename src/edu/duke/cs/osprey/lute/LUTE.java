@@ -50,7 +50,6 @@ import smile.regression.LASSO;
 import java.io.File;
 import java.math.BigInteger;
 import java.util.*;
-import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static edu.duke.cs.osprey.tools.Log.formatBig;
@@ -79,6 +78,7 @@ public class LUTE {
 
 				// build the linear model: Ax=b
 				// except conjugate gradient needs square A, so transform to A^tAx = A^tb
+				// (A^tA is never built explicitly, it's too big when there are lots of triples)
 				RealLinearOperator AtA = new RealLinearOperator() {
 
 					@Override
@@ -95,7 +95,7 @@ public class LUTE {
 					public RealVector operate(RealVector vx)
 						throws DimensionMismatchException {
 						double[] x = ((ArrayRealVector)vx).getDataRef();
-						double[] AtAx = system.parallelMultAt(system.parallelMultA(x, tasks), tasks);
+						double[] AtAx = system.parallelMultAtA(x, tasks);
 						return new ArrayRealVector(AtAx, false);
 					}
 				};
@@ -103,7 +103,12 @@ public class LUTE {
 				RealVector Atb = new ArrayRealVector(system.multAt(binfo.b), false);
 
 				ConjugateGradient cg = new ConjugateGradient(100000, 1e-6, false);
-				return ((ArrayRealVector)cg.solve(AtA, Atb)).getDataRef();
+				if (binfo.x0 != null) {
+					// start from the previous solution, if we have one
+					return ((ArrayRealVector)cg.solve(AtA, Atb, new ArrayRealVector(binfo.x0, false))).getDataRef();
+				} else {
+					return ((ArrayRealVector)cg.solve(AtA, Atb)).getDataRef();
+				}
 			}
 		},
 
@@ -125,10 +130,9 @@ public class LUTE {
 				// the LASSO implementation is actually really fast!
 				SparseDataset data = new SparseDataset(system.tuples.size());
 				for (int c=0; c<system.confs.size(); c++) {
-					final int fc = c;
-					system.forEachTupleIn(c, (t) -> {
-						data.set(fc, t, 1.0);
-					});
+					for (int i=system.rowOffsets[c]; i<system.rowOffsets[c + 1]; i++) {
+						data.set(c, system.rowTuples[i], 1.0);
+					}
 				}
 				Matrix A = data.toSparseMatrix();
 
@@ -139,6 +143,7 @@ public class LUTE {
 
 				// regress!
 				// NOTE: can't do parallelism here apparently, so `tasks` is ingored =(
+				// and this LASSO implementation can't be warm-started either, so `binfo.x0` is ignored too
 				LASSO lasso = new LASSO(A, binfo.b, lambda, tolerance, maxIterations);
 				binfo.offset += lasso.intercept();
 				return lasso.coefficients();
@@ -160,6 +165,7 @@ public class LUTE {
 			double[] b = confEnergies.clone();
 			double offset = 0.0;
 			double scale = 1.0;
+			double[] x0 = null;
 		}
 
 
@@ -172,6 +178,12 @@ public class LUTE {
 
 		public Errors errors = null;
 
+		// the sparse rows of A, in compressed row format
+		// ie, the tuples in conf c are rowTuples[rowOffsets[c]] ... rowTuples[rowOffsets[c + 1] - 1]
+		// the solvers iterate over A many times, so look up the tuples just once
+		private final int[] rowOffsets;
+		private final int[] rowTuples;
+
 		public LinearSystem(TuplesIndex tuples, ConfSampler.Samples samples, Map<int[],Double> confEnergies) {
 
 			this.tuples = tuples;
@@ -184,15 +196,36 @@ public class LUTE {
 			for (int c=0; c<confs.size(); c++) {
 				this.confEnergies[c] = confEnergies.get(confs.get(c));
 			}
-		}
 
-		private void forEachTupleIn(int c, Consumer<Integer> callback) {
+			// linearize the rows of A
 			final boolean throwIfMissingSingle = false; // we're not fitting singles
 			final boolean throwIfMissingPair = true; // we always fit to dense pairs, confs shouldn't be using pruned pairs
-			tuples.forEachIn(confs.get(c), throwIfMissingSingle, throwIfMissingPair, callback);
+			rowOffsets = new int[confs.size() + 1];
+			int[][] rowTuples = new int[][] { new int[Math.max(16, confs.size()*16)] };
+			int[] numTuples = { 0 };
+			for (int c=0; c<confs.size(); c++) {
+				rowOffsets[c] = numTuples[0];
+				tuples.forEachIndexIn(confs.get(c), throwIfMissingSingle, throwIfMissingPair, (t) -> {
+					if (numTuples[0] == rowTuples[0].length) {
+						rowTuples[0] = Arrays.copyOf(rowTuples[0], rowTuples[0].length*2);
+					}
+					rowTuples[0][numTuples[0]++] = t;
+				});
+			}
+			rowOffsets[confs.size()] = numTuples[0];
+			this.rowTuples = Arrays.copyOf(rowTuples[0], numTuples[0]);
 		}
 
 		public void fit(Fitter fitter, TaskExecutor tasks) {
+			fit(fitter, tasks, null);
+		}
+
+		/**
+		 * Fits the tuple energies, optionally starting from the solution of a previous system
+		 * over the same (possibly smaller) set of tuples. For iterative fitters, starting close
+		 * to the solution saves lots of iterations when only a few samples or tuples were added.
+		 */
+		public void fit(Fitter fitter, TaskExecutor tasks, LinearSystem previous) {
 
 			// calculate b, and normalize if needed
 			BInfo binfo = new BInfo();
@@ -215,6 +248,21 @@ public class LUTE {
 				}
 			}
 
+			// transform the previous solution into this normalized space
+			if (previous != null && previous.tupleEnergies != null) {
+
+				// the previous solution has its own offset, so spread the difference between the offsets
+				// over the tuples in each conf (exact when every conf has the same number of tuples, like dense pairs)
+				double numTuplesPerConf = (double)rowTuples.length/confs.size();
+				double tupleOffset = (previous.tupleEnergyOffset - binfo.offset)/numTuplesPerConf;
+
+				binfo.x0 = new double[tuples.size()];
+				int numTuples = Math.min(previous.tupleEnergies.length, binfo.x0.length);
+				for (int t=0; t<numTuples; t++) {
+					binfo.x0[t] = (previous.tupleEnergies[t] + tupleOffset)/binfo.scale;
+				}
+			}
+
 			double[] x = fitter.fit(this, binfo, tasks);
 
 			calcTupleEnergies(x, binfo);
@@ -223,10 +271,11 @@ public class LUTE {
 		private double[] multA(double[] x) {
 			double[] out = new double[confs.size()];
 			for (int c=0; c<confs.size(); c++) {
-				final int fc = c;
-				forEachTupleIn(c, (t) -> {
-					out[fc] += x[t];
-				});
+				double sum = 0.0;
+				for (int i=rowOffsets[c]; i<rowOffsets[c + 1]; i++) {
+					sum += x[rowTuples[i]];
+				}
+				out[c] = sum;
 			}
 			return out;
 		}
@@ -235,49 +284,17 @@ public class LUTE {
 			double[] out = new double[tuples.size()];
 			for (int c=0; c<confs.size(); c++) {
 				double xc = x[c];
-				forEachTupleIn(c, (t) -> {
-					out[t] += xc;
-				});
-			}
-			return out;
-		}
-
-		private double[] parallelMultA(double[] x, TaskExecutor tasks) {
-
-			int numConfs = confs.size();
-			int numThreads = tasks.getParallelism();
-			int partitionSize = numConfs/numThreads;
-
-			double[] out = new double[numConfs];
-
-			// partition the confs equally among the threads
-			for (int i=0; i<numThreads; i++) {
-				int startC = i*partitionSize;
-				int stopC;
-				if (i == numThreads - 1) {
-					stopC = numConfs;
-				} else {
-					stopC = (i+1)*partitionSize;
+				for (int i=rowOffsets[c]; i<rowOffsets[c + 1]; i++) {
+					out[rowTuples[i]] += xc;
 				}
-				tasks.submit(
-					() -> {
-						for (int c=startC; c<stopC; c++) {
-							final int fc = c;
-							forEachTupleIn(fc, (t) -> {
-								out[fc] += x[t];
-							});
-						}
-						return null;
-					},
-					(ignored) -> {}
-				);
 			}
-			tasks.waitForFinish();
-
 			return out;
 		}
 
-		private double[] parallelMultAt(double[] x, TaskExecutor tasks) {
+		/**
+		 * computes A^tAx without making A^tA, in one pass over the rows of A
+		 */
+		private double[] parallelMultAtA(double[] x, TaskExecutor tasks) {
 
 			int numConfs = confs.size();
 			int numThreads = tasks.getParallelism();
@@ -299,10 +316,17 @@ public class LUTE {
 					() -> {
 						double[] threadOut = new double[numTuples];
 						for (int c=startC; c<stopC; c++) {
-							double xc = x[c];
-							forEachTupleIn(c, (t) -> {
-								threadOut[t] += xc;
-							});
+
+							// (Ax)_c
+							double axc = 0.0;
+							for (int j=rowOffsets[c]; j<rowOffsets[c + 1]; j++) {
+								axc += x[rowTuples[j]];
+							}
+
+							// then accumulate A^t(Ax)
+							for (int j=rowOffsets[c]; j<rowOffsets[c + 1]; j++) {
+								threadOut[rowTuples[j]] += axc;
+							}
 						}
 						return threadOut;
 					},
@@ -798,8 +822,9 @@ public class LUTE {
 				// fit the linear system to the training set
 				logf("fitting %d confs to %d tuples ...", numSamples, tuplesIndex.size());
 				Stopwatch trainingSw = new Stopwatch().start();
+				LinearSystem previousSystem = trainingSystem;
 				trainingSystem = new LinearSystem(tuplesIndex, trainingSet, energies);
-				trainingSystem.fit(fitter, tasks);
+				trainingSystem.fit(fitter, tasks, previousSystem);
 				logf(" done in %s", trainingSw.stop().getTime(2));
 			}
 
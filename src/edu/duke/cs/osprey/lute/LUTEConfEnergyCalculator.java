@@ -36,9 +36,13 @@ import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
+import edu.duke.cs.osprey.minimization.Minimizer;
 import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 
 public class LUTEConfEnergyCalculator extends ConfEnergyCalculator implements FragmentEnergies {
 
@@ -83,6 +87,24 @@ public class LUTEConfEnergyCalculator extends ConfEnergyCalculator implements Fr
 		throw new NotSupportedByLUTEException();
 	}
 
+	@Override
+	public EnergyCalculator.EnergiedParametricMolecule calcEnergy(RCTuple frag, ResidueInteractions inters, Minimizer.Cutoff cutoff) {
+		throw new NotSupportedByLUTEException();
+	}
+
+	@Override
+	public MinimizedConf calcEnergy(ConfSearch.ScoredConf conf, ConfDB.ConfTable table, Minimizer.Cutoff cutoff) {
+		// LUTE energies don't need minimization, so there's nothing to cut off
+		return new MinimizedConf(conf, calcEnergy(conf, table).getEnergy(), false);
+	}
+
+	@Override
+	public List<ConfSearch.EnergiedConf> calcEnergies(List<ConfSearch.ScoredConf> confs) {
+		return confs.stream()
+			.map(conf -> calcEnergy(conf))
+			.collect(Collectors.toList());
+	}
+
 	@Override
 	public MoleculeObjectiveFunction makeIntraShellObjFcn(int pos, int rc) {
 		throw new NotSupportedByLUTEException();
@@ -93,50 +115,58 @@ public class LUTEConfEnergyCalculator extends ConfEnergyCalculator implements Fr
 		throw new NotSupportedByLUTEException();
 	}
 
-	public double calcEnergy(int[] conf) {
+	// we're not fitting singles
+	private static final boolean ThrowIfMissingSingle = false;
 
-		numCalculations.incrementAndGet();
+	// we always fit to dense pairs, confs shouldn't be using pruned pairs
+	private static final boolean ThrowIfMissingPair = true;
 
-		final boolean throwIfMissingSingle = false; // we're not fitting singles
-		final boolean throwIfMissingPair = true; // we always fit to dense pairs, confs shouldn't be using pruned pairs
+	public double calcEnergy(int[] conf) {
+		numCalculations.incrementAndGet();
+		return tuples.sum(conf, state.tupleEnergies, ThrowIfMissingSingle, ThrowIfMissingPair) + state.tupleEnergyOffset;
+	}
 
-		// silly Java... If this were Kotlin, we wouldn't have to use an array to make the energy modifiable
-		// hopefully JVM escape analysis will stack-allocate this?
-		final double[] energy = new double[] { 0.0 };
-		tuples.forEachIn(conf, throwIfMissingSingle, throwIfMissingPair, (t) -> {
-			energy[0] += state.tupleEnergies[t];
-		});
-		return energy[0] + state.tupleEnergyOffset;
+	/**
+	 * Computes the energies of many conformations at once.
+	 * Doesn't allocate anything besides the returned array.
+	 */
+	public double[] calcEnergies(int[][] confs) {
+		double[] energies = new double[confs.length];
+		for (int i=0; i<confs.length; i++) {
+			energies[i] = tuples.sum(confs[i], state.tupleEnergies, ThrowIfMissingSingle, ThrowIfMissingPair) + state.tupleEnergyOffset;
+		}
+		numCalculations.addAndGet(confs.length);
+		return energies;
 	}
 
 	public boolean hasTuple(int pos, int rc) {
-		return tuples.getIndex(pos, rc) != null;
+		return tuples.findIndex(pos, rc) != TuplesIndex.Missing;
 	}
 
 	public boolean hasTuple(int pos1, int rc1, int pos2, int rc2) {
-		return tuples.getIndex(pos1, rc1, pos2, rc2) != null;
+		return tuples.findIndex(pos1, rc1, pos2, rc2) != TuplesIndex.Missing;
 	}
 
 	public boolean hasTuple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		return tuples.getIndex(pos1, rc1, pos2, rc2, pos3, rc3) != null;
+		return tuples.findIndex(pos1, rc1, pos2, rc2, pos3, rc3) != TuplesIndex.Missing;
 	}
 
 	@Override
 	public double getEnergy(int pos, int rc) {
-		return getEnergy(tuples.getIndex(pos, rc));
+		return getEnergy(tuples.findIndex(pos, rc));
 	}
 
 	@Override
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2) {
-		return getEnergy(tuples.getIndex(pos1, rc1, pos2, rc2));
+		return getEnergy(tuples.findIndex(pos1, rc1, pos2, rc2));
 	}
 
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		return getEnergy(tuples.getIndex(pos1, rc1, pos2, rc2, pos3, rc3));
+		return getEnergy(tuples.findIndex(pos1, rc1, pos2, rc2, pos3, rc3));
 	}
 
-	private double getEnergy(Integer index) {
-		if (index == null) {
+	private double getEnergy(int index) {
+		if (index == TuplesIndex.Missing) {
 			return 0.0;
 		}
 		return state.tupleEnergies[index];
@@ -5,6 +5,8 @@ import edu.duke.cs.osprey.astar.conf.ConfIndex;
 import edu.duke.cs.osprey.confspace.Conf;
 import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 
 import java.util.*;
@@ -17,12 +19,38 @@ import java.util.*;
  */
 public class RandomizedDFSConfSampler extends ConfSampler {
 
+	/** number of tuples to sample at once in batched mode */
+	public static final int BatchSize = 64;
+
+	/** if not null, sample tuples in parallel batches */
+	public final Parallelism parallelism;
+
 	public RandomizedDFSConfSampler(SimpleConfSpace confSpace, PruningMatrix pmat, int randomSeed) {
+		this(confSpace, pmat, randomSeed, null);
+	}
+
+	/**
+	 * When parallelism is given, tuples are sampled in batches of the least-sampled tuples,
+	 * and each sample in a batch gets its own random stream, seeded in order from the random seed.
+	 * So the samples are reproducible for a given random seed, no matter how many threads are used,
+	 * but they won't match the samples from the non-batched mode.
+	 */
+	public RandomizedDFSConfSampler(SimpleConfSpace confSpace, PruningMatrix pmat, int randomSeed, Parallelism parallelism) {
 		super(confSpace, pmat, randomSeed);
+
+		this.parallelism = parallelism;
 	}
 
 	@Override
 	public void sampleConfsForTuples(Samples samples, int minSamplesPerTuple) {
+		if (parallelism != null) {
+			sampleConfsForTuplesBatched(samples, minSamplesPerTuple);
+		} else {
+			sampleConfsForTuplesSerial(samples, minSamplesPerTuple);
+		}
+	}
+
+	private void sampleConfsForTuplesSerial(Samples samples, int minSamplesPerTuple) {
 
 		// keep track of tuples we can't sample anymore
 		Set<RCTuple> unsampleableTuples = new HashSet<>();
@@ -50,7 +78,7 @@ public class RandomizedDFSConfSampler extends ConfSampler {
 			}
 
 			// get the next sample
-			int[] conf = randomizedDFS(tuple, confs);
+			int[] conf = randomizedDFS(tuple, confs, rand);
 			if (conf == null) {
 				unsampleableTuples.add(tuple);
 			} else {
@@ -60,7 +88,64 @@ public class RandomizedDFSConfSampler extends ConfSampler {
 		}
 	}
 
-	private int[] randomizedDFS(RCTuple tuple, Set<int[]> except) {
+	private void sampleConfsForTuplesBatched(Samples samples, int minSamplesPerTuple) {
+
+		// keep track of tuples we can't sample anymore
+		Set<RCTuple> unsampleableTuples = new HashSet<>();
+		boolean sampledSomething = false;
+
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+
+			while (true) {
+
+				// get the next tuples to sample
+				List<RCTuple> batch = samples.getLeastSampledTuples(unsampleableTuples, BatchSize);
+				if (batch.isEmpty()) {
+					// we can't keep going, there aren't any tuples left to sample
+					if (sampledSomething) {
+						// at least we made some progress, so that's good
+						return;
+					} else {
+						// no progress, this is bad =(
+						throw new ConfSampler.NoMoreSamplesException();
+					}
+				}
+
+				// are we done yet?
+				// (all the tuples in the batch have the same number of samples)
+				if (samples.getConfs(batch.get(0)).size() >= minSamplesPerTuple) {
+					break;
+				}
+
+				// sample all the tuples in the batch
+				// the samples can't change until the whole batch is done, so it's safe to read them in parallel
+				int[][] confs = new int[batch.size()][];
+				for (int i=0; i<batch.size(); i++) {
+					RCTuple tuple = batch.get(i);
+					Set<int[]> except = samples.getConfs(tuple);
+					Random tupleRand = new Random(rand.nextLong());
+					final int fi = i;
+					tasks.submit(
+						() -> randomizedDFS(tuple, except, tupleRand),
+						(conf) -> confs[fi] = conf
+					);
+				}
+				tasks.waitForFinish();
+
+				// add the samples in batch order, so thread timing can't change the results
+				for (int i=0; i<batch.size(); i++) {
+					if (confs[i] == null) {
+						unsampleableTuples.add(batch.get(i));
+					} else {
+						samples.addConf(confs[i]);
+						sampledSomething = true;
+					}
+				}
+			}
+		}
+	}
+
+	private int[] randomizedDFS(RCTuple tuple, Set<int[]> except, Random rand) {
 
 		// collect all the positions: assigned first, then unassigned
 		List<SimpleConfSpace.Position> positions = new ArrayList<>();
@@ -478,11 +478,8 @@ public class MARKStarBound implements PartitionFunction {
             internalTime.reset();
             internalTime.start();
             for (MARKStarNode internalNode : internalNodes) {
-                if(!MathTools.isGreaterThan(internalNode.getLowerBound(),BigDecimal.ONE) &&
-                    MathTools.isGreaterThan(
-                            MathTools.bigDivide(internalNode.getUpperBound(),rootNode.getUpperBound(),
-                                    PartitionFunction.decimalPrecision),
-                            new BigDecimal(1-targetEpsilon))
+                if(!internalNode.isLowerBoundGreaterThan(1) &&
+                    internalNode.isUpperBoundGreaterThan(rootNode, 1-targetEpsilon)
                 ) {
                     loopTasks.submit(() -> {
                         boundLowestBoundConfUnderNode(internalNode, newNodes);
@@ -561,7 +558,7 @@ public class MARKStarBound implements PartitionFunction {
                 continue;
             }
 
-            BigDecimal diff = curNode.getUpperBound().subtract(curNode.getLowerBound());
+            BigDecimal diff = curNode.getBoundDifference();
             if (node.getLevel() < RCs.getNumPos()) {
                 internalNodes.add(curNode);
                 internalZ = internalZ.add(diff);
@@ -39,8 +39,10 @@ import java.math.BigInteger;
 import java.math.MathContext;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MARKStarBoundAsync implements PartitionFunction {
 
@@ -263,7 +265,8 @@ public class MARKStarBoundAsync implements PartitionFunction {
     BoltzmannCalculator bc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
     private boolean computedCorrections = false;
     private long loopPartialTime = 0;
-    private Set<String> correctedTuples = Collections.synchronizedSet(new HashSet<String>());
+    private Set<RCTuple> correctedTuples = ConcurrentHashMap.newKeySet();
+    private final Object correctionStatsLock = new Object();
     private State state;
     private BigDecimal stabilityThreshold;
     BlockingQueue<MARKStarNode> asyncQueue = new PriorityBlockingQueue<>();
@@ -358,13 +361,17 @@ public class MARKStarBoundAsync implements PartitionFunction {
     private void recordCorrection(double lowerBound, double correction) {
         BigDecimal upper = bc.calc(lowerBound);
         BigDecimal corrected = bc.calc(lowerBound + correction);
-        cumulativeZCorrection = cumulativeZCorrection.add(upper.subtract(corrected));
+        // called from worker threads, so only lock the stats, not the whole bound
+        synchronized (correctionStatsLock) {
+            cumulativeZCorrection = cumulativeZCorrection.add(upper.subtract(corrected));
+        }
     }
     private void recordReduction(double score, double energy) {
         BigDecimal scoreWeight = bc.calc(score);
         BigDecimal energyWeight = bc.calc(energy);
-        ZReductionFromMin = ZReductionFromMin.add(scoreWeight.subtract(energyWeight));
-
+        synchronized (correctionStatsLock) {
+            ZReductionFromMin = ZReductionFromMin.add(scoreWeight.subtract(energyWeight));
+        }
     }
 
     // We want to process internal nodes without worrying about the bound too much until we have
@@ -403,11 +410,8 @@ public class MARKStarBoundAsync implements PartitionFunction {
         while(!asyncQueue.isEmpty() && !asyncQueue.peek().getConfSearchNode().isLeaf()) {
             MARKStarNode internalNode = asyncQueue.poll();{
                 Stopwatch internalTime = new Stopwatch();
-                if(!MathTools.isGreaterThan(internalNode.getLowerBound(),BigDecimal.ZERO) &&
-                    MathTools.isGreaterThan(
-                            MathTools.bigDivide(internalNode.getUpperBound(),rootNode.getUpperBound(),
-                                    PartitionFunction.decimalPrecision),
-                            new BigDecimal(1-targetEpsilon))
+                if(!internalNode.isLowerBoundGreaterThan(0) &&
+                    internalNode.isUpperBoundGreaterThan(rootNode, 1-targetEpsilon)
                 ) {
                     loopTasks.submit(() -> {
                         internalTime.start();
@@ -446,7 +450,7 @@ public class MARKStarBoundAsync implements PartitionFunction {
         internalZ = state.internalZ.multiply(new BigDecimal(bias)); //MathTools.bigDivide(ZSums[0], new BigDecimal(Math.max(1,internalTimeAverage*internalNodes.size())), PartitionFunction.decimalPrecision);
         leafZ = state.leafZ; //MathTools.bigDivide(ZSums[1], new BigDecimal(Math.max(1,leafTimeAverage)), PartitionFunction.decimalPrecision);
         System.out.println(String.format("Z Comparison: %12.6e, %12.6e, dscore %4.4e, denergy %4.4e", internalZ, leafZ, state.dScore, state.dEnergy));
-        System.out.println("Number of ongoing background corrections: "+state.correctingLeaves);
+        System.out.println("Number of ongoing background corrections: "+state.correctingLeaves.get());
         if((internalNodes.size() >= maxNodes && MathTools.isLessThan(internalZ, leafZ) && state.dScore > state.dEnergy)){
                 //&& state.correctingLeaves < 10000) {
             numNodes = leafNodes.size();
@@ -485,11 +489,8 @@ public class MARKStarBoundAsync implements PartitionFunction {
                 System.out.println("Processing " + numNodes + " internal nodes...");
                 for (MARKStarNode internalNode : internalNodes) {
                     Stopwatch internalTime = new Stopwatch();
-                    if (!MathTools.isGreaterThan(internalNode.getLowerBound(), BigDecimal.ZERO) &&
-                            MathTools.isGreaterThan(
-                                    MathTools.bigDivide(internalNode.getUpperBound(), rootNode.getUpperBound(),
-                                            PartitionFunction.decimalPrecision),
-                                    new BigDecimal(1 - targetEpsilon))
+                    if (!internalNode.isLowerBoundGreaterThan(0) &&
+                            internalNode.isUpperBoundGreaterThan(rootNode, 1-targetEpsilon)
                             ) {
                         loopTasks.submit(() -> {
                             internalTime.start();
@@ -636,7 +637,7 @@ public class MARKStarBoundAsync implements PartitionFunction {
                 continue;
             }
 
-            BigDecimal diff = curNode.getUpperBound().subtract(curNode.getLowerBound());
+            BigDecimal diff = curNode.getBoundDifference();
             if (node.getLevel() < RCs.getNumPos() && internalNodes.size() < maxNodes) {
                 if(internalNodes.size() < maxNodes) {
                     internalNodes.add(curNode);
@@ -872,7 +873,7 @@ public class MARKStarBoundAsync implements PartitionFunction {
     private static class State {
 
         public Queue<RCTuple> corrections = new LinkedBlockingQueue<>();
-        int correctingLeaves;
+        AtomicInteger correctingLeaves = new AtomicInteger(0);
         BigDecimal numConfs;
 
 		// upper bound (score axis) vars
@@ -1213,26 +1214,24 @@ public class MARKStarBoundAsync implements PartitionFunction {
 
     private void computeDifference(RCTuple tuple, ConfEnergyCalculator ecalc) {
         computedCorrections = true;
-        if(correctedTuples.contains(tuple.stringListing()))
+        // add() is atomic, so only one thread ever minimizes a given tuple
+        if(!correctedTuples.add(tuple))
             return;
-        correctedTuples.add(tuple.stringListing());
         if(correctionMatrix.hasHigherOrderTermFor(tuple))
             return;
-        synchronized (this) {
-            state.correctingLeaves++;
-        }
+        state.correctingLeaves.incrementAndGet();
         double tripleEnergy = minimizingEcalc.calcEnergy(tuple).energy;
 
         double lowerbound = minimizingEmat.getInternalEnergy(tuple);
         if (tripleEnergy - lowerbound > 0) {
             double correction = tripleEnergy - lowerbound;
-            correctionMatrix.setHigherOrder(tuple, correction);
+            synchronized (correctionMatrix) {
+                correctionMatrix.setHigherOrder(tuple, correction);
+            }
         }
         else
             System.err.println("Negative correction for "+tuple.stringListing());
-        synchronized (this) {
-            state.correctingLeaves--;
-        }
+        state.correctingLeaves.decrementAndGet();
     }
 
     private RCTuple makeTuple(ConfSearch.ScoredConf conf, int... positions) {
@@ -75,11 +75,8 @@ public class MARKStarBoundFastQueues extends MARKStarBound {
             internalTime.reset();
             internalTime.start();
             for (MARKStarNode internalNode : internalNodes) {
-                if(!MathTools.isGreaterThan(internalNode.getLowerBound(),BigDecimal.ONE) &&
-                    MathTools.isGreaterThan(
-                            MathTools.bigDivide(internalNode.getUpperBound(),rootNode.getUpperBound(),
-                                    PartitionFunction.decimalPrecision),
-                            new BigDecimal(1-targetEpsilon))
+                if(!internalNode.isLowerBoundGreaterThan(1) &&
+                    internalNode.isUpperBoundGreaterThan(rootNode, 1-targetEpsilon)
                 ) {
                     loopTasks.submit(() -> {
                         boundLowestBoundConfUnderNode(internalNode, newNodes);
@@ -163,7 +160,7 @@ public class MARKStarBoundFastQueues extends MARKStarBound {
             if(correctedNode(leftovers, curNode, curNode.getConfSearchNode())) {
                 continue;
             }
-            BigDecimal diff = curNode.getUpperBound().subtract(curNode.getLowerBound());
+            BigDecimal diff = curNode.getBoundDifference();
             sum = sum.add(diff);
             list.add(curNode);
         }
@@ -30,22 +30,23 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class MARKStarNode implements Comparable<MARKStarNode> {
 
     static boolean debug = false;
-    private boolean updated = true;
+    // volatile so worker threads can flag subtrees without holding a lock on the whole bound
+    private volatile boolean updated = true;
     /**
      * TODO: 1. Make MARKStarNodes spawn their own Node and MARKStarNode children.
      * TODO: 2. Make MARKStarNodes compute and update bounds correctly
      */
 
-    private BigDecimal errorBound = BigDecimal.ONE;
+    // bounds are kept in log space as doubles to keep nodes small and propagation cheap,
+    // BigDecimal values are only made on demand (e.g., for the root summaries)
+    private double lnErrorBound = 0;
     private double nodeEpsilon = 1;
     private MARKStarNode parent;
-    private List<MARKStarNode> children; // TODO: Pick appropriate data structure
+    private volatile List<MARKStarNode> children; // TODO: Pick appropriate data structure
     private Node confSearchNode;
     public final int level;
     private static ExpFunction ef = new ExpFunction();
     private static BoltzmannCalculator bc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
-    private RCs RCs;
-    private boolean partOfLastBound = false;
 
 
     private MARKStarNode(Node confNode, MARKStarNode markStarNode) {
@@ -53,7 +54,7 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         level = confSearchNode.getLevel();
         parent = markStarNode;
         computeEpsilonErrorBounds();
-        errorBound = getErrorBound();
+        lnErrorBound = getLnErrorBound();
     }
 
     public BigInteger getNumConfs()
@@ -64,8 +65,15 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
     public void markUpdated()
     {
         updated = true;
-        if(level > 0)
-            parent.markUpdated();
+
+        // walk up the tree until we find an ancestor that's already flagged
+        // updateSubtreeBounds() clears flags top-down before reading the children,
+        // so any flagged ancestor is guaranteed to revisit this subtree
+        MARKStarNode ancestor = parent;
+        while(ancestor != null && !ancestor.updated) {
+            ancestor.updated = true;
+            ancestor = ancestor.parent;
+        }
     }
 
     public RCTuple toTuple() {
@@ -81,8 +89,8 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
     {
         if(level == 0) {
             System.out.println("=====================BEGIN TREE INFO==================================");
-            System.out.println(prefix + confSearchNode + ": [" + setSigFigs(confSearchNode.subtreeLowerBound)
-                    + "," + setSigFigs(confSearchNode.subtreeUpperBound) + "], errorBound =" + String.format("%3.3e",errorBound));
+            System.out.println(prefix + confSearchNode + ": [" + setSigFigs(confSearchNode.getSubtreeLowerBound())
+                    + "," + setSigFigs(confSearchNode.getSubtreeUpperBound()) + "], errorBound =" + String.format("%3.3e",getErrorBound()));
         }
 
         if(children != null && children.size() > 0) {
@@ -91,16 +99,18 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
             Collections.sort(children);
             prefix+="+~~";
             for(MARKStarNode child: children) {
-                System.out.print(prefix+child.confSearchNode+": ["+setSigFigs(child.confSearchNode.subtreeLowerBound)
-                        +","+setSigFigs(child.confSearchNode.subtreeUpperBound)+"], epsilon="+String.format("%3.3e",errorBound));
+                BigDecimal childUpper = child.confSearchNode.getSubtreeUpperBound();
+                BigDecimal childLower = child.confSearchNode.getSubtreeLowerBound();
+                System.out.print(prefix+child.confSearchNode+": ["+setSigFigs(childLower)
+                        +","+setSigFigs(childUpper)+"], epsilon="+String.format("%3.3e",getErrorBound()));
                 System.out.print("Upper: " + setSigFigs(upper) + " + "
-                        + setSigFigs(child.confSearchNode.subtreeUpperBound) + " = "
-                        + setSigFigs(upper.add(child.confSearchNode.subtreeUpperBound)));
+                        + setSigFigs(childUpper) + " = "
+                        + setSigFigs(upper.add(childUpper)));
                 System.out.println("Lower: " + setSigFigs(lower) + " + "
-                        + setSigFigs(child.confSearchNode.subtreeLowerBound) + " = "
-                        + setSigFigs(lower.add(child.confSearchNode.subtreeLowerBound)));
-                upper = upper.add(child.confSearchNode.subtreeUpperBound);
-                lower = lower.add(child.confSearchNode.subtreeLowerBound);
+                        + setSigFigs(childLower) + " = "
+                        + setSigFigs(lower.add(childLower)));
+                upper = upper.add(childUpper);
+                lower = lower.add(childLower);
                 child.printBoundBreakDown(prefix);
             }
         }
@@ -114,24 +124,119 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
             return;
         updated = false;
         if(children != null && children.size() > 0) {
-            BigDecimal errorUpperBound = BigDecimal.ZERO;
-            BigDecimal errorLowerBound = BigDecimal.ZERO;
+            double lnErrorUpperBound = Double.NEGATIVE_INFINITY;
+            double lnErrorLowerBound = Double.NEGATIVE_INFINITY;
             for(MARKStarNode child: children) {
                 child.updateSubtreeBounds();
-                errorUpperBound = errorUpperBound.add(child.confSearchNode.subtreeUpperBound);
-                errorLowerBound = errorLowerBound.add(child.confSearchNode.subtreeLowerBound);
+                lnErrorUpperBound = lnAddUp(lnErrorUpperBound, child.confSearchNode.lnSubtreeUpperBound);
+                lnErrorLowerBound = lnAddDown(lnErrorLowerBound, child.confSearchNode.lnSubtreeLowerBound);
             }
-            confSearchNode.subtreeUpperBound = errorUpperBound;
-            confSearchNode.subtreeLowerBound = errorLowerBound;
+            confSearchNode.lnSubtreeUpperBound = lnErrorUpperBound;
+            confSearchNode.lnSubtreeLowerBound = lnErrorLowerBound;
         }
     }
 
     public double recomputeEpsilon() {
-        nodeEpsilon = confSearchNode.subtreeUpperBound.subtract(confSearchNode.subtreeLowerBound)
-                .divide(confSearchNode.subtreeUpperBound, RoundingMode.HALF_UP).doubleValue();
+        nodeEpsilon = calcEpsilon(confSearchNode.lnSubtreeLowerBound, confSearchNode.lnSubtreeUpperBound);
         return nodeEpsilon;
     }
 
+    /** ln(e^a + e^b) */
+    private static double lnAdd(double a, double b) {
+        if (a == Double.NEGATIVE_INFINITY) {
+            return b;
+        } else if (b == Double.NEGATIVE_INFINITY) {
+            return a;
+        } else if (a == Double.POSITIVE_INFINITY || b == Double.POSITIVE_INFINITY) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    /** ln(e^a + e^b), rounded outward so sums of upper bounds stay upper bounds */
+    static double lnAddUp(double a, double b) {
+        double sum = lnAdd(a, b);
+        if (sum == a || sum == b) {
+            return sum;
+        }
+        return roundUp(roundUp(sum));
+    }
+
+    /** ln(e^a + e^b), rounded outward so sums of lower bounds stay lower bounds */
+    static double lnAddDown(double a, double b) {
+        double sum = lnAdd(a, b);
+        if (sum == a || sum == b) {
+            return sum;
+        }
+        return roundDown(roundDown(sum));
+    }
+
+    /** the next larger double, but infinities stay infinite */
+    static double roundUp(double val) {
+        if (Double.isInfinite(val) || Double.isNaN(val)) {
+            return val;
+        }
+        return Math.nextUp(val);
+    }
+
+    /** the next smaller double, but infinities stay infinite */
+    static double roundDown(double val) {
+        if (Double.isInfinite(val) || Double.isNaN(val)) {
+            return val;
+        }
+        return Math.nextDown(val);
+    }
+
+    /** ln(e^upper - e^lower), or -inf if the difference isn't positive */
+    static double lnDiff(double lnLower, double lnUpper) {
+        if (lnLower == Double.NEGATIVE_INFINITY) {
+            return lnUpper;
+        } else if (lnLower >= lnUpper) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (lnUpper == Double.POSITIVE_INFINITY) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return lnUpper + Math.log(-Math.expm1(lnLower - lnUpper));
+    }
+
+    /** e^upper - e^lower, saturating at +inf instead of giving inf - inf = NaN */
+    static double boundDiff(double lnLower, double lnUpper) {
+        if (Double.isNaN(lnLower) || Double.isNaN(lnUpper)) {
+            return Double.NaN;
+        } else if (lnUpper == Double.NEGATIVE_INFINITY || lnLower >= lnUpper) {
+            return 0;
+        } else if (lnUpper == Double.POSITIVE_INFINITY) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double frac = -Math.expm1(lnLower - lnUpper);
+        double upper = Math.exp(lnUpper);
+        if (upper == Double.POSITIVE_INFINITY) {
+            // the upper bound alone overflows, but the difference might not
+            return Math.exp(lnUpper + Math.log(frac));
+        }
+        return upper*frac;
+    }
+
+    /** (upper - lower)/upper */
+    static double calcEpsilon(double lnLower, double lnUpper) {
+        if (lnUpper == Double.NEGATIVE_INFINITY || lnLower >= lnUpper) {
+            return 0;
+        }
+        return -Math.expm1(lnLower - lnUpper);
+    }
+
+    static BigDecimal lnToBigDecimal(double lnVal) {
+        if (Double.isNaN(lnVal)) {
+            return MathTools.BigNaN;
+        } else if (lnVal == Double.NEGATIVE_INFINITY) {
+            return BigDecimal.ZERO;
+        } else if (lnVal == Double.POSITIVE_INFINITY) {
+            return MathTools.BigPositiveInfinity;
+        }
+        return ef.exp(lnVal);
+    }
+
     public int countNodesToProcess() {
         if(!updated)
             return 0;
@@ -153,17 +258,17 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         if(!updated)
             return nodeEpsilon;
         double epsilonBound = 0;
-        BigDecimal lastUpper = confSearchNode.subtreeUpperBound;
-        BigDecimal lastLower = confSearchNode.subtreeLowerBound;
+        double lnLastUpper = confSearchNode.lnSubtreeUpperBound;
+        double lnLastLower = confSearchNode.lnSubtreeLowerBound;
         updateSubtreeBounds();
-        if(confSearchNode.subtreeUpperBound.subtract(confSearchNode.subtreeLowerBound).compareTo(BigDecimal.ONE)<1)
+        // is upper - lower <= 1?
+        if(lnDiff(confSearchNode.lnSubtreeLowerBound, confSearchNode.lnSubtreeUpperBound) <= 0)
         {
             return 0;
         }
         if(level == 0) {
-            epsilonBound = confSearchNode.subtreeUpperBound.subtract(confSearchNode.subtreeLowerBound)
-                    .divide(confSearchNode.subtreeUpperBound, RoundingMode.HALF_UP).doubleValue();
-            debugChecks(lastUpper, lastLower, epsilonBound);
+            epsilonBound = calcEpsilon(confSearchNode.lnSubtreeLowerBound, confSearchNode.lnSubtreeUpperBound);
+            debugChecks(lnLastUpper, lnLastLower, epsilonBound);
             nodeEpsilon = epsilonBound;
             if(debug)
                 printBoundBreakDown();
@@ -213,38 +318,70 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
             System.out.println("Children corrected "+sum);
         return sum;
     }
-    private void debugChecks(BigDecimal lastUpper, BigDecimal lastLower, double epsilonBound) {
+    private void debugChecks(double lnLastUpper, double lnLastLower, double epsilonBound) {
         if (!debug)
             return;
+        BigDecimal lastUpper = lnToBigDecimal(lnLastUpper);
+        BigDecimal lastLower = lnToBigDecimal(lnLastLower);
+        BigDecimal subtreeUpperBound = confSearchNode.getSubtreeUpperBound();
+        BigDecimal subtreeLowerBound = confSearchNode.getSubtreeLowerBound();
         BigDecimal tolerance = new BigDecimal(0.00001);
         if(lastUpper != null
-                && confSearchNode.subtreeUpperBound.subtract(lastUpper).compareTo(BigDecimal.ZERO) > 0
-                && confSearchNode.subtreeUpperBound.subtract(lastUpper).compareTo(tolerance) > 0) {
+                && subtreeUpperBound.subtract(lastUpper).compareTo(BigDecimal.ZERO) > 0
+                && subtreeUpperBound.subtract(lastUpper).compareTo(tolerance) > 0) {
             System.err.println("Upper bound got bigger!?");
-            System.err.println("Previous: "+setSigFigs(lastUpper)+", now "+setSigFigs(confSearchNode.subtreeUpperBound));
-            System.err.println("Increased by "+lastUpper.subtract(confSearchNode.subtreeUpperBound));
+            System.err.println("Previous: "+setSigFigs(lastUpper)+", now "+setSigFigs(subtreeUpperBound));
+            System.err.println("Increased by "+lastUpper.subtract(subtreeUpperBound));
         }
         if(lastLower != null
-                && confSearchNode.subtreeLowerBound.subtract(lastLower).compareTo(BigDecimal.ZERO) < 0
-                && lastLower.subtract(confSearchNode.subtreeLowerBound).compareTo(tolerance) > 0) {
+                && subtreeLowerBound.subtract(lastLower).compareTo(BigDecimal.ZERO) < 0
+                && lastLower.subtract(subtreeLowerBound).compareTo(tolerance) > 0) {
             System.err.println("Lower bound got smaller!?");
-            System.err.println("Decreased by "+lastLower.subtract(confSearchNode.subtreeLowerBound));
+            System.err.println("Decreased by "+lastLower.subtract(subtreeLowerBound));
         }
         if(nodeEpsilon < epsilonBound && epsilonBound - nodeEpsilon > 0.0001) {
             System.err.println("Epsilon got bigger. Error.");
-            System.err.println("UpperBound change: "+confSearchNode.subtreeUpperBound.subtract(lastUpper));
-            System.err.println("LowerBound change: "+confSearchNode.subtreeLowerBound.subtract(lastLower));
+            System.err.println("UpperBound change: "+subtreeUpperBound.subtract(lastUpper));
+            System.err.println("LowerBound change: "+subtreeLowerBound.subtract(lastLower));
         }
 
     }
 
 
     public BigDecimal getUpperBound(){
-        return confSearchNode.subtreeUpperBound;
+        return confSearchNode.getSubtreeUpperBound();
     }
 
     public BigDecimal getLowerBound(){
-        return confSearchNode.subtreeLowerBound;
+        return confSearchNode.getSubtreeLowerBound();
+    }
+
+    /** upper bound - lower bound, computed in log space so only one BigDecimal is made */
+    public BigDecimal getBoundDifference(){
+        return lnToBigDecimal(lnDiff(getLnLowerBound(), getLnUpperBound()));
+    }
+
+    public double getLnUpperBound(){
+        return confSearchNode.lnSubtreeUpperBound;
+    }
+
+    public double getLnLowerBound(){
+        return confSearchNode.lnSubtreeLowerBound;
+    }
+
+    /**
+     * Cheaper than comparing BigDecimal bounds, since it stays in log space
+     * @return true iff this node's upper bound is greater than fraction*other's upper bound
+     */
+    public boolean isUpperBoundGreaterThan(MARKStarNode other, double fraction) {
+        return getLnUpperBound() - other.getLnUpperBound() > Math.log(fraction);
+    }
+
+    /**
+     * @return true iff this node's lower bound is greater than val
+     */
+    public boolean isLowerBoundGreaterThan(double val) {
+        return getLnLowerBound() > Math.log(val);
     }
 
     public static BigDecimal setSigFigs(BigDecimal decimal, int numSigFigs) {
@@ -263,9 +400,9 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
             confString = confString+"->("+confSpace.formatConfRotamersWithResidueNumbers(confSearchNode.assignments)+")";
         String out = prefix+confString+":"
                 +"["+confSearchNode.confLowerBound+","+confSearchNode.confUpperBound+"]->"
-                +"["+setSigFigs(confSearchNode.subtreeLowerBound)
-                +","+setSigFigs(confSearchNode.subtreeUpperBound)+"]"+"\n";
-        if(MathTools.isLessThan(confSearchNode.getSubtreeUpperBound(), BigDecimal.ONE))
+                +"["+setSigFigs(confSearchNode.getSubtreeLowerBound())
+                +","+setSigFigs(confSearchNode.getSubtreeUpperBound())+"]"+"\n";
+        if(confSearchNode.lnSubtreeUpperBound < 0)
             return;
         if(writer != null) {
             try {
@@ -277,8 +414,8 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         else
             System.out.print(out);
         if(children != null && !children.isEmpty()) {
-            Collections.sort(children, (a,b)-> -a.confSearchNode.subtreeUpperBound
-                    .compareTo(b.confSearchNode.subtreeUpperBound));
+            Collections.sort(children, (a,b)-> -Double.compare(a.confSearchNode.lnSubtreeUpperBound,
+                    b.confSearchNode.lnSubtreeUpperBound));
             for (MARKStarNode child : children)
                 child.printTree(prefix + "~+", writer, confSpace);
         }
@@ -315,8 +452,13 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
 
     public MARKStarNode makeChild(Node child) {
         MARKStarNode newChild = new MARKStarNode(child, this);
-        if(children == null)
-            children = new CopyOnWriteArrayList<>();
+        if(children == null) {
+            // only lock this node, and only the first time it gets children
+            synchronized (this) {
+                if(children == null)
+                    children = new CopyOnWriteArrayList<>();
+            }
+        }
         children.add(newChild);
         return newChild;
     }
@@ -381,22 +523,26 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
 
     @Override
     public int compareTo(MARKStarNode other){
-        return -getErrorBound().compareTo(other.getErrorBound());
+        return -Double.compare(getLnErrorBound(), other.getLnErrorBound());
     }
 
     public BigDecimal getErrorBound() {
+        return lnToBigDecimal(getLnErrorBound());
+    }
+
+    public double getLnErrorBound() {
         if(confSearchNode.isMinimized())
-            return BigDecimal.ZERO;
+            return Double.NEGATIVE_INFINITY;
         if(children == null || children.size() < 1) {
-            BigDecimal diff = confSearchNode.subtreeUpperBound.subtract(confSearchNode.subtreeLowerBound);
-            return  diff.multiply(new BigDecimal(confSearchNode.minimizationRatio));
+            double lnDiff = lnDiff(confSearchNode.lnSubtreeLowerBound, confSearchNode.lnSubtreeUpperBound);
+            return lnDiff + Math.log(confSearchNode.minimizationRatio);
         }
-        BigDecimal errorSum = BigDecimal.ZERO;
+        double lnErrorSum = Double.NEGATIVE_INFINITY;
         for(MARKStarNode childNode: children) {
-            errorSum = errorSum.add(childNode.getErrorBound());
+            lnErrorSum = lnAddUp(lnErrorSum, childNode.getLnErrorBound());
         }
-        errorBound = errorSum;
-        return errorBound;
+        lnErrorBound = lnErrorSum;
+        return lnErrorBound;
     }
 
 
@@ -405,8 +551,9 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         private static int Unassigned = -1;
         public double gscore = Double.NaN;
         public double rigidScore = Double.NaN;
-        private BigDecimal subtreeLowerBound = BigDecimal.ZERO; //\hat h^ominus(f) - the lower bound on subtree contrib to partition function
-        private BigDecimal subtreeUpperBound = null; //\hat h^oplus(f) - the lower bound on subtree contrib to partition function
+        // bounds are stored as natural logs
+        private volatile double lnSubtreeLowerBound = Double.NEGATIVE_INFINITY; //\hat h^ominus(f) - the lower bound on subtree contrib to partition function
+        private volatile double lnSubtreeUpperBound = Double.POSITIVE_INFINITY; //\hat h^oplus(f) - the lower bound on subtree contrib to partition function
         private double confLowerBound = -Double.MAX_VALUE;
         private double confUpperBound = Double.MAX_VALUE;
         public int[] assignments;
@@ -414,6 +561,7 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         public int rc = Unassigned;
         public final int level;
         public BigInteger numConfs = BigInteger.ZERO;
+        private double lnNumConfs = Double.NEGATIVE_INFINITY;
         private double minimizationRatio = 1;
 
         public Node(int size) {
@@ -452,7 +600,7 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
                         + " with " + tighterLower + ", which is lower!?");
             if(tighterLower > confLowerBound) {
                 confLowerBound = tighterLower;
-                updateSubtreeUpperBound(computeBoundsFromEnergy(confLowerBound));
+                updateSubtreeUpperBound(roundUp(computeLnBoundsFromEnergy(confLowerBound)));
             }
         }
 
@@ -461,29 +609,30 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
                 System.err.println("Updating conf upper bound of  " + confUpperBound
                         + " with " + tighterUpper + ", which is greater!?");
             if(tighterUpper == Double.POSITIVE_INFINITY)
-                updateSubtreeLowerBound(BigDecimal.ZERO);
+                updateSubtreeLowerBound(Double.NEGATIVE_INFINITY);
             if(tighterUpper < confUpperBound) {
                 confUpperBound = tighterUpper;
-                updateSubtreeLowerBound(computeBoundsFromEnergy(confUpperBound));
+                updateSubtreeLowerBound(roundDown(computeLnBoundsFromEnergy(confUpperBound)));
             }
         }
 
-        private BigDecimal computeBoundsFromEnergy(double energy) {
-            return bc.calc(energy).multiply(new BigDecimal(getNumConformations()));
+        /** ln of the Boltzmann-weighted contribution of this subtree, if all its confs had the given energy */
+        private double computeLnBoundsFromEnergy(double energy) {
+            return -energy/BoltzmannCalculator.constRT + lnNumConfs;
         }
 
-        private void updateSubtreeLowerBound(BigDecimal tighterLower) {
-            if (subtreeLowerBound != null && subtreeLowerBound.compareTo(tighterLower) > 0)
-                System.err.println("Updating subtree lower bound " + setSigFigs(subtreeLowerBound)
-                        + " with " + tighterLower + ", which is lower!?");
-            subtreeLowerBound = tighterLower;
+        private void updateSubtreeLowerBound(double lnTighterLower) {
+            if (lnSubtreeLowerBound > lnTighterLower)
+                System.err.println("Updating subtree lower bound " + setSigFigs(getSubtreeLowerBound())
+                        + " with " + lnToBigDecimal(lnTighterLower) + ", which is lower!?");
+            lnSubtreeLowerBound = lnTighterLower;
         }
 
-        private void updateSubtreeUpperBound(BigDecimal tighterUpper) {
-            if (subtreeUpperBound != null && subtreeUpperBound.compareTo(tighterUpper) < 0)
-                System.err.println("Updating subtree upper bound " + setSigFigs(subtreeUpperBound)
-                        + " with " + setSigFigs(tighterUpper) + ", which is greater!?");
-            subtreeUpperBound = tighterUpper;
+        private void updateSubtreeUpperBound(double lnTighterUpper) {
+            if (lnSubtreeUpperBound < lnTighterUpper)
+                System.err.println("Updating subtree upper bound " + setSigFigs(getSubtreeUpperBound())
+                        + " with " + setSigFigs(lnToBigDecimal(lnTighterUpper)) + ", which is greater!?");
+            lnSubtreeUpperBound = lnTighterUpper;
         }
 
         public boolean isMinimized() {
@@ -524,7 +673,7 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
 
         @Override
         public double getHScore() {
-            return -subtreeUpperBound.subtract(subtreeLowerBound).doubleValue();
+            return -boundDiff(lnSubtreeLowerBound, lnSubtreeUpperBound);
         }
 
         @Override
@@ -573,9 +722,9 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
             String out = confToString();
             out += "Energy:" + String.format("%4.2f", gscore) + "*" + numConfs;
             if (!isMinimized())
-                out += " in [" + String.format("%4.4e,%4.4e", confLowerBound, confUpperBound) + "]->[" + setSigFigs(subtreeLowerBound) + "," + setSigFigs(subtreeUpperBound) + "]";
+                out += " in [" + String.format("%4.4e,%4.4e", confLowerBound, confUpperBound) + "]->[" + setSigFigs(getSubtreeLowerBound()) + "," + setSigFigs(getSubtreeUpperBound()) + "]";
             else
-                out += " (minimized) -> " + setSigFigs(subtreeLowerBound);
+                out += " (minimized) -> " + setSigFigs(getSubtreeLowerBound());
             return out;
         }
 
@@ -586,6 +735,7 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         public void computeNumConformations(RCs rcs) {
             BigInteger numConfs = BigInteger.ONE;
             this.numConfs = numConfs;
+            this.lnNumConfs = 0;
             if(rcs.getNumPos() == assignments.length) {
                 boolean fullyAssigned = true;
                 for (int pos = 0; pos < assignments.length; pos++) {
@@ -596,12 +746,16 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
                     return;
             }
 
+            double lnNumConfs = 0;
             for (int pos = 0; pos < assignments.length; pos++) {
                 if (assignments[pos] == Unassigned) {
                     numConfs = numConfs.multiply(BigInteger.valueOf(rcs.getNum(pos)));
+                    lnNumConfs += Math.log(rcs.getNum(pos));
                 }
             }
             this.numConfs = numConfs;
+            // round up slightly so the upper bounds stay rigorous
+            this.lnNumConfs = Math.nextUp(lnNumConfs);
             assert(this.numConfs.compareTo(BigInteger.ZERO) > 0);
         }
 
@@ -614,11 +768,11 @@ public class MARKStarNode implements Comparable<MARKStarNode> {
         }
 
         public BigDecimal getSubtreeLowerBound() {
-            return subtreeLowerBound;
+            return lnToBigDecimal(lnSubtreeLowerBound);
         }
 
         public BigDecimal getSubtreeUpperBound() {
-            return subtreeUpperBound;
+            return lnToBigDecimal(lnSubtreeUpperBound);
         }
     }
 
@@ -0,0 +1,283 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.minimization;
+
+import java.util.ArrayList;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * An objective function whose DOF vectors are primitive double arrays instead of colt vectors.
+ *
+ * Minimizers that use this interface can keep DOF vectors in preallocated arrays,
+ * so their inner loops don't need to allocate, copy, or make virtual calls into colt.
+ *
+ * Use {@link #adapt(ObjectiveFunction)} to use an {@link ObjectiveFunction} with this interface,
+ * and {@link ToObjectiveFunction} to go the other way.
+ */
+public interface ArrayObjectiveFunction {
+
+	/** Return number of degrees of freedom */
+	int getNumDOFs();
+
+	/** Get the lower bound of a degree of freedom */
+	double getXMin(int d);
+
+	/** Get the upper bound of a degree of freedom */
+	double getXMax(int d);
+
+	default void getDOFsCenter(double[] out) {
+		for (int d=0; d<getNumDOFs(); d++) {
+			out[d] = (getXMin(d) + getXMax(d))/2;
+		}
+	}
+
+	/** Set all DOFs to values in x (e.g. in the molecule) */
+	void setDOFs(double[] x);
+
+	/** Set just one degree of freedom */
+	void setDOF(int d, double xd);
+
+	/** Value at a given point (specified as values for all DOFs) */
+	double getValue(double[] x);
+
+	/**
+	 * Value at a given value for a given DOF, and, for efficiency,
+	 * possibly omitting energy terms that don't depend on that DOF.
+	 * Other DOFs kept as they are currently set.
+	 * (omitted terms must be consistent for a given objective function and DOF)
+	 */
+	double getValForDOF(int d, double xd);
+
+	/**
+	 * Gradient at a given point (specified as values for all DOFs).
+	 *
+	 * By default, the gradient is estimated with central finite differences,
+	 * using the initial step size of each DOF scaled down, and clamped to the DOF bounds.
+	 * Objective functions with analytic gradients should override this.
+	 *
+	 * @param x the point, which is not modified, although the DOFs are left set to x afterwards
+	 * @param gradient receives the gradient
+	 */
+	default void getGradient(double[] x, double[] gradient) {
+
+		final double StepScale = 1e-3;
+
+		setDOFs(x);
+		for (int d=0; d<getNumDOFs(); d++) {
+
+			double xd = x[d];
+			double h = getInitStepSize(d)*StepScale;
+			double xdp = Math.min(xd + h, getXMax(d));
+			double xdm = Math.max(xd - h, getXMin(d));
+			if (xdp <= xdm) {
+				gradient[d] = 0;
+				continue;
+			}
+
+			double fp = getValForDOF(d, xdp);
+			double fm = getValForDOF(d, xdm);
+			gradient[d] = (fp - fm)/(xdp - xdm);
+			setDOF(d, xd);
+		}
+	}
+
+	/** Get a good initial step size for a DOF (e.g. for first initial value checking in CCD) */
+	double getInitStepSize(int d);
+
+	/**
+	 * Is the given degree of freedom an angle?
+	 * This is important because angles can wrap around (at 360-degree intervals)
+	 */
+	boolean isDOFAngle(int d);
+
+	/**
+	 * Use an {@link ObjectiveFunction} as an {@link ArrayObjectiveFunction}.
+	 * Objective functions that already implement both interfaces are returned as-is,
+	 * and adapted array objective functions are unwrapped.
+	 */
+	static ArrayObjectiveFunction adapt(ObjectiveFunction f) {
+		if (f instanceof ArrayObjectiveFunction) {
+			return (ArrayObjectiveFunction)f;
+		} else if (f instanceof ToObjectiveFunction) {
+			return ((ToObjectiveFunction)f).f;
+		}
+		return new FromObjectiveFunction(f);
+	}
+
+	/**
+	 * Adapts an {@link ObjectiveFunction} to this interface,
+	 * reusing one colt vector for all the conversions.
+	 */
+	public static class FromObjectiveFunction implements ArrayObjectiveFunction {
+
+		public final ObjectiveFunction f;
+
+		private final double[] xmin;
+		private final double[] xmax;
+		private final DoubleMatrix1D buf;
+
+		public FromObjectiveFunction(ObjectiveFunction f) {
+			this.f = f;
+			DoubleMatrix1D[] constraints = f.getConstraints();
+			this.xmin = constraints[0].toArray();
+			this.xmax = constraints[1].toArray();
+			this.buf = DoubleFactory1D.dense.make(f.getNumDOFs());
+		}
+
+		@Override
+		public int getNumDOFs() {
+			return f.getNumDOFs();
+		}
+
+		@Override
+		public double getXMin(int d) {
+			return xmin[d];
+		}
+
+		@Override
+		public double getXMax(int d) {
+			return xmax[d];
+		}
+
+		@Override
+		public void setDOFs(double[] x) {
+			buf.assign(x);
+			f.setDOFs(buf);
+		}
+
+		@Override
+		public void setDOF(int d, double xd) {
+			f.setDOF(d, xd);
+		}
+
+		@Override
+		public double getValue(double[] x) {
+			buf.assign(x);
+			return f.getValue(buf);
+		}
+
+		@Override
+		public double getValForDOF(int d, double xd) {
+			return f.getValForDOF(d, xd);
+		}
+
+		@Override
+		public double getInitStepSize(int d) {
+			return f.getInitStepSize(d);
+		}
+
+		@Override
+		public boolean isDOFAngle(int d) {
+			return f.isDOFAngle(d);
+		}
+	}
+
+	/**
+	 * Adapts an {@link ArrayObjectiveFunction} to the older {@link ObjectiveFunction} interface,
+	 * e.g., to use it with {@link CCDMinimizer}.
+	 */
+	public static class ToObjectiveFunction implements ObjectiveFunction {
+
+		private static final long serialVersionUID = -1874939183580419364L;
+
+		public final ArrayObjectiveFunction f;
+
+		private final DoubleMatrix1D[] constraints;
+		private final double[] buf;
+
+		public ToObjectiveFunction(ArrayObjectiveFunction f) {
+			this.f = f;
+			int n = f.getNumDOFs();
+			this.constraints = new DoubleMatrix1D[] {
+				DoubleFactory1D.dense.make(n),
+				DoubleFactory1D.dense.make(n)
+			};
+			for (int d=0; d<n; d++) {
+				constraints[0].set(d, f.getXMin(d));
+				constraints[1].set(d, f.getXMax(d));
+			}
+			this.buf = new double[n];
+		}
+
+		@Override
+		public int getNumDOFs() {
+			return f.getNumDOFs();
+		}
+
+		@Override
+		public DoubleMatrix1D[] getConstraints() {
+			return constraints;
+		}
+
+		@Override
+		public void setDOFs(DoubleMatrix1D x) {
+			x.toArray(buf);
+			f.setDOFs(buf);
+		}
+
+		@Override
+		public void setDOF(int d, double val) {
+			f.setDOF(d, val);
+		}
+
+		@Override
+		public double getValue(DoubleMatrix1D x) {
+			x.toArray(buf);
+			return f.getValue(buf);
+		}
+
+		@Override
+		public double getValForDOF(int d, double val) {
+			return f.getValForDOF(d, val);
+		}
+
+		@Override
+		public double getInitStepSize(int d) {
+			return f.getInitStepSize(d);
+		}
+
+		@Override
+		public boolean isDOFAngle(int d) {
+			return f.isDOFAngle(d);
+		}
+
+		@Override
+		public ArrayList<Integer> getInitFixableDOFs() {
+			// array objective functions don't know which DOFs could be fixed, so don't suggest any
+			return new ArrayList<>();
+		}
+	}
+}
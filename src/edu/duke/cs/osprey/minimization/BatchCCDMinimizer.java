@@ -0,0 +1,602 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.minimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import edu.duke.cs.osprey.dof.DegreeOfFreedom;
+import edu.duke.cs.osprey.energy.forcefield.ResidueForcefieldEnergy;
+import edu.duke.cs.osprey.energy.forcefield.ResidueForcefieldEnergyBatch;
+import edu.duke.cs.osprey.structure.Residue;
+
+/**
+ * Minimizes a batch of conformations with the same residue types in lockstep, using CCD.
+ *
+ * Each conformation takes exactly the same steps it would take in a {@link SimpleCCDMinimizer}
+ * with a {@link SurfingLineSearcher}, but each energy evaluation is done for the whole batch at once
+ * by a {@link ResidueForcefieldEnergyBatch}. Conformations that finish early drop out of the batch,
+ * so the remaining iterations only evaluate the conformations that are still minimizing.
+ */
+public class BatchCCDMinimizer {
+
+	private static final int MaxIterations = 30; // same as SimpleCCDMinimizer
+	private static final double ConvergenceThreshold = 0.001; // same as SimpleCCDMinimizer
+
+	// same as SurfingLineSearcher
+	private static final double Tolerance = 1e-6;
+	private static final double InitialStepSize = 0.25;
+	private static final double ShapeEpsilon = 1e-12;
+
+	private static enum Surf {
+		None,
+		Down,
+		Up
+	}
+
+	/**
+	 * Returns true if the objective functions can be minimized together in a batch,
+	 * ie, they all use the CPU residue forcefield, have the same residue types,
+	 * and have the same degrees of freedom.
+	 */
+	public static boolean isCompatible(List<MoleculeObjectiveFunction> fs) {
+
+		if (fs.isEmpty()) {
+			return false;
+		}
+
+		List<ResidueForcefieldEnergy> efuncs = new ArrayList<>();
+		for (MoleculeObjectiveFunction f : fs) {
+
+			// only the plain forcefield, not subclasses like the vdW-only forcefield
+			if (f.efunc == null || f.efunc.getClass() != ResidueForcefieldEnergy.class) {
+				return false;
+			}
+			efuncs.add((ResidueForcefieldEnergy)f.efunc);
+		}
+		if (!ResidueForcefieldEnergyBatch.isCompatible(efuncs)) {
+			return false;
+		}
+
+		// the dofs must move the same residues
+		MoleculeObjectiveFunction first = fs.get(0);
+		for (MoleculeObjectiveFunction f : fs) {
+			if (f.getNumDOFs() != first.getNumDOFs()) {
+				return false;
+			}
+			for (int d=0; d<f.getNumDOFs(); d++) {
+				if (getResIndex(f, d) != getResIndex(first, d)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static int getResIndex(MoleculeObjectiveFunction f, int d) {
+		DegreeOfFreedom dof = f.pmol.dofs.get(d);
+		Residue res = dof.getResidue();
+		if (res == null) {
+			return -1;
+		}
+		return ((ResidueForcefieldEnergy)f.efunc).residues.indexOf(res);
+	}
+
+	public final List<MoleculeObjectiveFunction> fs;
+	public final int numConfs;
+	public final int numDofs;
+
+	// only the active conformations are in the batch
+	private ResidueForcefieldEnergyBatch batch;
+	private final int[] batchIndices; // -1 means the conf isn't in the batch
+	private double[] energies;
+
+	private final int[] allPairs;
+	private final int[][] pairsByDof;
+	private final int[] resIndicesByDof; // -1 means the dof can move any residue
+
+	// layout: [dof][conf]
+	private final double[][] xmins;
+	private final double[][] xmaxs;
+
+	// line search state, layout: [dof][conf]
+	private final double[][] firstSteps;
+	private final double[][] lastSteps;
+	private final int[][] iterations;
+
+	public BatchCCDMinimizer(List<MoleculeObjectiveFunction> fs) {
+
+		if (!isCompatible(fs)) {
+			throw new IllegalArgumentException("objective functions must have the same residue types and degrees of freedom to be minimized in a batch");
+		}
+
+		this.fs = fs;
+		this.numConfs = fs.size();
+		this.numDofs = fs.get(0).getNumDOFs();
+
+		batchIndices = new int[numConfs];
+		boolean[] isActive = new boolean[numConfs];
+		Arrays.fill(isActive, true);
+		setBatch(isActive);
+
+		// decompose the energy by dof, like ResidueForcefieldEnergy.decomposeByDof()
+		allPairs = batch.makePairIndices();
+		pairsByDof = new int[numDofs][];
+		resIndicesByDof = new int[numDofs];
+		for (int d=0; d<numDofs; d++) {
+			resIndicesByDof[d] = getResIndex(fs.get(0), d);
+			if (resIndicesByDof[d] < 0) {
+				pairsByDof[d] = allPairs;
+			} else {
+				pairsByDof[d] = batch.makePairIndicesSubset(resIndicesByDof[d]);
+			}
+		}
+
+		xmins = new double[numDofs][numConfs];
+		xmaxs = new double[numDofs][numConfs];
+		firstSteps = new double[numDofs][numConfs];
+		lastSteps = new double[numDofs][numConfs];
+		iterations = new int[numDofs][numConfs];
+		for (int c=0; c<numConfs; c++) {
+			DoubleMatrix1D[] bounds = fs.get(c).getConstraints();
+			for (int d=0; d<numDofs; d++) {
+				xmins[d][c] = bounds[0].get(d);
+				xmaxs[d][c] = bounds[1].get(d);
+				firstSteps[d][c] = 1;
+				lastSteps[d][c] = 1;
+			}
+		}
+	}
+
+	/**
+	 * rebuild the batch with just the active conformations
+	 */
+	private void setBatch(boolean[] isActive) {
+
+		List<ResidueForcefieldEnergy> efuncs = new ArrayList<>();
+		for (int c=0; c<numConfs; c++) {
+			if (isActive[c]) {
+				batchIndices[c] = efuncs.size();
+				efuncs.add((ResidueForcefieldEnergy)fs.get(c).efunc);
+			} else {
+				batchIndices[c] = -1;
+			}
+		}
+
+		batch = new ResidueForcefieldEnergyBatch(efuncs);
+		energies = new double[batch.numConfs];
+	}
+
+	public List<Minimizer.Result> minimizeFromCenter() {
+		List<DoubleMatrix1D> xs = new ArrayList<>();
+		for (MoleculeObjectiveFunction f : fs) {
+			xs.add(f.getDOFsCenter());
+		}
+		return minimizeFrom(xs);
+	}
+
+	public List<Minimizer.Result> minimizeFrom(List<DoubleMatrix1D> startxs) {
+
+		double[][] herex = new double[numConfs][];
+		double[][] nextx = new double[numConfs][];
+		for (int c=0; c<numConfs; c++) {
+			herex[c] = startxs.get(c).toArray();
+			nextx[c] = startxs.get(c).toArray();
+		}
+
+		// get the current objective function values
+		boolean[] isActive = new boolean[numConfs];
+		Arrays.fill(isActive, true);
+		if (batch.numConfs < numConfs) {
+			setBatch(isActive);
+		}
+		double[] herefx = new double[numConfs];
+		double[] nextfx = new double[numConfs];
+		getValues(nextx, isActive, herefx);
+
+		boolean[] isSearching = new boolean[numConfs];
+		int numActive = numConfs;
+		for (int iter=0; iter<MaxIterations; iter++) {
+
+			// update all the dofs using line search
+			for (int d=0; d<numDofs; d++) {
+
+				boolean anySearching = false;
+				for (int c=0; c<numConfs; c++) {
+					isSearching[c] = isActive[c] && xmins[d][c] < xmaxs[d][c];
+					anySearching |= isSearching[c];
+				}
+
+				if (anySearching) {
+					search(d, nextx, isSearching);
+				}
+			}
+
+			// how much did we improve?
+			getValues(nextx, isActive, nextfx);
+			for (int c=0; c<numConfs; c++) {
+				if (!isActive[c]) {
+					continue;
+				}
+
+				double improvement = herefx[c] - nextfx[c];
+				if (improvement > 0) {
+
+					// take the step
+					System.arraycopy(nextx[c], 0, herex[c], 0, numDofs);
+					herefx[c] = nextfx[c];
+
+					if (improvement < ConvergenceThreshold) {
+						isActive[c] = false;
+					}
+
+				} else {
+					isActive[c] = false;
+				}
+
+				if (!isActive[c]) {
+					numActive--;
+				}
+			}
+
+			if (numActive <= 0) {
+				break;
+			}
+
+			// drop the converged conformations from the batch
+			if (numActive < batch.numConfs) {
+				setBatch(isActive);
+			}
+		}
+
+		// update the protein confs, one last time
+		List<Minimizer.Result> results = new ArrayList<>(numConfs);
+		for (int c=0; c<numConfs; c++) {
+			fs.get(c).setDOFs(herex[c]);
+			results.add(new Minimizer.Result(DoubleFactory1D.dense.make(herex[c]), herefx[c]));
+		}
+		return results;
+	}
+
+	private void getValues(double[][] x, boolean[] mask, double[] out) {
+
+		for (int c=0; c<numConfs; c++) {
+			if (mask[c]) {
+				fs.get(c).setDOFs(x[c]);
+				batch.updateCoords(batchIndices[c]);
+			}
+		}
+
+		batch.getEnergies(allPairs, energies);
+
+		for (int c=0; c<numConfs; c++) {
+			if (mask[c]) {
+				out[c] = energies[batchIndices[c]];
+			}
+		}
+	}
+
+	private void getValues(int d, double[] xd, boolean[] mask, double[] out) {
+
+		boolean anyMasked = false;
+		for (int c=0; c<numConfs; c++) {
+			if (mask[c]) {
+				setDOF(c, d, xd[c]);
+				anyMasked = true;
+			}
+		}
+
+		if (!anyMasked) {
+			return;
+		}
+
+		batch.getEnergies(pairsByDof[d], energies);
+
+		for (int c=0; c<numConfs; c++) {
+			if (mask[c]) {
+				out[c] = energies[batchIndices[c]];
+			}
+		}
+	}
+
+	private void setDOF(int c, int d, double xd) {
+		fs.get(c).setDOF(d, xd);
+		if (resIndicesByDof[d] < 0) {
+			batch.updateCoords(batchIndices[c]);
+		} else {
+			batch.updateCoords(batchIndices[c], resIndicesByDof[d]);
+		}
+	}
+
+	/**
+	 * The same algorithm as {@link SurfingLineSearcher#search(double)}, but for all the searching
+	 * conformations at once. Each step of the algorithm does one batched energy evaluation.
+	 */
+	private void search(int d, double[][] x, boolean[] isSearching) {
+
+		int n = numConfs;
+		double[] xdmin = xmins[d];
+		double[] xdmax = xmaxs[d];
+
+		double[] xd = new double[n];
+		double[] fxd = new double[n];
+		for (int c=0; c<n; c++) {
+			if (isSearching[c]) {
+				xd[c] = x[c][d];
+			}
+		}
+		getValues(d, xd, isSearching, fxd);
+
+		// get the positive (p) and negative (n) neighbors for our current pos
+		double[] step = new double[n];
+		double[] xdp = new double[n];
+		double[] xdm = new double[n];
+		double[] fxdp = new double[n];
+		double[] fxdm = new double[n];
+		boolean[] maskp = new boolean[n];
+		boolean[] maskm = new boolean[n];
+		for (int c=0; c<n; c++) {
+			if (!isSearching[c]) {
+				continue;
+			}
+
+			// get the step size, try to make it adaptive (based on historical steps if possible; else on step #)
+			if (Math.abs(lastSteps[d][c]) > Tolerance && Math.abs(firstSteps[d][c]) > Tolerance) {
+				step[c] = InitialStepSize*Math.abs(lastSteps[d][c] / firstSteps[d][c]);
+			} else {
+				step[c] = InitialStepSize/Math.pow(iterations[d][c] + 1, 3);
+			}
+
+			// make sure the step isn't so big that the quadratic approximation is worthless
+			while (xd[c] - step[c] < xdmin[c] && xd[c] + step[c] > xdmax[c]) {
+				step[c] /= 2;
+			}
+
+			xdp[c] = xd[c] + step[c];
+			xdm[c] = xd[c] - step[c];
+			fxdp[c] = Double.POSITIVE_INFINITY;
+			fxdm[c] = Double.POSITIVE_INFINITY;
+			maskp[c] = xdp[c] <= xdmax[c];
+			maskm[c] = xdm[c] >= xdmin[c];
+		}
+		getValues(d, xdp, maskp, fxdp);
+		getValues(d, xdm, maskm, fxdm);
+
+		// fit a quadratic to the objective function locally, and step to the optimum
+		double[] xdstar = new double[n];
+		double[] fxdstar = new double[n];
+		for (int c=0; c<n; c++) {
+			if (!isSearching[c]) {
+				continue;
+			}
+
+			double shape = fxdp[c] + fxdm[c] - 2*fxd[c];
+			if ((shape < -ShapeEpsilon) || Double.isNaN(shape) || Double.isInfinite(shape)) {
+
+				// concave down, or hitting a constraint, so just minimize over the endpoints of the interval
+				if (fxdm[c] < fxdp[c]) {
+					xdstar[c] = xdm[c];
+				} else {
+					xdstar[c] = xdp[c];
+				}
+
+			} else if (shape <= ShapeEpsilon) {
+
+				// basically flat, so don't step anywhere
+				xdstar[c] = xd[c];
+
+			} else {
+
+				// concave up, step to the optimum
+				xdstar[c] = xd[c] + (fxdm[c] - fxdp[c])*step[c]/2/shape;
+			}
+
+			// clamp xdstar to the range
+			if (xdstar[c] < xdmin[c]) {
+				xdstar[c] = xdmin[c];
+			}
+			if (xdstar[c] > xdmax[c]) {
+				xdstar[c] = xdmax[c];
+			}
+		}
+		getValues(d, xdstar, isSearching, fxdstar);
+
+		// surf downhill if we can, or back downhill if we went uphill
+		Surf[] surf = new Surf[n];
+		double[] xdsurfHere = new double[n];
+		double[] fxdsurfHere = new double[n];
+		for (int c=0; c<n; c++) {
+			surf[c] = Surf.None;
+			if (!isSearching[c]) {
+				continue;
+			}
+			xdsurfHere[c] = xdstar[c];
+			fxdsurfHere[c] = fxdstar[c];
+			if (fxdstar[c] < fxd[c]) {
+				surf[c] = Surf.Down;
+			} else if (fxdstar[c] > fxd[c] + Tolerance) {
+				surf[c] = Surf.Up;
+			}
+		}
+		surf(d, xd, xdmin, xdmax, surf, xdsurfHere, fxdsurfHere);
+
+		// update the minimum estimates and the steps
+		for (int c=0; c<n; c++) {
+			if (!isSearching[c]) {
+				continue;
+			}
+
+			if (fxdstar[c] < fxd[c]) {
+
+				xdstar[c] = xdsurfHere[c];
+				fxdstar[c] = fxdsurfHere[c];
+
+			} else if (fxdstar[c] > fxd[c] + Tolerance) {
+
+				// the original spot was lower than the quadratic step
+				xdstar[c] = xd[c];
+				fxdstar[c] = fxd[c];
+
+				// did surfing help at all?
+				if (fxdsurfHere[c] < fxdstar[c]) {
+					xdstar[c] = xdsurfHere[c];
+					fxdstar[c] = fxdsurfHere[c];
+				}
+			}
+
+			// update step before wall jumping
+			lastSteps[d][c] = xdstar[c] - xd[c];
+			if (iterations[d][c] == 0) {
+				firstSteps[d][c] = lastSteps[d][c];
+			}
+
+			// try to jump over walls arbitrarily, look in a 1-degree step for a better minimum
+			xdm[c] = xdstar[c] - 1;
+			xdp[c] = xdstar[c] + 1;
+			maskm[c] = xdm[c] >= xdmin[c];
+			maskp[c] = xdp[c] <= xdmax[c];
+		}
+
+		getValues(d, xdm, maskm, fxdm);
+		for (int c=0; c<n; c++) {
+			if (maskm[c] && fxdm[c] < fxdstar[c]) {
+				xdstar[c] = xdm[c];
+				fxdstar[c] = fxdm[c];
+			}
+		}
+
+		getValues(d, xdp, maskp, fxdp);
+		for (int c=0; c<n; c++) {
+			if (maskp[c] && fxdp[c] < fxdstar[c]) {
+				xdstar[c] = xdp[c];
+				fxdstar[c] = fxdp[c];
+			}
+		}
+
+		for (int c=0; c<n; c++) {
+			if (isSearching[c]) {
+				iterations[d][c]++;
+				setDOF(c, d, xdstar[c]);
+				x[c][d] = xdstar[c];
+			}
+		}
+	}
+
+	private void surf(int d, double[] xd, double[] xdmin, double[] xdmax, Surf[] surf, double[] xdsurfHere, double[] fxdsurfHere) {
+
+		int n = numConfs;
+		double[] xdsurfNext = new double[n];
+		double[] fxdsurfNext = new double[n];
+		boolean[] isEndpoint = new boolean[n];
+		boolean[] mask = new boolean[n];
+
+		while (true) {
+
+			// where should each conformation surf next?
+			boolean anySurfing = false;
+			for (int c=0; c<n; c++) {
+
+				mask[c] = surf[c] != Surf.None;
+				isEndpoint[c] = false;
+				if (!mask[c]) {
+					continue;
+				}
+				anySurfing = true;
+
+				if (surf[c] == Surf.Down) {
+
+					// take a step twice as far as we did last time
+					xdsurfNext[c] = xd[c] + 2*(xdsurfHere[c] - xd[c]);
+
+					// if we stepped off the min or max, try the endpoint instead
+					if (xdsurfNext[c] < xdmin[c]) {
+						xdsurfNext[c] = xdmin[c];
+						isEndpoint[c] = true;
+					} else if (xdsurfNext[c] > xdmax[c]) {
+						xdsurfNext[c] = xdmax[c];
+						isEndpoint[c] = true;
+					}
+
+				} else {
+
+					// cut the step in half
+					xdsurfNext[c] = xd[c] + (xdsurfHere[c] - xd[c])/2;
+				}
+			}
+
+			if (!anySurfing) {
+				break;
+			}
+
+			getValues(d, xdsurfNext, mask, fxdsurfNext);
+
+			for (int c=0; c<n; c++) {
+				if (!mask[c]) {
+					continue;
+				}
+
+				if (isEndpoint[c]) {
+
+					// if the endpoint is better, go there instead, but stop surfing either way
+					if (fxdsurfNext[c] < fxdsurfHere[c]) {
+						xdsurfHere[c] = xdsurfNext[c];
+						fxdsurfHere[c] = fxdsurfNext[c];
+					}
+					surf[c] = Surf.None;
+
+				} else if (fxdsurfNext[c] < fxdsurfHere[c] - getTolerance(fxdsurfHere[c])) {
+
+					// we improved the min enough to keep surfing
+					xdsurfHere[c] = xdsurfNext[c];
+					fxdsurfHere[c] = fxdsurfNext[c];
+
+				} else {
+
+					// nope, stop surfing
+					surf[c] = Surf.None;
+				}
+			}
+		}
+	}
+
+	private static double getTolerance(double f) {
+
+		// scale abs(f) by tolerance, unless f is very small
+		return Tolerance * Math.max(1, Math.abs(f));
+	}
+}
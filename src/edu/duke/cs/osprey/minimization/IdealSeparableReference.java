@@ -147,6 +147,18 @@ public class IdealSeparableReference extends MoleculeModifierAndScorer {
     }
     
     
+    public double calcG(double relTol, int maxSlices){
+        //like calcG(), but refines each axis integral until its estimated relative error is below relTol
+        double ans = centerE;
+        
+        for(int dof=0; dof<getNumDOFs(); dof++){
+            ans -= IntraVoxelSampler.RT*Math.log( axisIntegrator(dof).doIntegral(relTol,maxSlices) );
+        }
+        
+        return ans;
+    }
+    
+    
     private BoltzmannIntegrator1D axisIntegrator(int dof){
         //integrates Boltzmann factor along one axis
         double lo = getConstraints()[0].get(dof);
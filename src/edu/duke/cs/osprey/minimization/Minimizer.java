@@ -34,6 +34,7 @@ package edu.duke.cs.osprey.minimization;
 
 //Interface for minimizers.  Instantiated using an ObjectiveFunction
 
+import cern.colt.matrix.DoubleFactory1D;
 import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.tools.AutoCleanable;
 
@@ -47,6 +48,13 @@ public interface Minimizer extends AutoCleanable {
     
         public DoubleMatrix1D dofValues;
         public double energy;
+
+        /**
+         * True if minimization was stopped early by a {@link Cutoff}.
+         * Minimization only ever lowers the energy, so the energy is still
+         * a rigorous upper bound on the minimized energy.
+         */
+        public boolean isPartial = false;
         
         public Result(DoubleMatrix1D dofValues, double energy) {
             this.dofValues = dofValues;
@@ -54,6 +62,32 @@ public interface Minimizer extends AutoCleanable {
         }
     }
 
+	/**
+	 * Lets callers stop minimization early when they don't need a precise minimized energy.
+	 * Minimizers check the cutoff after each iteration with the current energy.
+	 */
+	@FunctionalInterface
+	public static interface Cutoff {
+
+		boolean isDone(double energy);
+
+		/**
+		 * Stop once the energy is within the tolerance of a lower bound on the minimized energy
+		 * (e.g., the A* score), since further minimization can't improve the energy by more than that.
+		 */
+		static Cutoff within(double lowerBound, double tolerance) {
+			return energy -> energy - lowerBound <= tolerance;
+		}
+
+		/**
+		 * Abandon minimization if the energy is still above the threshold after an iteration,
+		 * e.g., when the caller doesn't need precise energies for confs above the threshold.
+		 */
+		static Cutoff abandonAbove(double threshold) {
+			return energy -> energy > threshold;
+		}
+	}
+
     default Result minimize() {
     	return minimizeFromCenter();
 	}
@@ -61,6 +95,28 @@ public interface Minimizer extends AutoCleanable {
 	Result minimizeFromCenter();
 	Result minimizeFrom(DoubleMatrix1D x);
 
+	/**
+	 * Minimize, but allow the cutoff to stop minimization early.
+	 * Minimizers that don't support cutoffs just minimize all the way.
+	 */
+	default Result minimizeFrom(DoubleMatrix1D x, Cutoff cutoff) {
+		return minimizeFrom(x);
+	}
+
+	/**
+	 * Minimize starting from a primitive DOF vector, and write the minimized DOF values back into it.
+	 * The returned result has the energy, but no DOF values, since they're already in x.
+	 *
+	 * Minimizers that work with primitive arrays (e.g., using {@link ArrayObjectiveFunction})
+	 * can avoid copying DOF vectors, but by default, this just converts to and from colt vectors.
+	 */
+	default Result minimizeInPlace(double[] x, Cutoff cutoff) {
+		Result result = minimizeFrom(DoubleFactory1D.dense.make(x), cutoff);
+		result.dofValues.toArray(x);
+		result.dofValues = null;
+		return result;
+	}
+
 	public static interface NeedsCleanup extends Minimizer, AutoCleanable {}
     
     public static interface Reusable extends Minimizer {
@@ -40,7 +40,7 @@ import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.confspace.ParametricMolecule;
 import edu.duke.cs.osprey.energy.EnergyFunction;
 
-public class MoleculeObjectiveFunction implements ObjectiveFunction {
+public class MoleculeObjectiveFunction implements ObjectiveFunction, ArrayObjectiveFunction {
 	
 	private static final long serialVersionUID = -5301575611582359731L;
 	
@@ -98,6 +98,16 @@ public class MoleculeObjectiveFunction implements ObjectiveFunction {
 		return pmol.dofBounds.getBounds();
 	}
 
+	@Override
+	public double getXMin(int d) {
+		return pmol.dofBounds.getMin(d);
+	}
+
+	@Override
+	public double getXMax(int d) {
+		return pmol.dofBounds.getMax(d);
+	}
+
 	@Override
 	public void setDOF(int d, double val) {
                 curDOFVals.set(d, val);
@@ -125,6 +135,20 @@ public class MoleculeObjectiveFunction implements ObjectiveFunction {
 		return efunc.getEnergy();
 	}
 
+	@Override
+	public void setDOFs(double[] x) {
+		for (int d=0; d<x.length; d++) {
+			curDOFVals.set(d, x[d]);
+			pmol.dofs.get(d).apply(x[d]);
+		}
+	}
+
+	@Override
+	public double getValue(double[] x) {
+		setDOFs(x);
+		return efunc.getEnergy();
+	}
+
 	@Override
 	public double getInitStepSize(int d) {
 		return MoleculeModifierAndScorer.getInitStepSize(pmol.dofs.get(d));
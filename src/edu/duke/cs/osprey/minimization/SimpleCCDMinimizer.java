@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.minimization;
 import java.util.ArrayList;
 import java.util.List;
 
+import cern.colt.matrix.DoubleFactory1D;
 import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.tools.Factory;
 
@@ -45,6 +46,8 @@ public class SimpleCCDMinimizer implements Minimizer.NeedsCleanup, Minimizer.Reu
 	
 	private Factory<LineSearcher,Void> lineSearcherFactory;
 	private ObjectiveFunction f;
+	private ArrayObjectiveFunction af;
+	private double[] nextx = null;
 	private List<ObjectiveFunction.OneDof> dofs;
 	private List<LineSearcher> lineSearchers;
 
@@ -68,6 +71,7 @@ public class SimpleCCDMinimizer implements Minimizer.NeedsCleanup, Minimizer.Reu
 	public void init(ObjectiveFunction f) {
 		
 		this.f = f;
+		this.af = ArrayObjectiveFunction.adapt(f);
 		
 		// build the dofs
 		dofs.clear();
@@ -95,17 +99,37 @@ public class SimpleCCDMinimizer implements Minimizer.NeedsCleanup, Minimizer.Reu
 
 	@Override
 	public Minimizer.Result minimizeFrom(DoubleMatrix1D startx) {
+		return minimizeFrom(startx, null);
+	}
+
+	@Override
+	public Minimizer.Result minimizeFrom(DoubleMatrix1D startx, Minimizer.Cutoff cutoff) {
+		double[] x = startx.toArray();
+		Minimizer.Result result = minimizeInPlace(x, cutoff);
+		result.dofValues = DoubleFactory1D.dense.make(x);
+		return result;
+	}
+
+	@Override
+	public Minimizer.Result minimizeInPlace(double[] x, Minimizer.Cutoff cutoff) {
 
-		int n = f.getNumDOFs();
-		DoubleMatrix1D herex = startx.copy();
-		DoubleMatrix1D nextx = startx.copy();
+		int n = af.getNumDOFs();
+
+		// reuse the DOF vectors between minimizations
+		if (nextx == null || nextx.length != n) {
+			nextx = new double[n];
+		}
+		double[] herex = x;
+		double[] nextx = this.nextx;
+		System.arraycopy(herex, 0, nextx, 0, n);
 
 		// ccd is pretty simple actually
 		// just do a line search along each dimension until we stop improving
 		// we deal with cycles by just capping the number of iterations
 		
 		// get the current objective function value
-		double herefx = f.getValue(herex);
+		double herefx = af.getValue(herex);
+		boolean isPartial = false;
 		
 		for (int iter=0; iter<MaxIterations; iter++) {
 			
@@ -116,25 +140,29 @@ public class SimpleCCDMinimizer implements Minimizer.NeedsCleanup, Minimizer.Reu
 				if (lineSearcher != null) {
 					
 					// get the next x value for this dof
-					double xd = nextx.get(d);
-					xd = lineSearcher.search(xd);
-					nextx.set(d, xd);
+					nextx[d] = lineSearcher.search(nextx[d]);
 				}
 			}
 			
 			// how much did we improve?
-			double nextfx = f.getValue(nextx);
+			double nextfx = af.getValue(nextx);
 			double improvement = herefx - nextfx;
 			
 			if (improvement > 0) {
 				
 				// take the step
-				herex.assign(nextx);
+				System.arraycopy(nextx, 0, herex, 0, n);
 				herefx = nextfx;
 				
 				if (improvement < ConvergenceThreshold) {
 					break;
 				}
+
+				// does the caller still need a better energy?
+				if (cutoff != null && cutoff.isDone(herefx)) {
+					isPartial = true;
+					break;
+				}
 				
 			} else {
 				break;
@@ -142,9 +170,11 @@ public class SimpleCCDMinimizer implements Minimizer.NeedsCleanup, Minimizer.Reu
 		}
 
 		// update the protein conf, one last time
-		f.setDOFs(herex);
+		af.setDOFs(herex);
 
-		return new Minimizer.Result(herex, herefx);
+		Minimizer.Result result = new Minimizer.Result(null, herefx);
+		result.isPartial = isPartial;
+		return result;
 	}
 	
 	@Override
@@ -4,6 +4,7 @@ package edu.duke.cs.osprey.pruning;
 import edu.duke.cs.osprey.confspace.ParametricMolecule;
 import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.StrandFlex;
 import edu.duke.cs.osprey.dof.DegreeOfFreedom;
 import edu.duke.cs.osprey.energy.ResInterGen;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
@@ -16,6 +17,7 @@ import org.apache.commons.math3.optim.SimpleBounds;
 import org.apache.commons.math3.optim.linear.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
@@ -38,8 +40,23 @@ public class PLUG {
 	/** factor of the voxel width used to approximate the gradient of the violation function */
 	public double gradientDxFactor = 1e-4;
 
+	/**
+	 * Cache the linear constraints for each single and pair, so pairs and triples can re-use them
+	 * instead of finding the boundary points again.
+	 * Only used when the conf space has no backbone flexibility, since then each residue pair
+	 * only moves with the DOFs of its own residues.
+	 */
+	public boolean cacheConstraints = true;
+
+	/** relative slop when checking constraints against the voxel bounds, same as the simplex solver default */
+	private static final double BoundsEpsilon = 1e-6;
+
 	private final Probe probe;
 	private final AtomConnectivity connectivity;
+	private final boolean canCacheConstraints;
+
+	/** linear constraints over named DOFs, by tolerance, then by single or pair sub-tuple */
+	private final Map<Double,Map<RCTuple,Linearization>> linearizations = new ConcurrentHashMap<>();
 
 	public PLUG(SimpleConfSpace confSpace) {
 
@@ -54,6 +71,12 @@ public class PLUG {
 			.addTemplates(confSpace)
 			.set15HasNonBonded(false) // follows probe convention
 			.build();
+
+		// with backbone flexibility, atoms can move with the DOFs of other residues,
+		// so constraints for a sub-tuple wouldn't necessarily apply to bigger tuples
+		this.canCacheConstraints = confSpace.strandFlex.values().stream()
+			.flatMap(flexes -> flexes.stream())
+			.allMatch(flex -> flex instanceof StrandFlex.None);
 	}
 
 	public void pruneSingles(PruningMatrix pmat, double tolerance) {
@@ -191,6 +214,17 @@ public class PLUG {
 
 	public boolean shouldPruneTuple(RCTuple tuple, double tolerance) {
 
+		boolean useCache = cacheConstraints && canCacheConstraints;
+		Map<RCTuple,Linearization> cache = null;
+		if (useCache) {
+			cache = linearizations.computeIfAbsent(tolerance, (key) -> new ConcurrentHashMap<>());
+
+			// if any sub-tuple is already known to be infeasible, we don't need to look at geometry at all
+			if (hasInfeasibleSubtuple(tuple, cache)) {
+				return true;
+			}
+		}
+
 		// make the molecule and get all the residue interactions for the tuple
 		ParametricMolecule pmol = confSpace.makeMolecule(tuple);
 
@@ -205,13 +239,28 @@ public class PLUG {
 		try {
 
 			// get linear constraints for each atom pair
-			List<LinearConstraint> constraints = getLinearConstraints(voxel, inters, tolerance);
+			List<LinearConstraint> constraints;
+			if (useCache) {
+				constraints = getLinearConstraints(voxel, tuple, inters, tolerance, cache);
+			} else {
+				constraints = getLinearConstraints(voxel, inters, tolerance);
+			}
+
+			// check each constraint against the voxel bounds first:
+			// constraints that are satisfied everywhere in the voxel don't restrict anything,
+			// and constraints that are satisfied nowhere in the voxel mean we can prune right away
+			constraints = filterConstraints(voxel, constraints);
 
 			// no constraints? don't prune
 			if (constraints.isEmpty()) {
 				return false;
 			}
 
+			// if the voxel center is feasible, we don't need an LP solver to tell us that
+			if (isSatisfied(voxel.center, constraints)) {
+				return false;
+			}
+
 			// use an LP solver (eg simplex) to determine if the constraints allow any feasible points
 			new SimplexSolver().optimize(
 				new SimpleBounds(voxel.min, voxel.max),
@@ -231,6 +280,182 @@ public class PLUG {
 		}
 	}
 
+	private static List<LinearConstraint> filterConstraints(Voxel voxel, List<LinearConstraint> constraints) {
+
+		List<LinearConstraint> out = new ArrayList<>(constraints.size());
+		for (LinearConstraint constraint : constraints) {
+
+			// constraints are u.x >= w, find the range of u.x over the voxel
+			RealVector u = constraint.getCoefficients();
+			double w = constraint.getValue();
+			double min = 0.0;
+			double max = 0.0;
+			double scale = Math.abs(w);
+			for (int d=0; d<u.getDimension(); d++) {
+				double ud = u.getEntry(d);
+				if (ud > 0.0) {
+					min += ud*voxel.min[d];
+					max += ud*voxel.max[d];
+				} else {
+					min += ud*voxel.max[d];
+					max += ud*voxel.min[d];
+				}
+				scale = Math.max(scale, Math.abs(ud*voxel.center[d]));
+			}
+			double slop = BoundsEpsilon*Math.max(1.0, scale);
+
+			if (max < w - slop) {
+				// not satisfiable anywhere in the voxel
+				throw new NoFeasibleSolutionException();
+			} else if (min < w) {
+				// only satisfiable in part of the voxel, keep it
+				out.add(constraint);
+			}
+		}
+		return out;
+	}
+
+	private static boolean isSatisfied(double[] x, List<LinearConstraint> constraints) {
+		for (LinearConstraint constraint : constraints) {
+			if (constraint.getCoefficients().dotProduct(new ArrayRealVector(x, false)) < constraint.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** linear constraints for a sub-tuple, in terms of DOF names so they can be applied to any molecule */
+	private static class Linearization {
+
+		static final Linearization Infeasible = new Linearization(null, null, null);
+
+		final String[][] dofNames;
+		final double[][] u;
+		final double[] w;
+
+		Linearization(String[][] dofNames, double[][] u, double[] w) {
+			this.dofNames = dofNames;
+			this.u = u;
+			this.w = w;
+		}
+
+		static Linearization of(Voxel voxel, List<LinearConstraint> constraints) {
+
+			String[][] dofNames = new String[constraints.size()][];
+			double[][] u = new double[constraints.size()][];
+			double[] w = new double[constraints.size()];
+
+			for (int i=0; i<constraints.size(); i++) {
+				LinearConstraint constraint = constraints.get(i);
+				RealVector coefficients = constraint.getCoefficients();
+
+				// keep only the DOFs that are actually used
+				List<Integer> dofIndices = new ArrayList<>();
+				for (int d=0; d<coefficients.getDimension(); d++) {
+					if (coefficients.getEntry(d) != 0.0) {
+						dofIndices.add(d);
+					}
+				}
+
+				dofNames[i] = new String[dofIndices.size()];
+				u[i] = new double[dofIndices.size()];
+				for (int j=0; j<dofIndices.size(); j++) {
+					int d = dofIndices.get(j);
+					dofNames[i][j] = voxel.getDof(d).getName();
+					u[i][j] = coefficients.getEntry(d);
+				}
+				w[i] = constraint.getValue();
+			}
+
+			return new Linearization(dofNames, u, w);
+		}
+
+		void addConstraints(Map<String,Integer> dofIndicesByName, int numDofs, List<LinearConstraint> constraints) {
+			for (int i=0; i<w.length; i++) {
+				RealVector coefficients = new ArrayRealVector(numDofs);
+				for (int j=0; j<dofNames[i].length; j++) {
+					Integer d = dofIndicesByName.get(dofNames[i][j]);
+					if (d == null) {
+						throw new IllegalStateException("cached PLUG constraint uses DOF " + dofNames[i][j] + " which isn't in this molecule");
+					}
+					coefficients.setEntry(d, u[i][j]);
+				}
+				constraints.add(new LinearConstraint(coefficients, Relationship.GEQ, w[i]));
+			}
+		}
+	}
+
+	private RCTuple getSubtuple(RCTuple tuple, String resNum1, String resNum2) {
+
+		RCTuple subtuple = new RCTuple();
+		for (String resNum : Arrays.asList(resNum1, resNum2)) {
+			SimpleConfSpace.Position pos = confSpace.getPositionOrNull(resNum);
+			if (pos == null) {
+				// shell residue
+				continue;
+			}
+			int i = tuple.pos.indexOf(pos.index);
+			if (i >= 0 && !subtuple.pos.contains(pos.index)) {
+				subtuple = subtuple.addRC(pos.index, tuple.RCs.get(i));
+			}
+		}
+		return subtuple.sorted();
+	}
+
+	private static boolean hasInfeasibleSubtuple(RCTuple tuple, Map<RCTuple,Linearization> cache) {
+		for (int i1=0; i1<tuple.size(); i1++) {
+			int pos1 = tuple.pos.get(i1);
+			int rc1 = tuple.RCs.get(i1);
+			if (cache.get(new RCTuple(pos1, rc1)) == Linearization.Infeasible) {
+				return true;
+			}
+			for (int i2=0; i2<i1; i2++) {
+				int pos2 = tuple.pos.get(i2);
+				int rc2 = tuple.RCs.get(i2);
+				if (cache.get(new RCTuple(pos1, rc1, pos2, rc2).sorted()) == Linearization.Infeasible) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private List<LinearConstraint> getLinearConstraints(Voxel voxel, RCTuple tuple, ResidueInteractions inters, double tolerance, Map<RCTuple,Linearization> cache) {
+
+		// group the residue pairs by the single or pair sub-tuple that moves them
+		Map<RCTuple,List<ResidueInteractions.Pair>> resPairsBySubtuple = new LinkedHashMap<>();
+		for (ResidueInteractions.Pair resPair : inters) {
+			RCTuple subtuple = getSubtuple(tuple, resPair.resNum1, resPair.resNum2);
+			resPairsBySubtuple.computeIfAbsent(subtuple, (key) -> new ArrayList<>()).add(resPair);
+		}
+
+		Map<String,Integer> dofIndicesByName = DegreeOfFreedom.nameToIndexMap(voxel.pmol.dofs);
+		Map<Atom,AtomVoxel> atomVoxels = new HashMap<>();
+		List<LinearConstraint> constraints = new ArrayList<>();
+
+		for (Map.Entry<RCTuple,List<ResidueInteractions.Pair>> entry : resPairsBySubtuple.entrySet()) {
+
+			// get the linearization for this sub-tuple, or compute it using this molecule
+			Linearization linearization = cache.get(entry.getKey());
+			if (linearization == null) {
+				try {
+					linearization = Linearization.of(voxel, getLinearConstraints(voxel, entry.getValue(), atomVoxels, tolerance));
+				} catch (NoFeasibleSolutionException ex) {
+					linearization = Linearization.Infeasible;
+				}
+				cache.put(entry.getKey(), linearization);
+			}
+
+			if (linearization == Linearization.Infeasible) {
+				throw new NoFeasibleSolutionException();
+			}
+
+			linearization.addConstraints(dofIndicesByName, voxel.numDofs, constraints);
+		}
+
+		return constraints;
+	}
+
 	private class AtomVoxel {
 
 		final Atom atom;
@@ -367,12 +592,19 @@ public class PLUG {
 	}
 
 	public List<LinearConstraint> getLinearConstraints(Voxel voxel, ResidueInteractions inters, double tolerance) {
+		List<ResidueInteractions.Pair> resPairs = new ArrayList<>();
+		for (ResidueInteractions.Pair resPair : inters) {
+			resPairs.add(resPair);
+		}
+		return getLinearConstraints(voxel, resPairs, new HashMap<>(), tolerance);
+	}
+
+	private List<LinearConstraint> getLinearConstraints(Voxel voxel, List<ResidueInteractions.Pair> resPairs, Map<Atom,AtomVoxel> atomVoxels, double tolerance) {
 
-		Map<Atom,AtomVoxel> atomVoxels = new HashMap<>();
 		List<LinearConstraint> constraints = new ArrayList<>();
 
 		// for each res pair
-		for (ResidueInteractions.Pair resPair : inters) {
+		for (ResidueInteractions.Pair resPair : resPairs) {
 			Residue res1 = voxel.pmol.mol.residues.getOrThrow(resPair.resNum1);
 			Residue res2 = voxel.pmol.mol.residues.getOrThrow(resPair.resNum2);
 
@@ -422,6 +654,7 @@ public class PLUG {
 		}
 
 		// use the boundary point to make a linear constraint on the dofs
+		// NOTE: the boundary point only covers the atom pair dofs, but the constraint is over all the voxel dofs
 		int n = p.dofValues.length;
 
 		// make the linear constraint u.x >= w, where:
@@ -430,11 +663,11 @@ public class PLUG {
 		//    x* is the boundary point where the atom pair overlap is approx 0
 		//    g is the gradient at x*
 		// ie, the tangent hyperplane (d-1 linear subspace) to the isosurface at this point in the violation function
-		RealVector u = new ArrayRealVector(n);
+		RealVector u = new ArrayRealVector(voxel.voxel.numDofs);
 		double w = 0.0;
 		for (int d=0; d<n; d++) {
 			double g = -p.gradient[d];
-			u.setEntry(d, g);
+			u.setEntry(voxel.dofIndices.get(d), g);
 			w += p.dofValues[d]*g;
 		}
 
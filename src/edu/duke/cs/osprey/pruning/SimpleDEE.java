@@ -43,6 +43,9 @@ import edu.duke.cs.osprey.tools.Progress;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
@@ -336,7 +339,7 @@ public class SimpleDEE {
 				{
 					SimpleDEE dee = new SimpleDEE(confSpace, emat, competitors);
 					if (singlesGoldsteinDiffThreshold != null) {
-						dee.pruneSinglesGoldstein(0, typeDependent);
+						dee.pruneSinglesGoldstein(0, typeDependent, parallelism);
 					}
 					if (pairsGoldsteinDiffThreshold != null) {
 						dee.prunePairsGoldstein(0, typeDependent, parallelism);
@@ -355,11 +358,12 @@ public class SimpleDEE {
 						System.out.println("DEE iteration " + (i+1) + "...");
 					}
 
-					int numPruned = reporter.numSinglesPruned + reporter.numPairsPruned + reporter.numTriplesPruned;
+					long numPruned = dee.getNumPruned();
 
 					// 3.1 Goldstein criterion
+					// (after the first round, only candidates that lost witnesses get checked again)
 					if (singlesGoldsteinDiffThreshold != null) {
-						dee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent);
+						dee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent, parallelism);
 						maybeReport.accept("Goldstein Singles");
 					}
 					if (pairsGoldsteinDiffThreshold != null) {
@@ -374,8 +378,7 @@ public class SimpleDEE {
 					// TODO: other pruning criteria?
 
 					// stop if we didn't prune anything
-					int numPrunedThisRound = reporter.numSinglesPruned + reporter.numPairsPruned + reporter.numTriplesPruned - numPruned;
-					if (numPrunedThisRound <= 0) {
+					if (dee.getNumPruned() == numPruned) {
 						break;
 					}
 				}
@@ -449,11 +452,129 @@ public class SimpleDEE {
 		}
 	}
 
+	/**
+	 * Tracks which RCs have lost witnesses since a pruning criterion last ran.
+	 *
+	 * Pruning a witness can only make the Goldstein criteria stronger, so a candidate that
+	 * survived the last pass can only be pruned now if one of its witnesses was pruned since then.
+	 * Witnesses are lost in two ways:
+	 *    pruning a pair removes a witness from both of its RCs
+	 *    pruning a single removes a witness from every RC at every other position
+	 */
+	private static class Worklist {
+
+		private boolean all = true;
+		private final boolean[] singlePrunedAtPos;
+		private final boolean[][] pairPrunedAtRC;
+		private final boolean[] pairPrunedAtPos;
+		private int numSinglePrunedPos = 0;
+
+		public Worklist(SimpleConfSpace confSpace) {
+			int n = confSpace.positions.size();
+			singlePrunedAtPos = new boolean[n];
+			pairPrunedAtPos = new boolean[n];
+			pairPrunedAtRC = new boolean[n][];
+			for (int pos=0; pos<n; pos++) {
+				pairPrunedAtRC[pos] = new boolean[confSpace.positions.get(pos).resConfs.size()];
+			}
+		}
+
+		private Worklist(Worklist other) {
+			this.all = other.all;
+			this.singlePrunedAtPos = other.singlePrunedAtPos.clone();
+			this.pairPrunedAtPos = other.pairPrunedAtPos.clone();
+			this.pairPrunedAtRC = new boolean[other.pairPrunedAtRC.length][];
+			for (int pos=0; pos<pairPrunedAtRC.length; pos++) {
+				this.pairPrunedAtRC[pos] = other.pairPrunedAtRC[pos].clone();
+			}
+			this.numSinglePrunedPos = other.numSinglePrunedPos;
+		}
+
+		public synchronized void markSingle(int pos) {
+			if (!singlePrunedAtPos[pos]) {
+				singlePrunedAtPos[pos] = true;
+				numSinglePrunedPos++;
+			}
+		}
+
+		public synchronized void markPair(int pos1, int rc1, int pos2, int rc2) {
+			pairPrunedAtPos[pos1] = true;
+			pairPrunedAtPos[pos2] = true;
+			pairPrunedAtRC[pos1][rc1] = true;
+			pairPrunedAtRC[pos2][rc2] = true;
+		}
+
+		/** returns the changes so far, and starts tracking new changes from scratch */
+		public synchronized Worklist takeChanges() {
+			Worklist changes = new Worklist(this);
+			all = false;
+			Arrays.fill(singlePrunedAtPos, false);
+			Arrays.fill(pairPrunedAtPos, false);
+			for (boolean[] flags : pairPrunedAtRC) {
+				Arrays.fill(flags, false);
+			}
+			numSinglePrunedPos = 0;
+			return changes;
+		}
+
+		/** did any position outside of the candidate positions lose a single? */
+		private boolean isWitnessPosChanged(int ... candidatePositions) {
+			int count = numSinglePrunedPos;
+			for (int pos : candidatePositions) {
+				if (singlePrunedAtPos[pos]) {
+					count--;
+				}
+			}
+			return count > 0;
+		}
+
+		/** could any candidate at these positions have lost a witness? */
+		public boolean isAffectedAt(int ... candidatePositions) {
+			if (all || isWitnessPosChanged(candidatePositions)) {
+				return true;
+			}
+			for (int pos : candidatePositions) {
+				if (pairPrunedAtPos[pos]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean isAffected(int pos1, int rc1) {
+			return all
+				|| pairPrunedAtRC[pos1][rc1]
+				|| isWitnessPosChanged(pos1);
+		}
+
+		public boolean isAffected(int pos1, int rc1, int pos2, int rc2) {
+			return all
+				|| pairPrunedAtRC[pos1][rc1]
+				|| pairPrunedAtRC[pos2][rc2]
+				|| isWitnessPosChanged(pos1, pos2);
+		}
+
+		public boolean isAffected(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+			return all
+				|| pairPrunedAtRC[pos1][rc1]
+				|| pairPrunedAtRC[pos2][rc2]
+				|| pairPrunedAtRC[pos3][rc3]
+				|| isWitnessPosChanged(pos1, pos2, pos3);
+		}
+	}
+
 	public final SimpleConfSpace confSpace;
 	public final EnergyMatrix emat;
 	public final PruningMatrix pmat;
 	public final PruningMatrix competitors;
 
+	// each criterion keeps its own worklist, so it sees every change since it last ran
+	// NOTE: only pruning done by this instance is tracked, so re-use an instance only for iterated DEE rounds
+	private final Worklist singlesWorklist;
+	private final Worklist pairsWorklist;
+	private final Worklist triplesWorklist;
+	private final AtomicLong numPruned = new AtomicLong(0);
+
 	public SimpleDEE(SimpleConfSpace confSpace, EnergyMatrix emat, PruningMatrix pmat) {
 		this(confSpace, emat, pmat, pmat);
 	}
@@ -463,16 +584,46 @@ public class SimpleDEE {
 		this.emat = emat;
 		this.pmat = pmat;
 		this.competitors = competitors;
+		this.singlesWorklist = new Worklist(confSpace);
+		this.pairsWorklist = new Worklist(confSpace);
+		this.triplesWorklist = new Worklist(confSpace);
+	}
+
+	/** the number of tuples pruned by this instance so far */
+	public long getNumPruned() {
+		return numPruned.get();
 	}
 
 	private ResidueTemplate getTemplate(int pos, int rc) {
 		return confSpace.positions.get(pos).resConfs.get(rc).template;
 	}
 
+	private void pruneSingle(int pos, int rc) {
+		pmat.pruneSingle(pos, rc);
+		singlesWorklist.markSingle(pos);
+		pairsWorklist.markSingle(pos);
+		triplesWorklist.markSingle(pos);
+		numPruned.incrementAndGet();
+	}
+
+	private void prunePair(int pos1, int rc1, int pos2, int rc2) {
+		pmat.prunePair(pos1, rc1, pos2, rc2);
+		singlesWorklist.markPair(pos1, rc1, pos2, rc2);
+		pairsWorklist.markPair(pos1, rc1, pos2, rc2);
+		triplesWorklist.markPair(pos1, rc1, pos2, rc2);
+		numPruned.incrementAndGet();
+	}
+
+	private void pruneTriple(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		// pruned triples are never used as witnesses, so no need to update the worklists
+		pmat.pruneTriple(pos1, rc1, pos2, rc2, pos3, rc3);
+		numPruned.incrementAndGet();
+	}
+
 	public void pruneSinglesByThreshold(double energyThreshold) {
 		pmat.forEachUnprunedSingle((pos, rc) -> {
 			if (emat.getOneBody(pos, rc) > energyThreshold) {
-				pmat.pruneSingle(pos, rc);
+				pruneSingle(pos, rc);
 			}
 			return PruningMatrix.IteratorCommand.Continue;
 		});
@@ -481,85 +632,128 @@ public class SimpleDEE {
 	public void prunePairsByThreshold(double energyThreshold) {
 		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
 			if (emat.getPairwise(pos1, rc1, pos2, rc2) > energyThreshold) {
-				pmat.prunePair(pos1, rc1, pos2, rc2);
+				prunePair(pos1, rc1, pos2, rc2);
 			}
 			return PruningMatrix.IteratorCommand.Continue;
 		});
 	}
 
 	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent) {
+		pruneSinglesGoldstein(energyDiffThreshold, typeDependent, Parallelism.makeCpu(1));
+	}
 
-		// singles are so fast, we don't need to bother with parallelism and progress (right?)
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
 
-		pmat.forEachUnprunedSingle((candidatePos, candidateRc) -> {
+		// only check candidates that could have changed since last time
+		Worklist worklist = singlesWorklist.takeChanges();
 
-			// is there a competitor rc that has much lower energy?
-			PruningMatrix.IteratorCommand result = competitors.forEachUnprunedSingleAt(candidatePos, (competitorPos, competitorRc) -> {
+		// singles are so fast, we don't need to bother with progress (right?)
 
-				// don't compete against self
-				if (competitorRc == candidateRc) {
-					return PruningMatrix.IteratorCommand.Continue;
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+
+			// split the work by position
+			for (int pos=0; pos<confSpace.positions.size(); pos++) {
+
+				if (!worklist.isAffectedAt(pos)) {
+					continue;
 				}
 
-				// skip unmatched types if needed
-				if (typeDependent) {
-					if (!getTemplate(candidatePos, candidateRc).name.equals(getTemplate(competitorPos, competitorRc).name)) {
-						return PruningMatrix.IteratorCommand.Continue;
+				final int candidatePos = pos;
+				tasks.submit(
+					() -> {
+						List<int[]> prunedRCs = new ArrayList<>();
+						boolean[] isPruned = new boolean[pmat.getNumConfAtPos(candidatePos)];
+						pmat.forEachUnprunedSingleAt(candidatePos, (pos1, candidateRc) -> {
+							if (worklist.isAffected(candidatePos, candidateRc)
+								&& canPruneSingleGoldstein(candidatePos, candidateRc, energyDiffThreshold, typeDependent, isPruned)) {
+								prunedRCs.add(new int[] { candidateRc });
+								isPruned[candidateRc] = true;
+							}
+							return PruningMatrix.IteratorCommand.Continue;
+						});
+						return prunedRCs;
+					},
+					(prunedRCs) -> {
+						for (int[] rcs : prunedRCs) {
+							pruneSingle(candidatePos, rcs[0]);
+						}
 					}
-				}
+				);
+			}
+		}
+	}
 
-				// start with singles energy diff
-				double energyDiffSum = 0
-					+ emat.getOneBody(candidatePos, candidateRc)
-					- emat.getOneBody(competitorPos, competitorRc);
+	/**
+	 * @param isPruned candidates in the current batch that will be pruned, but haven't been pruned in the matrix yet
+	 */
+	private boolean canPruneSingleGoldstein(int candidatePos, int candidateRc, double energyDiffThreshold, boolean typeDependent, boolean[] isPruned) {
 
-				// sum over witness positions
-				for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
+		// is there a competitor rc that has much lower energy?
+		PruningMatrix.IteratorCommand result = competitors.forEachUnprunedSingleAt(candidatePos, (competitorPos, competitorRc) -> {
 
-					// witness pos can't be candidate pos
-					if (witnessPos == candidatePos) {
-						continue;
-					}
+			// don't compete against self
+			if (competitorRc == candidateRc) {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 
-					// min over witness rcs
-					double minEnergyDiff = Double.POSITIVE_INFINITY;
-					int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
-					for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
+			// don't compete against candidates we're about to prune
+			if (competitors == pmat && isPruned[competitorRc]) {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 
-						// skip pruned witnesses
-						if (pmat.isPairPruned(candidatePos, candidateRc, witnessPos, witnessRc)) {
-							continue;
-						}
+			// skip unmatched types if needed
+			if (typeDependent) {
+				if (!getTemplate(candidatePos, candidateRc).name.equals(getTemplate(competitorPos, competitorRc).name)) {
+					return PruningMatrix.IteratorCommand.Continue;
+				}
+			}
 
-						// compute the energy diff between the candidate and competitor, from the point of view of the witness
-						double energyDiff = 0
-							+ emat.getPairwise(candidatePos, candidateRc, witnessPos, witnessRc)
-							- emat.getPairwise(competitorPos, competitorRc, witnessPos, witnessRc);
-						minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
-					}
+			// start with singles energy diff
+			double energyDiffSum = 0
+				+ emat.getOneBody(candidatePos, candidateRc)
+				- emat.getOneBody(competitorPos, competitorRc);
 
-					energyDiffSum += minEnergyDiff;
-					if (energyDiffSum == Double.POSITIVE_INFINITY) {
-						break;
-					}
+			// sum over witness positions
+			for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
+
+				// witness pos can't be candidate pos
+				if (witnessPos == candidatePos) {
+					continue;
 				}
 
-				// if we found a suitable competitor, stop searching
-				if (energyDiffSum > energyDiffThreshold) {
-					return PruningMatrix.IteratorCommand.Break;
-				} else {
-					return PruningMatrix.IteratorCommand.Continue;
+				// min over witness rcs
+				double minEnergyDiff = Double.POSITIVE_INFINITY;
+				int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
+				for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
+
+					// skip pruned witnesses
+					if (pmat.isPairPruned(candidatePos, candidateRc, witnessPos, witnessRc)) {
+						continue;
+					}
+
+					// compute the energy diff between the candidate and competitor, from the point of view of the witness
+					double energyDiff = 0
+						+ emat.getPairwise(candidatePos, candidateRc, witnessPos, witnessRc)
+						- emat.getPairwise(competitorPos, competitorRc, witnessPos, witnessRc);
+					minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
 				}
-			});
 
-			// if the iteration terminated early (ie, we found a suitable competitor), then prune the candidate
-			if (result == PruningMatrix.IteratorCommand.Break) {
-				pmat.pruneSingle(candidatePos, candidateRc);
+				energyDiffSum += minEnergyDiff;
+				if (energyDiffSum == Double.POSITIVE_INFINITY) {
+					break;
+				}
 			}
 
-			// always go onto to check the next candidate
-			return PruningMatrix.IteratorCommand.Continue;
+			// if we found a suitable competitor, stop searching
+			if (energyDiffSum > energyDiffThreshold) {
+				return PruningMatrix.IteratorCommand.Break;
+			} else {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 		});
+
+		// if the iteration terminated early (ie, we found a suitable competitor), then we can prune the candidate
+		return result == PruningMatrix.IteratorCommand.Break;
 	}
 
 	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent) {
@@ -568,100 +762,134 @@ public class SimpleDEE {
 
 	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
 
+		// only check candidates that could have changed since last time
+		Worklist worklist = pairsWorklist.takeChanges();
+
 		// this one can take quite a while, so track progress
 		AtomicLong numPairs = new AtomicLong(0);
 		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
-			numPairs.incrementAndGet();
+			if (worklist.isAffected(pos1, rc1, pos2, rc2)) {
+				numPairs.incrementAndGet();
+			}
 			return PruningMatrix.IteratorCommand.Continue;
 		});
 		Progress progress = new Progress(numPairs.get());
 
 		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
 
-			pmat.forEachUnprunedPair((candidatePos1, candidateRc1, candidatePos2, candidateRc2) -> {
+			// split the work by position pair, so each task is big enough to be worth the overhead
+			for (int pos1=1; pos1<confSpace.positions.size(); pos1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
 
-				tasks.submit(
-					() -> {
-						// can we find a competitor rc that has much lower energy?
-						return competitors.forEachUnprunedPairAt(candidatePos1, candidatePos2, (competitorPos1, competitorRc1, competitorPos2, competitorRc2) -> {
+					if (!worklist.isAffectedAt(pos1, pos2)) {
+						continue;
+					}
 
-							// don't compete against self
-							if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2) {
+					final int candidatePos1 = pos1;
+					final int candidatePos2 = pos2;
+					tasks.submit(
+						() -> {
+							List<int[]> prunedRCs = new ArrayList<>();
+							boolean[][] isPruned = new boolean[pmat.getNumConfAtPos(candidatePos1)][pmat.getNumConfAtPos(candidatePos2)];
+							AtomicLong numChecked = new AtomicLong(0);
+							pmat.forEachUnprunedPairAt(candidatePos1, candidatePos2, (p1, candidateRc1, p2, candidateRc2) -> {
+								if (worklist.isAffected(candidatePos1, candidateRc1, candidatePos2, candidateRc2)) {
+									numChecked.incrementAndGet();
+									if (canPrunePairGoldstein(candidatePos1, candidateRc1, candidatePos2, candidateRc2, energyDiffThreshold, typeDependent, isPruned)) {
+										prunedRCs.add(new int[] { candidateRc1, candidateRc2 });
+										isPruned[candidateRc1][candidateRc2] = true;
+									}
+								}
 								return PruningMatrix.IteratorCommand.Continue;
+							});
+							return new Batch(prunedRCs, numChecked.get());
+						},
+						(batch) -> {
+							for (int[] rcs : batch.prunedRCs) {
+								prunePair(candidatePos1, rcs[0], candidatePos2, rcs[1]);
 							}
+							progress.incrementProgress((int)batch.numChecked);
+						}
+					);
+				}
+			}
+		}
+	}
 
-							// skip unmatched types if needed
-							if (typeDependent) {
-								if (!getTemplate(candidatePos1, candidateRc1).name.equals(getTemplate(competitorPos1, competitorRc1).name)
-									|| !getTemplate(candidatePos2, candidateRc2).name.equals(getTemplate(competitorPos2, competitorRc2).name)) {
-									return PruningMatrix.IteratorCommand.Continue;
-								}
-							}
+	private boolean canPrunePairGoldstein(int candidatePos1, int candidateRc1, int candidatePos2, int candidateRc2, double energyDiffThreshold, boolean typeDependent, boolean[][] isPruned) {
 
-							// start with fragment energy diff
-							double energyDiffSum = 0
-								+ emat.getOneBody(candidatePos1, candidateRc1)
-								+ emat.getOneBody(candidatePos2, candidateRc2)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
-								- emat.getOneBody(competitorPos1, competitorRc1)
-								- emat.getOneBody(competitorPos2, competitorRc2)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2);
-
-							// sum over witness positions
-							for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
-
-								// witness pos can't be candidate pos
-								if (witnessPos == candidatePos1 || witnessPos == candidatePos2) {
-									continue;
-								}
+		// can we find a competitor rc that has much lower energy?
+		PruningMatrix.IteratorCommand result = competitors.forEachUnprunedPairAt(candidatePos1, candidatePos2, (competitorPos1, competitorRc1, competitorPos2, competitorRc2) -> {
 
-								// min over witness rcs
-								double minEnergyDiff = Double.POSITIVE_INFINITY;
-								int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
-								for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
+			// don't compete against self
+			if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2) {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 
-									// skip pruned witnesses
-									if (pmat.isPairPruned(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										|| pmat.isPairPruned(candidatePos2, candidateRc2, witnessPos, witnessRc)) {
-										continue;
-									}
+			// don't compete against candidates we're about to prune
+			if (competitors == pmat && isPruned[competitorRc1][competitorRc2]) {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 
-									// compute the energy diff between the candidate and competitor, from the point of view of the witness
-									double energyDiff = 0
-										+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc);
-									minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
-								}
-								energyDiffSum += minEnergyDiff;
-								if (energyDiffSum == Double.POSITIVE_INFINITY) {
-									break;
-								}
-							}
+			// skip unmatched types if needed
+			if (typeDependent) {
+				if (!getTemplate(candidatePos1, candidateRc1).name.equals(getTemplate(competitorPos1, competitorRc1).name)
+					|| !getTemplate(candidatePos2, candidateRc2).name.equals(getTemplate(competitorPos2, competitorRc2).name)) {
+					return PruningMatrix.IteratorCommand.Continue;
+				}
+			}
 
-							if (energyDiffSum > energyDiffThreshold) {
-								return PruningMatrix.IteratorCommand.Break;
-							} else {
-								return PruningMatrix.IteratorCommand.Continue;
-							}
-						});
-					},
-					(result) -> {
+			// start with fragment energy diff
+			double energyDiffSum = 0
+				+ emat.getOneBody(candidatePos1, candidateRc1)
+				+ emat.getOneBody(candidatePos2, candidateRc2)
+				+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
+				- emat.getOneBody(competitorPos1, competitorRc1)
+				- emat.getOneBody(competitorPos2, competitorRc2)
+				- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2);
+
+			// sum over witness positions
+			for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
+
+				// witness pos can't be candidate pos
+				if (witnessPos == candidatePos1 || witnessPos == candidatePos2) {
+					continue;
+				}
 
-						// if the iteration terminated early (ie, we found a suitable competitor), then prune the candidate
-						if (result == PruningMatrix.IteratorCommand.Break) {
-							pmat.prunePair(candidatePos1, candidateRc1, candidatePos2, candidateRc2);
-						}
+				// min over witness rcs
+				double minEnergyDiff = Double.POSITIVE_INFINITY;
+				int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
+				for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
 
-						progress.incrementProgress();
+					// skip pruned witnesses
+					if (pmat.isPairPruned(candidatePos1, candidateRc1, witnessPos, witnessRc)
+						|| pmat.isPairPruned(candidatePos2, candidateRc2, witnessPos, witnessRc)) {
+						continue;
 					}
-				);
 
-				// always go onto to check the next candidate
+					// compute the energy diff between the candidate and competitor, from the point of view of the witness
+					double energyDiff = 0
+						+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
+						+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
+						- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
+						- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc);
+					minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+				}
+				energyDiffSum += minEnergyDiff;
+				if (energyDiffSum == Double.POSITIVE_INFINITY) {
+					break;
+				}
+			}
+
+			if (energyDiffSum > energyDiffThreshold) {
+				return PruningMatrix.IteratorCommand.Break;
+			} else {
 				return PruningMatrix.IteratorCommand.Continue;
-			});
-		}
+			}
+		});
+
+		// if the iteration terminated early (ie, we found a suitable competitor), then we can prune the candidate
+		return result == PruningMatrix.IteratorCommand.Break;
 	}
 
 	public void pruneTriplesGoldstein(double energyDiffThreshold, boolean typeDependent) {
@@ -670,109 +898,157 @@ public class SimpleDEE {
 
 	public void pruneTriplesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
 
+		// only check candidates that could have changed since last time
+		Worklist worklist = triplesWorklist.takeChanges();
+
 		// this one can take quite a while, so track progress
 		AtomicLong numTriples = new AtomicLong(0);
 		pmat.forEachUnprunedTriple((pos1, rc1, pos2, rc2, pos3, rc3) -> {
-			numTriples.incrementAndGet();
+			if (worklist.isAffected(pos1, rc1, pos2, rc2, pos3, rc3)) {
+				numTriples.incrementAndGet();
+			}
 			return PruningMatrix.IteratorCommand.Continue;
 		});
 		Progress progress = new Progress(numTriples.get());
 
 		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
 
-			pmat.forEachUnprunedTriple((candidatePos1, candidateRc1, candidatePos2, candidateRc2, candidatePos3, candidateRc3) -> {
+			// split the work by position triple, so each task is big enough to be worth the overhead
+			for (int pos1=2; pos1<confSpace.positions.size(); pos1++) {
+				for (int pos2=1; pos2<pos1; pos2++) {
+					for (int pos3=0; pos3<pos2; pos3++) {
 
-				tasks.submit(
-					() -> {
-						// can we find a competitor rc that has much lower energy?
-						return competitors.forEachUnprunedTripleAt(candidatePos1, candidatePos2, candidatePos3, (competitorPos1, competitorRc1, competitorPos2, competitorRc2, competitorPos3, competitorRc3) -> {
-
-							// don't compete against self
-							if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2 && competitorRc3 == candidateRc3) {
-								return PruningMatrix.IteratorCommand.Continue;
-							}
+						if (!worklist.isAffectedAt(pos1, pos2, pos3)) {
+							continue;
+						}
 
-							// skip unmatched types if needed
-							if (typeDependent) {
-								if (!getTemplate(candidatePos1, candidateRc1).name.equals(getTemplate(competitorPos1, competitorRc1).name)
-									|| !getTemplate(candidatePos2, candidateRc2).name.equals(getTemplate(competitorPos2, competitorRc2).name)
-									|| !getTemplate(candidatePos3, candidateRc3).name.equals(getTemplate(competitorPos3, competitorRc3).name)) {
+						final int candidatePos1 = pos1;
+						final int candidatePos2 = pos2;
+						final int candidatePos3 = pos3;
+						tasks.submit(
+							() -> {
+								List<int[]> prunedRCs = new ArrayList<>();
+								boolean[][][] isPruned = new boolean[pmat.getNumConfAtPos(candidatePos1)][pmat.getNumConfAtPos(candidatePos2)][pmat.getNumConfAtPos(candidatePos3)];
+								AtomicLong numChecked = new AtomicLong(0);
+								pmat.forEachUnprunedTripleAt(candidatePos1, candidatePos2, candidatePos3, (p1, candidateRc1, p2, candidateRc2, p3, candidateRc3) -> {
+									if (worklist.isAffected(candidatePos1, candidateRc1, candidatePos2, candidateRc2, candidatePos3, candidateRc3)) {
+										numChecked.incrementAndGet();
+										if (canPruneTripleGoldstein(candidatePos1, candidateRc1, candidatePos2, candidateRc2, candidatePos3, candidateRc3, energyDiffThreshold, typeDependent, isPruned)) {
+											prunedRCs.add(new int[] { candidateRc1, candidateRc2, candidateRc3 });
+											isPruned[candidateRc1][candidateRc2][candidateRc3] = true;
+										}
+									}
 									return PruningMatrix.IteratorCommand.Continue;
+								});
+								return new Batch(prunedRCs, numChecked.get());
+							},
+							(batch) -> {
+								for (int[] rcs : batch.prunedRCs) {
+									pruneTriple(candidatePos1, rcs[0], candidatePos2, rcs[1], candidatePos3, rcs[2]);
 								}
+								progress.incrementProgress((int)batch.numChecked);
 							}
+						);
+					}
+				}
+			}
+		}
+	}
 
-							// start with fragment energy diff
-							double energyDiffSum = 0
-								+ emat.getOneBody(candidatePos1, candidateRc1)
-								+ emat.getOneBody(candidatePos2, candidateRc2)
-								+ emat.getOneBody(candidatePos3, candidateRc3)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
-								+ emat.getPairwise(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
-								- emat.getOneBody(competitorPos1, competitorRc1)
-								- emat.getOneBody(competitorPos2, competitorRc2)
-								- emat.getOneBody(competitorPos3, competitorRc3)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos3, competitorRc3)
-								- emat.getPairwise(competitorPos2, competitorRc2, competitorPos3, competitorRc3);
-
-							// sum over witness positions
-							for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
-
-								// witness pos can't be candidate pos
-								if (witnessPos == candidatePos1 || witnessPos == candidatePos2 || witnessPos == candidatePos3) {
-									continue;
-								}
+	private boolean canPruneTripleGoldstein(int candidatePos1, int candidateRc1, int candidatePos2, int candidateRc2, int candidatePos3, int candidateRc3, double energyDiffThreshold, boolean typeDependent, boolean[][][] isPruned) {
 
-								// min over witness rcs
-								double minEnergyDiff = Double.POSITIVE_INFINITY;
-								int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
-								for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
+		// can we find a competitor rc that has much lower energy?
+		PruningMatrix.IteratorCommand result = competitors.forEachUnprunedTripleAt(candidatePos1, candidatePos2, candidatePos3, (competitorPos1, competitorRc1, competitorPos2, competitorRc2, competitorPos3, competitorRc3) -> {
 
-									// skip pruned witnesses
-									if (pmat.isPairPruned(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										|| pmat.isPairPruned(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										|| pmat.isPairPruned(candidatePos3, candidateRc3, witnessPos, witnessRc)) {
-										continue;
-									}
+			// don't compete against self
+			if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2 && competitorRc3 == candidateRc3) {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 
-									// compute the energy diff between the candidate and competitor, from the point of view of the witness
-									double energyDiff = 0
-										+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos3, candidateRc3, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos3, competitorRc3, witnessPos, witnessRc);
-									minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
-								}
-								energyDiffSum += minEnergyDiff;
-								if (energyDiffSum == Double.POSITIVE_INFINITY) {
-									break;
-								}
-							}
+			// don't compete against candidates we're about to prune
+			if (competitors == pmat && isPruned[competitorRc1][competitorRc2][competitorRc3]) {
+				return PruningMatrix.IteratorCommand.Continue;
+			}
 
-							if (energyDiffSum > energyDiffThreshold) {
-								return PruningMatrix.IteratorCommand.Break;
-							} else {
-								return PruningMatrix.IteratorCommand.Continue;
-							}
-						});
-					},
-					(result) -> {
+			// skip unmatched types if needed
+			if (typeDependent) {
+				if (!getTemplate(candidatePos1, candidateRc1).name.equals(getTemplate(competitorPos1, competitorRc1).name)
+					|| !getTemplate(candidatePos2, candidateRc2).name.equals(getTemplate(competitorPos2, competitorRc2).name)
+					|| !getTemplate(candidatePos3, candidateRc3).name.equals(getTemplate(competitorPos3, competitorRc3).name)) {
+					return PruningMatrix.IteratorCommand.Continue;
+				}
+			}
 
-						// if the iteration terminated early (ie, we found a suitable competitor), then prune the candidate
-						if (result == PruningMatrix.IteratorCommand.Break) {
-							pmat.pruneTriple(candidatePos1, candidateRc1, candidatePos2, candidateRc2, candidatePos3, candidateRc3);
-						}
+			// start with fragment energy diff
+			double energyDiffSum = 0
+				+ emat.getOneBody(candidatePos1, candidateRc1)
+				+ emat.getOneBody(candidatePos2, candidateRc2)
+				+ emat.getOneBody(candidatePos3, candidateRc3)
+				+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
+				+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
+				+ emat.getPairwise(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
+				- emat.getOneBody(competitorPos1, competitorRc1)
+				- emat.getOneBody(competitorPos2, competitorRc2)
+				- emat.getOneBody(competitorPos3, competitorRc3)
+				- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2)
+				- emat.getPairwise(competitorPos1, competitorRc1, competitorPos3, competitorRc3)
+				- emat.getPairwise(competitorPos2, competitorRc2, competitorPos3, competitorRc3);
+
+			// sum over witness positions
+			for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
+
+				// witness pos can't be candidate pos
+				if (witnessPos == candidatePos1 || witnessPos == candidatePos2 || witnessPos == candidatePos3) {
+					continue;
+				}
+
+				// min over witness rcs
+				double minEnergyDiff = Double.POSITIVE_INFINITY;
+				int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
+				for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
 
-						progress.incrementProgress();
+					// skip pruned witnesses
+					if (pmat.isPairPruned(candidatePos1, candidateRc1, witnessPos, witnessRc)
+						|| pmat.isPairPruned(candidatePos2, candidateRc2, witnessPos, witnessRc)
+						|| pmat.isPairPruned(candidatePos3, candidateRc3, witnessPos, witnessRc)) {
+						continue;
 					}
-				);
 
-				// always go onto to check the next candidate
+					// compute the energy diff between the candidate and competitor, from the point of view of the witness
+					double energyDiff = 0
+						+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
+						+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
+						+ emat.getPairwise(candidatePos3, candidateRc3, witnessPos, witnessRc)
+						- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
+						- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc)
+						- emat.getPairwise(competitorPos3, competitorRc3, witnessPos, witnessRc);
+					minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+				}
+				energyDiffSum += minEnergyDiff;
+				if (energyDiffSum == Double.POSITIVE_INFINITY) {
+					break;
+				}
+			}
+
+			if (energyDiffSum > energyDiffThreshold) {
+				return PruningMatrix.IteratorCommand.Break;
+			} else {
 				return PruningMatrix.IteratorCommand.Continue;
-			});
+			}
+		});
+
+		// if the iteration terminated early (ie, we found a suitable competitor), then we can prune the candidate
+		return result == PruningMatrix.IteratorCommand.Break;
+	}
+
+	private static class Batch {
+
+		final List<int[]> prunedRCs;
+		final long numChecked;
+
+		Batch(List<int[]> prunedRCs, long numChecked) {
+			this.prunedRCs = prunedRCs;
+			this.numChecked = numChecked;
 		}
 	}
 }
@@ -200,4 +200,115 @@ public interface BigDecimalIO {
 			}
 		}
 	}
+
+	/**
+	 * Stores non-negative values in 8 bytes as the base-10 log of the value.
+	 *
+	 * Values are rounded in the direction of the rounding mode, so bounds can be kept rigorous
+	 * by storing lower bounds with FLOOR and upper bounds with CEILING.
+	 * Any other rounding mode rounds approximately to the nearest representable value.
+	 */
+	public static class Log implements BigDecimalIO {
+
+		public static final int NumBytes = Double.BYTES;
+
+		// magic NaN payloads to store the pseudo-values that don't have a log
+		private static final long NullBits = 0x7ff8000000000001L;
+		private static final long NegInfBits = 0x7ff8000000000002L;
+
+		// comfortably larger than the error from the double-precision math
+		private static final double Slop = 1e-15;
+
+		private static final MathContext mc = new MathContext(17, RoundingMode.HALF_EVEN);
+
+		public final RoundingMode roundingMode;
+
+		private final MathContext readContext;
+
+		public Log(RoundingMode roundingMode) {
+			this.roundingMode = roundingMode;
+			this.readContext = new MathContext(mc.getPrecision(), isUp() ? RoundingMode.CEILING : isDown() ? RoundingMode.FLOOR : mc.getRoundingMode());
+		}
+
+		private boolean isUp() {
+			return roundingMode == RoundingMode.CEILING || roundingMode == RoundingMode.UP;
+		}
+
+		private boolean isDown() {
+			return roundingMode == RoundingMode.FLOOR || roundingMode == RoundingMode.DOWN;
+		}
+
+		@Override
+		public void write(DataOutput out, BigDecimal d)
+		throws IOException {
+			switch (Type.get(d)) {
+				case Null: out.writeLong(NullBits); break;
+				case NaN: out.writeDouble(Double.NaN); break;
+				case NegInf: out.writeLong(NegInfBits); break;
+				case PosInf: out.writeDouble(Double.POSITIVE_INFINITY); break;
+				case One: out.writeDouble(0.0); break;
+				default: out.writeDouble(log10(d));
+			}
+		}
+
+		private double log10(BigDecimal d) {
+
+			if (d.signum() == 0) {
+				return Double.NEGATIVE_INFINITY;
+			} else if (d.signum() < 0) {
+				throw new IllegalArgumentException("log encoding only supports non-negative values, not " + d);
+			}
+
+			// split into d = m*10^e, where 1 <= m < 10
+			BigDecimal rounded = d.round(mc);
+			int e = rounded.precision() - rounded.scale() - 1;
+			double m = rounded.movePointLeft(e).doubleValue();
+			double log = e + Math.log10(m);
+
+			// round outwards, if needed
+			if (isUp()) {
+				log = Math.nextUp(log + Slop + 2*Math.ulp(log));
+			} else if (isDown()) {
+				log = Math.nextDown(log - Slop - 2*Math.ulp(log));
+			}
+			return log;
+		}
+
+		@Override
+		public BigDecimal read(DataInput in)
+		throws IOException {
+
+			long bits = in.readLong();
+			if (bits == NullBits) {
+				return null;
+			} else if (bits == NegInfBits) {
+				return MathTools.BigNegativeInfinity;
+			}
+
+			double log = Double.longBitsToDouble(bits);
+			if (Double.isNaN(log)) {
+				return MathTools.BigNaN;
+			} else if (log == Double.POSITIVE_INFINITY) {
+				return MathTools.BigPositiveInfinity;
+			} else if (log == Double.NEGATIVE_INFINITY) {
+				return BigDecimal.ZERO;
+			} else if (log == 0.0) {
+				return BigDecimal.ONE;
+			}
+
+			// split into 10^log = m*10^e, where 1 <= m < 10
+			double e = Math.floor(log);
+			double m = Math.pow(10, log - e);
+
+			// round outwards, if needed
+			if (isUp()) {
+				m = Math.nextUp(m*(1 + Slop));
+			} else if (isDown()) {
+				m = Math.nextDown(m*(1 - Slop));
+			}
+
+			// the double -> BigDecimal conversion is exact, but has way more digits than we need
+			return new BigDecimal(m).round(readContext).scaleByPowerOfTen((int)e);
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package edu.duke.cs.osprey.sofea;
 
 import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.TuplesIndex;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.lute.LUTEConfEnergyCalculator;
 
@@ -37,23 +38,24 @@ public class BoltzmannLute {
 	}
 
 	public BigDecimal get(int pos, int rc) {
-		return get(luteEcalc.tuples.getIndex(pos, rc));
+		return get(luteEcalc.tuples.findIndex(pos, rc));
 	}
 
 	public BigDecimal get(int pos1, int rc1, int pos2, int rc2) {
-		return get(luteEcalc.tuples.getIndex(pos1, rc1, pos2, rc2));
+		return get(luteEcalc.tuples.findIndex(pos1, rc1, pos2, rc2));
 	}
 
 	public BigDecimal get(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
-		return get(luteEcalc.tuples.getIndex(pos1, rc1, pos2, rc2, pos3, rc3));
+		return get(luteEcalc.tuples.findIndex(pos1, rc1, pos2, rc2, pos3, rc3));
 	}
 
 	public BigDecimal get(RCTuple tuple) {
-		return get(luteEcalc.tuples.getIndex(tuple));
+		Integer t = luteEcalc.tuples.getIndex(tuple);
+		return get(t == null ? TuplesIndex.Missing : t);
 	}
 
-	private BigDecimal get(Integer t) {
-		if (t == null) {
+	private BigDecimal get(int t) {
+		if (t == TuplesIndex.Missing) {
 			return null;
 		} else {
 			return values[t];
@@ -8,13 +8,23 @@ import edu.duke.cs.osprey.tools.ByteBufferInputStream;
 import edu.duke.cs.osprey.tools.ByteBufferOutputStream;
 import edu.duke.cs.osprey.tools.IntEncoding;
 import edu.duke.cs.osprey.tools.MathTools;
+import edu.duke.cs.osprey.tools.UnpossibleError;
 
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.math.RoundingMode;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -31,11 +41,50 @@ import java.util.NoSuchElementException;
  * The FIFO queue is implemented by a fixed-size circular buffer.
  * If the queue fills up, no new child nodes can be written, but
  * the current queue can continue to be swept as many times as needed.
+ *
+ * Entries are read and written in whole blocks with positional file channel I/O.
+ * During a sweep, the next block of entries is read ahead in the background
+ * while the current block is being processed. The small header region holding the
+ * read/write state is memory-mapped, so commits don't need a syscall per field.
  */
 public class FringeDB implements AutoCloseable {
 
 	static final byte[] Magic = { 'f', 'r', 'i', 'n', 'g', 'e', 'd', 'b' };
 
+	/** size of the buffers used to read and write blocks of entries */
+	private static final int BlockBytes = 1024*1024;
+
+	/** position of the Z encoding in the header, in what used to be padding */
+	private static final int PosZEncoding = 52;
+
+	/** how Z values are stored in the database */
+	public static enum ZEncoding {
+
+		/** exact values, up to the precision of the MathContext */
+		Fixed,
+
+		/**
+		 * 8-byte base-10 logs, with lower and upper bounds rounded outward.
+		 * Much smaller than the fixed encoding at high precision, but only keeps about 12-15 significant digits.
+		 */
+		Log;
+
+		private final byte code = (byte)ordinal();
+
+		public static ZEncoding get(byte code)
+		throws IOException {
+			for (ZEncoding encoding : values()) {
+				if (encoding.code == code) {
+					return encoding;
+				}
+			}
+			throw new IOException(String.format(
+				"unrecognized fringe db Z encoding: %d (expected one of %s), the file is corrupt or from a newer version of OSPREY",
+				code & 0xff, Arrays.toString(values())
+			));
+		}
+	}
+
 
 	private class IOState {
 
@@ -84,22 +133,34 @@ public class FringeDB implements AutoCloseable {
 	public final MultiStateConfSpace confSpace;
 	public final File file;
 
-	private final RandomAccessFile io;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final ExecutorService readAheadThread;
 	private final IOState iostate;
+	private final IOState persistedIOState;
 
 	private final IntEncoding stateEncoding;
 	private final IntEncoding confEncoding;
-	private final BigDecimalIO.Fixed bdio;
+	public final ZEncoding zEncoding;
+	private final BigDecimalIO zLowerIO;
+	private final BigDecimalIO zUpperIO;
+	private final BigDecimalIO zPathIO;
+	private final int zBytes;
 	private final int confBytes;
 	private final int entryBytes;
 
-	private final long posIOState;
-	private final long posZStats;
-	private final long posEntries;
+	private final int posIOState;
+	private final int posZStats;
+	private final int posEntries;
 	private final long maxNumEntries;
 
 	/** create a new fringe node database, reserving the desired spase on the filesystem */
 	public static FringeDB create(MultiStateConfSpace confSpace, File file, long sizeBytes, MathContext mathContext) {
+		return create(confSpace, file, sizeBytes, mathContext, ZEncoding.Fixed);
+	}
+
+	/** create a new fringe node database with the desired Z encoding, reserving the desired spase on the filesystem */
+	public static FringeDB create(MultiStateConfSpace confSpace, File file, long sizeBytes, MathContext mathContext, ZEncoding zEncoding) {
 
 		// write the header to a new file
 		try (RandomAccessFile io = new RandomAccessFile(file, "rw")) {
@@ -116,8 +177,21 @@ public class FringeDB implements AutoCloseable {
 			io.writeInt(1);
 
 			// how many bytes per big decimal?
-			BigDecimalIO.Fixed bdio = new BigDecimalIO.Fixed(mathContext);
-			io.writeInt(bdio.numBytes);
+			BigDecimalIO bdio;
+			int zBytes;
+			switch (zEncoding) {
+				case Fixed: {
+					BigDecimalIO.Fixed fixed = new BigDecimalIO.Fixed(mathContext);
+					bdio = fixed;
+					zBytes = fixed.numBytes;
+				} break;
+				case Log: {
+					bdio = new BigDecimalIO.Log(RoundingMode.CEILING);
+					zBytes = BigDecimalIO.Log.NumBytes;
+				} break;
+				default: throw new UnpossibleError();
+			}
+			io.writeInt(zBytes);
 
 			// how many bytes per conf?
 			IntEncoding confEncoding = getConfEncoding(confSpace);
@@ -135,8 +209,11 @@ public class FringeDB implements AutoCloseable {
 
 			// header bytes written: 8 + 4*3 + 4*8 = 52
 
+			// write the z encoding
+			io.writeByte(zEncoding.code);
+
 			// pad to 32 bytes so the rest of the file can be nicely aligned
-			for (int i=52; i<64; i++) {
+			for (int i=53; i<64; i++) {
 				io.writeByte(0);
 			}
 			assert (io.getFilePointer() % 32 == 0);
@@ -150,7 +227,7 @@ public class FringeDB implements AutoCloseable {
 			}
 
 			// pad to 32 bytes
-			int numBytesWritten = confSpace.states.size()*bdio.numBytes*2;
+			int numBytesWritten = confSpace.states.size()*zBytes*2;
 			int numBytesNeeded = MathTools.roundUpToMultiple(numBytesWritten, 32);
 			for (int i=numBytesWritten; i<numBytesNeeded; i++) {
 				io.writeByte(0);
@@ -212,77 +289,173 @@ public class FringeDB implements AutoCloseable {
 		// open the file and read the header
 		try {
 
-			io = new RandomAccessFile(file, "rw");
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			// read the fixed-size part of the header
+			ByteBuffer buf = ByteBuffer.allocate(64);
+			readFully(buf, 0);
+			buf.flip();
 
 			// check the magic number
 			for (int i=0; i<8; i++) {
-				if (io.readByte() != Magic[i]) {
+				if (buf.get() != Magic[i]) {
 					throw new IOException("not a fringe db file");
 				}
 			}
 
 			// check the version
-			int version = io.readInt();
+			int version = buf.getInt();
 			if (version != 1) {
 				throw new IOException("unrecognized fringe db version: " + version);
 			}
 
 			// read the sizes
-			bdio = new BigDecimalIO.Fixed(io.readInt());
-			confBytes = io.readInt();
+			zBytes = buf.getInt();
+			confBytes = buf.getInt();
 			entryBytes = calcEntrySize();
 
+			// the rest of the header is aligned to 32 bytes
+			posIOState = buf.position();
+			posZStats = 64;
+			int numZStatsBytes = confSpace.states.size()*zBytes*2;
+			posEntries = posZStats + MathTools.roundUpToMultiple(numZStatsBytes, 32);
+			assert (posEntries % 32 == 0);
+
+			// map the whole header into memory, so we can update the read/write state cheaply
+			header = channel.map(FileChannel.MapMode.READ_WRITE, 0, posEntries);
+
 			// read the read/write state
-			posIOState = io.getFilePointer();
 			iostate = new IOState();
-			iostate.readIndex = io.readLong();
-			iostate.numToRead = io.readLong();
-			iostate.writeIndex = io.readLong();
-			iostate.numWritten = io.readLong();
-
-			// skip to alignment boundary
-			for (int i=52; i<64; i++) {
-				io.readByte();
+			iostate.readIndex = header.getLong(posIOState);
+			iostate.numToRead = header.getLong(posIOState + Long.BYTES);
+			iostate.writeIndex = header.getLong(posIOState + Long.BYTES*2);
+			iostate.numWritten = header.getLong(posIOState + Long.BYTES*3);
+
+			// read the z encoding
+			// (older databases only have the fixed encoding, and zeros here)
+			zEncoding = ZEncoding.get(buf.get(PosZEncoding));
+			switch (zEncoding) {
+				case Fixed: {
+					BigDecimalIO.Fixed fixed = new BigDecimalIO.Fixed(zBytes);
+					zLowerIO = fixed;
+					zUpperIO = fixed;
+					zPathIO = fixed;
+				} break;
+				case Log: {
+					zLowerIO = new BigDecimalIO.Log(RoundingMode.FLOOR);
+					zUpperIO = new BigDecimalIO.Log(RoundingMode.CEILING);
+					zPathIO = new BigDecimalIO.Log(RoundingMode.HALF_EVEN);
+				} break;
+				default: throw new UnpossibleError();
 			}
 
-			// read the z stats
-			posZStats = io.getFilePointer();
+			// read the z stats (they're upper bounds)
+			DataInput in = headerIn(posZStats);
 			for (MultiStateConfSpace.State state : confSpace.states) {
-				iostate.readZmax[state.index] = bdio.read(io);
+				iostate.readZmax[state.index] = zUpperIO.read(in);
 			}
 			for (MultiStateConfSpace.State state : confSpace.states) {
-				iostate.writeZmax[state.index] = bdio.read(io);
+				iostate.writeZmax[state.index] = zUpperIO.read(in);
 			}
-
-			// pad to 32 bytes
-			int numBytesRead = confSpace.states.size()*bdio.numBytes*2;
-			int numBytesNeeded = MathTools.roundUpToMultiple(numBytesRead, 32);
-			for (int i=numBytesRead; i<numBytesNeeded; i++) {
-				io.readByte();
-			}
-			assert (io.getFilePointer() % 32 == 0);
-
-			posEntries = io.getFilePointer();
+			persistedIOState = iostate.copy();
 
 			// how many entries can we have?
-			maxNumEntries = (file.length() - posEntries)/entryBytes;
+			maxNumEntries = (channel.size() - posEntries)/entryBytes;
 
 		} catch (IOException ex) {
 			throw new RuntimeException("can't open db file: " + file.getAbsolutePath(), ex);
 		}
+
+		// make a thread to read ahead entries during a sweep
+		readAheadThread = Executors.newSingleThreadExecutor((runnable) -> {
+			Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+			thread.setDaemon(true);
+			thread.setName("FringeDB-readahead");
+			return thread;
+		});
 	}
 
 	@Override
 	public void close() {
+		readAheadThread.shutdownNow();
 		try {
-			io.close();
+			channel.close();
 		} catch (IOException ex) {
 			// don't care
 		}
 	}
 
+	private DataInput headerIn(int pos) {
+		ByteBuffer buf = header.duplicate();
+		buf.position(pos);
+		return new DataInputStream(new ByteBufferInputStream(buf));
+	}
+
+	private DataOutput headerOut(int pos) {
+		ByteBuffer buf = header.duplicate();
+		buf.position(pos);
+		return new DataOutputStream(new ByteBufferOutputStream(buf));
+	}
+
+	private void readFully(ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			int numBytes = channel.read(buf, pos);
+			if (numBytes < 0) {
+				throw new EOFException();
+			}
+			pos += numBytes;
+		}
+	}
+
+	private void writeFully(ByteBuffer buf, long pos)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+	}
+
+	/** reads entries into the buffer (up to its limit), wrapping around the end of the circular buffer if needed */
+	private void readEntries(ByteBuffer buf, long index)
+	throws IOException {
+		int limit = buf.limit();
+		long numEntries = (limit - buf.position())/entryBytes;
+		long numBeforeEnd = Math.min(numEntries, maxNumEntries - index);
+		buf.limit(buf.position() + (int)numBeforeEnd*entryBytes);
+		readFully(buf, posEntries + index*entryBytes);
+		buf.limit(limit);
+		readFully(buf, posEntries);
+	}
+
+	/** writes entries from the buffer, wrapping around the end of the circular buffer if needed */
+	private void writeEntries(ByteBuffer buf, long index)
+	throws IOException {
+		int limit = buf.limit();
+		long numEntries = (limit - buf.position())/entryBytes;
+		long numBeforeEnd = Math.min(numEntries, maxNumEntries - index);
+		buf.limit(buf.position() + (int)numBeforeEnd*entryBytes);
+		writeFully(buf, posEntries + index*entryBytes);
+		buf.limit(limit);
+		writeFully(buf, posEntries);
+	}
+
+	private void writeZStats(int pos, BigDecimal[] zstats)
+	throws IOException {
+		DataOutput out = headerOut(pos);
+		for (MultiStateConfSpace.State state : confSpace.states) {
+			zUpperIO.write(out, zstats[state.index]);
+		}
+	}
+
+	private void writeIOState(IOState iostate) {
+		header.putLong(posIOState, iostate.readIndex);
+		header.putLong(posIOState + Long.BYTES, iostate.numToRead);
+		header.putLong(posIOState + Long.BYTES*2, iostate.writeIndex);
+		header.putLong(posIOState + Long.BYTES*3, iostate.numWritten);
+	}
+
 	private int calcEntrySize() {
-		return stateEncoding.numBytes + confBytes + bdio.numBytes*3;
+		return stateEncoding.numBytes + confBytes + zBytes*3;
 	}
 
 	/**
@@ -314,6 +487,82 @@ public class FringeDB implements AutoCloseable {
 		return iostate.readZmax[state.index];
 	}
 
+	/**
+	 * A read-only view of a fringe that's split across one or more database shards
+	 */
+	public static class Shards {
+
+		public final List<FringeDB> dbs;
+
+		public Shards(List<FringeDB> dbs) {
+			this.dbs = dbs;
+		}
+
+		/**
+		 * Returns the total number of nodes in all the shards
+		 */
+		public long getNumNodes() {
+			return dbs.stream().mapToLong(db -> db.getNumNodes()).sum();
+		}
+
+		/**
+		 * Returns the maximum number of fringe nodes that can fit in all the shards.
+		 */
+		public long getCapacity() {
+			return dbs.stream().mapToLong(db -> db.getCapacity()).sum();
+		}
+
+		/**
+		 * Returns true if there are no nodes in any shard, false otherwise.
+		 */
+		public boolean isEmpty() {
+			return dbs.stream().allMatch(db -> db.isEmpty());
+		}
+
+		/**
+		 * Returns the largest Z value for the nodes to read in any shard,
+		 * or null if no shard has any.
+		 */
+		public BigDecimal getZMax(MultiStateConfSpace.State state) {
+			BigDecimal max = null;
+			for (FringeDB db : dbs) {
+				BigDecimal shardMax = db.getZMax(state);
+				if (max == null || (shardMax != null && MathTools.isGreaterThan(shardMax, max))) {
+					max = shardMax;
+				}
+			}
+			return max;
+		}
+	}
+
+	/** a block of entries read from the file, possibly still being read in the background */
+	private class ReadBlock {
+
+		final ByteBuffer buf = ByteBuffer.allocateDirect(BlockBytes);
+		final DataInput in = new DataInputStream(new ByteBufferInputStream(buf));
+		Future<?> pending = null;
+
+		ReadBlock() {
+			buf.limit(0);
+		}
+
+		void await()
+		throws IOException {
+			if (pending == null) {
+				return;
+			}
+			try {
+				pending.get();
+			} catch (InterruptedException ex) {
+				throw new InterruptedIOException();
+			} catch (ExecutionException ex) {
+				throw new IOException("can't read fringe nodes", ex.getCause());
+			} finally {
+				pending = null;
+			}
+		}
+	}
+
 	public class Transaction {
 
 		private final IOState iostate = FringeDB.this.iostate.copy();
@@ -323,11 +572,13 @@ public class FringeDB implements AutoCloseable {
 		private BigDecimalBounds zbounds;
 		private BigDecimal zpath;
 
-		private final ByteBuffer readBuf = ByteBuffer.allocate(1024*1024);
-		private final DataInput readIn = new DataInputStream(new ByteBufferInputStream(readBuf));
-		private final int maxReadEntries = readBuf.capacity()/entryBytes;
+		private ReadBlock readBlock = new ReadBlock();
+		private ReadBlock nextReadBlock = new ReadBlock();
+		private final int maxReadEntries = readBlock.buf.capacity()/entryBytes;
+		private long readAheadIndex = iostate.readIndex;
+		private long numToReadAhead = iostate.numToRead;
 
-		private final ByteBuffer writeBuf = ByteBuffer.allocate(1024*1024);
+		private final ByteBuffer writeBuf = ByteBuffer.allocateDirect(BlockBytes);
 		private final DataOutput writeOut = new DataOutputStream(new ByteBufferOutputStream(writeBuf));
 		private final int maxWrittenEntries = writeBuf.capacity()/entryBytes;
 		private int writtenEntries = 0;
@@ -335,7 +586,30 @@ public class FringeDB implements AutoCloseable {
 		private Transaction() {
 			// keep the constructor private
 
-			readBuf.limit(0);
+			// start reading the first block right away
+			readAhead();
+		}
+
+		/** starts reading the next block of entries in the background */
+		private void readAhead() {
+
+			if (numToReadAhead <= 0 || nextReadBlock.pending != null) {
+				return;
+			}
+
+			int numEntries = (int)Math.min(maxReadEntries, numToReadAhead);
+			ReadBlock block = nextReadBlock;
+			long index = readAheadIndex;
+			block.buf.clear();
+			block.buf.limit(numEntries*entryBytes);
+			block.pending = readAheadThread.submit(() -> {
+				readEntries(block.buf, index);
+				block.buf.flip();
+				return null;
+			});
+
+			readAheadIndex = iostate.advanceEntryIndex(readAheadIndex, numEntries);
+			numToReadAhead -= numEntries;
 		}
 
 		/** number of unread nodes left in this sweep */
@@ -357,16 +631,20 @@ public class FringeDB implements AutoCloseable {
 
 			try {
 
-				// if the read buffer is empty, fill it up
-				if (readBuf.position() == readBuf.limit()) {
-					int numToRead = Math.min(maxReadEntries, (int)Math.min(iostate.numToRead, Integer.MAX_VALUE));
-					io.seek(posEntries + iostate.readIndex*entryBytes);
-					io.readFully(readBuf.array(), 0, numToRead*entryBytes);
-					readBuf.position(0);
-					readBuf.limit(numToRead*entryBytes);
+				// if the read buffer is empty, swap in the block we read ahead
+				if (!readBlock.buf.hasRemaining()) {
+					readAhead();
+					nextReadBlock.await();
+					ReadBlock swap = readBlock;
+					readBlock = nextReadBlock;
+					nextReadBlock = swap;
+
+					// and start reading the block after that
+					readAhead();
 				}
 
 				// read the next entry out of the read buffer
+				DataInput readIn = readBlock.in;
 
 				state = confSpace.states.get(stateEncoding.read(readIn));
 
@@ -383,10 +661,10 @@ public class FringeDB implements AutoCloseable {
 				}
 
 				zbounds = new BigDecimalBounds(
-					bdio.read(readIn),
-					bdio.read(readIn)
+					zLowerIO.read(readIn),
+					zUpperIO.read(readIn)
 				);
-				zpath = bdio.read(readIn);
+				zpath = zPathIO.read(readIn);
 
 			} catch (IOException ex) {
 				throw new RuntimeException("can't advance to next fringe node", ex);
@@ -449,9 +727,9 @@ public class FringeDB implements AutoCloseable {
 					out.writeByte(0);
 				}
 
-				bdio.write(out, zbounds.lower);
-				bdio.write(out, zbounds.upper);
-				bdio.write(out, zpath);
+				zLowerIO.write(out, zbounds.lower);
+				zUpperIO.write(out, zbounds.upper);
+				zPathIO.write(out, zpath);
 
 			} catch (IOException ex) {
 				throw new RuntimeException("can't write fringe node", ex);
@@ -503,10 +781,30 @@ public class FringeDB implements AutoCloseable {
 		}
 
 		/**
-		 * Flushes all pending writes to the database file.
+		 * Is there enough room in the database to add more nodes without overwriting
+		 * any nodes that were read since the last persist()?
+		 */
+		public boolean persistedDbHasRoomFor(int count) {
+			long usedEntries = persistedIOState.numToRead + iostate.numWritten + writtenEntries;
+			long freeEntries = maxNumEntries - usedEntries;
+			return count <= freeEntries;
+		}
+
+		/**
+		 * Flushes all pending writes to the database file, and then persists the io state.
 		 * All writes are flushed to the underlying storage device by the time this method returns.
 		 */
 		public void commit() {
+			write();
+			persist();
+		}
+
+		/**
+		 * Flushes all pending writes to the database file, but does not persist the io state.
+		 * New transactions see the writes right away, but after a crash the database reverts
+		 * to the state at the last persist(), as if this transaction never happened.
+		 */
+		public void write() {
 
 			// short circuit
 			if (writtenEntries <= 0 && iostate.numToRead == FringeDB.this.iostate.numToRead) {
@@ -519,35 +817,46 @@ public class FringeDB implements AutoCloseable {
 
 			try {
 
-				// write the replacement entries
+				// write the replacement entries in one block
 				writeBuf.flip();
-				io.seek(posEntries + iostate.writeIndex*entryBytes);
-				io.write(writeBuf.array(), 0, writtenEntries*entryBytes);
+				writeEntries(writeBuf, iostate.writeIndex);
 				writeBuf.clear();
 				iostate.advanceWrite(writtenEntries);
 				writtenEntries = 0;
 
-				// write zmax
-				io.seek(posZStats + bdio.numBytes*confSpace.states.size());
-				for (MultiStateConfSpace.State state : confSpace.states) {
-					bdio.write(io, iostate.writeZmax[state.index]);
-				}
-
-				// persist io state
-				io.seek(posIOState);
-				io.writeLong(iostate.readIndex);
-				io.writeLong(iostate.numToRead);
-				io.writeLong(iostate.writeIndex);
-				io.writeLong(iostate.numWritten);
+				// make sure the entries reach storage before the io state that points to them
+				channel.force(false);
 
 				// copy io state outside of transaction
 				iostate.copyTo(FringeDB.this.iostate);
 
+			} catch (IOException ex) {
+				throw new RuntimeException("commit failed", ex);
+			}
+		}
+
+		/**
+		 * Persists the io state of all the transactions written so far, but not any unwritten reads or writes in this one.
+		 * All writes are flushed to the underlying storage device by the time this method returns.
+		 */
+		public void persist() {
+
+			IOState iostate = FringeDB.this.iostate;
+
+			try {
+
+				// write zmax
+				writeZStats(posZStats + zBytes*confSpace.states.size(), iostate.writeZmax);
+
+				// persist io state
+				writeIOState(iostate);
+				iostate.copyTo(persistedIOState);
+
 				// flush changes to storage
-				io.getChannel().force(false);
+				header.force();
 
 			} catch (IOException ex) {
-				throw new RuntimeException("commit failed", ex);
+				throw new RuntimeException("persist failed", ex);
 			}
 		}
 	}
@@ -574,25 +883,19 @@ public class FringeDB implements AutoCloseable {
 			iostate.numWritten = 0;
 
 			// update the z stats
-			io.seek(posZStats);
 			for (MultiStateConfSpace.State state : confSpace.states) {
 				iostate.readZmax[state.index] = iostate.writeZmax[state.index];
-				bdio.write(io, iostate.readZmax[state.index]);
-			}
-			for (MultiStateConfSpace.State state : confSpace.states) {
 				iostate.writeZmax[state.index] = null;
-				bdio.write(io, iostate.writeZmax[state.index]);
 			}
+			writeZStats(posZStats, iostate.readZmax);
+			writeZStats(posZStats + zBytes*confSpace.states.size(), iostate.writeZmax);
 
 			// persist read state
-			io.seek(posIOState);
-			io.writeLong(iostate.readIndex);
-			io.writeLong(iostate.numToRead);
-			io.writeLong(iostate.writeIndex);
-			io.writeLong(iostate.numWritten);
+			writeIOState(iostate);
+			iostate.copyTo(persistedIOState);
 
 			// flush changes to storage
-			io.getChannel().force(false);
+			header.force();
 
 		} catch (IOException ex) {
 			throw new RuntimeException("finish failed", ex);
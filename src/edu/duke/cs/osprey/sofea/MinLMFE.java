@@ -24,7 +24,7 @@ import static edu.duke.cs.osprey.tools.Log.logf;
 /**
  * Finishes SOFEA computation when we've found the lowest K sequences by LMFE
  */
-public class MinLMFE implements Sofea.Criterion {
+public class MinLMFE implements Sofea.ShardedCriterion {
 
 	public final MultiStateConfSpace.LMFE objective;
 	public final int numSequences;
@@ -201,7 +201,7 @@ public class MinLMFE implements Sofea.Criterion {
 	}
 
 	@Override
-	public boolean isFinished(SeqDB seqdb, FringeDB fringedb, long sweepCount) {
+	public boolean isFinished(SeqDB seqdb, FringeDB.Shards fringedbs, long sweepCount) {
 
 		assert (objective.confSpace == seqdb.confSpace);
 		MultiStateConfSpace confSpace = seqdb.confSpace;
@@ -270,15 +270,37 @@ public class SeqDB implements AutoCloseable {
 	private final HTreeMap<int[],SeqInfo> sequencedSums;
 	private final HTreeMap<Integer,BigDecimalBounds> unsequencedSums;
 
+	/**
+	 * committed transactions waiting to be flushed to the database
+	 *
+	 * these are full sums (the database value plus all the pending changes), not just the changes,
+	 * so the sums are clamped after every commit, the same as if each commit went straight to the database
+	 */
+	private final Map<Sequence,SeqInfo> pendingSequencedSums = new HashMap<>();
+	private final Map<Integer,BigDecimalBounds> pendingUnsequencedSums = new HashMap<>();
+	private long lastFlushMs = System.currentTimeMillis();
+
+	/** flush committed transactions to the database when at least this many sequences have pending changes */
+	public final int maxPendingSequences;
+
+	/** flush committed transactions to the database when at least this much time has passed since the last flush */
+	public final long maxPendingMs;
+
 	public SeqDB(MultiStateConfSpace confSpace, MathContext mathContext) {
 		this(confSpace, mathContext, null);
 	}
 
 	public SeqDB(MultiStateConfSpace confSpace, MathContext mathContext, File file) {
+		this(confSpace, mathContext, file, 1024, 1000);
+	}
+
+	public SeqDB(MultiStateConfSpace confSpace, MathContext mathContext, File file, int maxPendingSequences, long maxPendingMs) {
 
 		this.confSpace = confSpace;
 		this.mathContext = mathContext;
 		this.file = file;
+		this.maxPendingSequences = maxPendingSequences;
+		this.maxPendingMs = maxPendingMs;
 
 		// open the DB
 		if (file != null) {
@@ -316,6 +338,55 @@ public class SeqDB implements AutoCloseable {
 		return new BigMath(mathContext);
 	}
 
+	private void combineSums(BigDecimalBounds sum, BigDecimalBounds oldSum) {
+		sum.upper = bigMath()
+			.set(sum.upper)
+			.add(oldSum.upper)
+			.atLeast(0.0) // NOTE: roundoff error can cause this to drop below 0
+			.get();
+		sum.lower = bigMath()
+			.set(sum.lower)
+			.add(oldSum.lower)
+			.atMost(sum.upper) // don't exceed the upper value due to roundoff error
+			.get();
+	}
+
+	/**
+	 * Pushes all the committed transactions to the database.
+	 *
+	 * Transaction commits only combine their changes in memory with the other pending changes,
+	 * so the database only has to read and write each touched sequence once per flush.
+	 * Pending changes are flushed automatically when there are enough of them, when enough time
+	 * has passed, before any query, and when the database is closed.
+	 */
+	public synchronized void flush() {
+
+		for (Map.Entry<Sequence,SeqInfo> entry : pendingSequencedSums.entrySet()) {
+			sequencedSums.put(entry.getKey().rtIndices, entry.getValue());
+		}
+
+		for (Map.Entry<Integer,BigDecimalBounds> entry : pendingUnsequencedSums.entrySet()) {
+			unsequencedSums.put(entry.getKey(), entry.getValue());
+		}
+
+		if (!pendingSequencedSums.isEmpty() || !pendingUnsequencedSums.isEmpty()) {
+			db.commit();
+		}
+
+		pendingSequencedSums.clear();
+		pendingUnsequencedSums.clear();
+		lastFlushMs = System.currentTimeMillis();
+	}
+
+	/**
+	 * Drops all the committed transactions that haven't been flushed to the database yet,
+	 * e.g. after a failure, when other databases on disk only reflect the flushed changes.
+	 */
+	public synchronized void discardPending() {
+		pendingSequencedSums.clear();
+		pendingUnsequencedSums.clear();
+	}
+
 
 	public class Transaction {
 
@@ -415,63 +486,69 @@ public class SeqDB implements AutoCloseable {
 			return isEmpty;
 		}
 
-		private void combineSums(BigDecimalBounds sum, BigDecimalBounds oldSum) {
-			sum.upper = bigMath()
-				.set(sum.upper)
-				.add(oldSum.upper)
-				.atLeast(0.0) // NOTE: roundoff error can cause this to drop below 0
-				.get();
-			sum.lower = bigMath()
-				.set(sum.lower)
-				.add(oldSum.lower)
-				.atMost(sum.upper) // don't exceed the upper value due to roundoff error
-				.get();
-		}
-
-		public void commit() {
+		/**
+		 * Combines the changes in this transaction with the other pending changes,
+		 * and flushes all the pending changes to the database if there are enough of them.
+		 *
+		 * @return true if the database was flushed, false otherwise
+		 */
+		public boolean commit() {
 
 			// short circuit
 			if (isEmpty) {
-				return;
+				return false;
 			}
 
-			// push writes to the db
-			for (Map.Entry<Sequence,SeqInfo> entry : sequencedSums.entrySet()) {
-				Sequence seq = entry.getKey();
-				SeqInfo seqInfo = entry.getValue();
+			boolean flushed = false;
 
-				// combine with the old sums if needed
-				SeqInfo oldSeqInfo = SeqDB.this.sequencedSums.get(seq.rtIndices);
-				if (oldSeqInfo != null) {
-					for (MultiStateConfSpace.State state : confSpace.sequencedStates) {
-						BigDecimalBounds sum = seqInfo.z[state.sequencedIndex];
-						BigDecimalBounds oldSum = oldSeqInfo.z[state.sequencedIndex];
-						combineSums(sum, oldSum);
+			// transactions from different threads can commit concurrently, so merge one at a time
+			synchronized (SeqDB.this) {
+
+				// combine the changes with the pending sums, reading from the db the first time a sum is touched
+				for (Map.Entry<Sequence,SeqInfo> entry : sequencedSums.entrySet()) {
+					Sequence seq = entry.getKey();
+					SeqInfo seqInfo = entry.getValue();
+
+					SeqInfo oldSeqInfo = pendingSequencedSums.get(seq);
+					if (oldSeqInfo == null) {
+						oldSeqInfo = SeqDB.this.sequencedSums.get(seq.rtIndices);
+					}
+					if (oldSeqInfo != null) {
+						for (MultiStateConfSpace.State state : confSpace.sequencedStates) {
+							combineSums(seqInfo.z[state.sequencedIndex], oldSeqInfo.z[state.sequencedIndex]);
+						}
 					}
+					pendingSequencedSums.put(seq, seqInfo);
 				}
 
-				SeqDB.this.sequencedSums.put(seq.rtIndices, seqInfo);
-			}
-
-			for (Map.Entry<Integer,BigDecimalBounds> entry : unsequencedSums.entrySet()) {
-				int unsequencedIndex = entry.getKey();
-				BigDecimalBounds sum = entry.getValue();
+				for (Map.Entry<Integer,BigDecimalBounds> entry : unsequencedSums.entrySet()) {
+					int unsequencedIndex = entry.getKey();
+					BigDecimalBounds sum = entry.getValue();
 
-				// combine with the old sum if needed
-				BigDecimalBounds oldSum = SeqDB.this.unsequencedSums.get(unsequencedIndex);
-				if (oldSum != null) {
-					combineSums(sum, oldSum);
+					BigDecimalBounds oldSum = pendingUnsequencedSums.get(unsequencedIndex);
+					if (oldSum == null) {
+						oldSum = SeqDB.this.unsequencedSums.get(unsequencedIndex);
+					}
+					if (oldSum != null) {
+						combineSums(sum, oldSum);
+					}
+					pendingUnsequencedSums.put(unsequencedIndex, sum);
 				}
 
-				SeqDB.this.unsequencedSums.put(unsequencedIndex, sum);
+				// push writes to the db if we've waited long enough
+				if (pendingSequencedSums.size() >= maxPendingSequences
+					|| System.currentTimeMillis() - lastFlushMs >= maxPendingMs) {
+					flush();
+					flushed = true;
+				}
 			}
 
-			db.commit();
-
 			// reset state
 			sequencedSums.clear();
 			unsequencedSums.clear();
 			isEmpty = true;
+
+			return flushed;
 		}
 	}
 
@@ -481,6 +558,7 @@ public class SeqDB implements AutoCloseable {
 
 	@Override
 	public void close() {
+		flush();
 		db.close();
 	}
 
@@ -489,6 +567,7 @@ public class SeqDB implements AutoCloseable {
 	 * (you probably don't want this unless you're debugging)
 	 */
 	public BigDecimalBounds getUnsequencedSum(MultiStateConfSpace.State state) {
+		flush();
 		BigDecimalBounds z = unsequencedSums.get(state.unsequencedIndex);
 		if (z == null) {
 			z = makeEmptySum();
@@ -500,6 +579,7 @@ public class SeqDB implements AutoCloseable {
 	 * returns the current Z bounds for the queried state
 	 */
 	public BigDecimalBounds getUnsequencedBound(MultiStateConfSpace.State state) {
+		flush();
 		BigDecimalBounds z = unsequencedSums.get(state.unsequencedIndex);
 		if (z == null) {
 			z = new BigDecimalBounds(BigDecimal.ZERO, MathTools.BigPositiveInfinity);
@@ -513,6 +593,7 @@ public class SeqDB implements AutoCloseable {
 	 * (you probably don't want this unless you're debugging)
 	 */
 	public SeqInfo getSequencedSums(Sequence seq) {
+		flush();
 		SeqInfo seqInfo = sequencedSums.get(seq.rtIndices);
 		if (seqInfo == null) {
 			seqInfo = new SeqInfo(confSpace.sequencedStates.size());
@@ -525,7 +606,7 @@ public class SeqDB implements AutoCloseable {
 	 * returns accumulated state Z values for all sequences
 	 */
 	public Iterable<Map.Entry<Sequence,SeqInfo>> getSequencedSums() {
-
+		flush();
 		return () -> new Iterator<Map.Entry<Sequence,SeqInfo>>() {
 
 			Iterator<Map.Entry<int[],SeqInfo>> iter = sequencedSums.getEntries().iterator();
@@ -567,6 +648,7 @@ public class SeqDB implements AutoCloseable {
 	 * returns bounds for both full and partial sequences
 	 */
 	public Iterable<Map.Entry<Sequence,SeqInfo>> getSequencedBounds() {
+		flush();
 		return () -> new Iterator<Map.Entry<Sequence,SeqInfo>>() {
 
 			Iterator<Map.Entry<int[],SeqInfo>> iter = sequencedSums.getEntries().iterator();
@@ -19,6 +19,10 @@ import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -44,6 +48,8 @@ public class Sofea {
 		private MathContext seqdbMathContext = new MathContext(128, RoundingMode.HALF_UP);
 		private File fringedbFile = new File("fringe.db");
 		private long fringedbBytes = 10*1024*1024; // 10 MiB
+		private FringeDB.ZEncoding fringedbZEncoding = FringeDB.ZEncoding.Fixed;
+		private int numFringeDBShards = 1;
 		private boolean showProgress = true;
 		private Parallelism parallelism = Parallelism.makeCpu(1);
 		private double sweepDivisor = Math.pow(Math.E, 4.0);
@@ -99,6 +105,31 @@ public class Sofea {
 			return this;
 		}
 
+		/**
+		 * How to store Z values in the fringe database, if a new one is created.
+		 * The log encoding fits more fringe nodes in the same space,
+		 * but only stores about 12-15 significant digits.
+		 */
+		public Builder setFringeDBZEncoding(FringeDB.ZEncoding val) {
+			fringedbZEncoding = val;
+			return this;
+		}
+
+		/**
+		 * Split the fringe database into this many shard files, which are swept in parallel.
+		 * Each shard gets its own transactions and its own share of the threads,
+		 * so sweeps aren't limited by a single fringe transaction.
+		 * Shard 0 uses the fringe database file, the other shards append the shard index to the file name.
+		 * The fringe database size is divided evenly among the shards.
+		 */
+		public Builder setFringeDBShards(int val) {
+			if (val <= 0) {
+				throw new IllegalArgumentException("need at least one fringe shard, not " + val);
+			}
+			numFringeDBShards = val;
+			return this;
+		}
+
 		public Builder setShowProgress(boolean val) {
 			showProgress = val;
 			return this;
@@ -133,6 +164,8 @@ public class Sofea {
 				seqdbMathContext,
 				fringedbFile,
 				fringedbBytes,
+				fringedbZEncoding,
+				numFringeDBShards,
 				showProgress,
 				parallelism,
 				sweepDivisor
@@ -164,15 +197,44 @@ public class Sofea {
 		}
 	}
 
-	/** decides if computation should continue or not */
+	/**
+	 * decides if computation should continue or not
+	 */
 	public static interface Criterion {
 
 		boolean isFinished(SeqDB seqdb, FringeDB fringedb, long sweepCount);
 
+		/**
+		 * when the fringe database is sharded, the criterion sees all the shards
+		 *
+		 * by default, only works with a single shard, override to handle more
+		 */
+		default boolean isFinished(SeqDB seqdb, FringeDB.Shards fringedbs, long sweepCount) {
+			if (fringedbs.dbs.size() != 1) {
+				throw new UnsupportedOperationException(getClass().getName() + " can't handle " + fringedbs.dbs.size() + " fringe shards,"
+					+ " override isFinished(SeqDB, FringeDB.Shards, long) to use this criterion with a sharded fringe database");
+			}
+			return isFinished(seqdb, fringedbs.dbs.get(0), sweepCount);
+		}
+
 		public static final boolean KeepIterating = false;
 		public static final boolean Terminate = true;
 	}
 
+	/**
+	 * a criterion that sees all the fringe shards, even if there's only one
+	 */
+	public static interface ShardedCriterion extends Criterion {
+
+		@Override
+		boolean isFinished(SeqDB seqdb, FringeDB.Shards fringedbs, long sweepCount);
+
+		@Override
+		default boolean isFinished(SeqDB seqdb, FringeDB fringedb, long sweepCount) {
+			return isFinished(seqdb, new FringeDB.Shards(Collections.singletonList(fringedb)), sweepCount);
+		}
+	}
+
 
 	public final MultiStateConfSpace confSpace;
 	public final List<StateConfig> stateConfigs;
@@ -181,13 +243,15 @@ public class Sofea {
 	public final MathContext seqdbMathContext;
 	public final File fringedbFile;
 	public final long fringedbBytes;
+	public final FringeDB.ZEncoding fringedbZEncoding;
+	public final int numFringeDBShards;
 	public final boolean showProgress;
 	public final Parallelism parallelism;
 	public final double sweepDivisor;
 
 	private final List<StateInfo> stateInfos;
 
-	private Sofea(MultiStateConfSpace confSpace, List<StateConfig> stateConfigs, MathContext mathContext, File seqdbFile, MathContext seqdbMathContext, File fringedbFile, long fringedbBytes, boolean showProgress, Parallelism parallelism, double sweepDivisor) {
+	private Sofea(MultiStateConfSpace confSpace, List<StateConfig> stateConfigs, MathContext mathContext, File seqdbFile, MathContext seqdbMathContext, File fringedbFile, long fringedbBytes, FringeDB.ZEncoding fringedbZEncoding, int numFringeDBShards, boolean showProgress, Parallelism parallelism, double sweepDivisor) {
 
 		this.confSpace = confSpace;
 		this.stateConfigs = stateConfigs;
@@ -196,6 +260,8 @@ public class Sofea {
 		this.seqdbMathContext = seqdbMathContext;
 		this.fringedbFile = fringedbFile;
 		this.fringedbBytes = fringedbBytes;
+		this.fringedbZEncoding = fringedbZEncoding;
+		this.numFringeDBShards = numFringeDBShards;
 		this.showProgress = showProgress;
 		this.parallelism = parallelism;
 		this.sweepDivisor = sweepDivisor;
@@ -231,10 +297,41 @@ public class Sofea {
 	}
 
 	public FringeDB openFringeDB() {
-		if (fringedbFile.exists()) {
-			return FringeDB.open(confSpace, fringedbFile);
+		return openFringeDB(0);
+	}
+
+	public File getFringeDBFile(int shard) {
+		if (shard == 0) {
+			return fringedbFile;
+		}
+		return new File(fringedbFile.getPath() + "." + shard);
+	}
+
+	public FringeDB openFringeDB(int shard) {
+		File file = getFringeDBFile(shard);
+		if (file.exists()) {
+			return FringeDB.open(confSpace, file);
 		} else {
-			return FringeDB.create(confSpace, fringedbFile, fringedbBytes, mathContext);
+			return FringeDB.create(confSpace, file, fringedbBytes/numFringeDBShards, mathContext, fringedbZEncoding);
+		}
+	}
+
+	private List<FringeDB> openFringeDBs() {
+		List<FringeDB> fringedbs = new ArrayList<>();
+		try {
+			for (int shard=0; shard<numFringeDBShards; shard++) {
+				fringedbs.add(openFringeDB(shard));
+			}
+		} catch (RuntimeException ex) {
+			closeFringeDBs(fringedbs);
+			throw ex;
+		}
+		return fringedbs;
+	}
+
+	private static void closeFringeDBs(List<FringeDB> fringedbs) {
+		for (FringeDB fringedb : fringedbs) {
+			fringedb.close();
 		}
 	}
 
@@ -258,18 +355,24 @@ public class Sofea {
 
 		// clear old results
 		seqdbFile.delete();
-		fringedbFile.delete();
+		for (int shard=0; shard<numFringeDBShards; shard++) {
+			getFringeDBFile(shard).delete();
+		}
 
 		// OPTIMIZATION: allocate one RCTuple instance for all the triple lookups
 		// and set positions in 3-2-1 order so the positions are sorted in ascending order
 		RCTuple tripleTuple = new RCTuple(0, 0, 0, 0, 0, 0);
 
 		try (SeqDB seqdb = openSeqDB()) {
-			try (FringeDB fringedb = openFringeDB()) {
+			List<FringeDB> fringedbs = openFringeDBs();
+			try {
 
 				// process the root node for each state
-				FringeDB.Transaction fringetx = fringedb.transaction();
+				List<FringeDB.Transaction> fringetxs = fringedbs.stream()
+					.map(fringedb -> fringedb.transaction())
+					.collect(Collectors.toList());
 				SeqDB.Transaction seqtx = seqdb.transaction();
+				Committer committer = new Committer(seqdb, fringetxs);
 				for (MultiStateConfSpace.State state : confSpace.states) {
 					StateInfo stateInfo = stateInfos.get(state.index);
 
@@ -295,15 +398,96 @@ public class Sofea {
 						);
 					}
 
-					// init the fringe with the root node
-					fringetx.writeRootNode(state, rootBound, stateInfo.blute.factor);
-					seqtx.addZ(state, state.confSpace.makeUnassignedSequence(), rootBound);
+					if (fringedbs.size() == 1) {
+
+						// init the fringe with the root node
+						fringetxs.get(0).writeRootNode(state, rootBound, stateInfo.blute.factor);
+						seqtx.addZ(state, state.confSpace.makeUnassignedSequence(), rootBound);
+
+					} else {
+
+						// split the root node into enough subtrees to spread among the shards
+						// nodes never move between shards, so all the descendants of a subtree stay in its shard
+						List<Node> nodes = splitRootNode(stateInfo, tripleTuple, rootBound, stateInfo.blute.factor, fringedbs.size());
+						for (int i=0; i<nodes.size(); i++) {
+							Node node = nodes.get(i);
+							FringeDB.Transaction fringetx = fringetxs.get(i % fringetxs.size());
+							if (!fringetx.dbHasRoomFor(1)) {
+								throw new IllegalStateException("fringe shard is too small to hold the initial nodes, try a bigger fringe database");
+							}
+							if (!fringetx.txHasRoomFor(1)) {
+								committer.commit(fringetx, seqtx);
+							}
+							fringetx.writeReplacementNode(state, node.conf, node.zbounds, node.zpath);
+							seqtx.addZ(state, stateInfo.makeSeq(node.conf), node.zbounds);
+						}
+					}
 				}
-				fringetx.commit();
-				fringedb.finishSweep();
 				seqtx.commit();
+				seqdb.flush();
+				for (int shard=0; shard<fringedbs.size(); shard++) {
+					fringetxs.get(shard).commit();
+					fringedbs.get(shard).finishSweep();
+				}
+
+			} finally {
+				closeFringeDBs(fringedbs);
+			}
+		}
+	}
+
+	/**
+	 * Expands the root node breadth-first until there are at least a few subtrees per shard,
+	 * or the next level would be leaves.
+	 */
+	private List<Node> splitRootNode(StateInfo stateInfo, RCTuple tripleTuple, BigDecimalBounds rootBound, BigDecimal rootZPath, int numShards) {
+
+		final int minNodesPerShard = 4;
+
+		List<Node> nodes = new ArrayList<>();
+		nodes.add(new Node(Conf.make(stateInfo.state.confSpace), rootBound, rootZPath));
+
+		int numPos = stateInfo.positions.size();
+		for (int pos=0; pos<numPos - 1 && nodes.size() < minNodesPerShard*numShards; pos++) {
+
+			List<Node> children = new ArrayList<>();
+			for (Node node : nodes) {
+
+				ConfIndex index = new ConfIndex(numPos);
+				Conf.index(node.conf, index);
+				boolean isRoot = index.numDefined == 0;
+
+				for (int rc : stateInfo.rcs.get(pos)) {
+
+					// update the zpath with this RC, just like design()
+					BigDecimal zpathrc = node.zpath;
+					if (!isRoot) {
+
+						BigDecimal zrc = stateInfo.getZPart(index, tripleTuple, pos, rc);
+
+						// this subtree contributes nothing to Z
+						if (MathTools.isZero(zrc)) {
+							continue;
+						}
+
+						zpathrc = bigMath()
+							.set(zpathrc)
+							.mult(zrc)
+							.get();
+					}
+
+					index.assignInPlace(pos, rc);
+					BigDecimalBounds zboundsrc = stateInfo.boundZ(index, tripleTuple, zpathrc);
+					if (zboundsrc != null) {
+						children.add(new Node(Conf.make(index), zboundsrc, zpathrc));
+					}
+					index.unassignInPlace(pos);
+				}
 			}
+			nodes = children;
 		}
+
+		return nodes;
 	}
 
 	private static class Node {
@@ -368,9 +552,9 @@ public class Sofea {
 			return fringetx.dbHasRoomFor(replacementNodes.size() + otherNodesInFlight);
 		}
 
-		boolean replace(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx) {
+		boolean replace(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, Committer committer) {
 
-			boolean flushed = flushTransactionsIfNeeded(fringetx, seqtx);
+			boolean flushed = flushTransactionsIfNeeded(fringetx, seqtx, committer);
 
 			StateInfo stateInfo = stateInfos.get(state.index);
 
@@ -391,9 +575,9 @@ public class Sofea {
 			return flushed;
 		}
 
-		boolean requeue(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx) {
+		boolean requeue(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, Committer committer) {
 
-			boolean flushed = flushTransactionsIfNeeded(fringetx, seqtx);
+			boolean flushed = flushTransactionsIfNeeded(fringetx, seqtx, committer);
 
 			// ignore all of the seqdb changes
 
@@ -403,7 +587,7 @@ public class Sofea {
 			return flushed;
 		}
 
-		boolean flushTransactionsIfNeeded(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx) {
+		boolean flushTransactionsIfNeeded(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, Committer committer) {
 
 			// skip if the fringe db transaction isn't full
 			if (fringetx.txHasRoomFor(replacementNodes.size())) {
@@ -417,20 +601,27 @@ public class Sofea {
 				));
 			}
 
-			// commit both transactions at the same time
-			fringetx.commit();
-			seqtx.commit();
+			committer.commit(fringetx, seqtx);
 
 			return true;
 		}
 	}
 
 	private static class StateStats {
+
 		long read = 0;
 		long expanded = 0;
 		long replaced = 0;
 		long added = 0;
 		long requeued = 0;
+
+		void add(StateStats other) {
+			read += other.read;
+			expanded += other.expanded;
+			replaced += other.replaced;
+			added += other.added;
+			requeued += other.requeued;
+		}
 	}
 
 	/**
@@ -438,31 +629,48 @@ public class Sofea {
 	 */
 	public void refine(Criterion criterion) {
 		try (SeqDB seqdb = openSeqDB()) {
-		try (FringeDB fringedb = openFringeDB()) {
-		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+		List<FringeDB> fringedbs = openFringeDBs();
+		FringeDB.Shards fringe = new FringeDB.Shards(fringedbs);
+		List<TaskExecutor> shardTasks = new ArrayList<>();
+		ExecutorService shardThreads = null;
+		try {
+
+			// make a thread group for each shard
+			if (fringedbs.size() == 1) {
+				shardTasks.add(parallelism.makeTaskExecutor());
+			} else {
+				int numThreadsPerShard = Math.max(1, parallelism.numThreads/fringedbs.size());
+				for (int shard=0; shard<fringedbs.size(); shard++) {
+					shardTasks.add(Parallelism.makeCpu(numThreadsPerShard).makeTaskExecutor());
+				}
+				shardThreads = Executors.newFixedThreadPool(fringedbs.size());
+			}
 
 			// get the initial zmax
 			BigDecimal[] zmax = confSpace.states.stream()
-				.map(state -> fringedb.getZMax(state))
+				.map(state -> fringe.getZMax(state))
 				.toArray(size -> new BigDecimal[size]);
 
 			long sweepCount = 0;
 			while (true) {
 
 				// check the termination criterion
-				if (criterion != null && criterion.isFinished(seqdb, fringedb, sweepCount)) {
+				if (criterion != null && criterion.isFinished(seqdb, fringe, sweepCount)) {
 					log("SOFEA finished, criterion satisfied");
 					break;
 				}
 
 				// stop if we ran out of fringe nodes
-				if (fringedb.isEmpty()) {
+				if (fringe.isEmpty()) {
 					log("SOFEA finished, explored every node");
 					break;
 				}
 
 				// reduce zmax before each sweep
 				for (MultiStateConfSpace.State state : confSpace.states) {
+					if (zmax[state.index] == null) {
+						continue;
+					}
 					zmax[state.index] = bigMath()
 						.set(zmax[state.index])
 						.div(sweepDivisor)
@@ -475,97 +683,204 @@ public class Sofea {
 					log("sweep %d", sweepCount);
 				}
 
-				// init sweep stats
-				StateStats[] stats = new StateStats[confSpace.states.size()];
-				for (MultiStateConfSpace.State state : confSpace.states) {
-					stats[state.index] = new StateStats();
-				}
-
-				// keep track of how many nodes are in outstanding tasks, and hence unknown to FringeDB's size counters
-				// NOTE: use a size-one array instead of a plain var, since Java's compiler is kinda dumb about lambdas
-				int[] nodesInFlight = { 0 };
-
-				// start (or resume) the sweep
-				FringeDB.Transaction fringetx = fringedb.transaction();
-				SeqDB.Transaction seqtx = seqdb.transaction();
-				Progress progress = new Progress(fringetx.numNodesToRead());
-				while (true) {
-
-					// read the next node
-					final NodeTransaction nodetx;
-					synchronized (Sofea.this) { // don't race the listener thread
-						if (!fringetx.hasNodesToRead()) {
-							break;
-						}
-						fringetx.readNode();
-						nodesInFlight[0]++;
-						nodetx = new NodeTransaction(
-							fringetx.state(),
-							fringetx.conf(),
-							fringetx.zbounds(),
-							fringetx.zpath()
-						);
+				// start (or resume) the sweep in each shard
+				List<FringeDB.Transaction> fringetxs = fringedbs.stream()
+					.map(fringedb -> fringedb.transaction())
+					.collect(Collectors.toList());
+				Committer committer = new Committer(seqdb, fringetxs);
+				Progress progress = new Progress(fringetxs.stream()
+					.mapToLong(fringetx -> fringetx.numNodesToRead())
+					.sum()
+				);
+
+				// init sweep stats for each shard
+				StateStats[][] stats = new StateStats[fringedbs.size()][confSpace.states.size()];
+				for (int shard=0; shard<fringedbs.size(); shard++) {
+					for (MultiStateConfSpace.State state : confSpace.states) {
+						stats[shard][state.index] = new StateStats();
 					}
-					stats[nodetx.state.index].read++;
-
-					// process nodes with tasks (possibly in parallel)
-					tasks.submit(
-						() -> {
-
-							// OPTIMIZATION: allocate one RCTuple instance for all the triple lookups
-							// and set positions in 3-2-1 order so the positions are sorted in ascending order
-							RCTuple tripleTuple = new RCTuple(0, 0, 0, 0, 0, 0);
+				}
 
-							return design(nodetx, zmax[nodetx.state.index], tripleTuple, nodetx.index, nodetx.zbounds, nodetx.zpath);
-						},
-						(wasExpanded) -> {
+				if (shardThreads == null) {
 
-							if (wasExpanded) {
-								stats[nodetx.state.index].expanded++;
-							}
+					// just one shard, sweep it on this thread
+					sweep(fringetxs.get(0), seqdb.transaction(), committer, shardTasks.get(0), zmax, stats[0], progress);
 
-							synchronized (Sofea.this) { // don't race the main thread
-								nodesInFlight[0]--;
-								if (nodetx.hasRoomToReplace(fringetx, nodesInFlight[0])) {
-									stats[nodetx.state.index].added += nodetx.numReplacementNodes();
-									stats[nodetx.state.index].replaced++;
-									nodetx.replace(fringetx, seqtx);
-								} else {
-									stats[nodetx.state.index].requeued++;
-									nodetx.requeue(fringetx, seqtx);
-								}
-							}
+				} else {
 
-							if (showProgress) {
-								progress.incrementProgress();
-							}
+					// sweep all the shards in parallel
+					List<Future<?>> sweeps = new ArrayList<>();
+					for (int shard=0; shard<fringedbs.size(); shard++) {
+						FringeDB.Transaction fringetx = fringetxs.get(shard);
+						TaskExecutor tasks = shardTasks.get(shard);
+						StateStats[] shardStats = stats[shard];
+						sweeps.add(shardThreads.submit(() ->
+							sweep(fringetx, seqdb.transaction(), committer, tasks, zmax, shardStats, progress)
+						));
+					}
+					for (Future<?> sweep : sweeps) {
+						try {
+							sweep.get();
+						} catch (InterruptedException | ExecutionException ex) {
+							throw new RuntimeException("can't sweep fringe shard", ex);
 						}
-					);
+					}
+				}
+
+				// make sure the seqdb is caught up with the fringe before finishing (and persisting) the sweep
+				seqdb.flush();
+				for (FringeDB fringedb : fringedbs) {
+					fringedb.finishSweep();
 				}
-				tasks.waitForFinish();
-				fringetx.commit();
-				seqtx.commit();
-				fringedb.finishSweep();
 
 				// show stats if needed
 				if (showProgress) {
+					long numNodes = fringe.getNumNodes();
+					long capacity = fringe.getCapacity();
 					log("\tfringe size: %d/%d (%.1f%%) nodes",
-						fringedb.getNumNodes(), fringedb.getCapacity(),
-						100.0f*fringedb.getNumNodes()/fringedb.getCapacity()
+						numNodes, capacity,
+						100.0f*numNodes/capacity
 					);
 					for (MultiStateConfSpace.State state : confSpace.states) {
+						StateStats stateStats = new StateStats();
+						for (StateStats[] shardStats : stats) {
+							stateStats.add(shardStats[state.index]);
+						}
 						log("\t%10s  read=%6d  expanded=%6d  replaced=%6d  added=%6d requeued=%6d",
 							state.name,
-							stats[state.index].read,
-							stats[state.index].expanded,
-							stats[state.index].replaced,
-							stats[state.index].added,
-							stats[state.index].requeued
+							stateStats.read,
+							stateStats.expanded,
+							stateStats.replaced,
+							stateStats.added,
+							stateStats.requeued
 						);
 					}
 				}
 			}
-		}}}
+
+		} catch (Throwable t) {
+
+			// the fringe only persists its progress after the seqdb flushes,
+			// so don't let closing the seqdb flush changes the fringe will forget
+			seqdb.discardPending();
+			throw t;
+
+		} finally {
+			if (shardThreads != null) {
+				shardThreads.shutdown();
+			}
+			for (TaskExecutor tasks : shardTasks) {
+				tasks.clean();
+			}
+			closeFringeDBs(fringedbs);
+		}}
+	}
+
+	/**
+	 * sweeps over all the nodes in one fringe shard, and commits the changes
+	 */
+	private void sweep(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx, Committer committer, TaskExecutor tasks, BigDecimal[] zmax, StateStats[] stats, Progress progress) {
+
+		// keep track of how many nodes are in outstanding tasks, and hence unknown to FringeDB's size counters
+		// NOTE: use a size-one array instead of a plain var, since Java's compiler is kinda dumb about lambdas
+		int[] nodesInFlight = { 0 };
+
+		while (true) {
+
+			// read the next node
+			final NodeTransaction nodetx;
+			synchronized (fringetx) { // don't race the listener thread
+				if (!fringetx.hasNodesToRead()) {
+					break;
+				}
+				fringetx.readNode();
+				nodesInFlight[0]++;
+				nodetx = new NodeTransaction(
+					fringetx.state(),
+					fringetx.conf(),
+					fringetx.zbounds(),
+					fringetx.zpath()
+				);
+			}
+			stats[nodetx.state.index].read++;
+
+			// process nodes with tasks (possibly in parallel)
+			tasks.submit(
+				() -> {
+
+					// OPTIMIZATION: allocate one RCTuple instance for all the triple lookups
+					// and set positions in 3-2-1 order so the positions are sorted in ascending order
+					RCTuple tripleTuple = new RCTuple(0, 0, 0, 0, 0, 0);
+
+					return design(nodetx, zmax[nodetx.state.index], tripleTuple, nodetx.index, nodetx.zbounds, nodetx.zpath);
+				},
+				(wasExpanded) -> {
+
+					if (wasExpanded) {
+						stats[nodetx.state.index].expanded++;
+					}
+
+					synchronized (fringetx) { // don't race the main thread
+						nodesInFlight[0]--;
+						if (nodetx.hasRoomToReplace(fringetx, nodesInFlight[0])) {
+							stats[nodetx.state.index].added += nodetx.numReplacementNodes();
+							stats[nodetx.state.index].replaced++;
+							nodetx.replace(fringetx, seqtx, committer);
+						} else {
+							stats[nodetx.state.index].requeued++;
+							nodetx.requeue(fringetx, seqtx, committer);
+						}
+					}
+
+					if (showProgress) {
+						synchronized (progress) { // shards can share the progress
+							progress.incrementProgress();
+						}
+					}
+				}
+			);
+		}
+		tasks.waitForFinish();
+		committer.commit(fringetx, seqtx);
+	}
+
+	/**
+	 * commits the seqdb changes for some fringe nodes, and then the fringe nodes themselves
+	 *
+	 * SeqDB transaction commits only buffer changes in memory until enough of them pile up,
+	 * so the fringe shards only persist their progress right after the seqdb flushes, or a crash could leave
+	 * a fringe shard ahead of the seqdb and the Z moved out of the fringe would be lost from the sequence bounds
+	 */
+	private class Committer {
+
+		final SeqDB seqdb;
+		final List<FringeDB.Transaction> fringetxs;
+
+		Committer(SeqDB seqdb, List<FringeDB.Transaction> fringetxs) {
+			this.seqdb = seqdb;
+			this.fringetxs = fringetxs;
+		}
+
+		// NOTE: the seqdb is shared by all the shards, so commit each seqdb and fringe transaction pair atomically,
+		// then the seqdb always has all the changes for every written fringe transaction when a flush persists them
+		synchronized void commit(FringeDB.Transaction fringetx, SeqDB.Transaction seqtx) {
+
+			boolean flushed = seqtx.commit();
+
+			// the fringe needs the room held by the nodes read since the last persist, flush now
+			if (!flushed && !fringetx.persistedDbHasRoomFor(fringetx.maxWriteBufferNodes())) {
+				seqdb.flush();
+				flushed = true;
+			}
+
+			fringetx.write();
+
+			if (flushed) {
+				for (FringeDB.Transaction tx : fringetxs) {
+					tx.persist();
+				}
+			}
+		}
 	}
 
 	private boolean design(NodeTransaction nodetx, BigDecimal zmax, RCTuple tripleTuple, ConfIndex index, BigDecimalBounds zbounds, BigDecimal zpath) {
@@ -1,7 +1,7 @@
 package edu.duke.cs.osprey.sofea;
 
 
-public class SweepCount implements Sofea.Criterion {
+public class SweepCount implements Sofea.ShardedCriterion {
 
 	public final int sweepCount;
 
@@ -10,7 +10,7 @@ public class SweepCount implements Sofea.Criterion {
 	}
 
 	@Override
-	public boolean isFinished(SeqDB seqdb, FringeDB fringedb, long sweepCount) {
+	public boolean isFinished(SeqDB seqdb, FringeDB.Shards fringedbs, long sweepCount) {
 		return sweepCount >= this.sweepCount;
 	}
 }
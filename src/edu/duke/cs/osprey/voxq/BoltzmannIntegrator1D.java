@@ -75,5 +75,58 @@ public abstract class BoltzmannIntegrator1D {
         double integ = num * (b-a) / denom;
         return integ;
     }
+    
+    
+    double errorEstimate = Double.NaN;//absolute error estimate from the last doIntegral(relTol,maxSlices)
+    
+    public double getErrorEstimate(){
+        return errorEstimate;
+    }
+    
+    
+    public double doIntegral(double relTol, int maxSlices){
+        //Simpson's rule, doubling the number of slices until the estimated relative error is below relTol
+        //Each refinement reuses the Boltzmann factors already computed on the coarser grid,
+        //so only the new midpoints need energy evaluations
+        //The error is estimated from the difference between the last two refinements
+        
+        int n = numSlices + (numSlices%2);//need an even number of slices
+        double vals[] = new double[n+1];
+        for(int i=0; i<=n; i++)
+            vals[i] = evalBoltz(a + i*(b-a)/n);
+        
+        double integ = simpson(vals, n);
+        errorEstimate = Double.POSITIVE_INFINITY;
+        
+        while(2*n <= maxSlices){
+            
+            double newVals[] = new double[2*n+1];
+            for(int i=0; i<=n; i++)
+                newVals[2*i] = vals[i];
+            for(int i=0; i<n; i++)
+                newVals[2*i+1] = evalBoltz(a + (2*i+1)*(b-a)/(2*n));
+            
+            double newInteg = simpson(newVals, 2*n);
+            errorEstimate = Math.abs(newInteg-integ)/15;//Richardson estimate for Simpson's rule
+            
+            integ = newInteg;
+            vals = newVals;
+            n *= 2;
+            
+            if(errorEstimate <= relTol*Math.abs(integ))
+                break;
+        }
+        
+        return integ;
+    }
+    
+    
+    private double simpson(double vals[], int n){
+        //Simpson's rule on n (even) equal slices, given the integrand at the n+1 grid points
+        double sum = vals[0] + vals[n];
+        for(int i=1; i<n; i++)
+            sum += (i%2==0 ? 2 : 4) * vals[i];
+        return sum * (b-a) / (3*n);
+    }
 
 }
@@ -0,0 +1,196 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.voxq;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import edu.duke.cs.osprey.minimization.ObjectiveFunction;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ *
+ * Quasi-Monte Carlo estimate of the free energy of a voxel,
+ * G = -RT ln( mean over the voxel of exp(-E/RT) ),
+ * which is the same zero point VoxelGCalculator uses (zero energy over the whole voxel gives G=0).
+ * 
+ * Samples come from a Halton sequence, randomized by a Cranley-Patterson shift.
+ * Several independently shifted replicates are run, possibly in parallel,
+ * and the spread between them gives an error estimate, which plain QMC doesn't have.
+ * 
+ * Objective functions generally can't be evaluated on several threads at once,
+ * so each running replicate uses its own objective function from the supplier.
+ * They're reused between replicates, so the supplier is called at most once per thread.
+ */
+public class QMCVoxelIntegrator {
+    
+    private static final int primes[] = {2,3,5,7,11,13,17,19,23,29,31,37,41,43,47,53,59,61,67,71,
+        73,79,83,89,97,101,103,107,109,113,127,131,137,139,149,151,157,163,167,173};
+    
+    Supplier<ObjectiveFunction> objFcnSupplier;
+    int numSamples;//number of samples per replicate
+    int numReplicates;
+    long seed = 12345;
+    
+    double Eref = 0;//energies are taken relative to this to avoid overflow
+    
+    //results of the last integration
+    double G = Double.NaN;
+    double GStdErr = Double.NaN;
+
+    
+    public QMCVoxelIntegrator(Supplier<ObjectiveFunction> objFcnSupplier, int numSamples, int numReplicates) {
+        this.objFcnSupplier = objFcnSupplier;
+        this.numSamples = numSamples;
+        this.numReplicates = numReplicates;
+        
+        if(numReplicates<2)
+            throw new RuntimeException("ERROR: Need at least 2 QMC replicates to estimate error");
+    }
+    
+    public void setSeed(long seed){
+        this.seed = seed;
+    }
+    
+    public void setReferenceEnergy(double Eref){
+        //should be close to the lowest energy in the voxel, e.g. the minimized energy
+        this.Eref = Eref;
+    }
+    
+    
+    public double calcG(TaskExecutor tasks){
+        //returns the free energy; the standard error is then available from getStdErr()
+        
+        double replicateMeans[] = new double[numReplicates];
+        Random rand = new Random(seed);
+        
+        //objective functions not currently used by a replicate
+        ArrayDeque<ObjectiveFunction> freeObjFcns = new ArrayDeque<>();
+        
+        for(int rep=0; rep<numReplicates; rep++){
+            final int r = rep;
+            final long repSeed = rand.nextLong();
+            tasks.submit(
+                () -> {
+                    ObjectiveFunction of;
+                    synchronized(freeObjFcns){
+                        of = freeObjFcns.poll();
+                    }
+                    if(of==null)
+                        of = objFcnSupplier.get();
+                    
+                    try {
+                        return replicateMean(of, repSeed);
+                    } finally {
+                        synchronized(freeObjFcns){
+                            freeObjFcns.push(of);
+                        }
+                    }
+                },
+                (Double mean) -> replicateMeans[r] = mean
+            );
+        }
+        tasks.waitForFinish();
+        
+        double mean = 0;
+        for(double m : replicateMeans)
+            mean += m;
+        mean /= numReplicates;
+        
+        double var = 0;
+        for(double m : replicateMeans)
+            var += (m-mean)*(m-mean);
+        var /= (numReplicates-1);
+        double meanStdErr = Math.sqrt(var/numReplicates);
+        
+        G = Eref - IntraVoxelSampler.RT * Math.log(mean);
+        GStdErr = IntraVoxelSampler.RT * meanStdErr / mean;//first-order propagation through the log
+        return G;
+    }
+    
+    
+    public double getG(){
+        return G;
+    }
+    
+    public double getStdErr(){
+        return GStdErr;
+    }
+    
+    
+    double replicateMean(ObjectiveFunction of, long repSeed){
+        //mean Boltzmann factor (relative to Eref) over one randomly shifted Halton point set
+        DoubleMatrix1D bounds[] = of.getConstraints();
+        int numDOFs = of.getNumDOFs();
+        if(numDOFs > primes.length)
+            throw new RuntimeException("ERROR: QMC voxel integration only supports up to "+primes.length+" DOFs");
+        
+        Random rand = new Random(repSeed);
+        double shift[] = new double[numDOFs];
+        for(int dof=0; dof<numDOFs; dof++)
+            shift[dof] = rand.nextDouble();
+        
+        DoubleMatrix1D x = DoubleFactory1D.dense.make(numDOFs);
+        double sum = 0;
+        
+        for(int s=0; s<numSamples; s++){
+            for(int dof=0; dof<numDOFs; dof++){
+                double u = radicalInverse(s+1, primes[dof]) + shift[dof];
+                if(u>=1)
+                    u -= 1;
+                double lo = bounds[0].get(dof);
+                double hi = bounds[1].get(dof);
+                x.set(dof, lo + u*(hi-lo));
+            }
+            
+            sum += Math.exp( -(of.getValue(x)-Eref) / IntraVoxelSampler.RT );
+        }
+        
+        return sum / numSamples;
+    }
+    
+    
+    static double radicalInverse(int index, int base){
+        //van der Corput radical inverse of index in the given base: one coordinate of a Halton point
+        double ans = 0;
+        double f = 1.0 / base;
+        while(index>0){
+            ans += f * (index%base);
+            index /= base;
+            f /= base;
+        }
+        return ans;
+    }
+}
@@ -40,7 +40,14 @@ import edu.duke.cs.osprey.ematrix.epic.EPICMatrix;
 import edu.duke.cs.osprey.minimization.CCDMinimizer;
 import edu.duke.cs.osprey.minimization.IdealSeparableReference;
 import edu.duke.cs.osprey.minimization.MoleculeModifierAndScorer;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.tools.ObjectIO;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  *
@@ -51,6 +58,10 @@ import edu.duke.cs.osprey.tools.ObjectIO;
  * This definition is constant across all voxels with the same number of dimensions (e.g., same sequence
  * AS LONG AS width of each is standardized (e.g. 18 degrees)
  * 
+ * Free energies are memoized by conformation, since the same voxels come up repeatedly
+ * during a design.  Several voxels can be done in parallel with calcGs; each running task
+ * then works on its own copies of the EPIC matrix, so we make at most one copy per thread.
+ * 
  * @author mhall44
  */
 public class VoxelGCalculator {
@@ -59,26 +70,107 @@ public class VoxelGCalculator {
     EPICMatrix epicMat1, epicMat2;
     
     public VoxelGCalculator(SearchProblem sp){
+        this(checkEPIC(sp).epicMat, sp.emat);
+    }
+    
+    VoxelGCalculator(EPICMatrix epicMat, EnergyMatrix emat){
+        epicMat1 = epicMat;
+        epicMat2 = (EPICMatrix) ObjectIO.deepCopy(epicMat1);
+        this.emat = emat;
+    }
+    
+    private static SearchProblem checkEPIC(SearchProblem sp){
         if(!sp.useEPIC)
             throw new RuntimeException("ERROR NEED EPIC FOR BAR+LUTE");
-        
-        epicMat1 = sp.epicMat;
-        epicMat2 = (EPICMatrix) ObjectIO.deepCopy(epicMat1);
-        emat = sp.emat;
+        return sp;
+    }
+    
+    
+    private final Map<RCTuple,Double> GCache = new ConcurrentHashMap<>();
+    
+    
+    Supplier<EPICMatrix> makeEPICMatCopier(){
+        //makes copies of the EPIC matrix, for tasks that can't share ours
+        //Call this on the calling thread before submitting any tasks:
+        //a task using our own matrix modifies its molecule, so the copies come from a snapshot taken now
+        EPICMatrix snapshot = (EPICMatrix) ObjectIO.deepCopy(epicMat1);
+        return () -> (EPICMatrix) ObjectIO.deepCopy(snapshot);
     }
     
     
     public double calcG(int[] assignmentList) {
+        RCTuple conf = new RCTuple(assignmentList);
+        Double G = GCache.get(conf);
+        if(G==null){
+            G = calcG(assignmentList, epicMat1, epicMat2);
+            GCache.put(conf, G);
+        }
+        return G;
+    }
+    
+    
+    public double[] calcGs(List<int[]> assignmentLists, TaskExecutor tasks){
+        //calculate free energies for several voxels, in parallel if tasks allows
+        double Gs[] = new double[assignmentLists.size()];
+        
+        //Each task borrows a pair of EPIC matrices from this pool and returns it when done.
+        //The pool starts with our own pair, which is all we need when running serially;
+        //otherwise, new copies are made only when all the pairs are in use,
+        //so there are never more pairs than tasks.getParallelism()
+        ArrayDeque<EPICMatrix[]> freeMats = new ArrayDeque<>();
+        freeMats.push(new EPICMatrix[] {epicMat1, epicMat2});
+        Supplier<EPICMatrix> copier = tasks.getParallelism() > 1 ? makeEPICMatCopier() : null;
+        
+        for(int c=0; c<Gs.length; c++){
+            final int confNum = c;
+            int[] assignmentList = assignmentLists.get(c);
+            RCTuple conf = new RCTuple(assignmentList);
+            Double G = GCache.get(conf);
+            
+            if(G!=null)
+                Gs[c] = G;
+            else {
+                tasks.submit(
+                    () -> {
+                        EPICMatrix mats[];
+                        synchronized(freeMats){
+                            mats = freeMats.poll();
+                        }
+                        if(mats==null)
+                            mats = new EPICMatrix[] {copier.get(), copier.get()};
+                        
+                        try {
+                            return calcG(assignmentList, mats[0], mats[1]);
+                        } finally {
+                            synchronized(freeMats){
+                                freeMats.push(mats);
+                            }
+                        }
+                    },
+                    (Double newG) -> {
+                        Gs[confNum] = newG;
+                        GCache.put(conf, newG);
+                    }
+                );
+            }
+        }
+        
+        tasks.waitForFinish();
+        return Gs;
+    }
+    
+    
+    double calcG(int[] assignmentList, EPICMatrix mat1, EPICMatrix mat2) {
         
         MoleculeModifierAndScorer mms1 = new MoleculeModifierAndScorer(
-                epicMat1.internalEnergyFunction(new RCTuple(assignmentList), true),
-                epicMat1.getConfSpace(), new RCTuple(assignmentList) );
+                mat1.internalEnergyFunction(new RCTuple(assignmentList), true),
+                mat1.getConfSpace(), new RCTuple(assignmentList) );
         
         CCDMinimizer ccdMin = new CCDMinimizer(mms1,false);
         DoubleMatrix1D center = ccdMin.minimize().dofValues;
         MoleculeModifierAndScorer mms2 = new IdealSeparableReference(
-                epicMat2.internalEnergyFunction(new RCTuple(assignmentList), true),
-                epicMat2.getConfSpace(), new RCTuple(assignmentList), center );
+                mat2.internalEnergyFunction(new RCTuple(assignmentList), true),
+                mat2.getConfSpace(), new RCTuple(assignmentList), center );
         
         
         VoxelsDeltaG vdg = new VoxelsDeltaG(mms2,mms1,false);
@@ -93,6 +185,32 @@ public class VoxelGCalculator {
     }
     
     
+    public QMCVoxelIntegrator calcGQMC(int[] assignmentList, TaskExecutor tasks, int numSamples, int numReplicates){
+        //quasi-Monte Carlo alternative to calcG, which also gives an error estimate
+        //the replicates are spread across tasks; returns the integrator so the caller can get G and its error
+        RCTuple conf = new RCTuple(assignmentList);
+        
+        MoleculeModifierAndScorer mms = new MoleculeModifierAndScorer(
+                epicMat1.internalEnergyFunction(conf, true), epicMat1.getConfSpace(), conf );
+        double Emin = new CCDMinimizer(mms,false).minimize().energy;
+        
+        //the integrator asks for at most one objective function per thread,
+        //so the first one can use our own matrix, and the rest get copies
+        AtomicBoolean usedOwnMat = new AtomicBoolean(false);
+        Supplier<EPICMatrix> copier = tasks.getParallelism() > 1 ? makeEPICMatCopier() : null;
+        QMCVoxelIntegrator qmc = new QMCVoxelIntegrator(
+            () -> {
+                EPICMatrix mat = usedOwnMat.getAndSet(true) ? copier.get() : epicMat1;
+                return new MoleculeModifierAndScorer(mat.internalEnergyFunction(conf, true), mat.getConfSpace(), conf);
+            },
+            numSamples, numReplicates
+        );
+        qmc.setReferenceEnergy(Emin);
+        qmc.calcG(tasks);
+        return qmc;
+    }
+    
+    
     double computeVoxelVolume(DoubleMatrix1D voxelBounds[]){
         double vol = 1;
         for(int dim=0; dim<voxelBounds[0].size(); dim++)
@@ -186,4 +186,59 @@ public class TestConfSearchCache {
 		assertThat(tree2.isProtected(), is(false));
 		assertThat(tree3.isProtected(), is(true));
 	}
+
+	@Test
+	public void restrictedNumNodes() {
+
+		ConfSearchCache cache = new ConfSearchCache(null, 1L);
+
+		ConfSearchCache.Entry tree1 = cache.make(() ->
+			new ConfAStarTree.Builder(emat, rcs)
+				.setTraditional()
+				.build()
+		);
+		tree1.nextConf();
+		assertThat(tree1.isProtected(), is(true));
+		assertThat(cache.getProtectedNumNodes(), greaterThan(1L));
+
+		// the most recently-used tree is always protected, even over the limit
+		ConfSearchCache.Entry tree2 = cache.make(() ->
+			new ConfAStarTree.Builder(emat, rcs)
+				.setTraditional()
+				.build()
+		);
+		assertThat(tree1.isProtected(), is(false));
+		assertThat(tree2.isProtected(), is(true));
+		assertThat(cache.getNumProtected(), is(1));
+		assertThat(cache.stats.numEvictions, is(1L));
+
+		// finished trees shouldn't count against the capacity
+		tree2.clearRefs();
+		assertThat(cache.getNumProtected(), is(0));
+		assertThat(cache.getProtectedNumNodes(), is(0L));
+	}
+
+	@Test
+	public void stats() {
+
+		ConfSearchCache cache = new ConfSearchCache(1);
+		ConfSearchCache.Entry tree = cache.make(() ->
+			new ConfAStarTree.Builder(emat, rcs)
+				.setTraditional()
+				.build()
+		);
+
+		for (int i=0; i<10; i++) {
+			tree.nextConf();
+		}
+		assertThat(cache.stats.numHits, is(10L));
+		assertThat(cache.stats.numRegenerations, is(0L));
+
+		// force re-instantiation
+		tree.clearRefs();
+		tree.nextConf();
+		assertThat(cache.stats.numHits, is(10L));
+		assertThat(cache.stats.numRegenerations, is(1L));
+		assertThat(cache.stats.numConfsReplayed, is(10L));
+	}
 }
@@ -84,7 +84,29 @@ public class TestSMAStar {
 		);
 	}
 
+	@Test
+	public void medium1CCC8BigCull() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3", "A4", "A5", "A6", "A7", "A8", "A9", "A10", "A11", "A12")) {
+			strand.flexibility.get(resNum).setLibraryRotamers("VAL");
+		}
+
+		ConfAStarTree.BoundedStats stats = test(10000, 0.25, MathTools.Optimizer.Minimize, new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build()
+		);
+
+		// culls should forget batches of nodes
+		assertThat(stats.numCulls, greaterThan(0L));
+		assertThat(stats.numForgotten, greaterThan(stats.numCulls));
+	}
+
 	private static void test(int maxNumNodes, MathTools.Optimizer optimizer, SimpleConfSpace confSpace) {
+		test(maxNumNodes, 0.0, optimizer, confSpace);
+	}
+
+	private static ConfAStarTree.BoundedStats test(int maxNumNodes, double cullFraction, MathTools.Optimizer optimizer, SimpleConfSpace confSpace) {
 
 		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
 			.setParallelism(Parallelism.makeCpu(8))
@@ -108,6 +130,7 @@ public class TestSMAStar {
 			// enumerate all the confs using SMA*
 			ConfAStarTree smastar = new ConfAStarTree.Builder(emat, rcs)
 				.setMaxNumNodes(maxNumNodes)
+				.setCullFraction(cullFraction)
 				.setTraditionalOpt(optimizer)
 				.build();
 			Stopwatch smastarStopwatch = new Stopwatch().start();
@@ -115,6 +138,8 @@ public class TestSMAStar {
 			smastarStopwatch.stop();
 
 			checkConfs(rcs.getNumConformations().intValueExact(), astarConfs, smastarConfs);
+
+			return smastar.getBoundedStats();
 		}
 	}
 
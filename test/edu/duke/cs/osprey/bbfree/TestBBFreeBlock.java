@@ -0,0 +1,137 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.bbfree;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.dof.ResidueTypeDOF;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.structure.Residue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestBBFreeBlock extends TestBase {
+
+	@BeforeClass
+	public static void beforeClass() {
+		initDefaultEnvironment();
+	}
+
+	private static class Block {
+
+		final Strand strand;
+		final BBFreeBlock block;
+
+		Block() {
+			strand = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build();
+			List<Residue> residues = new ArrayList<>();
+			for (int resNum=43; resNum<=47; resNum++) {
+				residues.add(strand.mol.getResByPDBResNumber(Integer.toString(resNum)));
+			}
+			block = new BBFreeBlock(residues);
+		}
+
+		void setFull(int dof, double val) {
+			// forget what we applied last time, so setDOFs updates everything
+			block.curFullDOFVals = null;
+			block.getDOFs().get(dof).apply(val);
+		}
+	}
+
+	private static void assertSameCoords(Block incremental, Block full) {
+		for (int i=0; i<full.block.getResidues().size(); i++) {
+			Residue incrementalRes = incremental.block.getResidues().get(i);
+			Residue fullRes = full.block.getResidues().get(i);
+			assertThat(incrementalRes.template, is(fullRes.template));
+			assertThat(incrementalRes.coords, isAbsolutely(fullRes.coords, 1e-9));
+		}
+	}
+
+	@Test
+	public void incrementalMatchesFullRandomWalk() {
+
+		Block incremental = new Block();
+		Block full = new Block();
+
+		double[][] voxel = full.block.getFreeDOFVoxel();
+		int numDOFs = full.block.getDOFs().size();
+
+		Random rand = new Random(12345);
+		for (int step=0; step<100; step++) {
+
+			int dof = rand.nextInt(numDOFs);
+			double val;
+			if (rand.nextInt(5) == 0) {
+				// sometimes don't change anything
+				val = incremental.block.curFreeDOFVals[dof];
+			} else {
+				val = voxel[0][dof] + rand.nextDouble()*(voxel[1][dof] - voxel[0][dof]);
+			}
+
+			incremental.block.getDOFs().get(dof).apply(val);
+			full.setFull(dof, val);
+
+			assertSameCoords(incremental, full);
+		}
+	}
+
+	@Test
+	public void mutationForcesFullUpdate() {
+
+		Block incremental = new Block();
+		Block full = new Block();
+
+		incremental.block.getDOFs().get(0).apply(0.1);
+		full.setFull(0, 0.1);
+
+		// mutate a residue in the middle of the block
+		for (Block b : new Block[] { incremental, full }) {
+			Residue res = b.strand.mol.getResByPDBResNumber("44");
+			ResidueTypeDOF.switchToTemplate(b.strand.templateLib, res, b.strand.templateLib.getTemplateForMutation("PHE", res));
+		}
+
+		// setting the same DOFs again should still place the new sidechain
+		incremental.block.setDOFs(incremental.block.curFreeDOFVals.clone());
+		full.block.curFullDOFVals = null;
+		full.block.setDOFs(full.block.curFreeDOFVals.clone());
+
+		assertSameCoords(incremental, full);
+	}
+}
@@ -206,4 +206,27 @@ public class TestConfSearchSplitter {
 			assertThat(splitter.second.nextConf(), is(nullValue()));
 		});
 	}
+
+	@Test
+	public void externalMemoryCloseEarly() {
+		ExternalMemory.use(16, () -> {
+
+			try (ConfSearch.Splitter splitter = new ConfSearch.Splitter(
+				makeSearch(),
+				true,
+				new RCs(confSpace)
+			)) {
+
+				Checker first = new Checker(splitter.first);
+				first.assertConfs(27);
+
+				Checker second = new Checker(splitter.second);
+				second.assertConfs(10);
+
+				// closing should drop the confs the second reader didn't read
+				splitter.close();
+				assertThat(splitter.second.nextConf(), is(nullValue()));
+			}
+		});
+	}
 }
@@ -0,0 +1,135 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.confspace;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class TestTuplesIndex {
+
+	private static SimpleConfSpace makeConfSpace() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3", "A4", "A5")) {
+			strand.flexibility.get(resNum).setLibraryRotamers("VAL");
+		}
+
+		return new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+	}
+
+	@Test
+	public void findIndex() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+		TuplesIndex index = new TuplesIndex(confSpace);
+
+		int t1 = index.appendTuple(new RCTuple(1, 2));
+		int t2 = index.appendTuple(new RCTuple(0, 1, 2, 0));
+		int t3 = index.appendTuple(new RCTuple(0, 1, 2, 0, 3, 2));
+
+		assertThat(index.findIndex(1, 2), is(t1));
+		assertThat(index.findIndex(1, 1), is(TuplesIndex.Missing));
+
+		// pairs are symmetric
+		assertThat(index.findIndex(0, 1, 2, 0), is(t2));
+		assertThat(index.findIndex(2, 0, 0, 1), is(t2));
+		assertThat(index.findIndex(0, 1, 2, 1), is(TuplesIndex.Missing));
+
+		// triples can be in any order
+		assertThat(index.findIndex(0, 1, 2, 0, 3, 2), is(t3));
+		assertThat(index.findIndex(3, 2, 0, 1, 2, 0), is(t3));
+		assertThat(index.findIndex(2, 0, 3, 2, 0, 1), is(t3));
+		assertThat(index.findIndex(0, 1, 2, 0, 3, 1), is(TuplesIndex.Missing));
+		assertThat(index.findIndex(0, 1, 1, 0, 3, 2), is(TuplesIndex.Missing));
+
+		// the boxed lookups should agree
+		assertThat(index.getIndex(2, 0, 0, 1), is(t2));
+		assertThat(index.getIndex(3, 2, 0, 1, 2, 0), is(t3));
+		assertThat(index.getIndex(0, 1, 2, 0, 3, 1), is(nullValue()));
+	}
+
+	@Test
+	public void sum() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+		TuplesIndex index = new TuplesIndex(confSpace);
+
+		// add all the singles and pairs, and a few triples
+		for (int pos1=0; pos1<confSpace.positions.size(); pos1++) {
+			for (int rc1=0; rc1<confSpace.getNumResConfs(pos1); rc1++) {
+				index.appendTuple(new RCTuple(pos1, rc1));
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<confSpace.getNumResConfs(pos2); rc2++) {
+						index.appendTuple(new RCTuple(pos2, rc2, pos1, rc1));
+					}
+				}
+			}
+		}
+		index.appendTuple(new RCTuple(0, 0, 1, 0, 2, 0));
+		index.appendTuple(new RCTuple(0, 0, 1, 0, 3, 0));
+		index.appendTuple(new RCTuple(1, 0, 2, 0, 3, 0));
+
+		double[] values = new double[index.size()];
+		for (int t=0; t<values.length; t++) {
+			values[t] = t + 1;
+		}
+
+		for (int[] conf : Arrays.asList(
+			new int[] { 0, 0, 0, 0 },
+			new int[] { 0, 0, 1, 0 },
+			new int[] { 2, 1, 0, 1 },
+			new int[] { 0, Conf.Unassigned, 0, 0 }
+		)) {
+
+			// collect the tuples the slow way
+			List<Integer> expected = new ArrayList<>();
+			index.forEachIn(conf, true, true, (t) -> expected.add(t));
+			double expectedSum = 0.0;
+			for (int t : expected) {
+				expectedSum += values[t];
+			}
+
+			assertThat(index.sum(conf, values, true, true), is(expectedSum));
+		}
+	}
+}
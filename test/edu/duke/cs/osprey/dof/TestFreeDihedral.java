@@ -173,6 +173,34 @@ public class TestFreeDihedral extends TestBase {
 		checkAngles(chi1,  360, chi2, -360);
 	}
 	
+	@Test
+	public void pheChi1FineCircleChainedIncremental() {
+		FreeDihedral chi1 = makePheChi1();
+		chi1.setIncrementalResetInterval(16);
+		int numSamples = 360*2*1024;
+		for (int i=0; i<numSamples; i++) {
+			double angleDegrees = (double)i*720/numSamples - 360;
+			checkAngle(chi1, angleDegrees);
+		}
+	}
+	
+	@Test
+	public void phiChi1Chi2CoarseCircleChainedIncremental() {
+		FreeDihedral chi1 = makePheChi1();
+		FreeDihedral chi2 = makePheChi2();
+		chi1.setIncrementalResetInterval(16);
+		chi2.setIncrementalResetInterval(16);
+		checkAngles(chi1, -360, chi2,  360);
+		checkAngles(chi1, -270, chi2,  270);
+		checkAngles(chi1, -180, chi2,  180);
+		checkAngles(chi1,  -90, chi2,   90);
+		checkAngles(chi1,    0, chi2,    0);
+		checkAngles(chi1,   90, chi2,  -90);
+		checkAngles(chi1,  180, chi2, -180);
+		checkAngles(chi1,  270, chi2, -270);
+		checkAngles(chi1,  360, chi2, -360);
+	}
+	
 	private void checkAngle(FreeDihedral dof, double angleDegrees) {
 		dof.apply(angleDegrees);
 		assertThat(dof.getCurVal(), is(angleDegrees));
@@ -0,0 +1,162 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.dof.deeper.perts;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.structure.Molecule;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.structure.Residue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TestMotionCache extends TestBase {
+
+	@BeforeClass
+	public static void beforeClass() {
+		initDefaultEnvironment();
+	}
+
+	private static class Block {
+
+		final Molecule mol;
+		final Backrub backrub;
+		final Shear shear;
+		final LoopClosureAdjustment lca;
+		final PerturbationBlock block;
+
+		Block(boolean useCache) {
+
+			mol = new Strand.Builder(PDBIO.readFile("examples/1CC8/1CC8.ss.pdb")).build().mol;
+
+			// the shear overlaps the backrub, and the LCA overlaps the shear,
+			// so each perturbation is a successor of the ones before it
+			backrub = new Backrub(getResidues("21", "22", "23"));
+			shear = new Shear(getResidues("23", "24", "25", "26"));
+			lca = new LoopClosureAdjustment(getResidues("26", "27", "28"));
+			block = new PerturbationBlock(new ArrayList<>(Arrays.asList(backrub, shear, lca)));
+
+			if (!useCache) {
+				// a zero-capacity cache never hits, so every motion gets recomputed
+				backrub.motionCache = new MotionCache<>(0);
+				shear.motionCache = new MotionCache<>(0);
+				lca.solnCache = new MotionCache<>(0);
+			}
+		}
+
+		ArrayList<Residue> getResidues(String ... resNums) {
+			ArrayList<Residue> residues = new ArrayList<>();
+			for (String resNum : resNums) {
+				residues.add(mol.getResByPDBResNumber(resNum));
+			}
+			return residues;
+		}
+
+		long getNumHits() {
+			return backrub.motionCache.getNumHits() + shear.motionCache.getNumHits() + lca.solnCache.getNumHits();
+		}
+	}
+
+	private static void assertSameCoords(Block cached, Block uncached) {
+		for (int i=0; i<cached.block.allResidues.size(); i++) {
+			Residue cachedRes = cached.block.allResidues.get(i);
+			Residue uncachedRes = uncached.block.allResidues.get(i);
+			assertThat(cachedRes.getPDBResNumber(), is(uncachedRes.getPDBResNumber()));
+			assertThat(cachedRes.coords, is(uncachedRes.coords));
+		}
+	}
+
+	@Test
+	public void cachedMatchesUncached() {
+
+		Block cached = new Block(true);
+		Block uncached = new Block(false);
+
+		// a line-search-ish sequence of parameter changes, ending back where it started
+		Object[][] steps = {
+			{ "backrub", 2.0 },
+			{ "shear", 1.5 },
+			{ "lca", 1.0 },
+			{ "backrub", -3.0 },
+			{ "shear", -1.0 },
+			{ "lca", 0.0 },
+			{ "backrub", 2.5 },
+			{ "backrub", 2.0 },
+			{ "shear", 1.5 },
+			{ "lca", 1.0 }
+		};
+
+		for (Object[] step : steps) {
+			for (Block b : Arrays.asList(cached, uncached)) {
+				Perturbation pert;
+				switch ((String)step[0]) {
+					case "backrub": pert = b.backrub; break;
+					case "shear": pert = b.shear; break;
+					default: pert = b.lca; break;
+				}
+				pert.apply((Double)step[1]);
+			}
+			assertSameCoords(cached, uncached);
+		}
+
+		// returning to earlier parameters should have found the earlier motions
+		assertThat(cached.getNumHits(), greaterThan(0L));
+		assertThat(uncached.getNumHits(), is(0L));
+	}
+
+	@Test
+	public void idealizesChangedSidechains() {
+
+		Block b = new Block(true);
+		b.shear.apply(1.0);
+
+		// backrubs don't move residue 25's backbone, since the shear starts from the same place
+		Residue res = b.mol.getResByPDBResNumber("25");
+		int cbIndex = res.getAtomIndexByName("CB");
+		double[] idealCB = Arrays.copyOfRange(res.coords, 3*cbIndex, 3*cbIndex + 3);
+
+		// but move the sidechain out of ideal geometry, like a mutation could
+		res.coords[3*cbIndex] += 0.1;
+
+		b.backrub.apply(2.0);
+
+		// the sidechain should be idealized again, which puts CB back where the backbone says it goes
+		assertThat(Arrays.copyOfRange(res.coords, 3*cbIndex, 3*cbIndex + 3), isAbsolutely(idealCB, 1e-6));
+	}
+}
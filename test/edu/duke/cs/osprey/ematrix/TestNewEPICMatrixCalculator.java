@@ -0,0 +1,215 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.ematrix;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.osprey.TestBase;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.epic.EPICSettings;
+import edu.duke.cs.osprey.ematrix.epic.NewEPICMatrix;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyPartition;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.structure.Molecule;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.Test;
+
+import java.io.File;
+
+
+public class TestNewEPICMatrixCalculator extends TestBase {
+
+	private static class SimulatedCrash extends RuntimeException {}
+
+	private static SimpleConfSpace makeConfSpace() {
+		Molecule mol = PDBIO.readFile("examples/python.GMEC/1CC8.ss.pdb");
+		Strand strand = new Strand.Builder(mol).build();
+		strand.flexibility.get("A10").setLibraryRotamers("VAL").setContinuous();
+		strand.flexibility.get("A11").setLibraryRotamers("LEU").setContinuous();
+		return new SimpleConfSpace.Builder().addStrand(strand).build();
+	}
+
+	/** passes tasks to another executor, and calls afterFinished after each task listener, e.g. to simulate a crash */
+	private static class ListeningTaskExecutor extends TaskExecutor {
+
+		final TaskExecutor tasks;
+		final Runnable afterFinished;
+
+		ListeningTaskExecutor(TaskExecutor tasks, Runnable afterFinished) {
+			this.tasks = tasks;
+			this.afterFinished = afterFinished;
+		}
+
+		@Override
+		public int getParallelism() {
+			return tasks.getParallelism();
+		}
+
+		@Override
+		public boolean isBusy() {
+			return tasks.isBusy();
+		}
+
+		@Override
+		public boolean isWorking() {
+			return tasks.isWorking();
+		}
+
+		@Override
+		public <T> void submit(Task<T> task, TaskListener<T> listener) {
+			tasks.submit(task, (result) -> {
+				listener.onFinished(result);
+				if (afterFinished != null) {
+					afterFinished.run();
+				}
+			});
+		}
+
+		@Override
+		public void waitForFinish() {
+			tasks.waitForFinish();
+		}
+	}
+
+	/** makes a conf energy calculator whose tasks call afterFit after each EPIC tuple fit is recorded */
+	private static ConfEnergyCalculator makeConfEcalc(SimpleConfSpace confSpace, EnergyCalculator ecalc, Runnable afterFit) {
+		TaskExecutor tasks = new ListeningTaskExecutor(ecalc.tasks, afterFit);
+		return new ConfEnergyCalculator(confSpace, ecalc, tasks, EnergyPartition.Traditional, null, false) {};
+	}
+
+	private static NewEPICMatrix calc(SimpleConfSpace confSpace, int numThreads, File checkpointFile, Runnable afterFit) {
+		EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(numThreads))
+			.build();
+		try {
+			ConfEnergyCalculator confEcalc = makeConfEcalc(confSpace, ecalc, afterFit);
+			NewEPICMatrixCalculator calc = new NewEPICMatrixCalculator(confSpace, confEcalc, new PruningMatrix(confSpace), new EPICSettings());
+			calc.setCheckpointFile(checkpointFile);
+			calc.setCheckpointIntervalMs(0); // checkpoint after every fit
+			calc.calcPEM();
+			return calc.getEPICMatrix();
+		} finally {
+			ecalc.clean();
+		}
+	}
+
+	@Test
+	public void parallelResumeMatchesSerial() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+
+		try (TempFile checkpointFile = new TempFile("epic.checkpoint")) {
+
+			NewEPICMatrix serial = calc(confSpace, 1, null, null);
+
+			// fit in parallel, but crash partway through
+			int[] numFits = { 0 };
+			try {
+				calc(confSpace, 4, checkpointFile, () -> {
+					if (++numFits[0] == 8) {
+						throw new SimulatedCrash();
+					}
+				});
+				fail("EPIC calculation should have crashed");
+			} catch (RuntimeException ex) {
+				// expected, possibly wrapped by the task executor
+			}
+			assertThat(checkpointFile.exists(), is(true));
+			assertThat(new File(checkpointFile.getPath() + ".tmp").exists(), is(false));
+
+			// resume in parallel, tuples fit before the crash should come from the checkpoint
+			int[] numResumedFits = { 0 };
+			NewEPICMatrix resumed = calc(confSpace, 4, checkpointFile, () -> numResumedFits[0]++);
+			assertThat(numResumedFits[0], lessThan(countTuples(confSpace)));
+
+			// the checkpoint is only needed until the matrix is done
+			assertThat(checkpointFile.exists(), is(false));
+
+			// fits sample randomly, so they won't match exactly, but minimized energies should be very close
+			for (int rc1=0; rc1<confSpace.positions.get(0).resConfs.size(); rc1++) {
+				assertThat(resumed.getOneBody(0, rc1) == null, is(serial.getOneBody(0, rc1) == null));
+				for (int rc2=0; rc2<confSpace.positions.get(1).resConfs.size(); rc2++) {
+					assertThat(resumed.getPairwise(1, rc2, 0, rc1) == null, is(serial.getPairwise(1, rc2, 0, rc1) == null));
+					int[] conf = { rc1, rc2 };
+					assertThat(resumed.minimizeEnergy(conf), isAbsolutely(serial.minimizeEnergy(conf), 0.05));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void staleCheckpoint() {
+
+		SimpleConfSpace confSpace = makeConfSpace();
+
+		try (TempFile checkpointFile = new TempFile("epic.checkpoint")) {
+
+			// crash right away, with the default settings
+			try {
+				calc(confSpace, 1, checkpointFile, () -> { throw new SimulatedCrash(); });
+				fail("EPIC calculation should have crashed");
+			} catch (SimulatedCrash ex) {
+				// expected
+			}
+			assertThat(checkpointFile.exists(), is(true));
+
+			// different EPIC settings shouldn't use the old checkpoint, so every tuple gets fit again
+			EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams()).build();
+			try {
+				int[] numFits = { 0 };
+				ConfEnergyCalculator confEcalc = makeConfEcalc(confSpace, ecalc, () -> numFits[0]++);
+				EPICSettings settings = new EPICSettings();
+				settings.EPICGoalResid = 1e-3;
+				NewEPICMatrixCalculator calc = new NewEPICMatrixCalculator(confSpace, confEcalc, new PruningMatrix(confSpace), settings);
+				calc.setCheckpointFile(checkpointFile);
+				calc.calcPEM();
+				assertThat(numFits[0], is(countTuples(confSpace)));
+			} finally {
+				ecalc.clean();
+			}
+		}
+	}
+
+	private static int countTuples(SimpleConfSpace confSpace) {
+		int n0 = confSpace.positions.get(0).resConfs.size();
+		int n1 = confSpace.positions.get(1).resConfs.size();
+		return n0 + n1 + n0*n1;
+	}
+}
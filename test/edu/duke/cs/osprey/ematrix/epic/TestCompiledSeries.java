@@ -0,0 +1,236 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.ematrix.epic;
+
+import static edu.duke.cs.osprey.TestBase.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import org.junit.Test;
+
+import java.util.Random;
+
+
+public class TestCompiledSeries {
+
+	private static final double Epsilon = 1e-9;
+
+	private static double[] makeCoeffs(Random rand, int numParams) {
+		double[] coeffs = new double[numParams];
+		for (int i=0; i<numParams; i++) {
+			coeffs[i] = rand.nextDouble()*2 - 1;
+		}
+		return coeffs;
+	}
+
+	private static double[] makePoint(Random rand, int numDOFs) {
+		double[] x = new double[numDOFs];
+		for (int i=0; i<numDOFs; i++) {
+			x[i] = rand.nextDouble()*2 - 1;
+		}
+		return x;
+	}
+
+	private static double[] minus(double[] a, double[] b) {
+		double[] out = new double[a.length];
+		for (int i=0; i<a.length; i++) {
+			out[i] = a[i] - b[i];
+		}
+		return out;
+	}
+
+	private static void checkSeries(int numDOFs, int order) {
+
+		Random rand = new Random(12345);
+		double[] coeffs = makeCoeffs(rand, SeriesFitter.getNumParams(numDOFs, false, order));
+		double[] center = makePoint(rand, numDOFs);
+		CompiledSeries series = new CompiledSeries(coeffs, center, null, order, order, null);
+		double[] scratch = new double[series.getScratchSize()];
+
+		for (int i=0; i<10; i++) {
+			double[] x = makePoint(rand, numDOFs);
+			DoubleMatrix1D z = DoubleFactory1D.dense.make(minus(x, center));
+
+			double expected = SeriesFitter.evalSeries(coeffs, z, numDOFs, false, order);
+			assertThat(series.evaluate(x, scratch), isRelatively(expected, Epsilon));
+
+			double[] grad = new double[numDOFs];
+			series.gradient(x, grad, scratch);
+			assertThat(grad, isAbsolutely(SeriesFitter.evalSeriesGradient(coeffs, z, numDOFs, false, order, order, null).toArray(), Epsilon));
+
+			double[][] hess = new double[numDOFs][numDOFs];
+			series.hessian(x, hess, scratch);
+			DoubleMatrix2D expectedHess = SeriesFitter.evalSeriesHessian(coeffs, z, numDOFs, false, order, order, null);
+			for (int d=0; d<numDOFs; d++) {
+				assertThat(hess[d], isAbsolutely(expectedHess.viewRow(d).toArray(), Epsilon));
+			}
+		}
+	}
+
+	@Test public void order1() { checkSeries(3, 1); }
+	@Test public void order2() { checkSeries(3, 2); }
+	@Test public void order3() { checkSeries(4, 3); }
+	@Test public void order4() { checkSeries(4, 4); }
+	@Test public void order6() { checkSeries(3, 6); }
+
+	@Test
+	public void principalComponents() {
+
+		int numDOFs = 4;
+		int order = 2;
+		int PCOrder = 4;
+		boolean[] isPC = { true, false, true, false };
+
+		int numParams = SeriesFitter.getNumParams(numDOFs, false, order);
+		for (int k=order+1; k<=PCOrder; k++) {
+			numParams += SeriesFitter.getNumParamsForOrder(SeriesFitter.countTrue(isPC), k);
+		}
+
+		Random rand = new Random(12345);
+		double[] coeffs = makeCoeffs(rand, numParams);
+		double[] center = makePoint(rand, numDOFs);
+
+		// a rotation in the plane of the first two DOFs
+		double c = Math.cos(0.3);
+		double s = Math.sin(0.3);
+		double[][] axisCoeffs = {
+			{ c, -s, 0, 0 },
+			{ s, c, 0, 0 },
+			{ 0, 0, 1, 0 },
+			{ 0, 0, 0, 1 }
+		};
+
+		CompiledSeries series = new CompiledSeries(coeffs, center, axisCoeffs, order, PCOrder, isPC);
+		double[] scratch = new double[series.getScratchSize()];
+
+		for (int i=0; i<10; i++) {
+			double[] x = makePoint(rand, numDOFs);
+			double[] z = minus(x, center);
+			double[] y = new double[numDOFs];
+			for (int a=0; a<numDOFs; a++) {
+				for (int b=0; b<numDOFs; b++) {
+					y[a] += axisCoeffs[a][b]*z[b];
+				}
+			}
+
+			double expected = SeriesFitter.evalSeries(coeffs, DoubleFactory1D.dense.make(y), numDOFs, false, order, PCOrder, isPC);
+			assertThat(series.evaluate(x, scratch), isRelatively(expected, Epsilon));
+
+			// check the gradient against finite differences
+			double[] grad = new double[numDOFs];
+			series.gradient(x, grad, scratch);
+			double h = 1e-6;
+			for (int d=0; d<numDOFs; d++) {
+				double[] xp = x.clone();
+				double[] xm = x.clone();
+				xp[d] += h;
+				xm[d] -= h;
+				double fd = (series.evaluate(xp, scratch) - series.evaluate(xm, scratch))/(2*h);
+				assertThat(grad[d], isAbsolutely(fd, 1e-6));
+			}
+		}
+	}
+
+	@Test
+	public void seriesMap() {
+
+		int numDOFs = 3;
+		int order = 2;
+		int numOutputs = 5;
+		Random rand = new Random(12345);
+		double[][] series = new double[numOutputs][];
+		for (int o=0; o<numOutputs; o++) {
+			series[o] = makeCoeffs(rand, SeriesFitter.getNumParams(numDOFs, true, order));
+		}
+
+		CompiledSeriesMap map = new CompiledSeriesMap(series, numDOFs, true, order);
+		double[] scratch = new double[map.getScratchSize()];
+		double[] out = new double[numOutputs];
+		double[][] jac = new double[numOutputs][numDOFs];
+
+		for (int i=0; i<10; i++) {
+			double[] x = makePoint(rand, numDOFs);
+			map.evaluate(x, out, scratch);
+			for (int o=0; o<numOutputs; o++) {
+				double expected = SeriesFitter.evalSeries(series[o], DoubleFactory1D.dense.make(x), numDOFs, true, order);
+				assertThat(out[o], isRelatively(expected, Epsilon));
+			}
+
+			// check the Jacobian against finite differences
+			map.jacobian(x, jac, scratch);
+			double h = 1e-6;
+			double[] outp = new double[numOutputs];
+			double[] outm = new double[numOutputs];
+			for (int d=0; d<numDOFs; d++) {
+				double[] xp = x.clone();
+				double[] xm = x.clone();
+				xp[d] += h;
+				xm[d] -= h;
+				map.evaluate(xp, outp, scratch);
+				map.evaluate(xm, outm, scratch);
+				for (int o=0; o<numOutputs; o++) {
+					assertThat(jac[o][d], isAbsolutely((outp[o] - outm[o])/(2*h), 1e-6));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void epolyArraysMatchColt() {
+
+		int numDOFs = 3;
+		int order = 4;
+		Random rand = new Random(12345);
+		double[] coeffs = makeCoeffs(rand, SeriesFitter.getNumParams(numDOFs, false, order));
+		DoubleMatrix1D center = DoubleFactory1D.dense.make(makePoint(rand, numDOFs));
+		DoubleMatrix1D bound = DoubleFactory1D.dense.make(numDOFs, 1.0);
+		EPoly poly = new EPoly(numDOFs, bound, bound.copy().assign(-1.0), center, 5.0, coeffs, order, null);
+
+		double[] scratch = new double[poly.getScratchSize()];
+		for (int i=0; i<10; i++) {
+			double[] x = makePoint(rand, numDOFs);
+			double expected = poly.evaluate(DoubleFactory1D.dense.make(x), true, false);
+			assertThat(poly.evaluate(x, true, false), isRelatively(expected, Epsilon));
+			assertThat(poly.evaluate(x, true, false, scratch), isRelatively(expected, Epsilon));
+		}
+
+		// replacing the coefficients should recompile the series
+		poly.coeffs = makeCoeffs(rand, coeffs.length);
+		double[] x = makePoint(rand, numDOFs);
+		assertThat(poly.evaluate(x, false, false), isRelatively(poly.evaluate(DoubleFactory1D.dense.make(x), false, false), Epsilon));
+		assertThat(poly.getCompiled().isCompiledFrom(poly.coeffs), is(true));
+	}
+}
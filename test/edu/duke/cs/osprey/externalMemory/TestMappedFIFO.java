@@ -0,0 +1,119 @@
+package edu.duke.cs.osprey.externalMemory;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import edu.duke.cs.tpie.EntrySize;
+import edu.duke.cs.tpie.serialization.SerializingFIFOQueue;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+
+public class TestMappedFIFO {
+
+	private static class IntSerializer implements SerializingFIFOQueue.Serializer<Integer> {
+
+		@Override
+		public EntrySize getEntrySize() {
+			return EntrySize.Bytes32;
+		}
+
+		@Override
+		public void serialize(Integer val, ByteBuffer buf) {
+			buf.putInt(val);
+		}
+
+		@Override
+		public Integer deserialize(ByteBuffer buf) {
+			return buf.getInt();
+		}
+	}
+
+	private static MappedFIFO<Integer> makeFIFO(int memoryEntries, int segmentEntries) {
+		return new MappedFIFO<>(
+			new IntSerializer(),
+			Integer.BYTES,
+			memoryEntries*Integer.BYTES,
+			segmentEntries*Integer.BYTES,
+			ExternalMemory.getTempDir()
+		);
+	}
+
+	@Test
+	public void empty() {
+		try (MappedFIFO<Integer> q = makeFIFO(4, 8)) {
+			assertThat(q.isEmpty(), is(true));
+			assertThat(q.size(), is(0L));
+			assertThat(q.peek(), is(nullValue()));
+			assertThat(q.poll(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void inMemory() {
+		try (MappedFIFO<Integer> q = makeFIFO(4, 8)) {
+
+			for (int i=0; i<4; i++) {
+				q.push(i);
+			}
+			assertThat(q.size(), is(4L));
+			assertThat(q.getNumSpilled(), is(0L));
+			assertThat(q.getNumSegments(), is(0));
+
+			for (int i=0; i<4; i++) {
+				assertThat(q.poll(), is(i));
+			}
+			assertThat(q.isEmpty(), is(true));
+		}
+	}
+
+	@Test
+	public void spill() {
+		try (MappedFIFO<Integer> q = makeFIFO(4, 8)) {
+
+			for (int i=0; i<100; i++) {
+				q.push(i);
+			}
+			assertThat(q.size(), is(100L));
+			assertThat(q.getNumSpilled(), is(96L));
+			assertThat(q.getNumSegments(), is(12));
+
+			for (int i=0; i<100; i++) {
+				assertThat(q.peek(), is(i));
+				assertThat(q.poll(), is(i));
+			}
+			assertThat(q.isEmpty(), is(true));
+			assertThat(q.getNumSpilled(), is(0L));
+		}
+	}
+
+	@Test
+	public void recycleSegments() {
+		try (MappedFIFO<Integer> q = makeFIFO(4, 8)) {
+
+			// keep the backlog small, but push lots of values through the queue
+			Random rand = new Random(12345);
+			ArrayDeque<Integer> expected = new ArrayDeque<>();
+			for (int i=0; i<10000; i++) {
+
+				q.push(i);
+				expected.add(i);
+
+				while (expected.size() > 40 || (!expected.isEmpty() && rand.nextBoolean())) {
+					assertThat(q.poll(), is(expected.poll()));
+				}
+				assertThat(q.size(), is((long)expected.size()));
+			}
+			while (!expected.isEmpty()) {
+				assertThat(q.poll(), is(expected.poll()));
+			}
+			assertThat(q.isEmpty(), is(true));
+
+			// the file should only be big enough for the biggest backlog
+			assertThat(q.getNumSegments(), lessThanOrEqualTo(8));
+		}
+	}
+}
@@ -130,6 +130,11 @@ public class TestSimplePartitionFunction {
 
 	private static PfuncFactory simplePfuncs = (confEcalc) -> new SimplePartitionFunction(confEcalc);
 	private static PfuncFactory gdPfuncs = (confEcalc) -> new GradientDescentPfunc(confEcalc);
+	private static PfuncFactory gdBatchPfuncs = (confEcalc) -> {
+		GradientDescentPfunc pfunc = new GradientDescentPfunc(confEcalc);
+		pfunc.setEnergyBatchSize(8);
+		return pfunc;
+	};
 
 	public static void testStrand(ForcefieldParams ffparams, SimpleConfSpace confSpace, Parallelism parallelism, double targetEpsilon, String approxQStar, EnergyMatrix emat, PfuncFactory pfuncs) {
 
@@ -213,6 +218,8 @@ public class TestSimplePartitionFunction {
 	@Test public void test2RL0ProteinGD2Cpus() { calc2RL0Protein(gdPfuncs, Parallelism.make(2, 0, 0)); }
 	@Test public void test2RL0ProteinGD1GpuStream() { calc2RL0Protein(gdPfuncs, Parallelism.make(1, 1, 1)); }
 	@Test public void test2RL0ProteinGD4GpuStreams() { calc2RL0Protein(gdPfuncs, Parallelism.make(2, 1, 4)); }
+	@Test public void test2RL0ProteinGDBatch1Cpu() { calc2RL0Protein(gdBatchPfuncs, Parallelism.make(1, 0, 0)); }
+	@Test public void test2RL0ProteinGDBatch2Cpus() { calc2RL0Protein(gdBatchPfuncs, Parallelism.make(2, 0, 0)); }
 
 	private static EnergyMatrix calc2RL0LigandEmat = null;
 	public void calc2RL0LigandPfunc(PfuncFactory pfuncs, Parallelism parallelism) {
@@ -267,6 +274,7 @@ public class TestSimplePartitionFunction {
 	@Test public void test2RL0ComplexGD4Cpus() { calc2RL0Complex(gdPfuncs, Parallelism.make(4, 0, 0)); }
 	@Test public void test2RL0ComplexGD1GpuStream() { calc2RL0Complex(gdPfuncs, Parallelism.make(1, 1, 1)); }
 	@Test public void test2RL0ComplexGD4GpuStreams() { calc2RL0Complex(gdPfuncs, Parallelism.make(2, 1, 4)); }
+	@Test public void test2RL0ComplexGDBatch4Cpus() { calc2RL0Complex(gdBatchPfuncs, Parallelism.make(4, 0, 0)); }
 
 
 	public static TestInfo make1GUA11TestInfo() {
@@ -390,6 +398,7 @@ public class TestSimplePartitionFunction {
 		}
 	}
 	@Test public void calcWithConfDBGD() { calcWithConfDB(gdPfuncs); }
+	@Test public void calcWithConfDBGDBatch() { calcWithConfDB(gdBatchPfuncs); }
 
 	@Test
 	public void withExternalMemory() {
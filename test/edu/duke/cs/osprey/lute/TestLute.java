@@ -51,6 +51,7 @@ import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunctionFactory;
 import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.pruning.SimpleDEE;
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
@@ -624,4 +625,101 @@ public class TestLute {
 		assertThat(triples2Samples.size(), greaterThan(pairsSamples.size()));
 		assertThat(triples2Samples.size(), greaterThan(triples1Samples.size()));
 	}
+
+	@Test
+	public void parallelSampling() {
+
+		// batched sampling should be reproducible for a random seed, no matter how many threads we use
+
+		Molecule mol = PDBIO.readResource("/2RL0.min.reduce.pdb");
+
+		Strand protein = new Strand.Builder(mol).setResidues("G648", "G654").build();
+		for (String resNum : Arrays.asList("G650", "G651", "G652")) {
+			protein.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "VAL", "LEU");
+		}
+
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrands(protein)
+			.build();
+
+		// use an empty pmat
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+
+		final int randomSeed = 12345;
+		Function<Parallelism,Set<int[]>> sample = (parallelism) -> {
+			LUTE lute = new LUTE(confSpace);
+			lute.addTuples(lute.getUnprunedPairTuples(pmat));
+			ConfSampler sampler = new RandomizedDFSConfSampler(confSpace, pmat, randomSeed, parallelism);
+			for (int i=1; i<=3; i++) {
+				sampler.sampleConfsForTuples(lute.trainingSet, i);
+			}
+			assertThat(lute.trainingSet.countTuplesWithLessThan(3), is(0));
+			return new Conf.Set(lute.trainingSet.getAllConfs());
+		};
+
+		Set<int[]> samples1 = sample.apply(Parallelism.makeCpu(1));
+		Set<int[]> samples4 = sample.apply(Parallelism.makeCpu(4));
+		assertThat(samples4, is(samples1));
+	}
+
+	@Test
+	public void warmStartFit() {
+
+		// a fit started from a previous solution (with a different offset) should find the same model as a fit from scratch
+
+		Molecule mol = PDBIO.readResource("/2RL0.min.reduce.pdb");
+
+		Strand protein = new Strand.Builder(mol).setResidues("G648", "G654").build();
+		for (String resNum : Arrays.asList("G650", "G651", "G652")) {
+			protein.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "VAL", "LEU");
+		}
+
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrands(protein)
+			.build();
+
+		// use an empty pmat
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+
+		LUTE lute = new LUTE(confSpace);
+		lute.addTuples(lute.getUnprunedPairTuples(pmat));
+		ConfSampler sampler = new RandomizedDFSConfSampler(confSpace, pmat, 12345);
+
+		// make up some pairwise energies, with a little noise so the fit isn't exact
+		Random rand = new Random(12345);
+		double[] pairEnergies = new double[lute.tuplesIndex.size()];
+		for (int t=0; t<pairEnergies.length; t++) {
+			pairEnergies[t] = rand.nextDouble()*10.0 - 5.0;
+		}
+		Function<Double,Map<int[],Double>> makeEnergies = (offset) -> {
+			Map<int[],Double> energies = new Conf.Map<>();
+			for (int[] conf : lute.trainingSet.getAllConfs()) {
+				double[] energy = { offset + rand.nextDouble()*0.1 };
+				lute.tuplesIndex.forEachIndexIn(conf, false, true, (t) -> energy[0] += pairEnergies[t]);
+				energies.put(conf, energy[0]);
+			}
+			return energies;
+		};
+
+		TaskExecutor tasks = new TaskExecutor();
+
+		// fit a small system
+		sampler.sampleConfsForTuples(lute.trainingSet, 1);
+		LUTE.LinearSystem previous = new LUTE.LinearSystem(lute.tuplesIndex, lute.trainingSet, makeEnergies.apply(-20.0));
+		previous.fit(LUTE.Fitter.OLSCG, tasks);
+
+		// fit a bigger system, with energies in a different range, from scratch
+		sampler.sampleConfsForTuples(lute.trainingSet, 3);
+		LUTE.LinearSystem system = new LUTE.LinearSystem(lute.tuplesIndex, lute.trainingSet, makeEnergies.apply(30.0));
+		system.fit(LUTE.Fitter.OLSCG, tasks);
+		double offset = system.tupleEnergyOffset;
+		double[] residual = system.errors.residual.clone();
+
+		// then again, starting from the small system
+		system.fit(LUTE.Fitter.OLSCG, tasks, previous);
+		assertThat(system.tupleEnergyOffset, is(offset));
+		for (int c=0; c<residual.length; c++) {
+			assertThat(system.errors.residual[c], isAbsolutely(residual[c], 1e-4));
+		}
+	}
 }
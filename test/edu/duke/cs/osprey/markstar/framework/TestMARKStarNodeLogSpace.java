@@ -0,0 +1,97 @@
+package edu.duke.cs.osprey.markstar.framework;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+
+public class TestMARKStarNodeLogSpace {
+
+	private static final double Inf = Double.POSITIVE_INFINITY;
+
+	private static void assertRelClose(double observed, double expected) {
+		assertThat(observed, closeTo(expected, Math.abs(expected)*1e-12));
+	}
+
+	@Test
+	public void lnAdd() {
+		double a = Math.log(3.0);
+		double b = Math.log(5.0);
+
+		// outward rounding keeps the exact sum bracketed
+		assertThat(MARKStarNode.lnAddUp(a, b), greaterThanOrEqualTo(Math.log(8.0)));
+		assertThat(MARKStarNode.lnAddDown(a, b), lessThanOrEqualTo(Math.log(8.0)));
+		assertRelClose(MARKStarNode.lnAddUp(a, b), Math.log(8.0));
+		assertRelClose(MARKStarNode.lnAddDown(a, b), Math.log(8.0));
+
+		// zero and infinity
+		assertThat(MARKStarNode.lnAddUp(-Inf, b), is(b));
+		assertThat(MARKStarNode.lnAddDown(a, -Inf), is(a));
+		assertThat(MARKStarNode.lnAddUp(a, Inf), is(Inf));
+
+		// far beyond double range
+		assertRelClose(MARKStarNode.lnAddUp(5000, 5000), 5000 + Math.log(2));
+	}
+
+	@Test
+	public void rounding() {
+		assertThat(MARKStarNode.roundUp(1.0), greaterThan(1.0));
+		assertThat(MARKStarNode.roundDown(1.0), lessThan(1.0));
+		assertThat(MARKStarNode.roundUp(Inf), is(Inf));
+		assertThat(MARKStarNode.roundDown(-Inf), is(-Inf));
+	}
+
+	@Test
+	public void lnDiff() {
+		assertRelClose(MARKStarNode.lnDiff(Math.log(3.0), Math.log(5.0)), Math.log(2.0));
+		assertThat(MARKStarNode.lnDiff(-Inf, 4.0), is(4.0));
+		assertThat(MARKStarNode.lnDiff(4.0, 4.0), is(-Inf));
+		assertThat(MARKStarNode.lnDiff(5.0, 4.0), is(-Inf));
+		assertThat(MARKStarNode.lnDiff(4.0, Inf), is(Inf));
+		assertRelClose(MARKStarNode.lnDiff(5000 + Math.log(3.0), 5000 + Math.log(5.0)), 5000 + Math.log(2.0));
+	}
+
+	@Test
+	public void calcEpsilon() {
+		assertRelClose(MARKStarNode.calcEpsilon(Math.log(3.0), Math.log(5.0)), 0.4);
+		assertThat(MARKStarNode.calcEpsilon(-Inf, -Inf), is(0.0));
+		assertThat(MARKStarNode.calcEpsilon(4.0, 4.0), is(0.0));
+		assertThat(MARKStarNode.calcEpsilon(-Inf, 4.0), is(1.0));
+		assertRelClose(MARKStarNode.calcEpsilon(5000 + Math.log(3.0), 5000 + Math.log(5.0)), 0.4);
+	}
+
+	@Test
+	public void boundDiff() {
+		assertRelClose(MARKStarNode.boundDiff(Math.log(3.0), Math.log(5.0)), 2.0);
+		assertThat(MARKStarNode.boundDiff(-Inf, -Inf), is(0.0));
+		assertThat(MARKStarNode.boundDiff(4.0, 4.0), is(0.0));
+		assertThat(MARKStarNode.boundDiff(-Inf, Inf), is(Inf));
+
+		// both bounds overflow a double, but the difference doesn't
+		assertThat(Math.exp(709.9), is(Inf));
+		double expected = Math.exp(709)*(-Math.expm1(-0.1))*Math.E;
+		assertThat(MARKStarNode.boundDiff(709.9, 710.0), closeTo(expected, expected*1e-10));
+
+		// the difference overflows too, so it saturates instead of going NaN
+		assertThat(MARKStarNode.boundDiff(5000, 5001), is(Inf));
+	}
+
+	@Test
+	public void hScoreSaturates() {
+		MARKStarNode.Node node = new MARKStarNode.Node(3);
+		assertThat(node.getHScore(), is(-Inf));
+		assertThat(Double.isNaN(node.getHScore()), is(false));
+	}
+
+	@Test
+	public void lnToBigDecimal() {
+		assertThat(MARKStarNode.lnToBigDecimal(-Inf), is(BigDecimal.ZERO));
+		BigDecimal big = MARKStarNode.lnToBigDecimal(5000);
+		assertThat(big.compareTo(new BigDecimal(Double.MAX_VALUE)), greaterThan(0));
+		assertThat(MARKStarNode.lnToBigDecimal(Math.log(8.0)).round(new MathContext(10)).doubleValue(), closeTo(8.0, 1e-8));
+	}
+}
@@ -372,6 +372,102 @@ public class TestMinimization extends TestBase {
 		check(EnergyCalculator.Type.ResidueCudaCCD, Parallelism.make(4, 1, 2));
 	}
 	
+	@Test
+	public void testCpuBatch() {
+
+		for (boolean doSolv : Arrays.asList(true, false)) {
+
+			Info info = Infos.get(doSolv);
+			new EnergyCalculator.Builder(info.simpleConfSpace, info.ffparams)
+				.setType(EnergyCalculator.Type.Cpu)
+				.use((ecalc) -> {
+
+					ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(info.simpleConfSpace, ecalc).build();
+					List<EnergiedConf> econfs = confEcalc.calcEnergies(info.confs);
+					checkConfs(info, econfs);
+
+					// the batch should take exactly the same steps as the single-conf minimizer
+					for (int i=0; i<info.confs.size(); i++) {
+						double energy = confEcalc.calcEnergy(info.confs.get(i)).getEnergy();
+						assertThat(info.toString(), econfs.get(i).getEnergy(), isAbsolutely(energy, 1e-9));
+					}
+
+					checkConfs(info, confEcalc.calcAllEnergiesBatched(info.confs, 5));
+				});
+		}
+	}
+
+	@Test
+	public void arrayObjectiveFunction() {
+
+		// a simple separable quadratic, with the minimum at (1,-2)
+		ArrayObjectiveFunction f = new ArrayObjectiveFunction() {
+
+			double[] x = new double[2];
+
+			@Override public int getNumDOFs() { return 2; }
+			@Override public double getXMin(int d) { return -10; }
+			@Override public double getXMax(int d) { return 10; }
+			@Override public void setDOFs(double[] x) { System.arraycopy(x, 0, this.x, 0, 2); }
+			@Override public void setDOF(int d, double xd) { x[d] = xd; }
+			@Override public double getValue(double[] x) { setDOFs(x); return getValue(); }
+			@Override public double getValForDOF(int d, double xd) { setDOF(d, xd); return getValue(); }
+			@Override public double getInitStepSize(int d) { return 1; }
+			@Override public boolean isDOFAngle(int d) { return false; }
+
+			private double getValue() {
+				return (x[0] - 1)*(x[0] - 1) + (x[1] + 2)*(x[1] + 2);
+			}
+		};
+
+		// check the finite-difference gradient
+		double[] gradient = new double[2];
+		f.getGradient(new double[] { 0, 0 }, gradient);
+		assertThat(gradient, isAbsolutely(new double[] { -2, 4 }, 1e-6));
+
+		// minimize with the array API
+		SimpleCCDMinimizer minimizer = new SimpleCCDMinimizer(new ArrayObjectiveFunction.ToObjectiveFunction(f));
+		double[] x = new double[] { 0, 0 };
+		Minimizer.Result result = minimizer.minimizeInPlace(x, null);
+		assertThat(x, isAbsolutely(new double[] { 1, -2 }, 1e-6));
+		assertThat(result.energy, isAbsolutely(0, 1e-6));
+
+		// and with the colt API
+		result = minimizer.minimizeFromCenter();
+		assertThat(result.dofValues.toArray(), isAbsolutely(new double[] { 1, -2 }, 1e-6));
+
+		// CCDMinimizer should work too
+		ObjectiveFunction of = new ArrayObjectiveFunction.ToObjectiveFunction(f);
+		assertThat(of.getInitFixableDOFs(), is(empty()));
+		result = new CCDMinimizer(of, false).minimize();
+		assertThat(result.dofValues.toArray(), isAbsolutely(new double[] { 1, -2 }, 1e-2));
+	}
+
+	@Test
+	public void cutoff() {
+
+		Info info = Infos.get(true);
+		new EnergyCalculator.Builder(info.simpleConfSpace, info.ffparams)
+			.setParallelism(Parallelism.makeCpu(1))
+			.use((ecalc) -> {
+
+				ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(info.simpleConfSpace, ecalc).build();
+				for (int i=0; i<info.confs.size(); i++) {
+					ScoredConf conf = info.confs.get(i);
+
+					// no cutoff should minimize all the way
+					ConfEnergyCalculator.MinimizedConf full = confEcalc.calcEnergy(conf, null, (Minimizer.Cutoff)null);
+					assertThat(full.isPartial, is(false));
+					assertThat(full.getEnergy() - info.expectedEnergies[i], lessThanOrEqualTo(Epsilon));
+
+					// abandoning everything should stop after the first iteration with an upper bound
+					ConfEnergyCalculator.MinimizedConf partial = confEcalc.calcEnergy(conf, null, Minimizer.Cutoff.abandonAbove(Double.NEGATIVE_INFINITY));
+					assertThat(partial.isPartial, is(true));
+					assertThat(partial.getEnergy(), greaterThanOrEqualTo(full.getEnergy() - Epsilon));
+				}
+			});
+	}
+
 	private static interface MinimizerFactory {
 		ConfMinimizer make(ForcefieldParams ffparams, Factory<ForcefieldInteractions,Molecule> intergen, ConfSpace confSpace);
 	}
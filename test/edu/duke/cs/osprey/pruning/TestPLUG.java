@@ -112,4 +112,39 @@ public class TestPLUG {
 		// Unavoidable: v= 1.13 A23:CD2  <-> A36:HD11 -            overlap=   1.526  >0.000 BadClash
 		assertThat(plug.shouldPruneTuple(tuple, tolerance), is(true));
 	}
+
+	@Test
+	public void cachedConstraints() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A23").setLibraryRotamers("LEU").setContinuous();
+		strand.flexibility.get("A24").setLibraryRotamers("LEU").setContinuous();
+		strand.flexibility.get("A36").setLibraryRotamers("LEU").setContinuous();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		// pairs and triples should get the same answers when re-using the constraints from smaller tuples
+		PLUG cachedPlug = new PLUG(confSpace);
+		cachedPlug.cacheConstraints = true;
+		PLUG uncachedPlug = new PLUG(confSpace);
+		uncachedPlug.cacheConstraints = false;
+
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+		pmat.forEachUnprunedSingle((pos1, rc1) -> {
+			RCTuple tuple = new RCTuple(pos1, rc1);
+			assertThat(tuple.toString(), cachedPlug.shouldPruneTuple(tuple, tolerance), is(uncachedPlug.shouldPruneTuple(tuple, tolerance)));
+			return PruningMatrix.IteratorCommand.Continue;
+		});
+		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
+			RCTuple tuple = new RCTuple(pos1, rc1, pos2, rc2);
+			assertThat(tuple.toString(), cachedPlug.shouldPruneTuple(tuple, tolerance), is(uncachedPlug.shouldPruneTuple(tuple, tolerance)));
+			return PruningMatrix.IteratorCommand.Continue;
+		});
+		pmat.forEachUnprunedTriple((pos1, rc1, pos2, rc2, pos3, rc3) -> {
+			RCTuple tuple = new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3);
+			assertThat(tuple.toString(), cachedPlug.shouldPruneTuple(tuple, tolerance), is(uncachedPlug.shouldPruneTuple(tuple, tolerance)));
+			return PruningMatrix.IteratorCommand.Continue;
+		});
+	}
 }
@@ -85,4 +85,56 @@ public class TestBigDecimalIO {
 		assertThat(io.read(buf.in), is(MathTools.BigNegativeInfinity));
 		assertThat(io.read(buf.in), is(MathTools.BigPositiveInfinity));
 	}
+
+	@Test
+	public void log()
+	throws IOException {
+
+		BigDecimalIO io = new BigDecimalIO.Log(RoundingMode.HALF_EVEN);
+
+		Buf buf = new Buf();
+		io.write(buf.out, BigDecimal.ONE);
+		io.write(buf.out, BigDecimal.ZERO);
+		io.write(buf.out, new BigDecimal("4.2"));
+		io.write(buf.out, new BigDecimal("1.94538e-4893"));
+		io.write(buf.out, null);
+		io.write(buf.out, MathTools.BigNaN);
+		io.write(buf.out, MathTools.BigNegativeInfinity);
+		io.write(buf.out, MathTools.BigPositiveInfinity);
+
+		assertThat(buf.size(), is(BigDecimalIO.Log.NumBytes*8));
+
+		buf.swap();
+
+		MathContext mc = new MathContext(10, RoundingMode.HALF_UP);
+		assertThat(io.read(buf.in), is(BigDecimal.ONE));
+		assertThat(io.read(buf.in), is(BigDecimal.ZERO));
+		assertThat(io.read(buf.in).round(mc), comparesEqualTo(new BigDecimal("4.2")));
+		assertThat(io.read(buf.in).round(mc), comparesEqualTo(new BigDecimal("1.94538e-4893")));
+		assertThat(io.read(buf.in), is(nullValue()));
+		assertThat(io.read(buf.in), is(MathTools.BigNaN));
+		assertThat(io.read(buf.in), is(MathTools.BigNegativeInfinity));
+		assertThat(io.read(buf.in), is(MathTools.BigPositiveInfinity));
+	}
+
+	@Test
+	public void logBounds()
+	throws IOException {
+
+		BigDecimalIO lowerIO = new BigDecimalIO.Log(RoundingMode.FLOOR);
+		BigDecimalIO upperIO = new BigDecimalIO.Log(RoundingMode.CEILING);
+
+		for (String val : new String[] { "4.2", "1.94538e-4893", "7.3829e5123", "1.0000000000000000000001", "0.9999999999999999999999" }) {
+
+			BigDecimal d = new BigDecimal(val);
+
+			Buf buf = new Buf();
+			lowerIO.write(buf.out, d);
+			upperIO.write(buf.out, d);
+			buf.swap();
+
+			assertThat(lowerIO.read(buf.in), lessThanOrEqualTo(d));
+			assertThat(upperIO.read(buf.in), greaterThanOrEqualTo(d));
+		}
+	}
 }
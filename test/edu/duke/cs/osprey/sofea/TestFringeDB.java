@@ -16,6 +16,9 @@ import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.Arrays;
@@ -619,6 +622,120 @@ public class TestFringeDB {
 		}
 	}
 
+	@Test
+	public void logEncoding() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+		MultiStateConfSpace.State state = confSpace.states.get(1);
+
+		try (TempFile file = new TempFile("fringe.db")) {
+
+			BigDecimalBounds zbounds = new BigDecimalBounds(MathTools.biggen(5.2), MathTools.biggen(10.4));
+			BigDecimal zpath = MathTools.biggen(1.3);
+
+			try (FringeDB db = FringeDB.create(confSpace, file, 1024, mathContext, FringeDB.ZEncoding.Log)) {
+
+				// log-encoded entries should be smaller than fixed ones
+				assertThat(db.zEncoding, is(FringeDB.ZEncoding.Log));
+				assertThat(db.getCapacity(), greaterThan(21L));
+
+				FringeDB.Transaction tx = db.transaction();
+				tx.writeRootNode(state, zbounds, zpath);
+				tx.commit();
+				db.finishSweep();
+			}
+
+			// re-open the existing FringeDB, the encoding should stick
+			try (FringeDB db = FringeDB.open(confSpace, file)) {
+
+				assertThat(db.zEncoding, is(FringeDB.ZEncoding.Log));
+				assertThat(db.getNumNodes(), is(1L));
+				assertThat(db.getZMax(state), greaterThanOrEqualTo(zbounds.upper));
+
+				// bounds should be rounded outward
+				FringeDB.Transaction tx = db.transaction();
+				tx.readNode();
+				assertThat(tx.state().index, is(state.index));
+				assertThat(tx.conf(), is(conf(-1, -1, -1, -1)));
+				assertThat(tx.zbounds().lower, lessThanOrEqualTo(zbounds.lower));
+				assertThat(tx.zbounds().upper, greaterThanOrEqualTo(zbounds.upper));
+				assertThat(tx.zbounds().lower.doubleValue(), closeTo(zbounds.lower.doubleValue(), 1e-9));
+				assertThat(tx.zbounds().upper.doubleValue(), closeTo(zbounds.upper.doubleValue(), 1e-9));
+				assertThat(tx.zpath().doubleValue(), closeTo(zpath.doubleValue(), 1e-9));
+			}
+		}
+	}
+
+	@Test
+	public void unknownEncoding() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+
+		try (TempFile file = new TempFile("fringe.db")) {
+
+			try (FringeDB db = FringeDB.create(confSpace, file, 1024, mathContext, FringeDB.ZEncoding.Log)) {
+				assertThat(db.zEncoding, is(FringeDB.ZEncoding.Log));
+			}
+
+			// corrupt the z encoding
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(52);
+				raf.writeByte(42);
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+
+			try (FringeDB db = FringeDB.open(confSpace, file)) {
+				fail("opened a fringe db with a corrupt Z encoding");
+			} catch (RuntimeException ex) {
+				assertThat(ex.getCause(), instanceOf(IOException.class));
+				assertThat(ex.getCause().getMessage(), containsString("Z encoding: 42"));
+			}
+		}
+	}
+
+	@Test
+	public void sweepsWrapAround() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+		MultiStateConfSpace.State state = confSpace.states.get(0);
+
+		try (TempFile file = new TempFile("fringe.db")) {
+			try (FringeDB db = FringeDB.create(confSpace, file, 1024, mathContext)) {
+
+				// add more than half the capacity, so the next sweeps have to wrap around the end of the file
+				final int numNodes = 15;
+				assertThat(db.getCapacity(), lessThan(2L*numNodes));
+				FringeDB.Transaction tx = db.transaction();
+				for (int i=0; i<numNodes; i++) {
+					tx.writeRootNode(
+						state,
+						new BigDecimalBounds(MathTools.biggen(i), MathTools.biggen(i + 1)),
+						MathTools.biggen(i)
+					);
+				}
+				tx.commit();
+				db.finishSweep();
+
+				// sweep a few times, keeping all the nodes
+				for (int sweep=0; sweep<3; sweep++) {
+					tx = db.transaction();
+					for (int i=0; i<numNodes; i++) {
+						tx.readNode();
+						assertThat(tx.zbounds(), is(new BigDecimalBounds(MathTools.biggen(i), MathTools.biggen(i + 1))));
+						assertThat(tx.zpath(), is(MathTools.biggen(i)));
+						tx.writeReplacementNode(tx.state(), tx.conf(), tx.zbounds(), tx.zpath());
+					}
+					assertThat(tx.hasNodesToRead(), is(false));
+					tx.commit();
+					db.finishSweep();
+					assertThat(db.getNumNodes(), is((long)numNodes));
+					assertThat(db.getZMax(state), is(MathTools.biggen(numNodes)));
+				}
+			}
+		}
+	}
+
 	private static MultiStateConfSpace makeConfSpace() {
 
 		Molecule pdb = PDBIO.readResource("/1CC8.ss.pdb");
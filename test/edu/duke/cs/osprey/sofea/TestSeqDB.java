@@ -212,6 +212,106 @@ public class TestSeqDB {
 		}
 	}
 
+	@Test
+	public void pendingCommitsClamp() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+		MultiStateConfSpace.State target = confSpace.getState("target");
+		Sequence seq = confSpace.seqSpace.makeUnassignedSequence();
+
+		// never flush on our own
+		try (SeqDB seqdb = new SeqDB(confSpace, mathContext, null, Integer.MAX_VALUE, Long.MAX_VALUE)) {
+
+			SeqDB.Transaction tx = seqdb.transaction();
+			tx.addZ(target, seq, new BigDecimalBounds(1.0, 2.0));
+			tx.commit();
+
+			// roundoff error can make a subtraction overshoot, the sum should clamp at zero after each commit
+			tx = seqdb.transaction();
+			tx.subZ(target, seq, new BigDecimalBounds(1.0, 2.5));
+			tx.commit();
+
+			tx = seqdb.transaction();
+			tx.addZ(target, seq, new BigDecimalBounds(1.0, 2.0));
+			tx.commit();
+
+			// same as if each commit went straight to the database
+			assertThat(seqdb.getUnsequencedBound(target), is(new BigDecimalBounds(1.0, 2.0)));
+		}
+	}
+
+	@Test
+	public void flushAtThreshold() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+		MultiStateConfSpace.State design = confSpace.getState("design");
+
+		try (TempFile file = new TempFile("seq.db")) {
+
+			try (SeqDB seqdb = new SeqDB(confSpace, mathContext, file, 2, Long.MAX_VALUE)) {
+
+				SeqDB.Transaction tx = seqdb.transaction();
+				tx.addZ(design, makeSeq(confSpace, "GLY"), new BigDecimalBounds(1.0, 2.0));
+				assertThat(tx.commit(), is(false));
+
+				// the second pending sequence should trigger a flush
+				tx.addZ(design, makeSeq(confSpace, "GLY", "GLY"), new BigDecimalBounds(3.0, 4.0));
+				assertThat(tx.commit(), is(true));
+
+				// anything after the flush stays pending
+				tx.addZ(design, makeSeq(confSpace, "GLY"), new BigDecimalBounds(5.0, 6.0));
+				assertThat(tx.commit(), is(false));
+				seqdb.discardPending();
+			}
+
+			// only the flushed changes should survive
+			try (SeqDB seqdb = new SeqDB(confSpace, mathContext, file)) {
+				assertThat(seqdb.getSequencedSums(makeSeq(confSpace, "GLY")).get(design), is(new BigDecimalBounds(1.0, 2.0)));
+				assertThat(seqdb.getSequencedSums(makeSeq(confSpace, "GLY", "GLY")).get(design), is(new BigDecimalBounds(3.0, 4.0)));
+			}
+		}
+	}
+
+	@Test
+	public void pendingCommits() {
+
+		MultiStateConfSpace confSpace = makeConfSpace();
+		MultiStateConfSpace.State target = confSpace.getState("target");
+		MultiStateConfSpace.State design = confSpace.getState("design");
+		MultiStateConfSpace.State complex = confSpace.getState("complex");
+
+		try (TempFile file = new TempFile("seq.db")) {
+
+			Sequence seq = confSpace.seqSpace.makeUnassignedSequence();
+
+			// never flush on our own
+			try (SeqDB seqdb = new SeqDB(confSpace, mathContext, file, Integer.MAX_VALUE, Long.MAX_VALUE)) {
+
+				for (int i=0; i<3; i++) {
+					SeqDB.Transaction tx = seqdb.transaction();
+					tx.addZ(target, seq, new BigDecimalBounds(1.0, 2.0));
+					tx.addZ(design, seq, new BigDecimalBounds(3.0, 4.0));
+					tx.addZ(complex, seq, new BigDecimalBounds(5.0, 6.0));
+					tx.commit();
+				}
+
+				// queries should see the pending changes
+				assertThat(seqdb.getUnsequencedBound(target), is(new BigDecimalBounds(3.0, 6.0)));
+
+				SeqDB.Transaction tx = seqdb.transaction();
+				tx.subZ(design, seq, new BigDecimalBounds(3.0, 4.0));
+				tx.commit();
+			}
+
+			// closing should flush the pending changes
+			try (SeqDB seqdb = new SeqDB(confSpace, mathContext, file)) {
+				assertThat(seqdb.getUnsequencedBound(target), is(new BigDecimalBounds(3.0, 6.0)));
+				assertThat(seqdb.getSequencedSums(seq).get(design), is(new BigDecimalBounds(6.0, 8.0)));
+				assertThat(seqdb.getSequencedSums(seq).get(complex), is(new BigDecimalBounds(15.0, 18.0)));
+			}
+		}
+	}
+
 	private static Sequence makeSeq(MultiStateConfSpace confSpace, String ... resTypes) {
 		Sequence seq = confSpace.seqSpace.makeUnassignedSequence();
 		for (int i=0; i<resTypes.length; i++) {
@@ -19,6 +19,7 @@ import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.lute.*;
 import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.pruning.SimpleDEE;
 import edu.duke.cs.osprey.structure.Molecule;
@@ -38,6 +39,7 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 
 public class TestSofea {
@@ -295,6 +297,164 @@ public class TestSofea {
 		);
 	}
 
+	@Test
+	public void test_Binding1CC8Mut3Flex4_Standard_MultiSweepHiMem_4Threads_2Shards() {
+		sweepUntilExhaustion(
+			Designs.Binding1CC8Mut3Flex4_Standard.get(),
+			50.0,
+			1024*1024,
+			4,
+			2,
+			TestSofea::assertResults_Binding1CC8Mut3Flex4_Standard
+		);
+	}
+	private static class SimulatedCrash extends RuntimeException {}
+
+	/** runs tasks on the calling thread, but crashes after a node's changes have been handed to the fringe and seqdb */
+	private static class CrashingParallelism extends Parallelism {
+
+		long crashAfterTasks = -1;
+		long numTasks = 0;
+
+		CrashingParallelism() {
+			super(1, 0, 0);
+		}
+
+		@Override
+		public TaskExecutor makeTaskExecutor(Integer queueSize) {
+			return new TaskExecutor() {
+				@Override
+				public <T> void submit(Task<T> task, TaskListener<T> listener) {
+					super.submit(task, listener);
+					if (++numTasks == crashAfterTasks) {
+						throw new SimulatedCrash();
+					}
+				}
+			};
+		}
+	}
+
+	@Test
+	public void resumeAfterCrash() {
+
+		Design design = Designs.Binding1CC8Mut3Flex4_Standard.get();
+
+		try (TempFile fringedbFile = new TempFile(tmpdir, "fringe.db")) {
+			try (TempFile seqdbFile = new TempFile(tmpdir, "seq.db")) {
+
+				Function<Parallelism,Sofea> makeSofea = parallelism -> new Sofea.Builder(design.confSpace)
+					.setFringeDBFile(fringedbFile)
+					.setFringeDBBytes(1024*1024)
+					.setSeqDBFile(seqdbFile)
+					.setSweepDivisor(50.0)
+					.configEachState(state -> design.config[state.index])
+					.setParallelism(parallelism)
+					.build();
+
+				CrashingParallelism crashing = new CrashingParallelism();
+				Sofea sofea = makeSofea.apply(crashing);
+				sofea.init();
+
+				// crash most of the way through the second sweep, after the fringe has committed some of its nodes,
+				// but before the sweep can finish and catch up the seqdb on its own
+				try {
+					sofea.refine((seqdb, fringedb, sweepCount) -> {
+						if (sweepCount == 1) {
+							crashing.crashAfterTasks = crashing.numTasks + fringedb.getNumNodes()*3/4;
+						}
+						return Sofea.Criterion.KeepIterating;
+					});
+					fail("refinement should have crashed");
+				} catch (SimulatedCrash ex) {
+					// expected
+				}
+
+				// resume with a new instance, the bounds should still be correct after every sweep
+				Sofea resumed = makeSofea.apply(Parallelism.makeCpu(1));
+				resumed.refine((seqdb, fringedbs, sweepCount) -> {
+					assertResults_Binding1CC8Mut3Flex4_Standard(new Results(design, seqdb));
+					return Sofea.Criterion.KeepIterating;
+				});
+				try (SeqDB seqdb = resumed.openSeqDB()) {
+					assertResults_Binding1CC8Mut3Flex4_Standard(new Results(design, seqdb));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void criterionSeesAllShards() {
+
+		Design design = Designs.Binding1CC8Mut3Flex4_Standard.get();
+		int numShards = 2;
+
+		try (TempFile fringedbFile = new TempFile(tmpdir, "fringe.db")) {
+			try (TempFile seqdbFile = new TempFile(tmpdir, "seq.db")) {
+
+				Sofea sofea = new Sofea.Builder(design.confSpace)
+					.setFringeDBFile(fringedbFile)
+					.setFringeDBBytes(1024*1024)
+					.setFringeDBShards(numShards)
+					.setSeqDBFile(seqdbFile)
+					.setSweepDivisor(50.0)
+					.configEachState(state -> design.config[state.index])
+					.setParallelism(Parallelism.makeCpu(4))
+					.build();
+
+				try {
+
+					sofea.init();
+
+					// a criterion that stops once the whole fringe grows past a size
+					long maxNodes = 20;
+					long[] numChecks = { 0 };
+					long[] lastNumNodes = { 0 };
+					sofea.refine((Sofea.ShardedCriterion)(seqdb, fringedbs, sweepCount) -> {
+
+						assertThat(fringedbs.dbs.size(), is(numShards));
+						long sum = 0;
+						for (FringeDB db : fringedbs.dbs) {
+							sum += db.getNumNodes();
+						}
+						assertThat(fringedbs.getNumNodes(), is(sum));
+
+						// init() deals subtrees to every shard, so at first each shard has some nodes
+						if (sweepCount == 0) {
+							for (FringeDB db : fringedbs.dbs) {
+								assertThat(db.isEmpty(), is(false));
+							}
+							assertThat(fringedbs.getNumNodes(), greaterThan(fringedbs.dbs.get(0).getNumNodes()));
+						}
+
+						numChecks[0]++;
+						lastNumNodes[0] = fringedbs.getNumNodes();
+						return fringedbs.getNumNodes() >= maxNodes;
+					});
+
+					// refine should stop because of the criterion, not because it ran out of nodes
+					assertThat(numChecks[0], greaterThan(0L));
+					assertThat(lastNumNodes[0], greaterThanOrEqualTo(maxNodes));
+
+				} finally {
+					for (int shard=1; shard<numShards; shard++) {
+						sofea.getFringeDBFile(shard).delete();
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_Binding1CC8Mut3Flex4_Standard_MultiSweepLoMem_4Threads_4Shards() {
+		sweepUntilExhaustion(
+			Designs.Binding1CC8Mut3Flex4_Standard.get(),
+			50.0,
+			64*1024,
+			4,
+			4,
+			TestSofea::assertResults_Binding1CC8Mut3Flex4_Standard
+		);
+	}
 
 	@Test
 	public void test_Binding1CC8Mut2Flex2_NoPLUG_LeafCounts() {
@@ -568,29 +728,44 @@ public class TestSofea {
 	}
 
 	public void sweepUntilExhaustion(Design design, double sweepDivisor, long fringeDBBytes, int numThreads, IntermediateChecker checker) {
+		sweepUntilExhaustion(design, sweepDivisor, fringeDBBytes, numThreads, 1, checker);
+	}
+
+	public void sweepUntilExhaustion(Design design, double sweepDivisor, long fringeDBBytes, int numThreads, int numShards, IntermediateChecker checker) {
 		try (TempFile fringedbFile = new TempFile(tmpdir, "fringe.db")) {
 			try (TempFile seqdbFile = new TempFile(tmpdir, "seq.db")) {
 
 				Sofea sofea = new Sofea.Builder(design.confSpace)
 					.setFringeDBFile(fringedbFile)
 					.setFringeDBBytes(fringeDBBytes)
+					.setFringeDBShards(numShards)
 					.setSeqDBFile(seqdbFile)
 					.setSweepDivisor(sweepDivisor)
 					.configEachState(state -> design.config[state.index])
 					.setParallelism(Parallelism.makeCpu(numThreads))
 					.build();
 
-				sofea.init();
+				try {
 
-				// refine, and check results between each sweep
-				sofea.refine((seqdb, fringedb, sweepCount) -> {
-					checker.check(new Results(design, seqdb));
-					return Sofea.Criterion.KeepIterating;
-				});
+					sofea.init();
+
+					// refine, and check results between each sweep
+					sofea.refine((seqdb, fringedb, sweepCount) -> {
+						checker.check(new Results(design, seqdb));
+						return Sofea.Criterion.KeepIterating;
+					});
+
+					// check results once more at end, just for good measure
+					try (SeqDB seqdb = sofea.openSeqDB()) {
+						checker.check(new Results(design, seqdb));
+					}
+
+				} finally {
 
-				// check results once more at end, just for good measure
-				try (SeqDB seqdb = sofea.openSeqDB()) {
-					checker.check(new Results(design, seqdb));
+					// cleanup the extra shard files
+					for (int shard=1; shard<numShards; shard++) {
+						sofea.getFringeDBFile(shard).delete();
+					}
 				}
 			}
 		}
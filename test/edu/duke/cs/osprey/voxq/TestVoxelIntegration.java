@@ -0,0 +1,329 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.voxq;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import edu.duke.cs.osprey.ematrix.epic.EPICMatrix;
+import edu.duke.cs.osprey.minimization.ObjectiveFunction;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.parallelism.ThreadPoolTaskExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+public class TestVoxelIntegration {
+
+	private static final double RT = IntraVoxelSampler.RT;
+
+	// \int_0^1 exp(-k x^2 / RT) dx, for comparison
+	private static BoltzmannIntegrator1D quadratic(double k) {
+		return new BoltzmannIntegrator1D(0, 1) {
+			@Override
+			public double f(double x) {
+				return k*x*x;
+			}
+		};
+	}
+
+	@Test
+	public void adaptiveMatchesFixed() {
+		// with no refinement allowed, the adaptive integral is the usual 50-slice Simpson's rule
+		BoltzmannIntegrator1D integrator = quadratic(1);
+		assertThat(integrator.doIntegral(1e-12, 50), closeTo(integrator.doIntegral(), 1e-12));
+	}
+
+	@Test
+	public void adaptiveConverges() {
+
+		// a steep well, so 50 slices isn't enough
+		double k = 200;
+		double exact = 0.5*Math.sqrt(Math.PI*RT/k);// the tail past x=1 is negligible
+
+		BoltzmannIntegrator1D integrator = quadratic(k);
+		double integ = integrator.doIntegral(1e-8, 1 << 16);
+
+		assertThat(integ, closeTo(exact, 1e-7*exact));
+		assertThat(integrator.getErrorEstimate(), lessThanOrEqualTo(1e-8*integ));
+	}
+
+	@Test
+	public void radicalInverse() {
+		assertThat(QMCVoxelIntegrator.radicalInverse(1, 2), is(0.5));
+		assertThat(QMCVoxelIntegrator.radicalInverse(2, 2), is(0.25));
+		assertThat(QMCVoxelIntegrator.radicalInverse(3, 2), is(0.75));
+		assertThat(QMCVoxelIntegrator.radicalInverse(1, 3), closeTo(1.0/3, 1e-15));
+		assertThat(QMCVoxelIntegrator.radicalInverse(5, 3), closeTo(1.0/3 + 1.0/9, 1e-15));
+	}
+
+	// E(x) = sum_d k_d x_d^2 over the voxel [-1/2,1/2]^n
+	private static class SeparableQuadratic implements ObjectiveFunction {
+
+		private static final long serialVersionUID = 1L;
+
+		final double[] k;
+		final DoubleMatrix1D x;
+
+		SeparableQuadratic(double ... k) {
+			this.k = k;
+			this.x = DoubleFactory1D.dense.make(k.length);
+		}
+
+		@Override
+		public int getNumDOFs() {
+			return k.length;
+		}
+
+		@Override
+		public DoubleMatrix1D[] getConstraints() {
+			return new DoubleMatrix1D[] {
+				DoubleFactory1D.dense.make(k.length, -0.5),
+				DoubleFactory1D.dense.make(k.length, 0.5)
+			};
+		}
+
+		@Override
+		public void setDOFs(DoubleMatrix1D x) {
+			this.x.assign(x);
+		}
+
+		@Override
+		public void setDOF(int dof, double val) {
+			x.set(dof, val);
+		}
+
+		@Override
+		public double getValue(DoubleMatrix1D x) {
+			setDOFs(x);
+			double val = 0;
+			for (int d=0; d<k.length; d++) {
+				val += getValForDOF(d, x.get(d));
+			}
+			return val;
+		}
+
+		@Override
+		public double getValForDOF(int dof, double val) {
+			return k[dof]*val*val;
+		}
+
+		@Override
+		public double getInitStepSize(int dof) {
+			return 0.1;
+		}
+
+		@Override
+		public boolean isDOFAngle(int dof) {
+			return false;
+		}
+
+		@Override
+		public ArrayList<Integer> getInitFixableDOFs() {
+			return new ArrayList<>();
+		}
+
+		double calcExactG() {
+			// the Boltzmann factor is separable, so G is a sum of 1D free energies
+			// (the voxel has unit width, so the mean over each axis is just the integral)
+			double G = 0;
+			for (double kd : k) {
+				BoltzmannIntegrator1D integrator = new BoltzmannIntegrator1D(-0.5, 0.5) {
+					@Override
+					public double f(double x) {
+						return kd*x*x;
+					}
+				};
+				G -= RT*Math.log(integrator.doIntegral(1e-13, 1 << 16));
+			}
+			return G;
+		}
+	}
+
+	private static SeparableQuadratic quadraticForConf(int[] conf) {
+		// give each conf its own stiffnesses
+		double[] k = new double[conf.length];
+		for (int i=0; i<conf.length; i++) {
+			k[i] = 0.5 + conf[i] + 0.3*i;
+		}
+		return new SeparableQuadratic(k);
+	}
+
+	private static ThreadPoolTaskExecutor makeParallelTasks() {
+		ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor();
+		tasks.start(4);
+		return tasks;
+	}
+
+	@Test
+	public void qmcMatchesExact() {
+
+		SeparableQuadratic f = new SeparableQuadratic(1, 3, 10);
+		double exact = f.calcExactG();
+
+		QMCVoxelIntegrator qmc = new QMCVoxelIntegrator(() -> new SeparableQuadratic(f.k), 1000, 16);
+		double G = qmc.calcG(new TaskExecutor());
+
+		assertThat(qmc.getStdErr(), greaterThan(0.0));
+		assertThat(qmc.getStdErr(), lessThan(0.01));
+		assertThat(G, closeTo(exact, 4*qmc.getStdErr()));
+	}
+
+	@Test
+	public void qmcSerialMatchesParallel() {
+
+		QMCVoxelIntegrator serial = new QMCVoxelIntegrator(() -> new SeparableQuadratic(1, 3, 10), 1000, 16);
+		serial.calcG(new TaskExecutor());
+
+		AtomicInteger numObjFcns = new AtomicInteger(0);
+		QMCVoxelIntegrator parallel = new QMCVoxelIntegrator(
+			() -> {
+				numObjFcns.incrementAndGet();
+				return new SeparableQuadratic(1, 3, 10);
+			},
+			1000, 16
+		);
+		ThreadPoolTaskExecutor tasks = makeParallelTasks();
+		try {
+			parallel.calcG(tasks);
+		} finally {
+			tasks.clean();
+		}
+
+		// the replicates are seeded the same way, so the results shouldn't depend on the threads
+		assertThat(parallel.getG(), is(serial.getG()));
+		assertThat(parallel.getStdErr(), is(serial.getStdErr()));
+
+		// objective functions get reused between replicates
+		assertThat(numObjFcns.get(), lessThanOrEqualTo(tasks.getParallelism()));
+	}
+
+	// uses the analytic objective functions instead of EPIC, so we can check the parallelism and memoization
+	private static class AnalyticGCalculator extends VoxelGCalculator {
+
+		final AtomicInteger numCalcs = new AtomicInteger(0);
+		final AtomicInteger numSnapshots = new AtomicInteger(0);
+		final AtomicInteger numCopies = new AtomicInteger(0);
+
+		AnalyticGCalculator() {
+			super(null, null);
+		}
+
+		@Override
+		Supplier<EPICMatrix> makeEPICMatCopier() {
+			numSnapshots.incrementAndGet();
+			return () -> {
+				numCopies.incrementAndGet();
+				return null;
+			};
+		}
+
+		@Override
+		double calcG(int[] assignmentList, EPICMatrix mat1, EPICMatrix mat2) {
+			numCalcs.incrementAndGet();
+			QMCVoxelIntegrator qmc = new QMCVoxelIntegrator(() -> quadraticForConf(assignmentList), 256, 4);
+			return qmc.calcG(new TaskExecutor());
+		}
+	}
+
+	private static List<int[]> makeConfs(int start, int end) {
+		List<int[]> confs = new ArrayList<>();
+		for (int i=start; i<end; i++) {
+			confs.add(new int[] { i%3, (i/3)%3, i/9 });
+		}
+		return confs;
+	}
+
+	@Test
+	public void calcGsSerialMatchesParallel() {
+
+		List<int[]> confs = makeConfs(0, 20);
+
+		AnalyticGCalculator serial = new AnalyticGCalculator();
+		double[] serialGs = serial.calcGs(confs, new TaskExecutor());
+
+		// serial calculations just use the calculator's own EPIC matrices
+		assertThat(serial.numSnapshots.get(), is(0));
+		assertThat(serial.numCopies.get(), is(0));
+
+		AnalyticGCalculator parallel = new AnalyticGCalculator();
+		ThreadPoolTaskExecutor tasks = makeParallelTasks();
+		double[] parallelGs;
+		try {
+			parallelGs = parallel.calcGs(confs, tasks);
+		} finally {
+			tasks.clean();
+		}
+
+		assertThat(parallelGs, is(serialGs));
+
+		// copies all come from one snapshot,
+		// and there's at most one pair of matrices per thread, one of which is the calculator's own
+		assertThat(parallel.numSnapshots.get(), is(1));
+		assertThat(parallel.numCopies.get(), lessThanOrEqualTo(2*(tasks.getParallelism() - 1)));
+
+		// and the Gs should be right
+		for (int i=0; i<confs.size(); i++) {
+			assertThat(serialGs[i], closeTo(quadraticForConf(confs.get(i)).calcExactG(), 0.05));
+		}
+	}
+
+	@Test
+	public void memoization() {
+
+		AnalyticGCalculator calc = new AnalyticGCalculator();
+
+		double[] Gs = calc.calcGs(makeConfs(0, 10), new TaskExecutor());
+		assertThat(calc.numCalcs.get(), is(10));
+
+		// only the new confs need calculating
+		double[] moreGs = calc.calcGs(makeConfs(5, 15), new TaskExecutor());
+		assertThat(calc.numCalcs.get(), is(15));
+		assertThat(Arrays.copyOfRange(moreGs, 0, 5), is(Arrays.copyOfRange(Gs, 5, 10)));
+
+		// and single confs share the same cache
+		assertThat(calc.calcG(makeConfs(3, 4).get(0)), is(Gs[3]));
+		assertThat(calc.numCalcs.get(), is(15));
+		double G = calc.calcG(makeConfs(20, 21).get(0));
+		assertThat(calc.numCalcs.get(), is(16));
+		assertThat(calc.calcGs(makeConfs(20, 21), new TaskExecutor())[0], is(G));
+		assertThat(calc.numCalcs.get(), is(16));
+	}
+}